@@ -86,6 +86,26 @@ TABLES `flowjob_broker` WRITE;
 UNLOCK
 TABLES;
 
+--
+-- Table structure for table `flowjob_broker_slot`
+--
+
+DROP TABLE IF EXISTS `flowjob_broker_slot`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `flowjob_broker_slot`
+(
+    `id`         bigint unsigned NOT NULL AUTO_INCREMENT,
+    `slot`       int                                                    NOT NULL,
+    `broker_url` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `is_deleted` bit(1)                                                 NOT NULL DEFAULT 0,
+    `created_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `updated_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_slot` (`slot`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `flowjob_plan`
 --
@@ -102,13 +122,16 @@ CREATE TABLE `flowjob_plan`
     `recently_version` int(8) unsigned NOT NULL,
     `name`             varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
     `broker_url`       varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `slot`             int                                                    NOT NULL DEFAULT 0,
     `is_enabled`       bit(1)                                                          DEFAULT NULL,
     `is_deleted`       bit(1)                                                 NOT NULL DEFAULT 0,
     `created_at`       datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,
     `updated_at`       datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_id` (`plan_id`),
-    KEY                `idx_update_broker` (`updated_at`, `broker_url`)
+    KEY                `idx_update_broker` (`updated_at`, `broker_url`),
+    KEY                `idx_broker_plan` (`broker_url`, `plan_id`),
+    KEY                `idx_broker_slot` (`broker_url`, `slot`)
 ) ENGINE=InnoDB AUTO_INCREMENT=2 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
@@ -123,6 +146,27 @@ TABLES `flowjob_plan` WRITE;
 UNLOCK
 TABLES;
 
+--
+-- Table structure for table `flowjob_plan_change`
+--
+
+DROP TABLE IF EXISTS `flowjob_plan_change`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `flowjob_plan_change`
+(
+    `id`         bigint unsigned NOT NULL AUTO_INCREMENT,
+    `plan_id`    varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `broker_url` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `is_deleted` bit(1)                                                 NOT NULL DEFAULT 0,
+    `created_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `updated_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    KEY          `idx_broker_id` (`broker_url`, `id`),
+    KEY          `idx_created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Table structure for table `flowjob_plan_info`
 --
@@ -242,6 +286,7 @@ CREATE TABLE `flowjob_job_instance`
     `plan_id`         varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
     `plan_info_id`    varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
     `broker_url`      varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
+    `slot`            int                                                    NOT NULL DEFAULT 0,
     `trigger_at`      datetime(6) NOT NULL,
     `context`         text COLLATE utf8mb4_bin,
     `start_at`        datetime(6) DEFAULT NULL,
@@ -255,7 +300,8 @@ CREATE TABLE `flowjob_job_instance`
     PRIMARY KEY (`id`),
     UNIQUE KEY `uk_id` (`job_instance_id`),
     UNIQUE KEY `uk_instance_job` (`instance_id`, `job_id`, `retry_times`),
-    KEY               `idx_report_broker` (`last_report_at`, `broker_url`)
+    KEY               `idx_report_broker` (`last_report_at`, `broker_url`),
+    KEY               `idx_broker_slot` (`broker_url`, `slot`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_bin;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
@@ -598,6 +644,7 @@ CREATE TABLE `flowjob_lock`
     `name`       varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
     `owner`      varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT '',
     `expire_at`  datetime(6) NOT NULL,
+    `token`      bigint                                                 NOT NULL DEFAULT 0,
     `is_deleted` bit(1)                                                 NOT NULL DEFAULT 0,
     `created_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,
     `updated_at` datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
@@ -41,26 +41,23 @@ import org.limbo.flowjob.common.heartbeat.Heartbeat;
 import org.limbo.flowjob.common.heartbeat.HeartbeatPacemaker;
 import org.limbo.flowjob.common.rpc.EmbedRpcServer;
 import org.limbo.flowjob.common.rpc.RpcServerStatus;
-import org.limbo.flowjob.common.thread.CommonThreadPool;
 import org.limbo.flowjob.common.thread.NamedThreadFactory;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 
 import java.net.URL;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
 /**
  * @author Devil
@@ -101,9 +98,9 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
     private URL url;
 
     /**
-     * 任务上报线程池
+     * job 状态上报
      */
-    private ScheduledExecutorService scheduledReportPool;
+    private JobReporter jobReporter;
 
     /**
      * 远程调用
@@ -120,7 +117,7 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
 
     public BaseScheduleAgent(URL url, AgentResources resource, AgentBrokerRpc brokerRpc,
                              JobRepository jobRepository, TaskRepository taskRepository,
-                             TaskDispatcher taskDispatcher, EmbedRpcServer embedRpcServer) {
+                             TaskDispatcher taskDispatcher, JobReporter jobReporter, EmbedRpcServer embedRpcServer) {
         Objects.requireNonNull(url, "URL can't be null");
         Objects.requireNonNull(brokerRpc, "remote client can't be null");
 
@@ -130,6 +127,7 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
         this.jobRepository = jobRepository;
         this.taskRepository = taskRepository;
         this.taskDispatcher = taskDispatcher;
+        this.jobReporter = jobReporter;
         this.resource = resource;
 
         this.status = embedRpcServer.getStatus();
@@ -174,7 +172,7 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
         );
 
         // job 状态上报
-        scheduledReportPool = Executors.newScheduledThreadPool(resource.concurrency(), NamedThreadFactory.newInstance("FlowJobAgentJobReporter"));
+        jobReporter.start();
 
         // 启动心跳
         if (pacemaker == null) {
@@ -263,31 +261,25 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
             throw new IllegalArgumentException("Job Type doesn't match jobId:" + jobId + " type:" + job.getType());
         }
 
-        // 防止重复id
-        subTaskParams = subTaskParams.stream().filter(p -> StringUtils.isNotBlank(p.getTaskId())).collect(Collectors.toList());
-        List<String> subTaskIds = subTaskParams.stream().map(SubTaskCreateParam.SubTaskInfoParam::getTaskId).collect(Collectors.toList());
-        Set<String> existTaskIds = taskRepository.getExistTaskIds(jobId, subTaskIds);
-        subTaskParams = subTaskParams.stream().filter(p -> !existTaskIds.contains(p.getTaskId())).collect(Collectors.toList());
-        if (CollectionUtils.isEmpty(subTaskParams)) {
-            if (log.isDebugEnabled()) {
-                log.debug("subTasks is empty param={}", param);
-            }
-            return;
-        }
-
-        List<Task> tasks = new ArrayList<>();
+        // 同一批次内按 id 去重，和已保存任务的去重由 job 处理
+        Map<String, Task> tasks = new LinkedHashMap<>();
         for (SubTaskCreateParam.SubTaskInfoParam subTaskInfoParam : subTaskParams) {
+            if (StringUtils.isBlank(subTaskInfoParam.getTaskId()) || tasks.containsKey(subTaskInfoParam.getTaskId())) {
+                continue;
+            }
             Task newTask = TaskFactory.create(subTaskInfoParam.getTaskId(), job, subTaskInfoParam.getData(), TaskType.MAP, null);
-            tasks.add(newTask);
+            tasks.put(newTask.getId(), newTask);
         }
 
-        if (!job.saveTask(tasks)) {
-            throw new IllegalArgumentException("batch save task fail jobId:" + jobId);
+        List<Task> savedTasks = job.saveSubTasks(new ArrayList<>(tasks.values()));
+        if (CollectionUtils.isEmpty(savedTasks)) {
+            if (log.isDebugEnabled()) {
+                log.debug("subTasks is empty param={}", param);
+            }
+            return;
         }
 
-        for (Task task : tasks) {
-            CommonThreadPool.IO.submit(() -> taskDispatcher.dispatch(task));
-        }
+        taskDispatcher.dispatchAsync(savedTasks);
     }
 
     @Override
@@ -348,6 +340,7 @@ public class BaseScheduleAgent implements ScheduleAgent, Heartbeat {
     public void stop() {
         this.pacemaker.stop();
         this.taskExecuteChecker.stop();
+        this.jobReporter.stop();
         this.embedRpcServer.stop();
     }
 
@@ -0,0 +1,184 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.ListUtils;
+import org.limbo.flowjob.agent.core.entity.Job;
+import org.limbo.flowjob.agent.core.repository.JobRepository;
+import org.limbo.flowjob.agent.core.rpc.AgentBrokerRpc;
+import org.limbo.flowjob.common.constants.JobConstant;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * agent 内所有 job 共用的上报定时器。执行中的 job 定时批量上报给 broker，
+ * 完成的 job 反馈失败后按间隔重试，直到反馈成功后从仓库移除。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+public class JobReporter {
+
+    private static final String REPORTER_NAME = "FlowJobAgentJobReporter";
+
+    private final JobRepository jobRepository;
+
+    private final AgentBrokerRpc brokerRpc;
+
+    /**
+     * jobId -> 待反馈的完成结果
+     */
+    private final Map<String, CompleteReport> completes = new ConcurrentHashMap<>();
+
+    private Timer timer;
+
+    public JobReporter(JobRepository jobRepository, AgentBrokerRpc brokerRpc) {
+        this.jobRepository = jobRepository;
+        this.brokerRpc = brokerRpc;
+    }
+
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = new Timer(REPORTER_NAME, true);
+
+        long reportMillis = JobConstant.JOB_REPORT_SECONDS * 1000L;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    reportExecuting();
+                } catch (Exception e) {
+                    log.error("[{}] report job fail", REPORTER_NAME, e);
+                }
+            }
+        }, reportMillis, reportMillis);
+
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                for (CompleteReport report : completes.values()) {
+                    feedbackAsync(report);
+                }
+            }
+        }, JobConstant.JOB_COMPLETE_RETRY_MILLIS, JobConstant.JOB_COMPLETE_RETRY_MILLIS);
+
+        log.info("[{}] start!", REPORTER_NAME);
+    }
+
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.cancel();
+        timer = null;
+
+        log.info("[{}] stop!", REPORTER_NAME);
+    }
+
+    /**
+     * job 执行完成，立即反馈给 broker，失败的由定时任务重试
+     */
+    public void complete(Job job, boolean success, String errorMsg) {
+        CompleteReport report = new CompleteReport(job, success, errorMsg);
+        if (completes.putIfAbsent(job.getId(), report) == null) {
+            feedbackAsync(report);
+        }
+    }
+
+    /**
+     * job 已移除，不再反馈
+     */
+    public void cancel(String jobId) {
+        completes.remove(jobId);
+    }
+
+    /**
+     * 仓库中的 job 在完成反馈成功前都需要上报，避免 broker 判断超时
+     */
+    private void reportExecuting() {
+        List<String> jobIds = jobRepository.findAll().stream()
+                .map(Job::getId)
+                .collect(Collectors.toList());
+        for (List<String> ids : ListUtils.partition(jobIds, JobConstant.JOB_BATCH_REPORT_SIZE)) {
+            try {
+                brokerRpc.batchReportJob(ids);
+            } catch (Exception e) {
+                log.error("[{}] batch report job fail size={}", REPORTER_NAME, ids.size(), e);
+            }
+        }
+    }
+
+    private void feedbackAsync(CompleteReport report) {
+        // 同一个 job 同时只有一个反馈在执行
+        if (!report.feedbacking.compareAndSet(false, true)) {
+            return;
+        }
+        CommonThreadPool.IO.execute(() -> {
+            try {
+                feedback(report);
+            } finally {
+                report.feedbacking.set(false);
+            }
+        });
+    }
+
+    private void feedback(CompleteReport report) {
+        Job job = report.job;
+        try {
+            boolean feedback = report.success
+                    ? brokerRpc.feedbackJobSucceed(job)
+                    : brokerRpc.feedbackJobFail(job, report.errorMsg);
+            if (feedback) {
+                jobRepository.delete(job.getId());
+                completes.remove(job.getId(), report);
+            }
+        } catch (Exception e) {
+            log.error("Job Complete Fail job={} success={} errorMsg={}", job, report.success, report.errorMsg, e);
+        }
+    }
+
+    private static class CompleteReport {
+
+        private final Job job;
+
+        private final boolean success;
+
+        private final String errorMsg;
+
+        private final AtomicBoolean feedbacking = new AtomicBoolean(false);
+
+        CompleteReport(Job job, boolean success, String errorMsg) {
+            this.job = job;
+            this.success = success;
+            this.errorMsg = errorMsg;
+        }
+    }
+
+}
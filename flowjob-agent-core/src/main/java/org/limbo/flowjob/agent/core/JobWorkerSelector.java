@@ -0,0 +1,234 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.agent.core.entity.Job;
+import org.limbo.flowjob.agent.core.entity.Task;
+import org.limbo.flowjob.agent.core.repository.JobRepository;
+import org.limbo.flowjob.agent.core.rpc.AgentBrokerRpc;
+import org.limbo.flowjob.api.constants.LoadBalanceType;
+import org.limbo.flowjob.common.constants.AgentConstant;
+import org.limbo.flowjob.common.lb.LBStrategy;
+import org.limbo.flowjob.common.lb.SlidingWindowLBServerStatistics;
+import org.limbo.flowjob.common.lb.strategies.AppointLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.LFULBStrategy;
+import org.limbo.flowjob.common.lb.strategies.LRULBStrategy;
+import org.limbo.flowjob.common.lb.strategies.RandomLBStrategy;
+import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
+import org.limbo.flowjob.common.rpc.RPCInvocation;
+import org.limbo.flowjob.common.utils.attribute.Attributes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为 task 选择 worker。job 的可用 worker 从 broker 获取后缓存一段时间，在 agent 本地按 job 的负载策略选择，
+ * 下发次数定时批量上报给 broker。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+public class JobWorkerSelector {
+
+    private static final String LB_PREFIX = "worker.lb.";
+
+    private final JobRepository jobRepository;
+
+    private final AgentBrokerRpc agentBrokerRpc;
+
+    /**
+     * jobId -> 可用 worker
+     */
+    private final Map<String, JobWorkers> jobWorkers = new ConcurrentHashMap<>();
+
+    /**
+     * 本地下发统计，LFU、LRU 使用
+     */
+    private final SlidingWindowLBServerStatistics statistics = new SlidingWindowLBServerStatistics();
+
+    /**
+     * 待上报的下发次数
+     */
+    private final Map<String, AtomicInteger> dispatched = new ConcurrentHashMap<>();
+
+    private final ConsistentHashLBStrategy<Worker> consistentHashStrategy = new ConsistentHashLBStrategy<>();
+
+    private final RandomLBStrategy<Worker> randomStrategy = new RandomLBStrategy<>();
+
+    public JobWorkerSelector(JobRepository jobRepository, AgentBrokerRpc agentBrokerRpc) {
+        this.jobRepository = jobRepository;
+        this.agentBrokerRpc = agentBrokerRpc;
+    }
+
+    public void start() {
+        new Timer("JobWorkerSelectorReporter", true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    report();
+                    // 清理过期的 job
+                    long now = System.currentTimeMillis();
+                    jobWorkers.values().removeIf(w -> w.expireAt < now);
+                } catch (Exception e) {
+                    log.error("[JobWorkerSelector] report dispatched fail", e);
+                }
+            }
+        }, AgentConstant.DISPATCHED_REPORT_MILLIS, AgentConstant.DISPATCHED_REPORT_MILLIS);
+    }
+
+    /**
+     * 选择 task 下发的 worker，没有可用的返回 null
+     */
+    public Worker select(Task task) {
+        Job job = jobRepository.getById(task.getJobId());
+        LoadBalanceType loadBalanceType = job == null ? null : job.getLoadBalanceType();
+        // 资源加权依赖 worker 实时资源，仍由 broker 选择
+        if (loadBalanceType == null || loadBalanceType == LoadBalanceType.RESOURCE_WEIGHTED || loadBalanceType == LoadBalanceType.UNKNOWN) {
+            List<Worker> workers = agentBrokerRpc.availableWorkers(task.getJobId(), true, true, true, true);
+            return CollectionUtils.isEmpty(workers) ? null : workers.get(0);
+        }
+
+        JobWorkers candidates = candidates(job);
+        if (CollectionUtils.isEmpty(candidates.workers)) {
+            return null;
+        }
+        RPCInvocation invocation = new RPCInvocation(job.getExecutorName(), lbParameters(task.getJobAttributes()));
+        Worker worker = candidates.strategy.select(candidates.workers, invocation).orElse(null);
+        if (worker != null) {
+            statistics.record(worker.getId(), 1);
+        }
+        return worker;
+    }
+
+    /**
+     * 记录下发成功，定时上报给 broker
+     */
+    public void dispatched(Worker worker) {
+        dispatched.computeIfAbsent(worker.getId(), id -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * 下发失败，移除该 worker，下次选择时如果没有可用 worker 则重新获取
+     */
+    public void dispatchFail(String jobId, Worker worker) {
+        JobWorkers candidates = jobWorkers.get(jobId);
+        if (candidates == null || worker == null) {
+            return;
+        }
+        List<Worker> remain = new ArrayList<>(candidates.workers);
+        remain.removeIf(w -> StringUtils.equals(w.getId(), worker.getId()));
+        if (remain.isEmpty()) {
+            jobWorkers.remove(jobId, candidates);
+        } else {
+            candidates.workers = remain;
+        }
+    }
+
+    private JobWorkers candidates(Job job) {
+        long now = System.currentTimeMillis();
+        JobWorkers candidates = jobWorkers.get(job.getId());
+        if (candidates == null || candidates.expireAt < now) {
+            // 并发时可能重复获取，不影响结果
+            List<Worker> workers = agentBrokerRpc.availableWorkers(job.getId(), true, true, true, false);
+            candidates = new JobWorkers(workers == null ? Collections.emptyList() : workers, strategy(job.getLoadBalanceType()),
+                    now + AgentConstant.JOB_WORKERS_LEASE_MILLIS);
+            // 没有可用 worker 不缓存，下次重新获取
+            if (CollectionUtils.isNotEmpty(candidates.workers)) {
+                jobWorkers.put(job.getId(), candidates);
+            }
+        }
+        return candidates;
+    }
+
+    private LBStrategy<Worker> strategy(LoadBalanceType loadBalanceType) {
+        switch (loadBalanceType) {
+            case ROUND_ROBIN:
+                return new RoundRobinLBStrategy<>();
+            case APPOINT:
+                return new AppointLBStrategy<>();
+            case LEAST_FREQUENTLY_USED:
+                return new LFULBStrategy<>(statistics);
+            case LEAST_RECENTLY_USED:
+                return new LRULBStrategy<>(statistics);
+            case CONSISTENT_HASH:
+                return consistentHashStrategy;
+            case RANDOM:
+            default:
+                return randomStrategy;
+        }
+    }
+
+    private Map<String, String> lbParameters(Attributes attributes) {
+        Map<String, String> parameters = new HashMap<>();
+        if (attributes == null) {
+            return parameters;
+        }
+        attributes.toMap().forEach((k, v) -> {
+            if (StringUtils.isNotBlank(k) && k.startsWith(LB_PREFIX) && v instanceof String) {
+                parameters.put(k.substring(LB_PREFIX.length()), (String) v);
+            }
+        });
+        return parameters;
+    }
+
+    private void report() {
+        if (dispatched.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> times = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : dispatched.entrySet()) {
+            int count = entry.getValue().getAndSet(0);
+            if (count > 0) {
+                times.put(entry.getKey(), count);
+            }
+        }
+        if (!times.isEmpty()) {
+            // 统计数据只用于负载，上报失败直接丢弃
+            agentBrokerRpc.reportDispatched(times);
+        }
+    }
+
+    private static class JobWorkers {
+
+        private volatile List<Worker> workers;
+
+        private final LBStrategy<Worker> strategy;
+
+        private final long expireAt;
+
+        JobWorkers(List<Worker> workers, LBStrategy<Worker> strategy, long expireAt) {
+            this.workers = workers;
+            this.strategy = strategy;
+            this.expireAt = expireAt;
+        }
+    }
+
+}
@@ -19,16 +19,21 @@
 package org.limbo.flowjob.agent.core;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.agent.core.entity.Job;
 import org.limbo.flowjob.agent.core.entity.Task;
 import org.limbo.flowjob.agent.core.repository.JobRepository;
 import org.limbo.flowjob.agent.core.repository.TaskRepository;
-import org.limbo.flowjob.agent.core.rpc.AgentBrokerRpc;
 import org.limbo.flowjob.agent.core.rpc.AgentWorkerRpc;
 import org.limbo.flowjob.api.constants.TaskStatus;
+import org.limbo.flowjob.common.constants.AgentConstant;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Devil
@@ -41,15 +46,37 @@ public class TaskDispatcher {
 
     private final TaskRepository taskRepository;
 
-    private final AgentBrokerRpc agentBrokerRpc;
-
     private final AgentWorkerRpc agentWorkerRpc;
 
-    public TaskDispatcher(JobRepository jobRepository, TaskRepository taskRepository, AgentBrokerRpc agentBrokerRpc, AgentWorkerRpc agentWorkerRpc) {
+    private final JobWorkerSelector jobWorkerSelector;
+
+    /**
+     * 等待异步下发的 task
+     */
+    private final Queue<Task> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingSize = new AtomicInteger();
+
+    /**
+     * 异步下发中的 task 数量
+     */
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /**
+     * 同时下发中的 task 数量上限，下发成功时加一，worker 拒绝时减半
+     */
+    private volatile int window = AgentConstant.DISPATCH_WINDOW_INIT;
+
+    /**
+     * 等待或正在下发的 task，防止 TaskScheduleChecker 重复下发
+     */
+    private final Set<String> dispatching = ConcurrentHashMap.newKeySet();
+
+    public TaskDispatcher(JobRepository jobRepository, TaskRepository taskRepository, AgentWorkerRpc agentWorkerRpc, JobWorkerSelector jobWorkerSelector) {
         this.jobRepository = jobRepository;
         this.taskRepository = taskRepository;
-        this.agentBrokerRpc = agentBrokerRpc;
         this.agentWorkerRpc = agentWorkerRpc;
+        this.jobWorkerSelector = jobWorkerSelector;
     }
 
     /**
@@ -57,21 +84,98 @@ public class TaskDispatcher {
      * task status -> EXECUTING or FAILED
      */
     public void dispatch(Task task) {
+        String key = key(task);
+        if (!dispatching.add(key)) {
+            return;
+        }
+        try {
+            doDispatch(task);
+        } finally {
+            dispatching.remove(key);
+        }
+    }
+
+    /**
+     * 异步下发，同时下发中的 task 数量受窗口限制，窗口随 worker 的接收情况调整。
+     * 等待的 task 过多时不再排队，由 TaskScheduleChecker 下发。
+     */
+    public void dispatchAsync(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            if (pendingSize.get() >= AgentConstant.DISPATCH_PENDING_LIMIT) {
+                break;
+            }
+            if (dispatching.add(key(task))) {
+                pending.offer(task);
+                pendingSize.incrementAndGet();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 按窗口的空余数量启动下发循环
+     */
+    private void drain() {
+        while (!pending.isEmpty() && acquire()) {
+            CommonThreadPool.IO.execute(this::dispatchLoop);
+        }
+    }
+
+    /**
+     * 占用一个窗口持续下发，直到队列为空或窗口缩小。
+     * 不在下发完成后递归调用 drain，线程池饱和由调用方线程执行时调用栈也不会增长
+     */
+    private void dispatchLoop() {
+        while (true) {
+            Task task = inflight.get() > window ? null : pending.poll();
+            if (task == null) {
+                inflight.decrementAndGet();
+                // 释放后可能有新的 task 入队
+                if (!pending.isEmpty() && acquire()) {
+                    continue;
+                }
+                return;
+            }
+            pendingSize.decrementAndGet();
+            try {
+                boolean dispatched = doDispatch(task);
+                window = dispatched ? Math.min(window + 1, AgentConstant.DISPATCH_WINDOW_MAX) : Math.max(window / 2, 1);
+            } catch (Exception e) {
+                log.error("Task dispatch error task={}", task.getId(), e);
+            } finally {
+                dispatching.remove(key(task));
+            }
+        }
+    }
+
+    /**
+     * 占用一个窗口
+     */
+    private boolean acquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= window) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean doDispatch(Task task) {
         if (log.isDebugEnabled()) {
             log.debug("start dispatch task={}", task);
         }
 
         if (task.getStatus() != TaskStatus.SCHEDULING) {
-            return;
+            return false;
         }
 
         boolean dispatched = false;
         try {
             if (task.getWorker() == null) {
-                List<Worker> workers = agentBrokerRpc.availableWorkers(task.getJobId(), true, true, true, true);
-                if (CollectionUtils.isNotEmpty(workers)) {
-                    task.setWorker(workers.get(0));
-                }
+                task.setWorker(jobWorkerSelector.select(task));
             }
 
             if (task.getWorker() != null) {
@@ -79,8 +183,10 @@ public class TaskDispatcher {
             }
 
             if (dispatched) {
+                jobWorkerSelector.dispatched(task.getWorker());
                 log.info("Task dispatch success task={} worker={}", task.getId(), task.getWorker());
             } else {
+                jobWorkerSelector.dispatchFail(task.getJobId(), task.getWorker());
                 task.dispatchFail();
                 log.error("Task dispatch failed: task={} worker={} times={}", task.getId(), task.getWorker(), task.getDispatchFailTimes());
                 taskRepository.dispatchFail(task.getJobId(), task.getId());
@@ -94,6 +200,25 @@ public class TaskDispatcher {
         } catch (Exception e) {
             log.error("Task dispatch failed: task={} worker={}", task.getId(), task.getWorker(), e);
         }
+        return dispatched;
+    }
+
+    /**
+     * @return 当前下发窗口
+     */
+    int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return 异步下发中的 task 数量
+     */
+    int getInflight() {
+        return inflight.get();
+    }
+
+    private String key(Task task) {
+        return task.getJobId() + "/" + task.getId();
     }
 
 }
@@ -25,7 +25,6 @@ import org.limbo.flowjob.agent.core.entity.Task;
 import org.limbo.flowjob.agent.core.repository.JobRepository;
 import org.limbo.flowjob.agent.core.repository.TaskRepository;
 import org.limbo.flowjob.api.constants.TaskStatus;
-import org.limbo.flowjob.common.utils.time.LocalDateTimeUtils;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.Duration;
@@ -91,13 +90,12 @@ public class TaskExecuteChecker {
             @Override
             public void run() {
                 try {
-                    String checkStartTimeStr = LocalDateTimeUtils.formatYMDHMS(lastCheckTime.plusSeconds(-1));
+                    LocalDateTime checkStartTime = lastCheckTime.plusSeconds(-1);
                     LocalDateTime checkEndTime = TimeUtils.currentLocalDateTime().plus(-period.toMillis(), ChronoUnit.MILLIS);
-                    String checkEndTimeStr = LocalDateTimeUtils.formatYMDHMS(checkEndTime);
 
                     Integer limit = 100;
                     String startId = "";
-                    List<Task> tasks = taskRepository.getByLastReportBetween(checkStartTimeStr, checkEndTimeStr, TaskStatus.EXECUTING, startId, limit);
+                    List<Task> tasks = taskRepository.getByLastReportBetween(checkStartTime, checkEndTime, TaskStatus.EXECUTING, startId, limit);
                     while (CollectionUtils.isNotEmpty(tasks)) {
                         for (Task t : tasks) {
                             Job job = jobRepository.getById(t.getJobId());
@@ -108,7 +106,7 @@ public class TaskExecuteChecker {
                             }
                         }
                         startId = tasks.get(tasks.size() - 1).getId();
-                        tasks = taskRepository.getByLastReportBetween(checkStartTimeStr, checkEndTimeStr, TaskStatus.EXECUTING, startId, limit);
+                        tasks = taskRepository.getByLastReportBetween(checkStartTime, checkEndTime, TaskStatus.EXECUTING, startId, limit);
                     }
 
                     lastCheckTime = checkEndTime;
@@ -23,10 +23,10 @@ import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.agent.core.TaskDispatcher;
 import org.limbo.flowjob.agent.core.entity.Task;
 import org.limbo.flowjob.agent.core.repository.TaskRepository;
-import org.limbo.flowjob.common.utils.time.LocalDateTimeUtils;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -83,7 +83,7 @@ public class TaskScheduleChecker {
                     Integer limit = 100;
                     String startId = "";
 
-                    String triggerAt = LocalDateTimeUtils.formatYMDHMS(TimeUtils.currentLocalDateTime().plusSeconds(-5));
+                    LocalDateTime triggerAt = TimeUtils.currentLocalDateTime().plusSeconds(-5);
 
                     List<Task> tasks = taskRepository.getUnScheduled(triggerAt, startId, limit);
                     while (CollectionUtils.isNotEmpty(tasks)) {
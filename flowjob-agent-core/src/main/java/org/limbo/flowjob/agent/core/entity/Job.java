@@ -18,7 +18,6 @@
 
 package org.limbo.flowjob.agent.core.entity;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
@@ -26,6 +25,7 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.agent.core.JobReporter;
 import org.limbo.flowjob.agent.core.TaskDispatcher;
 import org.limbo.flowjob.agent.core.TaskFactory;
 import org.limbo.flowjob.agent.core.Worker;
@@ -36,22 +36,16 @@ import org.limbo.flowjob.api.constants.JobType;
 import org.limbo.flowjob.api.constants.LoadBalanceType;
 import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.constants.TaskType;
-import org.limbo.flowjob.common.constants.JobConstant;
 import org.limbo.flowjob.common.exception.JobException;
-import org.limbo.flowjob.common.thread.NamedThreadFactory;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
-import org.limbo.flowjob.common.utils.json.JacksonUtils;
+import org.limbo.flowjob.common.utils.collections.BloomFilter;
 
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -104,14 +98,14 @@ public class Job implements Runnable {
      */
     private Attributes attributes;
 
-    private ScheduledExecutorService scheduledReportPool;
-
-    private ScheduledFuture<?> reportScheduledFuture;
-
-    private ScheduledFuture<?> completeScheduledFuture;
-
     private TaskCounter taskCounter;
 
+    /**
+     * 已保存的子任务 id，用于子任务去重，由存储的唯一索引兜底
+     */
+    @Getter(AccessLevel.NONE)
+    private final BloomFilter subTaskIds = new BloomFilter(1024, 0.01);
+
     // =======  注入 ========
     private TaskDispatcher taskDispatcher;
 
@@ -121,6 +115,8 @@ public class Job implements Runnable {
 
     private AgentBrokerRpc brokerRpc;
 
+    private JobReporter jobReporter;
+
     @Override
     public void run() {
         start();
@@ -134,9 +130,6 @@ public class Job implements Runnable {
                 jobRepository.delete(id);
                 return; // 可能已经下发给其它节点
             }
-            this.scheduledReportPool = Executors.newScheduledThreadPool(2, NamedThreadFactory.newInstance("FlowJobJobTrackerReportPool"));
-            // 开启任务上报
-            reportScheduledFuture = scheduledReportPool.scheduleAtFixedRate(new StatusReportRunnable(), 1, JobConstant.JOB_REPORT_SECONDS, TimeUnit.SECONDS);
             // 计数
             taskCounter = new TaskCounter();
             // 执行
@@ -158,16 +151,52 @@ public class Job implements Runnable {
         return saved;
     }
 
-    public void stop() {
-        if (reportScheduledFuture != null) {
-            reportScheduledFuture.cancel(true);
+    /**
+     * 保存子任务，已存在的忽略
+     *
+     * @return 新保存的子任务
+     */
+    public List<Task> saveSubTasks(List<Task> tasks) {
+        synchronized (subTaskIds) {
+            // 布隆过滤器判断不存在的一定不存在，只有可能存在的需要查询存储
+            List<String> maybeExist = new ArrayList<>();
+            for (Task task : tasks) {
+                if (subTaskIds.mightContain(task.getId())) {
+                    maybeExist.add(task.getId());
+                }
+            }
+            List<Task> newTasks = excludeExist(tasks, maybeExist);
+            if (newTasks.isEmpty()) {
+                return newTasks;
+            }
+
+            if (!saveTask(newTasks)) {
+                // agent 重启后过滤器为空，可能和存储中的任务冲突，全量查询后重试一次
+                newTasks = excludeExist(newTasks, newTasks.stream().map(Task::getId).collect(Collectors.toList()));
+                if (!newTasks.isEmpty() && !saveTask(newTasks)) {
+                    throw new IllegalStateException("batch save task fail jobId:" + id);
+                }
+            }
+            for (Task task : newTasks) {
+                subTaskIds.put(task.getId());
+            }
+            return newTasks;
         }
-        if (completeScheduledFuture != null) {
-            completeScheduledFuture.cancel(true);
+    }
+
+    private List<Task> excludeExist(List<Task> tasks, List<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return tasks;
         }
-        if (scheduledReportPool != null) {
-            scheduledReportPool.shutdown();
+        Set<String> existTaskIds = taskRepository.getExistTaskIds(id, taskIds);
+        if (existTaskIds.isEmpty()) {
+            return tasks;
         }
+        return tasks.stream().filter(t -> !existTaskIds.contains(t.getId())).collect(Collectors.toList());
+    }
+
+    public void stop() {
+        jobReporter.cancel(id);
     }
 
     private void schedule() {
@@ -234,19 +263,14 @@ public class Job implements Runnable {
 
     /**
      * 检测是否所有task都已经完成
-     * 如果已经完成 下发 ReduceTask
+     * 如果已经完成 下发 ReduceTask，map 结果不放在 ReduceTask 中，由 worker 分页拉取
      */
     private void dealMapTaskSuccess(Task task) {
         if (taskCounter.total.get() > taskCounter.succeed.get()) {
             return; // 交由失败的task 或者后面还在执行的task去做后续逻辑处理
         }
 
-        List<String> results = taskRepository.getAllTaskResult(task.getJobId(), TaskType.MAP);
-        List<Map<String, Object>> mapResults = results.stream()
-                .map(r -> JacksonUtils.parseObject(r, new TypeReference<Map<String, Object>>() {
-                }))
-                .collect(Collectors.toList());
-        Task reduceTask = TaskFactory.create(TaskType.REDUCE.name(), this, mapResults, TaskType.REDUCE, null);
+        Task reduceTask = TaskFactory.create(TaskType.REDUCE.name(), this, null, TaskType.REDUCE, null);
         saveTask(Collections.singletonList(reduceTask));
         taskDispatcher.dispatch(reduceTask);
     }
@@ -257,7 +281,7 @@ public class Job implements Runnable {
     public synchronized void handleSuccess() {
         if (taskCounter.total.get() == taskCounter.succeed.get()) {
             // 开启任务执行完成反馈
-            completeScheduledFuture = scheduledReportPool.scheduleAtFixedRate(new CompleteReportRunnable(this, true, null), 0, 1, TimeUnit.SECONDS);
+            jobReporter.complete(this, true, null);
         }
     }
 
@@ -289,7 +313,7 @@ public class Job implements Runnable {
     public synchronized void handleFail(String errorMsg) {
         if (taskCounter.succeed.get() + taskCounter.failed.get() == taskCounter.total.get()) {
             // 开启任务执行完成反馈
-            completeScheduledFuture = scheduledReportPool.scheduleAtFixedRate(new CompleteReportRunnable(this, false, errorMsg), 0, 1, TimeUnit.SECONDS);
+            jobReporter.complete(this, false, errorMsg);
         }
     }
 
@@ -346,44 +370,4 @@ public class Job implements Runnable {
 
     }
 
-    private class StatusReportRunnable implements Runnable {
-
-        @Override
-        public void run() {
-            brokerRpc.reportJob(id);
-        }
-    }
-
-    private class CompleteReportRunnable implements Runnable {
-
-        private final Job job;
-
-        private final boolean success;
-
-        private final String errorMsg;
-
-        public CompleteReportRunnable(Job job, boolean success, String errorMsg) {
-            this.job = job;
-            this.success = success;
-            this.errorMsg = errorMsg;
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (success) {
-                    if (brokerRpc.feedbackJobSucceed(job)) {
-                        jobRepository.delete(job.getId());
-                    }
-                } else {
-                    if (brokerRpc.feedbackJobFail(job, errorMsg)) {
-                        jobRepository.delete(job.getId());
-                    }
-                }
-            } catch (Exception e) {
-                log.error("Job Complete Fail job={} success={} errorMsg={}", job, success, errorMsg, e);
-            }
-        }
-    }
-
 }
@@ -0,0 +1,493 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.agent.core.FlowjobConnectionFactory;
+import org.limbo.flowjob.agent.core.TaskFactory;
+import org.limbo.flowjob.agent.core.Worker;
+import org.limbo.flowjob.agent.core.entity.Task;
+import org.limbo.flowjob.api.constants.TaskStatus;
+import org.limbo.flowjob.api.constants.TaskType;
+import org.limbo.flowjob.api.param.console.TaskQueryParam;
+import org.limbo.flowjob.common.utils.attribute.Attributes;
+import org.limbo.flowjob.common.utils.time.LocalDateTimeUtils;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 H2 的任务存储
+ *
+ * @author Devil
+ * @since 2023/8/3
+ */
+@Slf4j
+public class H2TaskRepository implements TaskRepository {
+
+    private FlowjobConnectionFactory connectionFactory;
+
+    private static final String TABLE_NAME = "flowjob_task";
+
+    /**
+     * 批量插入时每批执行的条数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    public H2TaskRepository(FlowjobConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public boolean existTable() throws SQLException {
+        try (Connection conn = connectionFactory.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            ResultSet tables = metaData.getTables(null, null, TABLE_NAME, null);
+            return tables.next();
+        }
+    }
+
+    public void initTable() throws SQLException {
+        try (Connection conn = connectionFactory.getConnection(); Statement stat = conn.createStatement()) {
+            String dropSql = "DROP TABLE IF EXISTS `" + TABLE_NAME + "`;";
+            stat.execute(dropSql);
+
+            String createSql = "CREATE TABLE `" + TABLE_NAME + "`\n" +
+                    "(\n" +
+                    "    `id`                bigint unsigned NOT NULL AUTO_INCREMENT,\n" +
+                    "    `task_id`           varchar(255) NOT NULL DEFAULT '',\n" +
+                    "    `job_id`            varchar(255) NOT NULL DEFAULT '',\n" +
+                    "    `worker_id`         varchar(255) NOT NULL DEFAULT '',\n" +
+                    "    `worker_address`    varchar(255) NOT NULL DEFAULT '',\n" +
+                    "    `executor_name`     varchar(255) NOT NULL DEFAULT '',\n" +
+                    "    `context`           text,\n" +
+                    "    `job_attributes`    text,\n" +
+                    "    `task_attributes`   text,\n" +
+                    "    `type`              int                                                    NOT NULL,\n" +
+                    "    `status`            int                                                    NOT NULL,\n" +
+                    "    `trigger_at`        datetime(6) DEFAULT NULL,\n" +
+                    "    `start_at`          datetime(6) DEFAULT NULL,\n" +
+                    "    `end_at`            datetime(6) DEFAULT NULL,\n" +
+                    "    `dispatch_fail_times`    int(3) NOT NULL DEFAULT 0,\n" +
+                    "    `result`            varchar(255) DEFAULT '',\n" +
+                    "    `error_msg`         varchar(255) DEFAULT '',\n" +
+                    "    `last_report_at`    datetime(6) NOT NULL," +
+                    "    `error_stack_trace` text DEFAULT NULL,\n" +
+                    "    `created_at`        datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP,\n" +
+                    "    `updated_at`        datetime                                               NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,\n" +
+                    "    PRIMARY KEY (`id`),\n" +
+                    "    UNIQUE INDEX       `idx_job_task` (`job_id`, `task_id`),\n" +
+                    "    INDEX              `idx_report_task` (`last_report_at`, `task_id`)\n" +
+                    ")";
+            stat.execute(createSql);
+        }
+    }
+
+    @Override
+    public Task getById(String jobId, String taskId) {
+        String sql = "select * from " + TABLE_NAME + " where job_id = ? and task_id = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, jobId);
+            ps.setString(2, taskId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return convert(rs);
+                } else {
+                    return null;
+                }
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.getById error jobId={} taskId={}", jobId, taskId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> getExistTaskIds(String jobId, Collection<String> taskIds) {
+        if (StringUtils.isBlank(jobId) || CollectionUtils.isEmpty(taskIds)) {
+            return Collections.emptySet();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("select task_id from ").append(TABLE_NAME).append(" where job_id = ? and task_id in (");
+        for (int i = 0; i < taskIds.size(); i++) {
+            sb.append("?,");
+        }
+        sb.deleteCharAt(sb.length() - 1);
+        sb.append(")");
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sb.toString())) {
+            int i = 0;
+            ps.setString(++i, jobId);
+            for (String taskId : taskIds) {
+                ps.setString(++i, taskId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                Set<String> existTaskIds = new HashSet<>();
+                while (rs.next()) {
+                    existTaskIds.add(rs.getString("task_id"));
+                }
+                return existTaskIds;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.getExistTaskIds error jobId={} taskIds={}", jobId, taskIds, e);
+            return Collections.emptySet();
+        }
+    }
+
+    @Override
+    public boolean deleteByJobId(String jobId) {
+        String sql = "delete from " + TABLE_NAME + " where job_id = ? ";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, jobId);
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.deleteByJobId error jobId={} ", jobId, e);
+            return false;
+        }
+    }
+
+    private static final String DEFAULT_REPORT_TIME_STR = LocalDateTimeUtils.formatYMDHMS(TaskFactory.DEFAULT_REPORT_TIME);
+
+    @Override
+    public List<Task> getUnScheduled(LocalDateTime triggerAt, String startId, Integer limit) {
+        String sql = "select * from " + TABLE_NAME + " where last_report_at = ? and trigger_at < ? and status = ? and task_id > ? order by task_id limit ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 0;
+            ps.setString(++i, DEFAULT_REPORT_TIME_STR);
+            ps.setString(++i, LocalDateTimeUtils.formatYMDHMS(triggerAt));
+            ps.setInt(++i, TaskStatus.SCHEDULING.status);
+            ps.setString(++i, startId);
+            ps.setInt(++i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Task> tasks = new ArrayList<>();
+                while (rs.next()) {
+                    tasks.add(convert(rs));
+                }
+                return tasks;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.getUnScheduled error startId={} limit={}", startId, limit, e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<Task> getByLastReportBetween(LocalDateTime reportTimeStart, LocalDateTime reportTimeEnd, TaskStatus status, String taskId, Integer limit) {
+        String sql = "select * from " + TABLE_NAME + " where last_report_at >= ? and last_report_at <= ? and status = ? and task_id > ? order by task_id limit ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 0;
+            ps.setString(++i, LocalDateTimeUtils.formatYMDHMS(reportTimeStart));
+            ps.setString(++i, LocalDateTimeUtils.formatYMDHMS(reportTimeEnd));
+            ps.setInt(++i, status.status);
+            ps.setString(++i, taskId);
+            ps.setInt(++i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Task> tasks = new ArrayList<>();
+                while (rs.next()) {
+                    tasks.add(convert(rs));
+                }
+                return tasks;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.getByLastReportAtBefore error reportTimeStart={} reportTimeEnd={} limit={}", reportTimeStart, reportTimeEnd, limit, e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<Task> all(String jobId) {
+        String sql = "select * from " + TABLE_NAME;
+        if (StringUtils.isNotBlank(jobId)) {
+            sql += " where job_id = ?";
+        }
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (StringUtils.isNotBlank(jobId)) {
+                ps.setString(1, jobId);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Task> tasks = new ArrayList<>();
+                while (rs.next()) {
+                    tasks.add(convert(rs));
+                }
+                return tasks;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.queryPage error ", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<Task> queryPage(TaskQueryParam param) {
+        String sql = "select * from " + TABLE_NAME + " where job_id = ? LIMIT ? OFFSET ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, param.getJobInstanceId());
+            ps.setInt(2, param.getSize());
+            ps.setInt(3, param.getOffset());
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Task> tasks = new ArrayList<>();
+                while (rs.next()) {
+                    tasks.add(convert(rs));
+                }
+                return tasks;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.queryPage error param={}", param, e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public long queryCount(TaskQueryParam param) {
+        String sql = "select count(*) from " + TABLE_NAME + " where job_id = ? LIMIT ? OFFSET ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, param.getJobInstanceId());
+            ps.setInt(2, param.getSize());
+            ps.setInt(3, param.getOffset());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                } else {
+                    return 0L;
+                }
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.queryCount error param={}", param, e);
+            return 0L;
+        }
+    }
+
+    @Override
+    public Map<String, String> getTaskResults(String jobId, TaskType type, String startId, Integer limit) {
+        String sql = "select task_id, result from " + TABLE_NAME + " where job_id = ? and `type` = ? and task_id > ? order by task_id limit ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, jobId);
+            ps.setInt(2, type.type);
+            ps.setString(3, startId);
+            ps.setInt(4, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                Map<String, String> results = new LinkedHashMap<>();
+                while (rs.next()) {
+                    results.put(rs.getString("task_id"), rs.getString("result"));
+                }
+                return results;
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.getTaskResults error jobId={} type={} startId={}", jobId, type, startId, e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 单条插入语句批量执行，同一事务中提交，任一失败则全部回滚
+     */
+    @Override
+    public boolean batchSave(Collection<Task> tasks) {
+        if (CollectionUtils.isEmpty(tasks)) {
+            return true;
+        }
+        String sql = "insert into " + TABLE_NAME + "(" +
+                "task_id, job_id, worker_id, worker_address, executor_name, context, job_attributes, task_attributes, `type`, " +
+                "status, trigger_at, start_at, end_at, `result`, error_msg, error_stack_trace, last_report_at, `dispatch_fail_times`" +
+                ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = connectionFactory.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int count = 0;
+                for (Task task : tasks) {
+                    int idx = 0;
+                    ps.setString(++idx, task.getId());
+                    ps.setString(++idx, task.getJobId());
+                    if (task.getWorker() != null) {
+                        ps.setString(++idx, task.getWorker().getId());
+                        ps.setString(++idx, task.getWorker().address());
+                    } else {
+                        ps.setString(++idx, "");
+                        ps.setString(++idx, "");
+                    }
+                    ps.setString(++idx, task.getExecutorName());
+                    ps.setString(++idx, task.getContext().toString());
+                    ps.setString(++idx, task.getJobAttributes().toString());
+                    ps.setString(++idx, task.getTaskAttributes());
+                    ps.setInt(++idx, task.getType().type);
+                    ps.setInt(++idx, task.getStatus().status);
+                    ps.setString(++idx, task.getTriggerAt() == null ? null : LocalDateTimeUtils.formatYMDHMS(task.getTriggerAt()));
+                    ps.setString(++idx, task.getStartAt() == null ? null : LocalDateTimeUtils.formatYMDHMS(task.getStartAt()));
+                    ps.setString(++idx, task.getEndAt() == null ? null : LocalDateTimeUtils.formatYMDHMS(task.getEndAt()));
+                    ps.setString(++idx, task.getResult() == null ? "" : task.getResult());
+                    ps.setString(++idx, task.getErrorMsg() == null ? "" : task.getErrorMsg());
+                    ps.setString(++idx, task.getErrorStackTrace() == null ? "" : task.getErrorStackTrace());
+                    ps.setString(++idx, LocalDateTimeUtils.formatYMDHMS(task.getLastReportAt()));
+                    ps.setInt(++idx, task.getDispatchFailTimes());
+                    ps.addBatch();
+                    if (++count % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+                conn.commit();
+                return true;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (Exception e) {
+            log.error("H2TaskRepository.batchSave error", e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean dispatchFail(String jobId, String taskId) {
+        String sql = "update " + TABLE_NAME + " set `dispatch_fail_times` = `dispatch_fail_times` + 1 where job_id = ? and task_id = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 0;
+            ps.setString(++i, jobId);
+            ps.setString(++i, taskId);
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.dispatchFail error jobId={} taskId={}", jobId, taskId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean executing(String jobId, String taskId, String workerId, String workerAddress) {
+        String sql = "update " + TABLE_NAME + " set `status` = ?, worker_id = ?, worker_address = ?, start_at = ? where job_id = ? and task_id = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 0;
+            ps.setInt(++i, TaskStatus.EXECUTING.status);
+            ps.setString(++i, workerId);
+            ps.setString(++i, workerAddress);
+            ps.setString(++i, LocalDateTimeUtils.formatYMDHMS(TimeUtils.currentLocalDateTime()));
+            ps.setString(++i, jobId);
+            ps.setString(++i, taskId);
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.executing error jobId={} taskId={} workerId={}", jobId, taskId, workerId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean report(String jobId, String taskId) {
+        String sql = "update " + TABLE_NAME + " set `last_report_at` = ? where job_id = ? and task_id = ? and status = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, LocalDateTimeUtils.formatYMDHMS(TimeUtils.currentLocalDateTime()));
+            ps.setString(2, jobId);
+            ps.setString(3, taskId);
+            ps.setInt(4, TaskStatus.EXECUTING.status);
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.report error jobId={} taskId={}", jobId, taskId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean success(Task task) {
+        String sql = "update " + TABLE_NAME + " set `status` = ?, end_at = ?, `result` = ?, context = ? where job_id = ? and task_id = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, TaskStatus.SUCCEED.status);
+            ps.setString(2, LocalDateTimeUtils.formatYMDHMS(TimeUtils.currentLocalDateTime()));
+            ps.setString(3, task.getResult());
+            ps.setString(4, task.getContext().toString());
+            ps.setString(5, task.getJobId());
+            ps.setString(6, task.getId());
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.success error task={} ", task, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean fail(Task task) {
+        String sql = "update " + TABLE_NAME + " set `status` = ?, start_at = ?, end_at = ?, error_msg = ?, error_stack_trace = ? where job_id = ? and task_id = ?";
+        try (Connection conn = connectionFactory.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 0;
+            String curTimeStr = LocalDateTimeUtils.formatYMDHMS(TimeUtils.currentLocalDateTime());
+            ps.setInt(++i, TaskStatus.FAILED.status);
+            ps.setString(++i, task.getStartAt() == null ? curTimeStr : LocalDateTimeUtils.formatYMDHMS(task.getStartAt()));
+            ps.setString(++i, curTimeStr);
+            ps.setString(++i, task.getErrorMsg());
+            ps.setString(++i, task.getErrorStackTrace());
+            ps.setString(++i, task.getJobId());
+            ps.setString(++i, task.getId());
+            return ps.executeUpdate() > 0;
+        } catch (Exception e) {
+            log.error("H2TaskRepository.fail error task={} ", task, e);
+            return false;
+        }
+    }
+
+    private Task convert(ResultSet rs) throws SQLException, MalformedURLException {
+        String workerId = rs.getString("worker_id");
+        String workerAddress = rs.getString("worker_address");
+        Worker worker = null;
+        if (StringUtils.isNotBlank(workerId) && StringUtils.isNotBlank(workerAddress)) {
+            worker = new Worker(workerId, new URL(workerAddress));
+        }
+
+        String triggerAtStr = rs.getString("trigger_at");
+        String startAtStr = rs.getString("start_at");
+        String endAtStr = rs.getString("end_at");
+
+        return Task.builder()
+                .id(rs.getString("task_id"))
+                .jobId(rs.getString("job_id"))
+                .executorName(rs.getString("executor_name"))
+                .type(TaskType.parse(rs.getInt("type")))
+                .status(TaskStatus.parse(rs.getInt("status")))
+                .worker(worker)
+                .triggerAt(StringUtils.isBlank(triggerAtStr) ? null : LocalDateTimeUtils.parseYMDHMS(triggerAtStr))
+                .startAt(StringUtils.isBlank(startAtStr) ? null : LocalDateTimeUtils.parseYMDHMS(startAtStr))
+                .endAt(StringUtils.isBlank(endAtStr) ? null : LocalDateTimeUtils.parseYMDHMS(endAtStr))
+                .dispatchFailTimes(rs.getInt("dispatch_fail_times"))
+                .context(new Attributes(rs.getString("context")))
+                .jobAttributes(new Attributes(rs.getString("job_attributes")))
+                .taskAttributes(rs.getString("task_attributes"))
+                .result(rs.getString("result"))
+                .errorMsg(rs.getString("error_msg"))
+                .errorStackTrace(rs.getString("error_stack_trace"))
+                .lastReportAt(LocalDateTimeUtils.parseYMDHMS(rs.getString("last_report_at")))
+                .build();
+    }
+
+}
@@ -0,0 +1,907 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.agent.core.TaskFactory;
+import org.limbo.flowjob.agent.core.Worker;
+import org.limbo.flowjob.agent.core.entity.Task;
+import org.limbo.flowjob.api.constants.TaskStatus;
+import org.limbo.flowjob.api.constants.TaskType;
+import org.limbo.flowjob.api.param.console.TaskQueryParam;
+import org.limbo.flowjob.common.utils.attribute.Attributes;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于内存的任务存储，任务状态保存在以基本类型为字段的对象中，状态变更不需要连接数据库和格式化时间。
+ * 指定目录时，变更会追加写入 {@link TaskLog}，并定期生成快照，重启时通过快照和日志恢复。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+public class MemoryTaskRepository implements TaskRepository, Closeable {
+
+    private static final byte OP_SAVE = 1;
+
+    private static final byte OP_DELETE_JOB = 2;
+
+    private static final byte OP_DISPATCH_FAIL = 3;
+
+    private static final byte OP_EXECUTING = 4;
+
+    private static final byte OP_REPORT = 5;
+
+    private static final byte OP_SUCCESS = 6;
+
+    private static final byte OP_FAIL = 7;
+
+    /**
+     * 时间为空
+     */
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final long DEFAULT_REPORT_AT = toMillis(TaskFactory.DEFAULT_REPORT_TIME);
+
+    /**
+     * 日志刷盘间隔
+     */
+    private static final long FLUSH_MILLIS = 1000;
+
+    /**
+     * 按 taskId、jobId 排序，jobId 为 null 的视为同 taskId 中最大的，用于查询 taskId 之后的任务
+     */
+    private static final Comparator<TaskEntry> ORDER = (a, b) -> {
+        int c = a.taskId.compareTo(b.taskId);
+        if (c != 0) {
+            return c;
+        }
+        if (a.jobId == null) {
+            return b.jobId == null ? 0 : 1;
+        }
+        return b.jobId == null ? -1 : a.jobId.compareTo(b.jobId);
+    };
+
+    /**
+     * jobId -> taskId -> 任务
+     */
+    private final Map<String, ConcurrentNavigableMap<String, TaskEntry>> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * 调度中的任务
+     */
+    private final NavigableSet<TaskEntry> scheduling = new ConcurrentSkipListSet<>(ORDER);
+
+    /**
+     * 执行中的任务
+     */
+    private final NavigableSet<TaskEntry> executing = new ConcurrentSkipListSet<>(ORDER);
+
+    /**
+     * 保证变更写入内存和日志的顺序一致
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    /**
+     * 为 null 则只保存在内存中
+     */
+    private final TaskLog taskLog;
+
+    private final Duration snapshotInterval;
+
+    private Timer timer;
+
+    /**
+     * 只保存在内存中，agent 重启后任务丢失
+     */
+    public MemoryTaskRepository() {
+        this(null, null);
+    }
+
+    /**
+     * @param dir              日志和快照目录，为空则只保存在内存中
+     * @param snapshotInterval 快照间隔
+     */
+    public MemoryTaskRepository(String dir, Duration snapshotInterval) {
+        this.taskLog = StringUtils.isBlank(dir) ? null : new TaskLog(new File(dir));
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * 从快照和日志中恢复任务，并开始定期刷盘和快照
+     */
+    public synchronized void init() {
+        if (taskLog == null || timer != null) {
+            return;
+        }
+        taskLog.open(this::replay);
+
+        timer = new Timer("MemoryTaskRepository", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    taskLog.flush();
+                } catch (Exception e) {
+                    log.error("[MemoryTaskRepository] flush error", e);
+                }
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS);
+        long period = snapshotInterval.toMillis();
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    snapshot();
+                } catch (Exception e) {
+                    log.error("[MemoryTaskRepository] snapshot error", e);
+                }
+            }
+        }, period, period);
+    }
+
+    /**
+     * 生成快照，快照期间的变更写入新的日志
+     */
+    public void snapshot() throws IOException {
+        if (taskLog == null) {
+            return;
+        }
+        long gen;
+        List<byte[]> records = new ArrayList<>();
+        lock.lock();
+        try {
+            gen = taskLog.rotate();
+            if (gen < 0) {
+                return;
+            }
+            for (Map<String, TaskEntry> tasks : jobs.values()) {
+                for (TaskEntry entry : tasks.values()) {
+                    records.add(encodeSave(entry));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        taskLog.snapshot(gen, records);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        if (taskLog != null) {
+            lock.lock();
+            try {
+                taskLog.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Task getById(String jobId, String taskId) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.toTask();
+        }
+    }
+
+    @Override
+    public Set<String> getExistTaskIds(String jobId, Collection<String> taskIds) {
+        if (StringUtils.isBlank(jobId) || CollectionUtils.isEmpty(taskIds)) {
+            return Collections.emptySet();
+        }
+        Map<String, TaskEntry> tasks = jobs.get(jobId);
+        if (tasks == null) {
+            return Collections.emptySet();
+        }
+        Set<String> existTaskIds = new HashSet<>();
+        for (String taskId : taskIds) {
+            if (tasks.containsKey(taskId)) {
+                existTaskIds.add(taskId);
+            }
+        }
+        return existTaskIds;
+    }
+
+    @Override
+    public boolean deleteByJobId(String jobId) {
+        lock.lock();
+        try {
+            if (!applyDeleteJob(jobId)) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_DELETE_JOB);
+            writeString(jobId);
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getUnScheduled(LocalDateTime triggerAt, String startId, Integer limit) {
+        long triggerAtMillis = toMillis(triggerAt);
+        List<Task> tasks = new ArrayList<>();
+        for (TaskEntry entry : scheduling.tailSet(TaskEntry.probe(startId), false)) {
+            synchronized (entry) {
+                if (entry.status == TaskStatus.SCHEDULING.status && entry.lastReportAt == DEFAULT_REPORT_AT
+                        && entry.triggerAt != NONE && entry.triggerAt < triggerAtMillis) {
+                    tasks.add(entry.toTask());
+                }
+            }
+            if (tasks.size() >= limit) {
+                break;
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public List<Task> getByLastReportBetween(LocalDateTime reportTimeStart, LocalDateTime reportTimeEnd, TaskStatus status, String taskId, Integer limit) {
+        long start = toMillis(reportTimeStart);
+        long end = toMillis(reportTimeEnd);
+
+        NavigableSet<TaskEntry> source;
+        if (status == TaskStatus.SCHEDULING) {
+            source = scheduling;
+        } else if (status == TaskStatus.EXECUTING) {
+            source = executing;
+        } else {
+            source = new TreeSet<>(ORDER);
+            for (Map<String, TaskEntry> tasks : jobs.values()) {
+                source.addAll(tasks.values());
+            }
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        for (TaskEntry entry : source.tailSet(TaskEntry.probe(taskId), false)) {
+            synchronized (entry) {
+                if (entry.status == status.status && entry.lastReportAt >= start && entry.lastReportAt <= end) {
+                    tasks.add(entry.toTask());
+                }
+            }
+            if (tasks.size() >= limit) {
+                break;
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public List<Task> all(String jobId) {
+        List<Task> tasks = new ArrayList<>();
+        if (StringUtils.isNotBlank(jobId)) {
+            Map<String, TaskEntry> jobTasks = jobs.get(jobId);
+            if (jobTasks != null) {
+                addAll(tasks, jobTasks.values(), 0, Integer.MAX_VALUE);
+            }
+        } else {
+            for (Map<String, TaskEntry> jobTasks : jobs.values()) {
+                addAll(tasks, jobTasks.values(), 0, Integer.MAX_VALUE);
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public List<Task> queryPage(TaskQueryParam param) {
+        Map<String, TaskEntry> jobTasks = jobs.get(param.getJobInstanceId());
+        if (jobTasks == null) {
+            return Collections.emptyList();
+        }
+        List<Task> tasks = new ArrayList<>();
+        addAll(tasks, jobTasks.values(), param.getOffset(), param.getSize());
+        return tasks;
+    }
+
+    @Override
+    public long queryCount(TaskQueryParam param) {
+        Map<String, TaskEntry> jobTasks = jobs.get(param.getJobInstanceId());
+        return jobTasks == null ? 0L : jobTasks.size();
+    }
+
+    @Override
+    public Map<String, String> getTaskResults(String jobId, TaskType type, String startId, Integer limit) {
+        ConcurrentNavigableMap<String, TaskEntry> jobTasks = jobs.get(jobId);
+        if (jobTasks == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        for (TaskEntry entry : jobTasks.tailMap(startId == null ? "" : startId, false).values()) {
+            synchronized (entry) {
+                if (entry.type == type.type) {
+                    results.put(entry.taskId, entry.result);
+                }
+            }
+            if (results.size() >= limit) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean batchSave(Collection<Task> tasks) {
+        if (CollectionUtils.isEmpty(tasks)) {
+            return true;
+        }
+        List<TaskEntry> entries = new ArrayList<>(tasks.size());
+        Set<String> keys = new HashSet<>();
+        for (Task task : tasks) {
+            if (!keys.add(task.getJobId() + "/" + task.getId())) {
+                return false;
+            }
+            entries.add(TaskEntry.of(task));
+        }
+
+        lock.lock();
+        try {
+            for (TaskEntry entry : entries) {
+                if (entry(entry.jobId, entry.taskId) != null) {
+                    return false;
+                }
+            }
+            for (TaskEntry entry : entries) {
+                applySave(entry);
+                if (taskLog != null) {
+                    taskLog.append(encodeSave(entry));
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean dispatchFail(String jobId, String taskId) {
+        lock.lock();
+        try {
+            if (!applyDispatchFail(jobId, taskId)) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_DISPATCH_FAIL);
+            writeString(jobId);
+            writeString(taskId);
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean executing(String jobId, String taskId, String workerId, String workerAddress) {
+        long now = currentMillis();
+        lock.lock();
+        try {
+            if (!applyExecuting(jobId, taskId, workerId, workerAddress, now)) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_EXECUTING);
+            writeString(jobId);
+            writeString(taskId);
+            writeString(workerId);
+            writeString(workerAddress);
+            out.writeLong(now);
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean report(String jobId, String taskId) {
+        long now = currentMillis();
+        lock.lock();
+        try {
+            if (!applyReport(jobId, taskId, now)) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_REPORT);
+            writeString(jobId);
+            writeString(taskId);
+            out.writeLong(now);
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean success(Task task) {
+        long now = currentMillis();
+        String context = task.getContext() == null ? null : task.getContext().toString();
+        lock.lock();
+        try {
+            if (!applySuccess(task.getJobId(), task.getId(), now, task.getResult(), context)) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_SUCCESS);
+            writeString(task.getJobId());
+            writeString(task.getId());
+            out.writeLong(now);
+            writeString(task.getResult());
+            writeString(context);
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean fail(Task task) {
+        long now = currentMillis();
+        long startAt = task.getStartAt() == null ? now : toMillis(task.getStartAt());
+        lock.lock();
+        try {
+            if (!applyFail(task.getJobId(), task.getId(), startAt, now, task.getErrorMsg(), task.getErrorStackTrace())) {
+                return false;
+            }
+            bytes.reset();
+            out.writeByte(OP_FAIL);
+            writeString(task.getJobId());
+            writeString(task.getId());
+            out.writeLong(startAt);
+            out.writeLong(now);
+            writeString(task.getErrorMsg());
+            writeString(task.getErrorStackTrace());
+            append();
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ------------------------ 变更，由接口和日志重放共用
+
+    private void applySave(TaskEntry entry) {
+        TaskEntry prev = jobs.computeIfAbsent(entry.jobId, k -> new ConcurrentSkipListMap<>()).put(entry.taskId, entry);
+        if (prev != null) {
+            scheduling.remove(prev);
+            executing.remove(prev);
+        }
+        index(entry, TaskStatus.UNKNOWN.status, entry.status);
+    }
+
+    private boolean applyDeleteJob(String jobId) {
+        Map<String, TaskEntry> tasks = jobs.remove(jobId);
+        if (tasks == null) {
+            return false;
+        }
+        for (TaskEntry entry : tasks.values()) {
+            scheduling.remove(entry);
+            executing.remove(entry);
+        }
+        return !tasks.isEmpty();
+    }
+
+    private boolean applyDispatchFail(String jobId, String taskId) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            entry.dispatchFailTimes++;
+        }
+        return true;
+    }
+
+    private boolean applyExecuting(String jobId, String taskId, String workerId, String workerAddress, long startAt) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            updateStatus(entry, TaskStatus.EXECUTING);
+            entry.workerId = workerId;
+            entry.workerAddress = workerAddress;
+            entry.startAt = startAt;
+        }
+        return true;
+    }
+
+    private boolean applyReport(String jobId, String taskId, long reportAt) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.status != TaskStatus.EXECUTING.status) {
+                return false;
+            }
+            entry.lastReportAt = reportAt;
+        }
+        return true;
+    }
+
+    private boolean applySuccess(String jobId, String taskId, long endAt, String result, String context) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            updateStatus(entry, TaskStatus.SUCCEED);
+            entry.endAt = endAt;
+            entry.result = result;
+            entry.context = context;
+        }
+        return true;
+    }
+
+    private boolean applyFail(String jobId, String taskId, long startAt, long endAt, String errorMsg, String errorStackTrace) {
+        TaskEntry entry = entry(jobId, taskId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            updateStatus(entry, TaskStatus.FAILED);
+            entry.startAt = startAt;
+            entry.endAt = endAt;
+            entry.errorMsg = errorMsg;
+            entry.errorStackTrace = errorStackTrace;
+        }
+        return true;
+    }
+
+    private void updateStatus(TaskEntry entry, TaskStatus status) {
+        int prev = entry.status;
+        entry.status = status.status;
+        index(entry, prev, entry.status);
+    }
+
+    private void index(TaskEntry entry, int prev, int current) {
+        if (prev == current) {
+            return;
+        }
+        if (prev == TaskStatus.SCHEDULING.status) {
+            scheduling.remove(entry);
+        } else if (prev == TaskStatus.EXECUTING.status) {
+            executing.remove(entry);
+        }
+        if (current == TaskStatus.SCHEDULING.status) {
+            scheduling.add(entry);
+        } else if (current == TaskStatus.EXECUTING.status) {
+            executing.add(entry);
+        }
+    }
+
+    private TaskEntry entry(String jobId, String taskId) {
+        if (jobId == null || taskId == null) {
+            return null;
+        }
+        Map<String, TaskEntry> tasks = jobs.get(jobId);
+        return tasks == null ? null : tasks.get(taskId);
+    }
+
+    private void addAll(List<Task> tasks, Collection<TaskEntry> entries, int offset, int size) {
+        int idx = 0;
+        for (TaskEntry entry : entries) {
+            if (tasks.size() >= size) {
+                break;
+            }
+            if (idx++ < offset) {
+                continue;
+            }
+            synchronized (entry) {
+                tasks.add(entry.toTask());
+            }
+        }
+    }
+
+    // ------------------------ 日志
+
+    private void append() {
+        if (taskLog != null) {
+            taskLog.append(bytes.toByteArray());
+        }
+    }
+
+    private byte[] encodeSave(TaskEntry entry) {
+        try {
+            bytes.reset();
+            out.writeByte(OP_SAVE);
+            synchronized (entry) {
+                writeString(entry.jobId);
+                writeString(entry.taskId);
+                writeString(entry.executorName);
+                out.writeInt(entry.type);
+                out.writeInt(entry.status);
+                writeString(entry.workerId);
+                writeString(entry.workerAddress);
+                out.writeLong(entry.triggerAt);
+                out.writeLong(entry.startAt);
+                out.writeLong(entry.endAt);
+                out.writeLong(entry.lastReportAt);
+                out.writeInt(entry.dispatchFailTimes);
+                writeString(entry.context);
+                writeString(entry.jobAttributes);
+                writeString(entry.taskAttributes);
+                writeString(entry.result);
+                writeString(entry.errorMsg);
+                writeString(entry.errorStackTrace);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void replay(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte op = in.readByte();
+            switch (op) {
+                case OP_SAVE:
+                    TaskEntry entry = new TaskEntry(readString(in), readString(in));
+                    entry.executorName = readString(in);
+                    entry.type = in.readInt();
+                    entry.status = in.readInt();
+                    entry.workerId = readString(in);
+                    entry.workerAddress = readString(in);
+                    entry.triggerAt = in.readLong();
+                    entry.startAt = in.readLong();
+                    entry.endAt = in.readLong();
+                    entry.lastReportAt = in.readLong();
+                    entry.dispatchFailTimes = in.readInt();
+                    entry.context = readString(in);
+                    entry.jobAttributes = readString(in);
+                    entry.taskAttributes = readString(in);
+                    entry.result = readString(in);
+                    entry.errorMsg = readString(in);
+                    entry.errorStackTrace = readString(in);
+                    applySave(entry);
+                    break;
+                case OP_DELETE_JOB:
+                    applyDeleteJob(readString(in));
+                    break;
+                case OP_DISPATCH_FAIL:
+                    applyDispatchFail(readString(in), readString(in));
+                    break;
+                case OP_EXECUTING:
+                    applyExecuting(readString(in), readString(in), readString(in), readString(in), in.readLong());
+                    break;
+                case OP_REPORT:
+                    applyReport(readString(in), readString(in), in.readLong());
+                    break;
+                case OP_SUCCESS:
+                    applySuccess(readString(in), readString(in), in.readLong(), readString(in), readString(in));
+                    break;
+                case OP_FAIL:
+                    applyFail(readString(in), readString(in), in.readLong(), in.readLong(), readString(in), readString(in));
+                    break;
+                default:
+                    log.warn("[MemoryTaskRepository] unknown op {}", op);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static long currentMillis() {
+        return TimeUtils.currentInstant().toEpochMilli();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? NONE : TimeUtils.toInstant(time).toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long millis) {
+        return millis == NONE ? null : TimeUtils.toLocalDateTime(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * 内存中的任务，时间均为毫秒时间戳，枚举保存为 int
+     */
+    private static class TaskEntry {
+
+        private final String jobId;
+
+        private final String taskId;
+
+        private String executorName;
+
+        private int type;
+
+        private int status;
+
+        private String workerId;
+
+        private String workerAddress;
+
+        private long triggerAt = NONE;
+
+        private long startAt = NONE;
+
+        private long endAt = NONE;
+
+        private long lastReportAt = DEFAULT_REPORT_AT;
+
+        private int dispatchFailTimes;
+
+        private String context;
+
+        private String jobAttributes;
+
+        private String taskAttributes;
+
+        private String result;
+
+        private String errorMsg;
+
+        private String errorStackTrace;
+
+        TaskEntry(String jobId, String taskId) {
+            this.jobId = jobId;
+            this.taskId = taskId;
+        }
+
+        /**
+         * 用于在索引中定位 taskId 之后的任务
+         */
+        static TaskEntry probe(String taskId) {
+            return new TaskEntry(null, taskId == null ? "" : taskId);
+        }
+
+        static TaskEntry of(Task task) {
+            TaskEntry entry = new TaskEntry(task.getJobId(), task.getId());
+            entry.executorName = task.getExecutorName();
+            entry.type = task.getType().type;
+            entry.status = task.getStatus().status;
+            if (task.getWorker() != null) {
+                entry.workerId = task.getWorker().getId();
+                entry.workerAddress = task.getWorker().address();
+            }
+            entry.triggerAt = toMillis(task.getTriggerAt());
+            entry.startAt = toMillis(task.getStartAt());
+            entry.endAt = toMillis(task.getEndAt());
+            entry.lastReportAt = task.getLastReportAt() == null ? DEFAULT_REPORT_AT : toMillis(task.getLastReportAt());
+            entry.dispatchFailTimes = task.getDispatchFailTimes();
+            entry.context = task.getContext() == null ? null : task.getContext().toString();
+            entry.jobAttributes = task.getJobAttributes() == null ? null : task.getJobAttributes().toString();
+            entry.taskAttributes = task.getTaskAttributes();
+            entry.result = task.getResult();
+            entry.errorMsg = task.getErrorMsg();
+            entry.errorStackTrace = task.getErrorStackTrace();
+            return entry;
+        }
+
+        /**
+         * 需持有 entry 的锁
+         */
+        Task toTask() {
+            Worker worker = null;
+            if (StringUtils.isNotBlank(workerId) && StringUtils.isNotBlank(workerAddress)) {
+                try {
+                    worker = new Worker(workerId, new URL(workerAddress));
+                } catch (MalformedURLException e) {
+                    log.warn("[MemoryTaskRepository] illegal worker address {} task={}", workerAddress, taskId);
+                }
+            }
+            return Task.builder()
+                    .id(taskId)
+                    .jobId(jobId)
+                    .executorName(executorName)
+                    .type(TaskType.parse(type))
+                    .status(TaskStatus.parse(status))
+                    .worker(worker)
+                    .triggerAt(toLocalDateTime(triggerAt))
+                    .startAt(toLocalDateTime(startAt))
+                    .endAt(toLocalDateTime(endAt))
+                    .dispatchFailTimes(dispatchFailTimes)
+                    .context(new Attributes(context))
+                    .jobAttributes(new Attributes(jobAttributes))
+                    .taskAttributes(taskAttributes)
+                    .result(result)
+                    .errorMsg(errorMsg)
+                    .errorStackTrace(errorStackTrace)
+                    .lastReportAt(toLocalDateTime(lastReportAt))
+                    .build();
+        }
+
+    }
+
+}
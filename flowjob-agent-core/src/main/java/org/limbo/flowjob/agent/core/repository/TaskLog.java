@@ -0,0 +1,307 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * {@link MemoryTaskRepository} 的持久化文件，由追加写的操作日志和快照组成，只负责记录的读写，不关心记录内容。
+ * <ul>
+ *     <li>log-{gen}.log：操作日志，通过内存映射追加写入</li>
+ *     <li>snapshot-{gen}.dat：log-{gen}.log 开始写入时的全量状态</li>
+ * </ul>
+ * 记录格式为 [长度][CRC32][内容]，长度最后写入，长度为 0 或校验失败视为日志结尾。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+class TaskLog implements Closeable {
+
+    private static final String LOG_PREFIX = "log-";
+
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 每次映射的文件区域大小
+     */
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final File dir;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * 当前写入的日志代数
+     */
+    private long generation = -1;
+
+    /**
+     * 当前日志中的记录数
+     */
+    private long records;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * buffer 在文件中的起始位置
+     */
+    private long regionStart;
+
+    TaskLog(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 加载最新的快照及其之后的日志，并开启新的日志用于写入
+     */
+    synchronized void open(Consumer<byte[]> consumer) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Can't create task log dir " + dir.getAbsolutePath());
+        }
+
+        long snapshotGen = -1;
+        long maxGen = -1;
+        List<Long> logGens = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long gen = parseGeneration(file.getName(), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                snapshotGen = Math.max(snapshotGen, gen);
+                maxGen = Math.max(maxGen, gen);
+
+                gen = parseGeneration(file.getName(), LOG_PREFIX, LOG_SUFFIX);
+                if (gen >= 0) {
+                    logGens.add(gen);
+                }
+                maxGen = Math.max(maxGen, gen);
+            }
+        }
+        logGens.sort(Long::compareTo);
+
+        long count = 0;
+        if (snapshotGen >= 0) {
+            count += read(file(SNAPSHOT_PREFIX, snapshotGen, SNAPSHOT_SUFFIX), consumer);
+        }
+        for (Long gen : logGens) {
+            if (gen >= snapshotGen) {
+                count += read(file(LOG_PREFIX, gen, LOG_SUFFIX), consumer);
+            }
+        }
+        log.info("[TaskLog] replay {} records from {}", count, dir.getAbsolutePath());
+
+        openLog(maxGen + 1);
+    }
+
+    /**
+     * 追加一条记录
+     */
+    synchronized void append(byte[] data) {
+        int size = HEADER_SIZE + data.length;
+        try {
+            if (buffer.remaining() < size + 4) {
+                // 剩余空间不足，向后映射新的区域，保留 4 字节作为结尾标记
+                regionStart += buffer.position();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, size + 4));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        crc.reset();
+        crc.update(data, 0, data.length);
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(data);
+        buffer.putInt(start, data.length);
+        records++;
+    }
+
+    /**
+     * 将已写入的日志刷到磁盘
+     */
+    synchronized void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 切换到新的日志文件
+     *
+     * @return 新日志的代数，当前日志没有任何记录时不切换，返回 -1
+     */
+    synchronized long rotate() {
+        if (records == 0) {
+            return -1;
+        }
+        closeLog();
+        openLog(generation + 1);
+        return generation;
+    }
+
+    /**
+     * 写入快照，成功后删除更早的快照和日志
+     *
+     * @param gen     快照代数，内容为 log-{gen}.log 开始写入时的状态
+     * @param records 快照记录
+     */
+    void snapshot(long gen, Iterable<byte[]> records) throws IOException {
+        File tmp = new File(dir, SNAPSHOT_PREFIX + gen + ".tmp");
+        CRC32 snapshotCrc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            for (byte[] data : records) {
+                snapshotCrc.reset();
+                snapshotCrc.update(data, 0, data.length);
+                out.writeInt(data.length);
+                out.writeInt((int) snapshotCrc.getValue());
+                out.write(data);
+            }
+            out.writeInt(0);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file(SNAPSHOT_PREFIX, gen, SNAPSHOT_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            long fileGen = Math.max(
+                    parseGeneration(file.getName(), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX),
+                    parseGeneration(file.getName(), LOG_PREFIX, LOG_SUFFIX)
+            );
+            if (fileGen >= 0 && fileGen < gen && !file.delete()) {
+                log.warn("[TaskLog] delete expired file fail {}", file.getAbsolutePath());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeLog();
+    }
+
+    private void openLog(long gen) {
+        try {
+            File file = file(LOG_PREFIX, gen, LOG_SUFFIX);
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.regionStart = 0;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+            this.generation = gen;
+            this.records = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void closeLog() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            // 截掉映射时预留的空间
+            channel.truncate(regionStart + buffer.position());
+            channel.close();
+        } catch (IOException e) {
+            log.error("[TaskLog] close log fail generation={}", generation, e);
+        }
+        channel = null;
+        buffer = null;
+    }
+
+    private long read(File file, Consumer<byte[]> consumer) {
+        long count = 0;
+        CRC32 readCrc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                int checksum = in.readInt();
+                byte[] data = new byte[length];
+                in.readFully(data);
+
+                readCrc.reset();
+                readCrc.update(data, 0, length);
+                if ((int) readCrc.getValue() != checksum) {
+                    log.warn("[TaskLog] broken record in {} after {} records", file.getName(), count);
+                    break;
+                }
+                consumer.accept(data);
+                count++;
+            }
+        } catch (EOFException ignore) {
+            // 日志未正常关闭时可能被截断
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    private File file(String prefix, long gen, String suffix) {
+        return new File(dir, prefix + gen + suffix);
+    }
+
+    private static long parseGeneration(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
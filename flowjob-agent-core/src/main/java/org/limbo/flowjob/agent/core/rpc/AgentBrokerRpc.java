@@ -23,7 +23,9 @@ import org.limbo.flowjob.agent.core.Worker;
 import org.limbo.flowjob.agent.core.entity.Job;
 import org.limbo.flowjob.common.exception.RegisterFailException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Devil
@@ -57,6 +59,13 @@ public interface AgentBrokerRpc {
      */
     boolean reportJob(String jobInstanceId);
 
+    /**
+     * 批量反馈执行中的任务
+     *
+     * @param jobInstanceIds 执行中的 job 实例 id
+     */
+    void batchReportJob(Collection<String> jobInstanceIds);
+
     /**
      * 向 Broker 反馈任务执行成功
      *
@@ -79,4 +88,11 @@ public interface AgentBrokerRpc {
      */
     List<Worker> availableWorkers(String jobId, boolean filterExecutor, boolean filterTag, boolean filterResource, boolean lbSelect);
 
+    /**
+     * 批量上报任务下发次数
+     *
+     * @param dispatched workerId -> 下发次数
+     */
+    void reportDispatched(Map<String, Integer> dispatched);
+
 }
@@ -35,7 +35,9 @@ import org.limbo.flowjob.api.dto.broker.AgentRegisterDTO;
 import org.limbo.flowjob.api.dto.broker.AvailableWorkerDTO;
 import org.limbo.flowjob.api.dto.broker.BrokerTopologyDTO;
 import org.limbo.flowjob.api.param.broker.AgentRegisterParam;
+import org.limbo.flowjob.api.param.broker.JobBatchReportParam;
 import org.limbo.flowjob.api.param.broker.JobFeedbackParam;
+import org.limbo.flowjob.api.param.broker.WorkerDispatchedParam;
 import org.limbo.flowjob.common.exception.RegisterFailException;
 import org.limbo.flowjob.common.exception.RpcException;
 import org.limbo.flowjob.common.http.OKHttpRpc;
@@ -46,8 +48,10 @@ import org.limbo.flowjob.common.lb.LBStrategy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -186,6 +190,15 @@ public class OkHttpAgentBrokerRpc extends OKHttpRpc<BaseLBServer> implements Age
         return response.getData();
     }
 
+    @Override
+    public void batchReportJob(Collection<String> jobInstanceIds) {
+        JobBatchReportParam param = new JobBatchReportParam(new ArrayList<>(jobInstanceIds));
+        ResponseDTO<Integer> response = executePost(BASE_URL + API_JOB_BATCH_REPORT, param, new TypeReference<ResponseDTO<Integer>>() {
+        });
+
+        checkResponse(response, API_JOB_BATCH_REPORT);
+    }
+
     @Override
     public boolean feedbackJobSucceed(Job job) {
         JobFeedbackParam param = new JobFeedbackParam();
@@ -237,6 +250,15 @@ public class OkHttpAgentBrokerRpc extends OKHttpRpc<BaseLBServer> implements Age
         return workers;
     }
 
+    @Override
+    public void reportDispatched(Map<String, Integer> dispatched) {
+        WorkerDispatchedParam param = new WorkerDispatchedParam(dispatched);
+        ResponseDTO<Boolean> response = executePost(BASE_URL + API_WORKER_DISPATCHED, param, new TypeReference<ResponseDTO<Boolean>>() {
+        });
+
+        checkResponse(response, API_WORKER_DISPATCHED);
+    }
+
     public Worker toWorker(AvailableWorkerDTO workerDTO) throws MalformedURLException {
         if (workerDTO == null) {
             return null;
@@ -21,12 +21,17 @@ package org.limbo.flowjob.agent.core.service;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.agent.core.entity.Task;
 import org.limbo.flowjob.agent.core.repository.TaskRepository;
+import org.limbo.flowjob.api.constants.TaskType;
 import org.limbo.flowjob.api.dto.PageDTO;
+import org.limbo.flowjob.api.dto.agent.TaskResultDTO;
 import org.limbo.flowjob.api.dto.console.TaskDTO;
+import org.limbo.flowjob.api.param.agent.TaskResultQueryParam;
 import org.limbo.flowjob.api.param.console.TaskQueryParam;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -36,6 +41,10 @@ import java.util.stream.Collectors;
 @Slf4j
 public class TaskService {
 
+    private static final int DEFAULT_RESULT_LIMIT = 1000;
+
+    private static final int MAX_RESULT_LIMIT = 10000;
+
     private final TaskRepository taskRepository;
 
     public TaskService(TaskRepository taskRepository) {
@@ -73,4 +82,18 @@ public class TaskService {
         return page;
     }
 
+    /**
+     * 分页查询 map 任务结果，供 reduce 任务拉取
+     */
+    public List<TaskResultDTO> results(TaskResultQueryParam param) {
+        int limit = param.getLimit() == null || param.getLimit() <= 0 ? DEFAULT_RESULT_LIMIT : Math.min(param.getLimit(), MAX_RESULT_LIMIT);
+        String startTaskId = param.getStartTaskId() == null ? "" : param.getStartTaskId();
+        Map<String, String> results = taskRepository.getTaskResults(param.getJobId(), TaskType.MAP, startTaskId, limit);
+        List<TaskResultDTO> dtos = new ArrayList<>(results.size());
+        for (Map.Entry<String, String> entry : results.entrySet()) {
+            dtos.add(new TaskResultDTO(entry.getKey(), entry.getValue()));
+        }
+        return dtos;
+    }
+
 }
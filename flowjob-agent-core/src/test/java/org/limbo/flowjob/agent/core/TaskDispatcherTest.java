@@ -0,0 +1,149 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.agent.core.entity.Task;
+import org.limbo.flowjob.agent.core.repository.JobRepository;
+import org.limbo.flowjob.agent.core.repository.MemoryTaskRepository;
+import org.limbo.flowjob.agent.core.rpc.AgentWorkerRpc;
+import org.limbo.flowjob.api.constants.TaskStatus;
+import org.limbo.flowjob.api.constants.TaskType;
+import org.limbo.flowjob.common.constants.AgentConstant;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class TaskDispatcherTest {
+
+    @Test
+    void testWindowHalving() throws Exception {
+        AtomicInteger mode = new AtomicInteger();
+        TaskDispatcher dispatcher = dispatcher(task -> {
+            switch (mode.get()) {
+                case 0:
+                    return true;
+                case 1:
+                    return false;
+                default:
+                    throw new IllegalStateException("dispatch timeout");
+            }
+        });
+
+        // worker 拒绝时窗口减半
+        mode.set(1);
+        dispatchAndWait(dispatcher, Collections.singletonList(task("t1")));
+        Assertions.assertEquals(AgentConstant.DISPATCH_WINDOW_INIT / 2, dispatcher.getWindow());
+
+        // 下发超时同样减半
+        mode.set(2);
+        dispatchAndWait(dispatcher, Collections.singletonList(task("t2")));
+        Assertions.assertEquals(AgentConstant.DISPATCH_WINDOW_INIT / 4, dispatcher.getWindow());
+
+        // 下发成功时加一
+        mode.set(0);
+        dispatchAndWait(dispatcher, Collections.singletonList(task("t3")));
+        Assertions.assertEquals(AgentConstant.DISPATCH_WINDOW_INIT / 4 + 1, dispatcher.getWindow());
+
+        // 持续拒绝窗口最小为 1
+        mode.set(1);
+        for (int i = 0; i < 5; i++) {
+            dispatchAndWait(dispatcher, Collections.singletonList(task("r" + i)));
+        }
+        Assertions.assertEquals(1, dispatcher.getWindow());
+    }
+
+    @Test
+    void testDispatchInWindow() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        Map<String, AtomicInteger> dispatched = new ConcurrentHashMap<>();
+        TaskDispatcher dispatcher = dispatcher(task -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+            dispatched.computeIfAbsent(task.getId(), id -> new AtomicInteger()).incrementAndGet();
+            return true;
+        });
+
+        int size = 5000;
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add(task("t" + i));
+        }
+        dispatchAndWait(dispatcher, tasks);
+
+        // 每个 task 都只下发一次
+        Assertions.assertEquals(size, dispatched.size());
+        Assertions.assertTrue(dispatched.values().stream().allMatch(c -> c.get() == 1));
+        // 同时下发的数量不超过窗口上限，全部成功后窗口增大
+        Assertions.assertTrue(maxConcurrent.get() <= AgentConstant.DISPATCH_WINDOW_MAX, "max concurrent " + maxConcurrent);
+        Assertions.assertTrue(dispatcher.getWindow() > AgentConstant.DISPATCH_WINDOW_INIT);
+        Assertions.assertTrue(dispatcher.getWindow() <= AgentConstant.DISPATCH_WINDOW_MAX);
+        Assertions.assertEquals(0, dispatcher.getInflight());
+    }
+
+    private TaskDispatcher dispatcher(AgentWorkerRpc rpc) {
+        JobRepository jobRepository = new JobRepository();
+        return new TaskDispatcher(jobRepository, new MemoryTaskRepository(), rpc, new JobWorkerSelector(jobRepository, null));
+    }
+
+    private void dispatchAndWait(TaskDispatcher dispatcher, List<Task> tasks) throws InterruptedException {
+        dispatcher.dispatchAsync(tasks);
+        waitIdle(dispatcher);
+    }
+
+    private void waitIdle(TaskDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getInflight() > 0) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "dispatch not finished");
+            Thread.sleep(10);
+        }
+    }
+
+    private Task task(String taskId) throws MalformedURLException {
+        return Task.builder()
+                .jobId("j1")
+                .id(taskId)
+                .executorName("hello")
+                .type(TaskType.MAP)
+                .status(TaskStatus.SCHEDULING)
+                .worker(new Worker("w0", new URL("http://127.0.0.1:9876")))
+                .triggerAt(TimeUtils.currentLocalDateTime())
+                .lastReportAt(TaskFactory.DEFAULT_REPORT_TIME)
+                .build();
+    }
+
+}
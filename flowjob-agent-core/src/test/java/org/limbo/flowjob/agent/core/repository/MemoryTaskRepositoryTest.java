@@ -0,0 +1,193 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.limbo.flowjob.agent.core.TaskFactory;
+import org.limbo.flowjob.agent.core.Worker;
+import org.limbo.flowjob.agent.core.entity.Task;
+import org.limbo.flowjob.api.constants.TaskStatus;
+import org.limbo.flowjob.api.constants.TaskType;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class MemoryTaskRepositoryTest {
+
+    @TempDir
+    File dir;
+
+    private final List<MemoryTaskRepository> repositories = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        repositories.forEach(MemoryTaskRepository::close);
+    }
+
+    @Test
+    void testStatus() throws MalformedURLException {
+        MemoryTaskRepository repository = new MemoryTaskRepository();
+        Assertions.assertTrue(repository.batchSave(Arrays.asList(task("j1", "t1", TaskType.MAP), task("j1", "t2", TaskType.MAP))));
+        // 已存在的任务不重复保存
+        Assertions.assertFalse(repository.batchSave(Collections.singletonList(task("j1", "t2", TaskType.MAP))));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("t1", "t2")), repository.getExistTaskIds("j1", Arrays.asList("t1", "t2", "t3")));
+
+        LocalDateTime future = TimeUtils.currentLocalDateTime().plusMinutes(1);
+        Assertions.assertEquals(Arrays.asList("t1", "t2"), ids(repository.getUnScheduled(future, "", 10)));
+        Assertions.assertEquals(Collections.singletonList("t2"), ids(repository.getUnScheduled(future, "t1", 10)));
+
+        // 未执行的任务不接受上报
+        Assertions.assertFalse(repository.report("j1", "t1"));
+        Assertions.assertTrue(repository.executing("j1", "t1", "w1", "http://127.0.0.1:9877"));
+        Assertions.assertTrue(repository.report("j1", "t1"));
+        Assertions.assertEquals(Collections.singletonList("t2"), ids(repository.getUnScheduled(future, "", 10)));
+        Assertions.assertEquals(Collections.singletonList("t1"), ids(repository.getByLastReportBetween(
+                future.minusMinutes(2), future, TaskStatus.EXECUTING, "", 10)));
+
+        Task t1 = repository.getById("j1", "t1");
+        Assertions.assertEquals(TaskStatus.EXECUTING, t1.getStatus());
+        Assertions.assertEquals("w1", t1.getWorker().getId());
+        Assertions.assertNotNull(t1.getStartAt());
+
+        Assertions.assertTrue(repository.success(Task.builder().jobId("j1").id("t1").result("r1").build()));
+        Assertions.assertTrue(repository.getByLastReportBetween(future.minusMinutes(2), future, TaskStatus.EXECUTING, "", 10).isEmpty());
+        Map<String, String> results = repository.getTaskResults("j1", TaskType.MAP, "", 10);
+        Assertions.assertEquals("r1", results.get("t1"));
+
+        Assertions.assertTrue(repository.deleteByJobId("j1"));
+        Assertions.assertNull(repository.getById("j1", "t1"));
+        Assertions.assertTrue(repository.getUnScheduled(future, "", 10).isEmpty());
+    }
+
+    @Test
+    void testReplay() throws MalformedURLException {
+        MemoryTaskRepository repository = persistent();
+        operate(repository);
+        repository.close();
+
+        assertRecovered(persistent());
+    }
+
+    @Test
+    void testCrashRecovery() throws MalformedURLException {
+        MemoryTaskRepository crashed = persistent();
+        operate(crashed);
+
+        // 未关闭 已写入映射区域的变更在进程退出后仍会落到文件
+        assertRecovered(persistent());
+    }
+
+    @Test
+    void testSnapshot() throws IOException {
+        MemoryTaskRepository repository = persistent();
+        repository.batchSave(Arrays.asList(task("j1", "t1", TaskType.MAP), task("j1", "t2", TaskType.MAP)));
+        repository.executing("j1", "t1", "w1", "http://127.0.0.1:9877");
+        repository.snapshot();
+        // 快照之后的变更写入新的日志
+        repository.success(Task.builder().jobId("j1").id("t1").result("r1").build());
+        repository.batchSave(Collections.singletonList(task("j1", "t3", TaskType.REDUCE)));
+        repository.close();
+
+        Assertions.assertTrue(new File(dir, "snapshot-1.dat").exists());
+        Assertions.assertFalse(new File(dir, "log-0.log").exists());
+
+        MemoryTaskRepository recovered = persistent();
+        Assertions.assertEquals(TaskStatus.SUCCEED, recovered.getById("j1", "t1").getStatus());
+        Assertions.assertEquals("r1", recovered.getById("j1", "t1").getResult());
+        Assertions.assertEquals(TaskStatus.SCHEDULING, recovered.getById("j1", "t2").getStatus());
+        Assertions.assertEquals(TaskType.REDUCE, recovered.getById("j1", "t3").getType());
+    }
+
+    private void operate(MemoryTaskRepository repository) throws MalformedURLException {
+        repository.batchSave(Arrays.asList(task("j1", "t1", TaskType.MAP), task("j1", "t2", TaskType.MAP), task("j1", "t3", TaskType.MAP)));
+        repository.batchSave(Collections.singletonList(task("j2", "t1", TaskType.STANDALONE)));
+        repository.executing("j1", "t1", "w1", "http://127.0.0.1:9877");
+        repository.report("j1", "t1");
+        repository.success(Task.builder().jobId("j1").id("t1").result("r1").context(null).build());
+        repository.executing("j1", "t2", "w2", "http://127.0.0.1:9878");
+        repository.fail(Task.builder().jobId("j1").id("t2").errorMsg("boom").build());
+        repository.dispatchFail("j1", "t3");
+        repository.deleteByJobId("j2");
+    }
+
+    private void assertRecovered(MemoryTaskRepository recovered) {
+        Task t1 = recovered.getById("j1", "t1");
+        Assertions.assertEquals(TaskStatus.SUCCEED, t1.getStatus());
+        Assertions.assertEquals("r1", t1.getResult());
+        Assertions.assertEquals("w1", t1.getWorker().getId());
+
+        Task t2 = recovered.getById("j1", "t2");
+        Assertions.assertEquals(TaskStatus.FAILED, t2.getStatus());
+        Assertions.assertEquals("boom", t2.getErrorMsg());
+        Assertions.assertNotNull(t2.getEndAt());
+
+        Task t3 = recovered.getById("j1", "t3");
+        Assertions.assertEquals(TaskStatus.SCHEDULING, t3.getStatus());
+        Assertions.assertEquals(1, t3.getDispatchFailTimes());
+
+        Assertions.assertNull(recovered.getById("j2", "t1"));
+        // 状态索引同样恢复
+        LocalDateTime future = TimeUtils.currentLocalDateTime().plusMinutes(1);
+        Assertions.assertEquals(Collections.singletonList("t3"), ids(recovered.getUnScheduled(future, "", 10)));
+    }
+
+    private MemoryTaskRepository persistent() {
+        MemoryTaskRepository repository = new MemoryTaskRepository(dir.getAbsolutePath(), Duration.ofHours(1));
+        repository.init();
+        repositories.add(repository);
+        return repository;
+    }
+
+    private Task task(String jobId, String taskId, TaskType type) throws MalformedURLException {
+        return Task.builder()
+                .jobId(jobId)
+                .id(taskId)
+                .executorName("hello")
+                .type(type)
+                .status(TaskStatus.SCHEDULING)
+                .worker(new Worker("w0", new URL("http://127.0.0.1:9876")))
+                .triggerAt(TimeUtils.currentLocalDateTime().minusSeconds(1))
+                .lastReportAt(TaskFactory.DEFAULT_REPORT_TIME)
+                .build();
+    }
+
+    private List<String> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).collect(Collectors.toList());
+    }
+
+}
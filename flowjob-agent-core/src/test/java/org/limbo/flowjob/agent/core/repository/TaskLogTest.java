@@ -0,0 +1,171 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.agent.core.repository;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class TaskLogTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testReplay() {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> Assertions.fail("empty dir"));
+        append(taskLog, "a", "b", "c");
+        taskLog.close();
+
+        // 关闭时截掉预留空间
+        Assertions.assertEquals(3 * (8 + 1), new File(dir, "log-0.log").length());
+        Assertions.assertEquals(Arrays.asList("a", "b", "c"), replay());
+    }
+
+    @Test
+    void testCrashRecovery() {
+        TaskLog crashed = new TaskLog(dir);
+        crashed.open(data -> {
+        });
+        append(crashed, "a", "b");
+        crashed.flush();
+
+        // 未正常关闭 文件中保留映射的空白区域 以长度为 0 作为结尾
+        Assertions.assertEquals(Arrays.asList("a", "b"), replay());
+        crashed.close();
+    }
+
+    @Test
+    void testCorruptedTail() throws IOException {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> {
+        });
+        append(taskLog, "first", "second", "third");
+        taskLog.close();
+
+        // 最后一条记录内容损坏 校验失败后忽略
+        File file = new File(dir, "log-0.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            raf.write('X');
+        }
+        Assertions.assertEquals(Arrays.asList("first", "second"), replay());
+    }
+
+    @Test
+    void testTruncatedTail() throws IOException {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> {
+        });
+        append(taskLog, "first", "second");
+        taskLog.close();
+
+        // 最后一条记录只写入了一部分
+        File file = new File(dir, "log-0.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        Assertions.assertEquals(Arrays.asList("first"), replay());
+    }
+
+    @Test
+    void testSnapshotRotation() throws IOException {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> {
+        });
+        // 没有记录时不切换
+        Assertions.assertEquals(-1, taskLog.rotate());
+
+        append(taskLog, "a", "b");
+        long gen = taskLog.rotate();
+        Assertions.assertEquals(1, gen);
+        append(taskLog, "c");
+        taskLog.snapshot(gen, Arrays.asList(bytes("a"), bytes("b2")));
+        taskLog.close();
+
+        // 快照之前的日志被删除
+        Assertions.assertFalse(new File(dir, "log-0.log").exists());
+        Assertions.assertTrue(new File(dir, "snapshot-1.dat").exists());
+        Assertions.assertEquals(Arrays.asList("a", "b2", "c"), replay());
+    }
+
+    @Test
+    void testCrashBeforeSnapshot() {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> {
+        });
+        append(taskLog, "a");
+        taskLog.rotate();
+        append(taskLog, "b");
+        taskLog.close();
+
+        // 切换日志后快照未完成 按顺序重放所有日志
+        Assertions.assertEquals(Arrays.asList("a", "b"), replay());
+    }
+
+    @Test
+    void testReopenAppendsNewGeneration() {
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> {
+        });
+        append(taskLog, "a");
+        taskLog.close();
+
+        TaskLog reopened = new TaskLog(dir);
+        reopened.open(data -> {
+        });
+        append(reopened, "b");
+        reopened.close();
+
+        Assertions.assertTrue(new File(dir, "log-1.log").exists());
+        Assertions.assertEquals(Arrays.asList("a", "b"), replay());
+    }
+
+    private List<String> replay() {
+        List<String> records = new ArrayList<>();
+        TaskLog taskLog = new TaskLog(dir);
+        taskLog.open(data -> records.add(new String(data, StandardCharsets.UTF_8)));
+        taskLog.close();
+        return records;
+    }
+
+    private void append(TaskLog taskLog, String... records) {
+        for (String record : records) {
+            taskLog.append(bytes(record));
+        }
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
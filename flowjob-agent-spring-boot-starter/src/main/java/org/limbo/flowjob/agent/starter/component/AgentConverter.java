@@ -19,6 +19,7 @@
 package org.limbo.flowjob.agent.starter.component;
 
 import lombok.Setter;
+import org.limbo.flowjob.agent.core.JobReporter;
 import org.limbo.flowjob.agent.core.TaskDispatcher;
 import org.limbo.flowjob.agent.core.entity.Job;
 import org.limbo.flowjob.agent.core.repository.JobRepository;
@@ -49,6 +50,9 @@ public class AgentConverter {
     @Setter
     private AgentBrokerRpc brokerRpc;
 
+    @Setter
+    private JobReporter jobReporter;
+
     public Job convert(JobSubmitParam param) {
         return Job.builder()
                 .id(param.getJobInstanceId())
@@ -62,6 +66,7 @@ public class AgentConverter {
                 .taskRepository(taskRepository)
                 .jobRepository(jobRepository)
                 .brokerRpc(brokerRpc)
+                .jobReporter(jobReporter)
                 .build();
     }
 }
@@ -25,9 +25,13 @@ import org.limbo.flowjob.agent.core.AgentResources;
 import org.limbo.flowjob.agent.core.BaseAgentResources;
 import org.limbo.flowjob.agent.core.BaseScheduleAgent;
 import org.limbo.flowjob.agent.core.FlowjobConnectionFactory;
+import org.limbo.flowjob.agent.core.JobReporter;
+import org.limbo.flowjob.agent.core.JobWorkerSelector;
 import org.limbo.flowjob.agent.core.ScheduleAgent;
 import org.limbo.flowjob.agent.core.TaskDispatcher;
+import org.limbo.flowjob.agent.core.repository.H2TaskRepository;
 import org.limbo.flowjob.agent.core.repository.JobRepository;
+import org.limbo.flowjob.agent.core.repository.MemoryTaskRepository;
 import org.limbo.flowjob.agent.core.repository.TaskRepository;
 import org.limbo.flowjob.agent.core.rpc.AgentBrokerRpc;
 import org.limbo.flowjob.agent.core.rpc.AgentWorkerRpc;
@@ -89,10 +93,10 @@ public class FlowJobAgentAutoConfiguration {
     @Bean("fjaHttpScheduleAgent")
     public ScheduleAgent httpAgent(URL fjaAgentServerUrl, AgentResources resources, AgentBrokerRpc rpc,
                                    JobRepository jobRepository, TaskService taskService, TaskRepository taskRepository,
-                                   TaskDispatcher taskDispatcher, AgentConverter agentConverter) {
+                                   TaskDispatcher taskDispatcher, JobReporter jobReporter, AgentConverter agentConverter) {
         HttpHandlerProcessor httpHandlerProcessor = new HttpHandlerProcessor();
         EmbedRpcServer embedRpcServer = new EmbedHttpRpcServer(fjaAgentServerUrl.getPort(), httpHandlerProcessor);
-        ScheduleAgent agent = new BaseScheduleAgent(fjaAgentServerUrl, resources, rpc, jobRepository, taskRepository, taskDispatcher, embedRpcServer);
+        ScheduleAgent agent = new BaseScheduleAgent(fjaAgentServerUrl, resources, rpc, jobRepository, taskRepository, taskDispatcher, jobReporter, embedRpcServer);
         httpHandlerProcessor.setAgent(agent);
         httpHandlerProcessor.setTaskService(taskService);
         httpHandlerProcessor.setJobRepository(jobRepository);
@@ -105,12 +109,14 @@ public class FlowJobAgentAutoConfiguration {
     public AgentConverter agentConverter(TaskDispatcher taskDispatcher,
                                          TaskRepository taskRepository,
                                          JobRepository jobRepository,
-                                         AgentBrokerRpc brokerRpc) {
+                                         AgentBrokerRpc brokerRpc,
+                                         JobReporter jobReporter) {
         AgentConverter agentConverter = new AgentConverter();
         agentConverter.setTaskRepository(taskRepository);
         agentConverter.setTaskDispatcher(taskDispatcher);
         agentConverter.setJobRepository(jobRepository);
         agentConverter.setBrokerRpc(brokerRpc);
+        agentConverter.setJobReporter(jobReporter);
         return agentConverter;
     }
 
@@ -144,7 +150,14 @@ public class FlowJobAgentAutoConfiguration {
 
     @Bean("fjaTaskRepository")
     public TaskRepository taskRepository(FlowjobConnectionFactory flowjobConnectionFactory) throws SQLException {
-        TaskRepository taskRepository = new TaskRepository(flowjobConnectionFactory);
+        AgentProperties.TaskStoreConfig taskStore = properties.getTaskStore();
+        if (taskStore.getType() == AgentProperties.TaskStoreType.MEMORY) {
+            MemoryTaskRepository taskRepository = new MemoryTaskRepository(taskStore.getDir(), taskStore.getSnapshotInterval());
+            taskRepository.init();
+            return taskRepository;
+        }
+
+        H2TaskRepository taskRepository = new H2TaskRepository(flowjobConnectionFactory);
         // 先放这里了后面考虑生命周期
         if (properties.getDatasource().isInitTable()) {
             taskRepository.initTable();
@@ -165,9 +178,21 @@ public class FlowJobAgentAutoConfiguration {
         return new JobRepository();
     }
 
+    @Bean("fjaJobReporter")
+    public JobReporter jobReporter(JobRepository jobRepository, AgentBrokerRpc brokerRpc) {
+        return new JobReporter(jobRepository, brokerRpc);
+    }
+
+    @Bean("fjaJobWorkerSelector")
+    public JobWorkerSelector jobWorkerSelector(JobRepository jobRepository, AgentBrokerRpc brokerRpc) {
+        JobWorkerSelector jobWorkerSelector = new JobWorkerSelector(jobRepository, brokerRpc);
+        jobWorkerSelector.start();
+        return jobWorkerSelector;
+    }
+
     @Bean("fjaTaskDispatcher")
-    public TaskDispatcher taskDispatcher(JobRepository jobRepository, TaskRepository taskRepository, AgentBrokerRpc brokerRpc, AgentWorkerRpc workerRpc) {
-        return new TaskDispatcher(jobRepository, taskRepository, brokerRpc, workerRpc);
+    public TaskDispatcher taskDispatcher(JobRepository jobRepository, TaskRepository taskRepository, AgentWorkerRpc workerRpc, JobWorkerSelector jobWorkerSelector) {
+        return new TaskDispatcher(jobRepository, taskRepository, workerRpc, jobWorkerSelector);
     }
 
     @Bean("fjaAgentWorkerRpc")
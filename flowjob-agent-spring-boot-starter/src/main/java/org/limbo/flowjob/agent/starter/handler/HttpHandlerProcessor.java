@@ -21,6 +21,7 @@ package org.limbo.flowjob.agent.starter.handler;
 import io.netty.handler.codec.http.HttpMethod;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.agent.core.ScheduleAgent;
 import org.limbo.flowjob.agent.core.entity.Job;
@@ -32,17 +33,22 @@ import org.limbo.flowjob.api.constants.JobType;
 import org.limbo.flowjob.api.constants.LoadBalanceType;
 import org.limbo.flowjob.api.dto.PageDTO;
 import org.limbo.flowjob.api.dto.ResponseDTO;
+import org.limbo.flowjob.api.dto.agent.TaskResultDTO;
 import org.limbo.flowjob.api.dto.console.TaskDTO;
+import org.limbo.flowjob.api.param.agent.JobBatchSubmitParam;
 import org.limbo.flowjob.api.param.agent.JobSubmitParam;
 import org.limbo.flowjob.api.param.agent.SubTaskCreateParam;
 import org.limbo.flowjob.api.param.agent.TaskFeedbackParam;
 import org.limbo.flowjob.api.param.agent.TaskReportParam;
+import org.limbo.flowjob.api.param.agent.TaskResultQueryParam;
 import org.limbo.flowjob.api.param.console.TaskQueryParam;
 import org.limbo.flowjob.common.rpc.IHttpHandlerProcessor;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 import org.limbo.flowjob.common.utils.json.JacksonUtils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.limbo.flowjob.api.constants.rpc.HttpAgentApi.*;
 
@@ -87,6 +93,9 @@ public class HttpHandlerProcessor implements IHttpHandlerProcessor {
                 case API_JOB_RECEIVE:
                     JobSubmitParam jobSubmitParam = JacksonUtils.parseObject(data, JobSubmitParam.class);
                     return ResponseDTO.<Boolean>builder().ok(receive(jobSubmitParam)).build();
+                case API_JOB_BATCH_RECEIVE:
+                    JobBatchSubmitParam jobBatchSubmitParam = JacksonUtils.parseObject(data, JobBatchSubmitParam.class);
+                    return ResponseDTO.<Map<String, Boolean>>builder().ok(batchReceive(jobBatchSubmitParam)).build();
                 case API_TASK_EXECUTING:
                     TaskReportParam taskReportExecutingParam = JacksonUtils.parseObject(data, TaskReportParam.class);
                     return ResponseDTO.<Boolean>builder().ok(reportTaskExecuting(taskReportExecutingParam)).build();
@@ -103,6 +112,9 @@ public class HttpHandlerProcessor implements IHttpHandlerProcessor {
                 case API_TASK_PAGE:
                     TaskQueryParam taskQueryParam = JacksonUtils.parseObject(data, TaskQueryParam.class);
                     return ResponseDTO.<PageDTO<TaskDTO>>builder().ok(taskService.page(taskQueryParam)).build();
+                case API_TASK_RESULT_PAGE:
+                    TaskResultQueryParam taskResultQueryParam = JacksonUtils.parseObject(data, TaskResultQueryParam.class);
+                    return ResponseDTO.<List<TaskResultDTO>>builder().ok(taskService.results(taskResultQueryParam)).build();
                 case "/api/v1/backdoor/job/list":
                     return ResponseDTO.<List<Job>>builder().ok(jobRepository.findAll()).build();
             }
@@ -133,6 +145,20 @@ public class HttpHandlerProcessor implements IHttpHandlerProcessor {
         }
     }
 
+    /**
+     * 批量接收 job，逐个处理，队列满等原因拒绝的 job 返回 false，由 broker 重新下发
+     */
+    public Map<String, Boolean> batchReceive(JobBatchSubmitParam param) {
+        Map<String, Boolean> result = new HashMap<>();
+        if (param == null || CollectionUtils.isEmpty(param.getJobs())) {
+            return result;
+        }
+        for (JobSubmitParam jobSubmitParam : param.getJobs()) {
+            result.put(jobSubmitParam.getJobInstanceId(), receive(jobSubmitParam));
+        }
+        return result;
+    }
+
     public boolean reportTaskExecuting(TaskReportParam param) {
         if (log.isDebugEnabled()) {
             log.debug("report task param={}", param);
@@ -86,6 +86,11 @@ public class AgentProperties {
      */
     private DatasourceConfig datasource = new DatasourceConfig();
 
+    /**
+     * 任务存储配置
+     */
+    private TaskStoreConfig taskStore = new TaskStoreConfig();
+
     @Data
     public static class DatasourceConfig {
         private String url;
@@ -97,4 +102,31 @@ public class AgentProperties {
         private boolean initTable = true;
     }
 
+    @Data
+    public static class TaskStoreConfig {
+        /**
+         * 存储类型，默认使用 h2
+         */
+        private TaskStoreType type = TaskStoreType.H2;
+        /**
+         * memory 类型下日志和快照的目录，为空则只保存在内存中，agent 重启后任务丢失
+         */
+        private String dir;
+        /**
+         * memory 类型下生成快照的间隔
+         */
+        private Duration snapshotInterval = Duration.ofMinutes(1);
+    }
+
+    public enum TaskStoreType {
+        /**
+         * 使用 datasource 配置的 h2 数据库
+         */
+        H2,
+        /**
+         * 内存 + 追加写日志
+         */
+        MEMORY,
+    }
+
 }
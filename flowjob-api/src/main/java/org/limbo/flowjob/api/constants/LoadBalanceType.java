@@ -31,6 +31,7 @@ import lombok.Getter;
  *     <li>{@linkplain LoadBalanceType#LEAST_FREQUENTLY_USED 最不经常使用}</li>
  *     <li>{@linkplain LoadBalanceType#LEAST_RECENTLY_USED 最近最少使用}</li>
  *     <li>{@linkplain LoadBalanceType#CONSISTENT_HASH 一致性hash}</li>
+ *     <li>{@linkplain LoadBalanceType#RESOURCE_WEIGHTED 资源加权}</li>
  * </ul>
  *
  * @author Brozen
@@ -69,6 +70,11 @@ public enum LoadBalanceType {
      */
     CONSISTENT_HASH(6, "一致性hash"),
 
+    /**
+     * 资源加权。根据worker剩余队列和可用CPU、内存能容纳的作业数量加权随机下发。
+     */
+    RESOURCE_WEIGHTED(7, "资源加权"),
+
     ;
 
     @JsonValue
@@ -25,6 +25,12 @@ package org.limbo.flowjob.api.constants.rpc;
 public interface HttpAgentApi {
 
     String API_JOB_RECEIVE = "/api/v1/rpc/job";
+
+    /**
+     * 批量接收 job，返回每个 job 是否被接收
+     */
+    String API_JOB_BATCH_RECEIVE = "/api/v1/rpc/job/batch";
+
     /**
      * 任务接收
      */
@@ -38,4 +44,9 @@ public interface HttpAgentApi {
 
     String API_TASK_PAGE = "/api/v1/rpc/task/page";
 
+    /**
+     * reduce 任务分页拉取 map 任务结果
+     */
+    String API_TASK_RESULT_PAGE = "/api/v1/rpc/task/result/page";
+
 }
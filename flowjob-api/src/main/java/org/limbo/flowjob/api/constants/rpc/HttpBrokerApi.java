@@ -38,6 +38,8 @@ public interface HttpBrokerApi {
     String API_WORKER_HEARTBEAT = "/api/v1/rpc/worker/heartbeat";
 
     String API_WORKER_PLAN_SCHEDULE = "/api/v1/rpc/worker/plan/schedule";
+
+    String API_WORKER_DISPATCHED = "/api/v1/rpc/worker/dispatched";
     // ============== worker ==================
 
     // ============== instance ==================
@@ -53,6 +55,8 @@ public interface HttpBrokerApi {
 
     String API_JOB_REPORT = "/api/v1/rpc/job/report";
 
+    String API_JOB_BATCH_REPORT = "/api/v1/rpc/job/batch-report";
+
     String API_JOB_FEEDBACK = "/api/v1/rpc/job/feedback";
 
     String API_JOB_FILTER_WORKER = "/api/v1/rpc/job/worker";
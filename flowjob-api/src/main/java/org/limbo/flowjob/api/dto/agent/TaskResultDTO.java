@@ -0,0 +1,48 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.api.dto.agent;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(title = "map 任务结果")
+public class TaskResultDTO {
+
+    /**
+     * taskId
+     */
+    @Schema(description = "taskId")
+    private String taskId;
+
+    /**
+     * 执行结果
+     */
+    @Schema(description = "执行结果")
+    private String result;
+
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.api.param.agent;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * reduce 任务分页拉取 map 结果
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(title = "任务结果查询参数")
+public class TaskResultQueryParam implements Serializable {
+
+    private static final long serialVersionUID = -3121409283507155302L;
+
+    /**
+     * jobId
+     */
+    @Schema(description = "jobId")
+    private String jobId;
+
+    /**
+     * 从此 taskId 之后开始查询，为空则从头开始
+     */
+    @Schema(description = "从此 taskId 之后开始查询")
+    @Builder.Default
+    private String startTaskId = "";
+
+    /**
+     * 查询数量
+     */
+    @Schema(description = "查询数量")
+    @Builder.Default
+    private Integer limit = 1000;
+
+}
@@ -22,19 +22,23 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.meta.lock.DistributedLock;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
 import org.limbo.flowjob.broker.dao.entity.LockEntity;
 import org.limbo.flowjob.broker.dao.repositories.LockEntityRepo;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
-import javax.transaction.Transactional;
-import java.sql.SQLException;
-import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 基于数据库的租约锁。加锁为一条 upsert 语句，每次重新获得锁 token 递增，持有期间后台续期。
+ *
  * @author Devil
  * @since 2024/1/14
  */
@@ -42,6 +46,13 @@ import java.time.temporal.ChronoUnit;
 @Component
 public class DatabaseDistributedLock implements DistributedLock {
 
+    /**
+     * 当前节点持有的锁
+     */
+    private final Map<String, Holding> holdings = new ConcurrentHashMap<>();
+
+    private final Timer renewTimer = new Timer("DistributedLockRenewer", true);
+
     @Setter(onMethod_ = @Inject)
     private LockEntityRepo lockEntityRepo;
 
@@ -49,55 +60,105 @@ public class DatabaseDistributedLock implements DistributedLock {
     private Broker broker;
 
     @Override
-    @Transactional
     public boolean tryLock(String name, long expire) {
-
-        LockEntity lock = lockEntityRepo.findByName(name);
-
         String current = broker.getRpcBaseURL().toString();
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        try {
+            lockEntityRepo.acquire(name, current, now.plus(expire, ChronoUnit.MILLIS), now);
+        } catch (Exception e) {
+            log.warn("[DistributedLock] lock failed, name = {}.", name, e);
+            return false;
+        }
 
-        // 如果锁未过期且当前节点非加锁节点，加锁失败
-        if (lock != null && lock.getExpireAt().isBefore(TimeUtils.currentLocalDateTime()) && !lock.getOwner().equals(current)) {
+        LockEntity lock = lockEntityRepo.findByName(name);
+        if (lock == null || !current.equals(lock.getOwner()) || lock.getExpireAt().isBefore(now)) {
             return false;
         }
 
-        if (lock == null) {
-            lock = new LockEntity();
-            lock.setName(name);
-            lock.setOwner(current);
-            lock.setExpireAt(TimeUtils.currentLocalDateTime().plus(expire, ChronoUnit.MILLIS));
-            return dbLock(lock);
-        } else {
+        synchronized (holdings) {
+            Holding holding = holdings.get(name);
+            if (holding != null && holding.token == lock.getToken()) {
+                holding.count++;
+                return true;
+            }
+            if (holding != null) {
+                // 之前持有的锁已过期
+                holding.renewTask.cancel();
+            }
+            holding = new Holding(name, lock.getToken(), expire);
+            holdings.put(name, holding);
+            long period = Math.max(expire / 3, 100);
+            renewTimer.schedule(holding.renewTask, period, period);
+        }
+        return true;
+    }
 
-            // 如果锁未过期且当前节点非加锁节点，加锁失败
-            if (lock.getExpireAt().isBefore(TimeUtils.currentLocalDateTime()) && !lock.getOwner().equals(current)) {
+    @Override
+    public boolean unlock(String name) {
+        Holding holding;
+        synchronized (holdings) {
+            holding = holdings.get(name);
+            if (holding == null) {
                 return false;
             }
-
-            // 尝试加锁
-            lock.setName(name);
-            lock.setOwner(current);
-            lock.setExpireAt(TimeUtils.currentLocalDateTime().plus(expire, ChronoUnit.MILLIS));
-            return dbLock(lock);
+            if (--holding.count > 0) {
+                return true;
+            }
+            holdings.remove(name);
+            holding.renewTask.cancel();
         }
+        return lockEntityRepo.release(name, broker.getRpcBaseURL().toString(), holding.token, TimeUtils.currentLocalDateTime()) > 0;
     }
 
-    private boolean dbLock(LockEntity lock) {
-        try {
-            lockEntityRepo.saveAndFlush(lock);
-            return true;
-        } catch (DataIntegrityViolationException dive) {
-            // 数据重复
-            return false;
-        } catch (Exception e) {
-            log.warn("[DistributedLock] lock failed, name = {}.", lock.getName(), e);
-            return false;
+    @Override
+    public LockFence fence(String name) {
+        Holding holding = holdings.get(name);
+        return holding == null ? null : new LockFence(name, holding.token);
+    }
+
+    /**
+     * 续期失败说明锁已被其它节点获得，不再认为持有
+     */
+    private void lost(Holding holding) {
+        synchronized (holdings) {
+            if (holdings.get(holding.name) == holding) {
+                holdings.remove(holding.name);
+            }
+            holding.renewTask.cancel();
         }
+        log.warn("[DistributedLock] lock lost, name = {} token = {}.", holding.name, holding.token);
     }
 
-    @Override
-    @Transactional
-    public boolean unlock(String name) {
-        return lockEntityRepo.deleteByName(name) > 0;
+    private class Holding {
+
+        private final String name;
+
+        private final long token;
+
+        /**
+         * 重入次数
+         */
+        private int count = 1;
+
+        private final TimerTask renewTask;
+
+        private Holding(String name, long token, long expire) {
+            this.name = name;
+            this.token = token;
+            this.renewTask = new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        LocalDateTime now = TimeUtils.currentLocalDateTime();
+                        int renewed = lockEntityRepo.renew(name, broker.getRpcBaseURL().toString(), token, now.plus(expire, ChronoUnit.MILLIS), now);
+                        if (renewed <= 0) {
+                            lost(Holding.this);
+                        }
+                    } catch (Exception e) {
+                        log.warn("[DistributedLock] renew failed, name = {}.", name, e);
+                    }
+                }
+            };
+        }
     }
 }
@@ -18,55 +18,100 @@
 
 package org.limbo.flowjob.broker.application.component;
 
-import lombok.AllArgsConstructor;
-import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.api.constants.MsgConstants;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.meta.IDType;
+import org.limbo.flowjob.broker.core.meta.SnowflakeIDGenerator;
 import org.limbo.flowjob.broker.core.utils.Verifies;
 import org.limbo.flowjob.broker.dao.entity.IdEntity;
 import org.limbo.flowjob.broker.dao.repositories.IdEntityRepo;
+import org.limbo.flowjob.common.thread.NamedThreadFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * 双号段 ID 生成。当前号段消耗一定比例后异步加载下一个号段，当前号段用完时直接切换，号段内通过 AtomicLong 无锁分配。
+ * 号段步长根据消耗速度在数据库配置的步长基础上调整。
+ *
  * @author Devil
  * @since 2022/11/26
  */
 @Slf4j
 @Component
-public class IDGeneratorComponent implements IDGenerator {
+public class IDGeneratorComponent implements IDGenerator, InitializingBean {
+
+    /**
+     * 号段消耗超过该比例后预加载下一个号段
+     */
+    private static final double PRELOAD_RATIO = 0.1;
+
+    /**
+     * 两次加载间隔小于该值时步长翻倍
+     */
+    private static final long FAST_LOAD_MILLIS = Duration.ofMinutes(15).toMillis();
+
+    /**
+     * 两次加载间隔大于该值时步长减半
+     */
+    private static final long SLOW_LOAD_MILLIS = Duration.ofMinutes(30).toMillis();
 
-    private static final Map<IDType, ID> ID_MAP = new ConcurrentHashMap<>();
+    private static final long MAX_STEP = 1000000;
+
+    /**
+     * 加载号段的线程，不使用公共线程池，避免公共线程池中的线程等待号段时阻塞加载
+     */
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool(NamedThreadFactory.newInstance("IDSegmentLoader"));
 
     @Setter(onMethod_ = @Inject)
     private IdEntityRepo idEntityRepo;
 
-    @Override
-    public String generateId(IDType type) {
-        Long randomAutoId = gainRandomAutoId(type);
-        return String.valueOf(randomAutoId);
-    }
+    @Setter(onMethod_ = @Inject)
+    private BrokerProperties brokerProperties;
+
+    private IDGenerator snowflake;
 
-    private Long gainRandomAutoId(final IDType type) {
-        synchronized (type) {
-            ID id = ID_MAP.get(type);
-            if (id == null || !id.valid()) {
-                id = getNewId(type);
+    private final Map<IDType, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        BrokerConfig.IdConfig config = brokerProperties.getId();
+        if (config.getMode() == BrokerConfig.IdMode.SNOWFLAKE) {
+            // 多个 broker 使用相同的机器号会生成重复的 ID，不提供默认值
+            if (config.getWorkerId() == null) {
+                throw new IllegalStateException("flowjob.broker.id.worker-id must be set when id mode is " + BrokerConfig.IdMode.SNOWFLAKE);
             }
-            return id.getCurrentId().incrementAndGet();
+            snowflake = new SnowflakeIDGenerator(config.getWorkerId());
         }
     }
 
-    private ID getNewId(IDType type) {
+    @Override
+    public String generateId(IDType type) {
         Verifies.notNull(type, MsgConstants.UNKNOWN + " type: " + type);
+        if (snowflake != null) {
+            return snowflake.generateId(type);
+        }
+        SegmentBuffer buffer = buffers.computeIfAbsent(type, SegmentBuffer::new);
+        return String.valueOf(buffer.nextId());
+    }
 
+    /**
+     * 从数据库获取号段
+     */
+    private Segment loadSegment(IDType type, long lastStep, long lastLoadAt) {
         String typeName = type.name();
 
         int updateNum = 0; // 更新库存的条数
@@ -74,22 +119,27 @@ public class IDGeneratorComponent implements IDGenerator {
 
         long startId = 0;
         long endId = 0;
+        long step = 0;
 
         while (updateNum <= 0 && time < 10) {
-            // 加锁 获取 类型
+            if (time > 0) {
+                // 并发获取失败，稍等后重试
+                try {
+                    Thread.sleep(10L * time);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("gain id interrupted type:" + typeName, e);
+                }
+            }
+
             IdEntity idEntity = idEntityRepo.findById(typeName).orElse(null);
             if (idEntity == null) {
                 throw new IllegalStateException(MsgConstants.UNKNOWN + " ID Type of " + typeName);
             }
+            step = nextStep(idEntity.getStep(), lastStep, lastLoadAt);
             startId = idEntity.getCurrentId();
-            endId = idEntity.getCurrentId() + idEntity.getStep();
+            endId = idEntity.getCurrentId() + step;
             updateNum = idEntityRepo.casGainId(typeName, endId, startId);
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                log.error("thread sleep fail", e);
-                Thread.currentThread().interrupt();
-            }
             time++;
         }
 
@@ -97,20 +147,134 @@ public class IDGeneratorComponent implements IDGenerator {
             throw new IllegalStateException("The system is busy, Try again later!!!");
         }
 
-        ID id = new ID(new AtomicLong(startId), endId);
-        ID_MAP.put(type, id);
-        return id;
+        if (log.isDebugEnabled()) {
+            log.debug("load id segment type:{} start:{} end:{} step:{}", typeName, startId, endId, step);
+        }
+        return new Segment(startId, endId, step);
+    }
+
+    /**
+     * 根据上次加载的间隔调整步长，不小于数据库配置的步长
+     */
+    private long nextStep(long baseStep, long lastStep, long lastLoadAt) {
+        if (lastStep <= 0 || lastLoadAt <= 0) {
+            return baseStep;
+        }
+        long elapsed = System.currentTimeMillis() - lastLoadAt;
+        long step = lastStep;
+        if (elapsed < FAST_LOAD_MILLIS) {
+            step = Math.min(lastStep * 2, MAX_STEP);
+        } else if (elapsed > SLOW_LOAD_MILLIS) {
+            step = lastStep / 2;
+        }
+        return Math.max(step, baseStep);
+    }
+
+    private class SegmentBuffer {
+
+        private final IDType type;
+
+        private volatile Segment current;
+
+        private volatile CompletableFuture<Segment> next;
+
+        private volatile long lastStep;
+
+        private volatile long lastLoadAt;
+
+        private SegmentBuffer(IDType type) {
+            this.type = type;
+        }
+
+        private long nextId() {
+            while (true) {
+                Segment segment = current;
+                if (segment != null) {
+                    long id = segment.next();
+                    if (id > 0) {
+                        if (next == null && segment.consumed() >= PRELOAD_RATIO) {
+                            preload();
+                        }
+                        return id;
+                    }
+                }
+                switchSegment(segment);
+            }
+        }
+
+        private synchronized void preload() {
+            if (next == null) {
+                next = CompletableFuture.supplyAsync(this::load, LOADER);
+            }
+        }
+
+        /**
+         * 当前号段用完后切换到预加载的号段，没有预加载则同步等待加载
+         */
+        private synchronized void switchSegment(Segment exhausted) {
+            if (current != exhausted) {
+                // 其它线程已经切换
+                return;
+            }
+            CompletableFuture<Segment> future = next;
+            next = null;
+            if (future == null) {
+                future = CompletableFuture.supplyAsync(this::load, LOADER);
+            }
+            try {
+                current = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("gain id interrupted type:" + type, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("gain id fail type:" + type, e.getCause());
+            }
+        }
+
+        private Segment load() {
+            Segment segment = loadSegment(type, lastStep, lastLoadAt);
+            lastStep = segment.step;
+            lastLoadAt = System.currentTimeMillis();
+            return segment;
+        }
     }
 
-    @Getter
-    @AllArgsConstructor
-    private static class ID {
-        private AtomicLong currentId;
+    /**
+     * 号段 (start, end]
+     */
+    private static class Segment {
+
+        private final AtomicLong currentId;
 
-        private Long endId;
+        private final long startId;
+
+        private final long endId;
+
+        private final long step;
+
+        private Segment(long startId, long endId, long step) {
+            this.currentId = new AtomicLong(startId);
+            this.startId = startId;
+            this.endId = endId;
+            this.step = step;
+        }
+
+        /**
+         * @return 分配的 ID，号段用完返回 -1
+         */
+        private long next() {
+            if (currentId.get() >= endId) {
+                return -1;
+            }
+            long id = currentId.incrementAndGet();
+            return id <= endId ? id : -1;
+        }
 
-        public boolean valid() {
-            return currentId.get() < endId;
+        /**
+         * 已消耗的比例
+         */
+        private double consumed() {
+            return (double) (currentId.get() - startId) / (endId - startId);
         }
     }
 
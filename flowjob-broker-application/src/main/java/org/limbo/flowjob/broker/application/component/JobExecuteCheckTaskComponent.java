@@ -20,6 +20,7 @@ package org.limbo.flowjob.broker.application.component;
 
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.processor.InstanceProcessorFactory;
 import org.limbo.flowjob.broker.core.meta.task.JobExecuteCheckTask;
@@ -38,8 +39,9 @@ public class JobExecuteCheckTaskComponent extends JobExecuteCheckTask implements
     public JobExecuteCheckTaskComponent(JobInstanceRepository jobInstanceRepository,
                                         @Lazy Broker broker,
                                         NodeManger nodeManger,
-                                        InstanceProcessorFactory instanceProcessorFactory) {
-        super(jobInstanceRepository, broker, nodeManger, instanceProcessorFactory);
+                                        InstanceProcessorFactory instanceProcessorFactory,
+                                        JobDeadlines jobDeadlines) {
+        super(jobInstanceRepository, broker, nodeManger, instanceProcessorFactory, jobDeadlines);
     }
 
     @Override
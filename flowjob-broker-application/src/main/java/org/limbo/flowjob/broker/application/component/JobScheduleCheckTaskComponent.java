@@ -18,10 +18,11 @@
 
 package org.limbo.flowjob.broker.application.component;
 
-import org.limbo.flowjob.broker.core.agent.AgentRegistry;
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.processor.JobDispatcher;
 import org.limbo.flowjob.broker.core.meta.task.JobScheduleCheckTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.springframework.beans.factory.InitializingBean;
@@ -38,9 +39,10 @@ public class JobScheduleCheckTaskComponent extends JobScheduleCheckTask implemen
     public JobScheduleCheckTaskComponent(MetaTaskScheduler scheduler,
                                          @Lazy Broker broker,
                                          NodeManger nodeManger,
-                                         AgentRegistry agentRegistry,
+                                         JobDispatcher jobDispatcher,
+                                         JobDeadlines jobDeadlines,
                                          JobInstanceRepository jobInstanceRepository) {
-        super(scheduler, broker, nodeManger, agentRegistry, jobInstanceRepository);
+        super(scheduler, broker, nodeManger, jobDispatcher, jobDeadlines, jobInstanceRepository);
     }
 
     @Override
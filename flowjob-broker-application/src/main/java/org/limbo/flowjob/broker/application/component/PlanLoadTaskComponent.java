@@ -19,10 +19,13 @@
 package org.limbo.flowjob.broker.application.component;
 
 import org.limbo.flowjob.broker.core.cluster.Broker;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
 import org.limbo.flowjob.broker.core.meta.task.PlanLoadTask;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleGroupRegistry;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.annotation.Lazy;
@@ -37,10 +40,14 @@ public class PlanLoadTaskComponent extends PlanLoadTask implements InitializingB
 
     public PlanLoadTaskComponent(MetaTaskScheduler scheduler,
                                  PlanRepository planRepository,
+                                 PlanChangeRepository planChangeRepository,
                                  PlanInstanceProcessor processor,
+                                 PlanScheduleGroupRegistry groupRegistry,
                                  @Lazy Broker broker,
-                                 NodeManger nodeManger) {
-        super(scheduler, planRepository, processor, broker, nodeManger);
+                                 NodeManger nodeManger,
+                                 BrokerConfig config) {
+        super(scheduler, planRepository, planChangeRepository, processor, groupRegistry, broker, nodeManger,
+                config.getMetaTask().getPlanLoadPageSize(), config.getMetaTask().getPlanLoadParallelism());
     }
 
     @Override
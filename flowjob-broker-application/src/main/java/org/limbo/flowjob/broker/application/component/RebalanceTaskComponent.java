@@ -19,6 +19,8 @@
 package org.limbo.flowjob.broker.application.component;
 
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.cluster.SlotRepository;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.lock.DistributedLock;
@@ -36,8 +38,10 @@ public class RebalanceTaskComponent extends RebalanceTask implements Initializin
     public RebalanceTaskComponent(NodeManger nodeManger,
                                   DistributedLock lock,
                                   PlanRepository planRepository,
-                                  JobInstanceRepository jobInstanceRepository) {
-        super(nodeManger, lock, planRepository, jobInstanceRepository);
+                                  PlanChangeRepository planChangeRepository,
+                                  JobInstanceRepository jobInstanceRepository,
+                                  SlotRepository slotRepository) {
+        super(nodeManger, lock, planRepository, planChangeRepository, jobInstanceRepository, slotRepository);
     }
 
     @Override
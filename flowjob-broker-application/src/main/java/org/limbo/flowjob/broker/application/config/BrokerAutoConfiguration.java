@@ -29,17 +29,21 @@ import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.cluster.NodeRegistry;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.instance.DelayInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.instance.PlanInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.processor.DelayInstanceProcessor;
 import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
 import org.limbo.flowjob.broker.core.meta.processor.InstanceProcessorFactory;
+import org.limbo.flowjob.broker.core.meta.processor.JobDispatcher;
 import org.limbo.flowjob.broker.core.meta.task.PlanLoadTask;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleGroupRegistry;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
-import org.limbo.flowjob.broker.core.schedule.selector.SingletonWorkerStatisticsRepo;
+import org.limbo.flowjob.broker.core.schedule.selector.SlidingWindowWorkerStatisticsRepo;
 import org.limbo.flowjob.broker.core.schedule.selector.WorkerSelectorFactory;
 import org.limbo.flowjob.broker.core.schedule.selector.WorkerStatisticsRepository;
 import org.limbo.flowjob.broker.core.service.TransactionService;
@@ -61,7 +65,6 @@ import javax.inject.Inject;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Brozen
@@ -111,9 +114,10 @@ public class BrokerAutoConfiguration {
     /**
      * 元任务调度器 目前支持秒级任务
      */
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public MetaTaskScheduler metaTaskScheduler() {
-        return new MetaTaskScheduler(100L, TimeUnit.MILLISECONDS);
+        BrokerConfig.MetaTaskConfig config = brokerProperties.getMetaTask();
+        return new MetaTaskScheduler(config);
     }
 
     @Bean
@@ -127,7 +131,7 @@ public class BrokerAutoConfiguration {
     @Bean("fjWorkerStatisticsRepository")
     @ConditionalOnMissingBean(WorkerStatisticsRepository.class)
     public WorkerStatisticsRepository workerStatisticsRepository() {
-        return new SingletonWorkerStatisticsRepo();
+        return new SlidingWindowWorkerStatisticsRepo();
     }
 
     /**
@@ -141,13 +145,23 @@ public class BrokerAutoConfiguration {
         return factory;
     }
 
+    @Bean
+    public PlanScheduleGroupRegistry planScheduleGroupRegistry(MetaTaskScheduler scheduler, PlanInstanceProcessor processor) {
+        BrokerConfig.MetaTaskConfig config = brokerProperties.getMetaTask();
+        return new PlanScheduleGroupRegistry(scheduler, processor, config.isPlanGroupEnabled(), config.getPlanGroupFanOutBatchSize());
+    }
+
     @Bean
     public PlanLoadTask planLoadTask(MetaTaskScheduler scheduler,
                                      PlanRepository planRepository,
+                                     PlanChangeRepository planChangeRepository,
                                      PlanInstanceProcessor processor,
+                                     PlanScheduleGroupRegistry groupRegistry,
                                      @Lazy Broker broker,
                                      NodeManger nodeManger) {
-        return new PlanLoadTask(scheduler, planRepository, processor, broker, nodeManger);
+        BrokerConfig.MetaTaskConfig config = brokerProperties.getMetaTask();
+        return new PlanLoadTask(scheduler, planRepository, planChangeRepository, processor, groupRegistry, broker, nodeManger,
+                config.getPlanLoadPageSize(), config.getPlanLoadParallelism());
     }
 
     @Bean
@@ -157,27 +171,40 @@ public class BrokerAutoConfiguration {
         return new WorkerDomainService(workerRegistry, workerSelectorFactory, workerStatisticsRepository);
     }
 
+    @Bean
+    public JobDeadlines jobDeadlines() {
+        return new JobDeadlines();
+    }
+
+    @Bean
+    public JobDispatcher jobDispatcher(AgentRegistry agentRegistry, JobDeadlines jobDeadlines) {
+        BrokerConfig.JobDispatchConfig config = brokerProperties.getJobDispatch();
+        return new JobDispatcher(agentRegistry, jobDeadlines, config.getLingerMillis(), config.getBatchSize());
+    }
+
     @Bean
     public PlanInstanceProcessor planInstanceProcessor(MetaTaskScheduler metaTaskScheduler,
                                                        IDGenerator idGenerator,
                                                        NodeManger nodeManger,
-                                                       AgentRegistry agentRegistry,
+                                                       JobDispatcher jobDispatcher,
+                                                       JobDeadlines jobDeadlines,
                                                        PlanRepository planRepository,
                                                        TransactionService transactionService,
                                                        PlanInstanceRepository planInstanceRepository,
                                                        JobInstanceRepository jobInstanceRepository) {
-        return new PlanInstanceProcessor(metaTaskScheduler, idGenerator, nodeManger, agentRegistry, planRepository, transactionService, planInstanceRepository, jobInstanceRepository);
+        return new PlanInstanceProcessor(metaTaskScheduler, idGenerator, nodeManger, jobDispatcher, jobDeadlines, planRepository, transactionService, planInstanceRepository, jobInstanceRepository);
     }
 
     @Bean
     public DelayInstanceProcessor delayInstanceProcessor(MetaTaskScheduler metaTaskScheduler,
                                                          IDGenerator idGenerator,
                                                          NodeManger nodeManger,
-                                                         AgentRegistry agentRegistry,
+                                                         JobDispatcher jobDispatcher,
+                                                         JobDeadlines jobDeadlines,
                                                          TransactionService transactionService,
                                                          DelayInstanceRepository delayInstanceRepository,
                                                          JobInstanceRepository jobInstanceRepository) {
-        return new DelayInstanceProcessor(metaTaskScheduler, idGenerator, nodeManger, agentRegistry, transactionService, delayInstanceRepository, jobInstanceRepository);
+        return new DelayInstanceProcessor(metaTaskScheduler, idGenerator, nodeManger, jobDispatcher, jobDeadlines, transactionService, delayInstanceRepository, jobInstanceRepository);
     }
 
     @Bean
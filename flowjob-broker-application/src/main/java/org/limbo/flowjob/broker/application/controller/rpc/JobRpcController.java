@@ -24,7 +24,9 @@ import lombok.Setter;
 import org.limbo.flowjob.api.constants.InstanceType;
 import org.limbo.flowjob.api.dto.ResponseDTO;
 import org.limbo.flowjob.api.dto.broker.AvailableWorkerDTO;
+import org.limbo.flowjob.api.param.broker.JobBatchReportParam;
 import org.limbo.flowjob.api.param.broker.JobFeedbackParam;
+import org.limbo.flowjob.broker.application.service.JobInstanceAppService;
 import org.limbo.flowjob.broker.application.service.WorkerAppService;
 import org.limbo.flowjob.broker.core.meta.processor.InstanceProcessor;
 import org.limbo.flowjob.broker.core.meta.processor.InstanceProcessorFactory;
@@ -61,6 +63,9 @@ public class JobRpcController {
     @Setter(onMethod_ = @Inject)
     private WorkerAppService workerAppService;
 
+    @Setter(onMethod_ = @Inject)
+    private JobInstanceAppService jobInstanceAppService;
+
     /**
      * job开始执行反馈
      */
@@ -84,6 +89,15 @@ public class JobRpcController {
         return ResponseDTO.<Boolean>builder().ok(result).build();
     }
 
+    /**
+     * job执行批量上报
+     */
+    @Operation(summary = "job执行批量上报")
+    @PostMapping(API_JOB_BATCH_REPORT)
+    public ResponseDTO<Integer> batchReport(@Valid @RequestBody JobBatchReportParam param) {
+        return ResponseDTO.<Integer>builder().ok(jobInstanceAppService.batchReport(param)).build();
+    }
+
     /**
      * 任务执行反馈接口
      */
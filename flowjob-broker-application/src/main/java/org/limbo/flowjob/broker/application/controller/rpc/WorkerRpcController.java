@@ -23,6 +23,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.Setter;
 import org.limbo.flowjob.api.dto.ResponseDTO;
 import org.limbo.flowjob.api.dto.broker.WorkerRegisterDTO;
+import org.limbo.flowjob.api.param.broker.WorkerDispatchedParam;
 import org.limbo.flowjob.api.param.broker.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.param.broker.WorkerRegisterParam;
 import org.limbo.flowjob.broker.application.service.WorkerAppService;
@@ -36,6 +37,7 @@ import javax.inject.Inject;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 
+import static org.limbo.flowjob.api.constants.rpc.HttpBrokerApi.API_WORKER_DISPATCHED;
 import static org.limbo.flowjob.api.constants.rpc.HttpBrokerApi.API_WORKER_HEARTBEAT;
 import static org.limbo.flowjob.api.constants.rpc.HttpBrokerApi.API_WORKER_REGISTER;
 
@@ -69,4 +71,14 @@ public class WorkerRpcController {
         return ResponseDTO.<WorkerRegisterDTO>builder().ok(workerAppService.heartbeat(id, heartbeatOption)).build();
     }
 
+    /**
+     * agent 批量上报任务下发统计
+     */
+    @Operation(summary = "任务下发统计")
+    @PostMapping(API_WORKER_DISPATCHED)
+    public ResponseDTO<Boolean> dispatched(@Valid @RequestBody WorkerDispatchedParam param) {
+        workerAppService.dispatched(param);
+        return ResponseDTO.<Boolean>builder().ok(true).build();
+    }
+
 }
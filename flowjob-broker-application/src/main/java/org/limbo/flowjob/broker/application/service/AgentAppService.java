@@ -27,6 +27,9 @@ import org.limbo.flowjob.api.dto.broker.AgentRegisterDTO;
 import org.limbo.flowjob.api.param.broker.AgentHeartbeatParam;
 import org.limbo.flowjob.api.param.broker.AgentRegisterParam;
 import org.limbo.flowjob.broker.application.converter.BrokerConverter;
+import org.limbo.flowjob.broker.core.agent.AgentRegistry;
+import org.limbo.flowjob.broker.core.agent.AgentRepository;
+import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.meta.IDType;
@@ -57,6 +60,12 @@ public class AgentAppService {
     @Setter(onMethod_ = @Inject)
     private NodeManger nodeManger;
 
+    @Setter(onMethod_ = @Inject)
+    private AgentRepository agentRepository;
+
+    @Setter(onMethod_ = @Inject)
+    private AgentRegistry agentRegistry;
+
     /**
      * 注册
      *
@@ -92,15 +101,20 @@ public class AgentAppService {
      *
      * @param option 心跳参数，上报部分指标数据
      */
-    @Transactional(rollbackOn = Throwable.class)
     public AgentRegisterDTO heartbeat(String agentId, AgentHeartbeatParam option) {
-        AgentEntity agent = agentEntityRepo.findById(agentId).get();
-        Verifies.requireNotNull(agent, "agent不存在！");
-        // 更新
-        agent.setAvailableQueueLimit(option.getAvailableResource().getAvailableQueueLimit());
-        agent.setLastHeartbeatAt(TimeUtils.currentLocalDateTime());
-        agent.setStatus(AgentStatus.RUNNING.status);
-        agentEntityRepo.saveAndFlush(agent);
+        Integer availableQueueLimit = option.getAvailableResource().getAvailableQueueLimit();
+        // 内存中更新，由 AgentRegistry 批量写入
+        ScheduleAgent agent = agentRegistry.heartbeat(agentId, availableQueueLimit);
+        if (agent == null) {
+            agent = agentRepository.get(agentId);
+            Verifies.requireNotNull(agent, "agent不存在！");
+            // 更新
+            agentRegistry.online(agent.toBuilder()
+                    .availableQueueLimit(availableQueueLimit)
+                    .lastHeartbeatAt(TimeUtils.currentLocalDateTime())
+                    .status(AgentStatus.RUNNING)
+                    .build());
+        }
 
         if (log.isDebugEnabled()) {
             log.debug("receive heartbeat from " + agentId);
@@ -23,7 +23,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.dto.PageDTO;
 import org.limbo.flowjob.api.dto.console.JobInstanceDTO;
+import org.limbo.flowjob.api.param.broker.JobBatchReportParam;
 import org.limbo.flowjob.api.param.console.JobInstanceQueryParam;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
+import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
 import org.limbo.flowjob.broker.dao.repositories.JobInstanceEntityRepo;
 import org.limbo.flowjob.broker.dao.support.JpaHelper;
@@ -51,6 +54,35 @@ public class JobInstanceAppService {
     @Setter(onMethod_ = @Inject)
     private JobInstanceEntityRepo jobInstanceEntityRepo;
 
+    @Setter(onMethod_ = @Inject)
+    private JobInstanceRepository jobInstanceRepository;
+
+    @Setter(onMethod_ = @Inject)
+    private JobDeadlines jobDeadlines;
+
+    /**
+     * agent 批量上报执行中的 job，更新上报时间并延长执行超时
+     *
+     * @return 更新的数量
+     */
+    public int batchReport(JobBatchReportParam param) {
+        List<String> jobInstanceIds = param.getJobInstanceIds();
+        if (CollectionUtils.isEmpty(jobInstanceIds)) {
+            return 0;
+        }
+        int reported = jobInstanceRepository.report(jobInstanceIds, TimeUtils.currentLocalDateTime());
+        if (reported > 0) {
+            // 只会刷新本节点记录中执行中的 job
+            for (String jobInstanceId : jobInstanceIds) {
+                jobDeadlines.report(jobInstanceId);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Receive Job batch report size={} reported={}", jobInstanceIds.size(), reported);
+        }
+        return reported;
+    }
+
     public PageDTO<JobInstanceDTO> page(JobInstanceQueryParam param) {
         Specification<JobInstanceEntity> sf = (root, query, cb) -> {
             //用于添加所有查询条件
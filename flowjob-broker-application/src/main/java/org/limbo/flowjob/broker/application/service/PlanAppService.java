@@ -36,12 +36,14 @@ import org.limbo.flowjob.api.param.console.PlanVersionParam;
 import org.limbo.flowjob.api.param.console.ScheduleOptionParam;
 import org.limbo.flowjob.broker.application.converter.JobParamConverter;
 import org.limbo.flowjob.broker.application.converter.PlanConverter;
+import org.limbo.flowjob.broker.core.cluster.BrokerSlots;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.exceptions.VerifyException;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.meta.IDType;
 import org.limbo.flowjob.broker.core.meta.info.JobInfo;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.schedule.calculator.CronScheduleCalculator;
 import org.limbo.flowjob.broker.core.utils.Verifies;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
@@ -90,6 +92,9 @@ public class PlanAppService {
     @Setter(onMethod_ = @Inject)
     private NodeManger nodeManger;
 
+    @Setter(onMethod_ = @Inject)
+    private PlanChangeRepository planChangeRepository;
+
     @Transactional
     public String add(PlanParam.NormalPlanParam param) {
         JobInfo jobInfo = JobParamConverter.createJob(param);
@@ -131,12 +136,14 @@ public class PlanAppService {
             planEntity.setRecentlyVersion(planInfoId);
             planEntity.setEnabled(false);
             planEntity.setPlanId(planId);
+            planEntity.setSlot(BrokerSlots.slot(planId));
             planEntity.setName(param.getName());
 
             Node elect = nodeManger.elect(planId);
             planEntity.setBrokerUrl(elect.getUrl().toString());
 
             planEntityRepo.saveAndFlush(planEntity);
+            planChangeRepository.record(planId, planEntity.getBrokerUrl());
         } else {
             // update
             PlanEntity planEntity = planEntityRepo.findById(planId).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN + planId));
@@ -151,6 +158,7 @@ public class PlanAppService {
             if (effected < 1) {
                 throw new IllegalStateException("并发操作，更新Plan版本失败");
             }
+            planChangeRepository.record(planId, planEntity.getBrokerUrl(), brokerUrl);
         }
 
         // base info
@@ -199,7 +207,11 @@ public class PlanAppService {
             brokerUrl = elect.getUrl().toString();
         }
 
-        return planEntityRepo.updateEnableAndBrokerUrl(planEntity.getPlanId(), false, true, brokerUrl) == 1;
+        if (planEntityRepo.updateEnableAndBrokerUrl(planEntity.getPlanId(), false, true, brokerUrl) != 1) {
+            return false;
+        }
+        planChangeRepository.record(planId, planEntity.getBrokerUrl(), brokerUrl);
+        return true;
     }
 
     /**
@@ -219,7 +231,11 @@ public class PlanAppService {
         }
 
         // 停用计划
-        return planEntityRepo.updateEnable(planEntity.getPlanId(), true, false) == 1;
+        if (planEntityRepo.updateEnable(planEntity.getPlanId(), true, false) != 1) {
+            return false;
+        }
+        planChangeRepository.record(planId, planEntity.getBrokerUrl());
+        return true;
     }
 
     public PlanInfoDTO.NormalPlanInfoDTO get(String planId) {
@@ -331,7 +347,11 @@ public class PlanAppService {
         PlanEntity planEntity = planEntityOptional.get();
         // 更新 Plan 版本信息
         int effected = planEntityRepo.updateVersion(version, planId, planEntity.getCurrentVersion());
-        return effected > 0;
+        if (effected <= 0) {
+            return false;
+        }
+        planChangeRepository.record(planId, planEntity.getBrokerUrl());
+        return true;
     }
 
 }
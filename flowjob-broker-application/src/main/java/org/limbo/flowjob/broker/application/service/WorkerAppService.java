@@ -21,14 +21,15 @@ package org.limbo.flowjob.broker.application.service;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.constants.Protocol;
-import org.limbo.flowjob.api.constants.WorkerStatus;
 import org.limbo.flowjob.api.dto.PageDTO;
 import org.limbo.flowjob.api.dto.broker.AvailableWorkerDTO;
 import org.limbo.flowjob.api.dto.broker.WorkerRegisterDTO;
 import org.limbo.flowjob.api.dto.console.WorkerDTO;
+import org.limbo.flowjob.api.param.broker.WorkerDispatchedParam;
 import org.limbo.flowjob.api.param.broker.WorkerHeartbeatParam;
 import org.limbo.flowjob.api.param.broker.WorkerRegisterParam;
 import org.limbo.flowjob.api.param.console.WorkerQueryParam;
@@ -40,10 +41,13 @@ import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.meta.IDType;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.limbo.flowjob.broker.core.schedule.selector.WorkerStatisticsRepository;
 import org.limbo.flowjob.broker.core.utils.Verifies;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.WorkerDomainService;
+import org.limbo.flowjob.broker.core.worker.WorkerRegistry;
 import org.limbo.flowjob.broker.core.worker.WorkerRepository;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.broker.dao.entity.WorkerEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerMetricEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerTagEntity;
@@ -100,6 +104,12 @@ public class WorkerAppService {
     @Setter(onMethod_ = @Inject)
     private WorkerDomainService workerDomainService;
 
+    @Setter(onMethod_ = @Inject)
+    private WorkerRegistry workerRegistry;
+
+    @Setter(onMethod_ = @Inject)
+    private WorkerStatisticsRepository workerStatisticsRepository;
+
     /**
      * worker注册
      *
@@ -140,18 +150,18 @@ public class WorkerAppService {
      *
      * @param option 心跳参数，上报部分指标数据
      */
-    @Transactional(rollbackOn = Throwable.class)
     public WorkerRegisterDTO heartbeat(String workerId, WorkerHeartbeatParam option) {
-        // 查询worker并校验
-        Worker worker = workerRepository.get(workerId);
-        Verifies.requireNotNull(worker, "worker不存在！");
-
-        // 更新状态
-        workerEntityRepo.updateStatus(workerId, WorkerStatus.RUNNING.status);
-
-        // 更新metric
-        worker.heartbeat(WorkerConverter.toWorkerMetric(option));
-        workerRepository.saveMetric(worker);
+        WorkerMetric metric = WorkerConverter.toWorkerMetric(option);
+        // 内存中更新，状态和指标由 WorkerRegistry 批量写入
+        Worker worker = workerRegistry.heartbeat(workerId, metric);
+        if (worker == null) {
+            // 查询worker并校验
+            worker = workerRepository.get(workerId);
+            Verifies.requireNotNull(worker, "worker不存在！");
+
+            worker.heartbeat(metric);
+            workerRegistry.online(worker);
+        }
 
         if (log.isDebugEnabled()) {
             log.debug("receive heartbeat from " + workerId);
@@ -248,4 +258,19 @@ public class WorkerAppService {
         return workers.stream().map(BrokerConverter::toWorkerDTO).collect(Collectors.toList());
     }
 
+    /**
+     * 记录 agent 上报的任务下发次数，用于 LFU、LRU 负载
+     */
+    public void dispatched(WorkerDispatchedParam param) {
+        if (param == null || MapUtils.isEmpty(param.getDispatched())) {
+            return;
+        }
+        for (Map.Entry<String, Integer> entry : param.getDispatched().entrySet()) {
+            Worker worker = workerRegistry.get(entry.getKey());
+            if (worker != null && entry.getValue() != null && entry.getValue() > 0) {
+                workerStatisticsRepository.recordDispatched(worker, entry.getValue());
+            }
+        }
+    }
+
 }
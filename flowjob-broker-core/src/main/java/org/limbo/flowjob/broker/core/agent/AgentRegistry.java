@@ -21,6 +21,7 @@ package org.limbo.flowjob.broker.core.agent;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.AgentStatus;
+import org.limbo.flowjob.broker.core.cluster.HeartbeatBuffer;
 import org.limbo.flowjob.common.constants.AgentConstant;
 import org.limbo.flowjob.common.utils.time.Formatters;
 import org.limbo.flowjob.common.utils.time.LocalTimeUtils;
@@ -52,8 +53,14 @@ public class AgentRegistry {
      */
     private final Duration heartbeatTimeout = Duration.ofSeconds(AgentConstant.HEARTBEAT_TIMEOUT_SECOND);
 
+    /**
+     * 本节点收到的心跳，定时批量写入
+     */
+    private final HeartbeatBuffer<ScheduleAgent> heartbeats;
+
     public AgentRegistry(AgentRepository agentRepository) {
         this.agentRepository = agentRepository;
+        this.heartbeats = new HeartbeatBuffer<>("AgentHeartbeatFlusher", AgentConstant.HEARTBEAT_FLUSH_MILLIS, agentRepository::saveHeartbeats);
     }
 
     /**
@@ -63,7 +70,33 @@ public class AgentRegistry {
         return ONLINE_AGENT_MAP.values();
     }
 
+    /**
+     * 接收心跳，立即更新内存中的 agent，延迟批量写入
+     *
+     * @return agent 不在本节点内存中时返回 null
+     */
+    public ScheduleAgent heartbeat(String agentId, Integer availableQueueLimit) {
+        ScheduleAgent agent = ONLINE_AGENT_MAP.computeIfPresent(agentId, (id, old) -> old.toBuilder()
+                .availableQueueLimit(availableQueueLimit)
+                .lastHeartbeatAt(TimeUtils.currentLocalDateTime())
+                .status(AgentStatus.RUNNING)
+                .build());
+        if (agent != null) {
+            heartbeats.offer(agentId, agent);
+        }
+        return agent;
+    }
+
+    /**
+     * 本节点内存中没有的 agent 发送心跳后加入
+     */
+    public void online(ScheduleAgent agent) {
+        ONLINE_AGENT_MAP.put(agent.getId(), agent);
+        heartbeats.offer(agent.getId(), agent);
+    }
+
     public void init() {
+        heartbeats.start();
         new Timer().schedule(new AgentOnlineCheckTask(), 0, heartbeatTimeout.toMillis());
         new Timer().schedule(new AgentFusingCheckTask(), 0, heartbeatTimeout.toMillis());
         new Timer().schedule(new AgentTerminatedCheckTask(), 0, heartbeatTimeout.toMillis());
@@ -86,6 +119,11 @@ public class AgentRegistry {
                 List<ScheduleAgent> onlines = agentRepository.findByLastHeartbeatAtBetween(startTime, endTime);
                 if (CollectionUtils.isNotEmpty(onlines)) {
                     for (ScheduleAgent agent : onlines) {
+                        // 本节点收到的心跳更新，保留内存中的数据
+                        ScheduleAgent local = ONLINE_AGENT_MAP.get(agent.getId());
+                        if (local != null && isAfter(local.getLastHeartbeatAt(), agent.getLastHeartbeatAt())) {
+                            continue;
+                        }
                         // 更新数据
                         ScheduleAgent n = ONLINE_AGENT_MAP.put(agent.getId(), agent);
                         URL url = agent.getUrl();
@@ -119,6 +157,11 @@ public class AgentRegistry {
                 List<ScheduleAgent> offlines = agentRepository.findByLastHeartbeatAtBetween(startTime, endTime);
                 if (CollectionUtils.isNotEmpty(offlines)) {
                     for (ScheduleAgent agent : offlines) {
+                        // 本节点收到了新的心跳，还未写入
+                        ScheduleAgent local = ONLINE_AGENT_MAP.get(agent.getId());
+                        if (local != null && isAfter(local.getLastHeartbeatAt(), endTime)) {
+                            continue;
+                        }
                         URL url = agent.getUrl();
                         if (log.isDebugEnabled()) {
                             log.debug("{} find id: {}, host: {}, port: {} lastHeartbeat:{}", TASK_NAME, agent.getId(), url.getHost(), url.getPort(), LocalTimeUtils.format(agent.getLastHeartbeatAt(), Formatters.YMD_HMS));
@@ -172,4 +215,8 @@ public class AgentRegistry {
         }
     }
 
+    private static boolean isAfter(LocalDateTime time, LocalDateTime other) {
+        return time != null && (other == null || time.isAfter(other));
+    }
+
 }
@@ -20,6 +20,7 @@ package org.limbo.flowjob.broker.core.agent;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Devil
@@ -32,4 +33,11 @@ public interface AgentRepository {
     List<ScheduleAgent> findByLastHeartbeatAtBetween(LocalDateTime startTime, LocalDateTime endTime);
 
     boolean updateStatus(String agentId, Integer oldStatus, Integer newStatus);
+
+    /**
+     * 批量写入心跳，更新剩余队列、心跳时间并将 agent 置为运行中
+     *
+     * @param agents agentId - 心跳后的 agent
+     */
+    void saveHeartbeats(Map<String, ScheduleAgent> agents);
 }
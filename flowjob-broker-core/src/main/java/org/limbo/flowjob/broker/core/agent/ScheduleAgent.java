@@ -39,7 +39,7 @@ import java.time.LocalDateTime;
 @Getter
 @Setter(AccessLevel.NONE)
 @ToString
-@Builder(builderClassName = "Builder")
+@Builder(builderClassName = "Builder", toBuilder = true)
 public class ScheduleAgent implements AgentRpc, LBServer {
 
     /**
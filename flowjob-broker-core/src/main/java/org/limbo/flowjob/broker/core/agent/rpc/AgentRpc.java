@@ -22,6 +22,9 @@ import org.limbo.flowjob.api.param.console.TaskQueryParam;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.rpc.IRpc;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Worker 通信接口
  *
@@ -37,6 +40,13 @@ public interface AgentRpc extends IRpc {
      */
     boolean dispatch(JobInstance instance);
 
+    /**
+     * 批量发送作业到worker执行
+     * @param instances 作业实例
+     * @return jobInstanceId - 是否被接收
+     */
+    Map<String, Boolean> batchDispatch(List<JobInstance> instances);
+
     /**
      * task查询
      * @param param 参数
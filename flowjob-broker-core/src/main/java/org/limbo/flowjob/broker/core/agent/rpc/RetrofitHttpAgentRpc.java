@@ -22,6 +22,7 @@ import org.limbo.flowjob.api.constants.rpc.HttpAgentApi;
 import org.limbo.flowjob.api.dto.PageDTO;
 import org.limbo.flowjob.api.dto.ResponseDTO;
 import org.limbo.flowjob.api.dto.console.TaskDTO;
+import org.limbo.flowjob.api.param.agent.JobBatchSubmitParam;
 import org.limbo.flowjob.api.param.agent.JobSubmitParam;
 import org.limbo.flowjob.api.param.console.TaskQueryParam;
 import org.limbo.flowjob.broker.core.agent.AgentConverter;
@@ -38,6 +39,10 @@ import retrofit2.http.Headers;
 import retrofit2.http.POST;
 
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Brozen
@@ -65,6 +70,14 @@ public class RetrofitHttpAgentRpc extends AbstractRpc implements AgentRpc {
         return BooleanUtils.isTrue(result);
     }
 
+    @Override
+    public Map<String, Boolean> batchDispatch(List<JobInstance> instances) {
+        JobBatchSubmitParam param = new JobBatchSubmitParam();
+        param.setJobs(instances.stream().map(AgentConverter::toJobDispatchParam).collect(Collectors.toList()));
+        Map<String, Boolean> result = send(api.batchDispatch(param));
+        return result == null ? Collections.emptyMap() : result;
+    }
+
     @Override
     public PageDTO<TaskDTO> page(TaskQueryParam param) {
         return send(api.page(param));
@@ -92,6 +105,12 @@ public class RetrofitHttpAgentRpc extends AbstractRpc implements AgentRpc {
         @POST(HttpAgentApi.API_JOB_RECEIVE)
         Call<ResponseDTO<Boolean>> dispatch(@Body JobSubmitParam param);
 
+        @Headers(
+                "Content-Type: application/json"
+        )
+        @POST(HttpAgentApi.API_JOB_BATCH_RECEIVE)
+        Call<ResponseDTO<Map<String, Boolean>>> batchDispatch(@Body JobBatchSubmitParam param);
+
         @Headers(
                 "Content-Type: application/json"
         )
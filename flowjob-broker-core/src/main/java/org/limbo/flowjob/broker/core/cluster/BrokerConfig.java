@@ -65,4 +65,113 @@ public class BrokerConfig {
      */
     protected long heartbeatTimeout = 5000;
 
+    /**
+     * 元任务调度配置
+     */
+    protected MetaTaskConfig metaTask = new MetaTaskConfig();
+
+    /**
+     * job 下发配置
+     */
+    protected JobDispatchConfig jobDispatch = new JobDispatchConfig();
+
+    /**
+     * ID 生成配置
+     */
+    protected IdConfig id = new IdConfig();
+
+    @Data
+    public static class MetaTaskConfig {
+
+        /**
+         * 时间轮 tick 时长，毫秒
+         */
+        private long tickDuration = 100;
+
+        /**
+         * 执行到期任务的线程数，时间轮线程只负责收集到期任务
+         */
+        private int dispatchThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        /**
+         * 到期任务队列长度，队列满时任务会延迟到下一个 tick
+         */
+        private int dispatchQueueSize = 65536;
+
+        /**
+         * 分发线程每批次拉取的任务数，同一批次中同时触发的 plan 会在一个事务中创建实例
+         */
+        private int dispatchBatchSize = 256;
+
+        /**
+         * CRON 任务预计算的后续触发次数，大于1时开启，触发时直接从预计算结果中获取下次触发时间
+         */
+        private int cronPrecomputeSize = 0;
+
+        /**
+         * 是否合并调度配置相同的 plan，合并后时间轮上只注册一个任务，触发时再分批为每个 plan 创建实例
+         */
+        private boolean planGroupEnabled = false;
+
+        /**
+         * 合并调度的 plan 触发时每批次处理的数量
+         */
+        private int planGroupFanOutBatchSize = 100;
+
+        /**
+         * 启动时按页加载 plan 的每页数量，每页加载完成后立即调度
+         */
+        private int planLoadPageSize = 1000;
+
+        /**
+         * 启动时并行组装的页数
+         */
+        private int planLoadParallelism = 4;
+
+    }
+
+    @Data
+    public static class JobDispatchConfig {
+
+        /**
+         * 同一个 agent 的 job 攒批等待时间，毫秒，小于等于0时逐个下发
+         */
+        private long lingerMillis = 5;
+
+        /**
+         * 单次批量下发的最大 job 数
+         */
+        private int batchSize = 50;
+
+    }
+
+    @Data
+    public static class IdConfig {
+
+        /**
+         * ID 生成方式
+         */
+        private IdMode mode = IdMode.SEGMENT;
+
+        /**
+         * snowflake 方式下的机器号，0~1023，集群内需唯一。snowflake 方式下必须配置，没有默认值
+         */
+        private Long workerId;
+
+    }
+
+    public enum IdMode {
+
+        /**
+         * 从数据库获取号段
+         */
+        SEGMENT,
+
+        /**
+         * 基于时间生成，无需访问数据库
+         */
+        SNOWFLAKE,
+
+    }
+
 }
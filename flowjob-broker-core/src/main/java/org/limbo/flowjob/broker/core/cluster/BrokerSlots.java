@@ -0,0 +1,54 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 固定数量的 slot，plan、job 实例按 id 哈希到 slot，broker 以 slot 为单位持有资源。
+ * 计算方式和 mysql 的 CRC32(id) % 4096 一致，方便直接在数据库中回填。
+ *
+ * @author Brozen
+ * @since 2024-03-19
+ */
+public final class BrokerSlots {
+
+    public static final int SLOT_COUNT = 4096;
+
+    private BrokerSlots() {
+    }
+
+    /**
+     * 资源所在的 slot
+     */
+    public static int slot(String id) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(id.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc32.getValue() % SLOT_COUNT);
+    }
+
+    /**
+     * slot 在哈希环上的 key
+     */
+    static String key(int slot) {
+        return "slot-" + slot;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 心跳写缓冲。心跳到达时只记录在内存中，同一节点多次心跳只保留最后一次，定时批量写入存储。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+public class HeartbeatBuffer<T> {
+
+    private final String name;
+
+    /**
+     * 刷新间隔，毫秒，需要远小于心跳超时时间
+     */
+    private final long flushInterval;
+
+    private final Consumer<Map<String, T>> flusher;
+
+    /**
+     * 待写入的心跳
+     */
+    private final Map<String, T> pending = new ConcurrentHashMap<>();
+
+    public HeartbeatBuffer(String name, long flushInterval, Consumer<Map<String, T>> flusher) {
+        this.name = name;
+        this.flushInterval = flushInterval;
+        this.flusher = flusher;
+    }
+
+    public void start() {
+        new Timer(name, true).schedule(new FlushTask(), flushInterval, flushInterval);
+    }
+
+    /**
+     * 记录心跳，覆盖未写入的旧心跳
+     */
+    public void offer(String id, T heartbeat) {
+        pending.put(id, heartbeat);
+    }
+
+    /**
+     * 批量写入，失败时未被新心跳覆盖的重新放回
+     */
+    public void flush() {
+        Map<String, T> drained = new HashMap<>();
+        for (String id : pending.keySet()) {
+            T heartbeat = pending.remove(id);
+            if (heartbeat != null) {
+                drained.put(id, heartbeat);
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        try {
+            flusher.accept(drained);
+        } catch (Exception e) {
+            log.error("[{}] flush {} heartbeats fail", name, drained.size(), e);
+            drained.forEach(pending::putIfAbsent);
+        }
+    }
+
+    private class FlushTask extends TimerTask {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    }
+
+}
@@ -19,19 +19,16 @@
 package org.limbo.flowjob.broker.core.cluster;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.common.utils.json.JacksonUtils;
 
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 内存中缓存的 broker节点信息
@@ -44,6 +41,21 @@ public class NodeManger {
 
     private static final Map<String, Node> nodes = new ConcurrentHashMap<>();
 
+    /**
+     * 存活节点构成的哈希环，只在节点上下线时重建
+     */
+    private static volatile NodeRing ring = NodeRing.EMPTY;
+
+    /**
+     * slot 当前归属的 broker，下标为 slot
+     */
+    private static volatile String[] slotOwners = new String[BrokerSlots.SLOT_COUNT];
+
+    /**
+     * slot 分配变化的次数
+     */
+    private static final AtomicLong slotVersion = new AtomicLong();
+
     private final PlanRepository planRepository;
 
     private final JobInstanceRepository jobInstanceRepository;
@@ -58,7 +70,9 @@ public class NodeManger {
      */
     public void online(Node node) {
         URL url = node.getUrl();
-        nodes.putIfAbsent(url.toString(), node);
+        if (nodes.putIfAbsent(url.toString(), node) == null) {
+            rebuildRing();
+        }
         if (log.isDebugEnabled()) {
             log.debug("[LocalNodeManger] online {}", JacksonUtils.toJSONString(nodes));
         }
@@ -69,7 +83,9 @@ public class NodeManger {
      */
     public void offline(Node node) {
         URL url = node.getUrl();
-        nodes.remove(url.toString());
+        if (nodes.remove(url.toString()) != null) {
+            rebuildRing();
+        }
         if (log.isDebugEnabled()) {
             log.debug("[LocalNodeManger] offline {}", JacksonUtils.toJSONString(nodes));
         }
@@ -99,21 +115,60 @@ public class NodeManger {
      * @return broker信息
      */
     public Node elect(String id) {
-        List<Node> sortedNodes = nodes.values().stream().sorted(Comparator
-                .comparing((Function<Node, String>) node -> node.getUrl().getHost())
-                .thenComparingInt(node -> node.getUrl().getPort())
-        ).collect(Collectors.toList());
-
-        if (CollectionUtils.isEmpty(sortedNodes)) {
+        int slot = BrokerSlots.slot(id);
+        Node node = null;
+        // 优先使用 slot 已分配的 broker
+        String owner = slotOwners[slot];
+        if (owner != null) {
+            node = nodes.get(owner);
+        }
+        if (node == null) {
+            node = assignSlot(slot);
+        }
+        if (node == null) {
             return null;
         }
+        if (log.isDebugEnabled()) {
+            log.debug("find elect:{}", node);
+        }
+        return node;
+    }
 
-        // hash获取id对应的值
-        int idx = id.hashCode() % sortedNodes.size();
+    /**
+     * 根据当前存活节点为 slot 计算归属的 broker
+     */
+    public Node assignSlot(int slot) {
+        return ring.select(BrokerSlots.key(slot));
+    }
 
-        Node node = sortedNodes.get(idx);
-        log.info("find elect:{}", node);
-        return node;
+    /**
+     * 更新 slot 的分配
+     *
+     * @param owners slot - broker
+     */
+    public void refreshSlots(Map<Integer, URL> owners) {
+        String[] refreshed = new String[BrokerSlots.SLOT_COUNT];
+        for (Map.Entry<Integer, URL> entry : owners.entrySet()) {
+            int slot = entry.getKey();
+            if (slot >= 0 && slot < refreshed.length && entry.getValue() != null) {
+                refreshed[slot] = entry.getValue().toString();
+            }
+        }
+        if (!Arrays.equals(slotOwners, refreshed)) {
+            slotOwners = refreshed;
+            slotVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * slot 分配的版本，每次分配变化后递增
+     */
+    public long slotVersion() {
+        return slotVersion.get();
+    }
+
+    private static synchronized void rebuildRing() {
+        ring = NodeRing.build(nodes.values());
     }
 
 }
@@ -0,0 +1,88 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.cluster;
+
+import org.limbo.flowjob.common.utils.MD5Utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * broker 节点的一致性哈希环，构建后不可变，节点变化时整体替换。
+ * 每个节点生成若干虚拟节点，节点上下线时只有约 1/n 的资源归属发生变化。
+ *
+ * @author Brozen
+ * @since 2024-03-19
+ */
+class NodeRing {
+
+    /**
+     * 每个节点的虚拟节点数量，需要是 4 的倍数
+     */
+    static final int REPLICAS = 160;
+
+    static final NodeRing EMPTY = new NodeRing(new TreeMap<>());
+
+    private final TreeMap<Long, Node> virtualNodes;
+
+    private NodeRing(TreeMap<Long, Node> virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    static NodeRing build(Collection<Node> nodes) {
+        TreeMap<Long, Node> virtualNodes = new TreeMap<>();
+        for (Node node : nodes) {
+            // 使用 url 作为节点标识，和 NodeManger 中的 key 保持一致
+            String nid = node.getUrl().toString();
+            // MD5 签名结果，每 32 位作为一组计算 slot，32 位对应 4 个字节，因此除以 4
+            for (int i = 0; i < REPLICAS / 4; i++) {
+                byte[] digest = MD5Utils.bytes(nid + "#" + i);
+                for (int j = 0; j < 4; j++) {
+                    virtualNodes.put(hash(digest, j), node);
+                }
+            }
+        }
+        return new NodeRing(virtualNodes);
+    }
+
+    /**
+     * 顺时针找到第一个虚拟节点
+     */
+    Node select(String id) {
+        if (virtualNodes.isEmpty()) {
+            return null;
+        }
+        long hash = hash(MD5Utils.bytes(id), 0);
+        Map.Entry<Long, Node> entry = virtualNodes.ceilingEntry(hash);
+        if (entry == null) {
+            entry = virtualNodes.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    private static long hash(byte[] digest, int number) {
+        return (((long) (digest[3 + number * 4] & 0xFF) << 24)
+                | ((long) (digest[2 + number * 4] & 0xFF) << 16)
+                | ((long) (digest[1 + number * 4] & 0xFF) << 8)
+                | (digest[number * 4] & 0xFF))
+                & 0xFFFFFFFFL;
+    }
+
+}
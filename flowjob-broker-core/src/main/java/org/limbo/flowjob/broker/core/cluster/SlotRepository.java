@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.cluster;
+
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * slot 与 broker 的分配关系
+ *
+ * @author Brozen
+ * @since 2024-03-19
+ */
+public interface SlotRepository {
+
+    /**
+     * 所有已分配的 slot
+     *
+     * @return slot - broker
+     */
+    Map<Integer, URL> findAll();
+
+    /**
+     * 保存 slot 的分配，不存在则新增。在同一事务中确认锁凭证有效后再写入
+     *
+     * @param owners slot - broker
+     * @param fence  分配时持有的锁凭证，凭证失效或为 null 时不保存
+     * @return 是否保存
+     */
+    boolean save(Map<Integer, URL> owners, LockFence fence);
+
+}
@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于时间的 ID 生成，无需访问数据库。
+ * 41位毫秒时间戳 + 10位机器号 + 12位序列号，同一毫秒内序列号用完时借用下一毫秒，时钟回拨时沿用上次的时间戳，保证单节点内递增。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class SnowflakeIDGenerator implements IDGenerator {
+
+    /**
+     * 2024-01-01 00:00:00 UTC
+     */
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 最多借用未来的毫秒数，超过后等待时钟追上
+     */
+    private static final long MAX_BORROW_MILLIS = 1000;
+
+    private final long workerId;
+
+    private final Clock clock;
+
+    /**
+     * 上次生成使用的 时间戳 << SEQUENCE_BITS | 序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIDGenerator(long workerId) {
+        this(workerId, Clock.systemDefaultZone());
+    }
+
+    public SnowflakeIDGenerator(long workerId, Clock clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("snowflake worker id must between 0 and " + MAX_WORKER_ID + " but is " + workerId);
+        }
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    @Override
+    public String generateId(IDType type) {
+        return String.valueOf(nextId());
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long lastSequence = last & MAX_SEQUENCE;
+            long now = clock.millis() - EPOCH;
+
+            long timestamp;
+            long sequence;
+            if (now > lastTimestamp) {
+                timestamp = now;
+                sequence = 0;
+            } else if (lastSequence < MAX_SEQUENCE) {
+                timestamp = lastTimestamp;
+                sequence = lastSequence + 1;
+            } else {
+                timestamp = lastTimestamp + 1;
+                sequence = 0;
+            }
+
+            if (timestamp - now > MAX_BORROW_MILLIS) {
+                Thread.yield();
+                continue;
+            }
+
+            if (state.compareAndSet(last, timestamp << SEQUENCE_BITS | sequence)) {
+                return timestamp << (WORKER_ID_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+            }
+        }
+    }
+
+}
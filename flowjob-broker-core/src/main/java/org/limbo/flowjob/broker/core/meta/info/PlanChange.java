@@ -0,0 +1,50 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.info;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * plan 变更记录，按 sequence 单调递增
+ *
+ * @author Brozen
+ * @since 2024-03-16
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PlanChange {
+
+    /**
+     * 变更序号
+     */
+    private final long sequence;
+
+    private final String planId;
+
+    /**
+     * 变更记录时间
+     */
+    private final LocalDateTime changedAt;
+
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.info;
+
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * plan 变更日志，plan 配置、启停、归属 broker 变化时在同一个事务中写入
+ *
+ * @author Brozen
+ * @since 2024-03-16
+ */
+public interface PlanChangeRepository {
+
+    /**
+     * 记录plan变更，需要在修改plan的事务中调用
+     *
+     * @param planId     plan
+     * @param brokerUrls 需要感知变更的 broker，归属发生变化时需要同时传入新旧 broker
+     */
+    void record(String planId, String... brokerUrls);
+
+    /**
+     * 记录时间在指定时间之前的最大变更序号，没有变更时返回 0。
+     * 序号在写入时分配，并发事务中较小的序号可能较晚提交，消费方只将游标推进到提交窗口之外
+     *
+     * @param before 不包含
+     */
+    long latestSequence(LocalDateTime before);
+
+    /**
+     * 获取 broker 在 sequence 之后的变更，按 sequence 升序
+     *
+     * @param brokerUrl 变更前或变更后归属的 broker
+     * @param sequence  不包含
+     */
+    List<PlanChange> findAfter(URL brokerUrl, long sequence, int limit);
+
+    /**
+     * 清理指定时间之前的变更记录
+     *
+     * @return 删除的条数
+     */
+    int clean(LocalDateTime before);
+
+}
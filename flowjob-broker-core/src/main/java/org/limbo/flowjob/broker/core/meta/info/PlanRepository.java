@@ -18,8 +18,11 @@
 
 package org.limbo.flowjob.broker.core.meta.info;
 
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -33,10 +36,31 @@ public interface PlanRepository {
 
     Plan lockAndGet(String id);
 
+    /**
+     * 批量锁定plan，按 planId 顺序加锁避免死锁。
+     * 只返回当前版本和启用状态，不加载最近一次调度、反馈时间
+     *
+     * @param ids planId
+     * @return 存在的plan
+     */
+    List<Plan> lockAndGet(Collection<String> ids);
+
     Plan getByVersion(String id, String version);
 
+    /**
+     * 批量获取plan 包含未启用的，已删除的不返回
+     */
+    List<Plan> list(Collection<String> ids);
+
     List<Plan> loadUpdatedPlans(URL brokerUrl, LocalDateTime updatedAt);
 
+    /**
+     * 按 planId 分页获取broker下已启用的planId
+     *
+     * @param startId 不包含，首页为空字符串
+     */
+    List<String> findEnabledIds(URL brokerUrl, String startId, int limit);
+
     /**
      * 获取不属于broker列表中broker管理的plan
      *
@@ -55,4 +79,15 @@ public interface PlanRepository {
      */
     boolean updateBroker(String id, URL oldBrokerUrl, URL newBrokerUrl);
 
+    /**
+     * 按 slot 批量迁移 broker 下的 plan，并通知新旧 broker
+     *
+     * @param oldBrokerUrl 旧的broker
+     * @param newBrokerUrl 新的broker
+     * @param slots        迁移的 slot
+     * @param fence        迁移时持有的锁凭证，凭证失效或为 null 时不迁移
+     * @return 迁移的数量
+     */
+    int updateBroker(URL oldBrokerUrl, URL newBrokerUrl, Collection<Integer> slots, LockFence fence);
+
 }
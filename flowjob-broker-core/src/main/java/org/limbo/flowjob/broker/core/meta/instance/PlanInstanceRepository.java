@@ -22,6 +22,8 @@ import org.limbo.flowjob.api.constants.ScheduleType;
 import org.limbo.flowjob.api.constants.TriggerType;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Devil
@@ -35,8 +37,21 @@ public interface PlanInstanceRepository {
 
     PlanInstance getLatelyTrigger(String planId, String version, ScheduleType scheduleType, TriggerType triggerType);
 
+    /**
+     * 批量获取plan对应版本最近一次触发的实例
+     *
+     * @param planVersions planId - version
+     * @return planId - 最近触发的实例
+     */
+    Map<String, PlanInstance> getLatelyTriggers(Map<String, String> planVersions, TriggerType triggerType);
+
     void save(PlanInstance instance);
 
+    /**
+     * 批量插入新创建的实例，用于批量调度 plan 的热点路径
+     */
+    void batchInsert(List<PlanInstance> instances);
+
     boolean executing(String instanceId, LocalDateTime startAt);
 
     boolean success(String instanceId, LocalDateTime feedbackAt);
@@ -0,0 +1,189 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.job;
+
+import org.limbo.flowjob.common.constants.JobConstant;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 当前 broker 下发的 JobInstance 的超时时间。
+ * 下发后记录调度超时，开始执行后记录上报超时，反馈后移除，检测任务只需取出到期的 job 再确认状态，无需扫表。
+ * 只记录本节点下发过的 job，节点重启或 slot 迁移后的 job 由检测任务低频扫表兜底。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class JobDeadlines {
+
+    /**
+     * 下发后多久还未开始执行认为调度失败，毫秒
+     */
+    public static final long SCHEDULE_TIMEOUT = 10000;
+
+    /**
+     * 多久未上报认为执行失败，毫秒
+     */
+    public static final long REPORT_TIMEOUT = (JobConstant.JOB_REPORT_SECONDS + 5) * 1000L;
+
+    private final Deadlines scheduling = new Deadlines();
+
+    private final Deadlines executing = new Deadlines();
+
+    private final Clock clock;
+
+    public JobDeadlines() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public JobDeadlines(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * job 已下发
+     */
+    public void scheduling(String jobInstanceId) {
+        executing.remove(jobInstanceId);
+        scheduling.put(jobInstanceId, now() + SCHEDULE_TIMEOUT);
+    }
+
+    /**
+     * job 开始执行，只处理本节点下发的 job
+     */
+    public void executing(String jobInstanceId) {
+        if (scheduling.remove(jobInstanceId)) {
+            executing.put(jobInstanceId, now() + REPORT_TIMEOUT);
+        }
+    }
+
+    /**
+     * 根据最后上报时间重新记录上报超时
+     */
+    public void executing(String jobInstanceId, LocalDateTime lastReportAt) {
+        scheduling.remove(jobInstanceId);
+        executing.put(jobInstanceId, TimeUtils.toTimestamp(lastReportAt) + REPORT_TIMEOUT);
+    }
+
+    /**
+     * job 执行上报，只处理本节点下发的 job
+     */
+    public void report(String jobInstanceId) {
+        executing.refresh(jobInstanceId, now() + REPORT_TIMEOUT);
+    }
+
+    /**
+     * job 已结束
+     */
+    public void remove(String jobInstanceId) {
+        scheduling.remove(jobInstanceId);
+        executing.remove(jobInstanceId);
+    }
+
+    /**
+     * 取出调度超时的 job，取出后不再记录
+     */
+    public List<String> expiredScheduling(int limit) {
+        return scheduling.expired(now(), limit);
+    }
+
+    /**
+     * 取出上报超时的 job，取出后不再记录
+     */
+    public List<String> expiredExecuting(int limit) {
+        return executing.expired(now(), limit);
+    }
+
+    private long now() {
+        return clock.millis();
+    }
+
+    /**
+     * 按超时时间排序的最小堆。更新和删除时不调整堆，只修改 deadlines，出堆时与 deadlines 不一致的条目直接丢弃。
+     */
+    private static class Deadlines {
+
+        private final Map<String, Long> deadlines = new HashMap<>();
+
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingLong(e -> e.deadline));
+
+        private synchronized void put(String id, long deadline) {
+            deadlines.put(id, deadline);
+            queue.add(new Entry(id, deadline));
+            compact();
+        }
+
+        private synchronized void refresh(String id, long deadline) {
+            if (deadlines.containsKey(id)) {
+                put(id, deadline);
+            }
+        }
+
+        private synchronized boolean remove(String id) {
+            return deadlines.remove(id) != null;
+        }
+
+        private synchronized List<String> expired(long now, int limit) {
+            List<String> ids = new ArrayList<>();
+            while (ids.size() < limit && !queue.isEmpty() && queue.peek().deadline <= now) {
+                Entry entry = queue.poll();
+                Long deadline = deadlines.get(entry.id);
+                if (deadline != null && deadline == entry.deadline) {
+                    deadlines.remove(entry.id);
+                    ids.add(entry.id);
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * 失效条目过多时重建堆
+         */
+        private void compact() {
+            if (queue.size() <= deadlines.size() * 4 + 1024) {
+                return;
+            }
+            queue.clear();
+            for (Map.Entry<String, Long> e : deadlines.entrySet()) {
+                queue.add(new Entry(e.getKey(), e.getValue()));
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String id;
+
+        private final long deadline;
+
+        private Entry(String id, long deadline) {
+            this.id = id;
+            this.deadline = deadline;
+        }
+    }
+
+}
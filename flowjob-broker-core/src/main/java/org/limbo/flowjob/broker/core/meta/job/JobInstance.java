@@ -88,6 +88,11 @@ public class JobInstance implements Serializable {
      */
     private LocalDateTime endAt;
 
+    /**
+     * 最后上报时间
+     */
+    private LocalDateTime lastReportAt;
+
     /**
      * 状态
      */
@@ -111,6 +116,19 @@ public class JobInstance implements Serializable {
         this.retryTimes++;
     }
 
+    /**
+     * 最后活跃时间，取开始执行和最后上报中较晚的
+     */
+    public LocalDateTime lastActiveAt() {
+        if (startAt == null) {
+            return lastReportAt;
+        }
+        if (lastReportAt == null) {
+            return startAt;
+        }
+        return lastReportAt.isAfter(startAt) ? lastReportAt : startAt;
+    }
+
     /**
      * 是否能重试
      * @return 是否能重试
@@ -18,8 +18,12 @@
 
 package org.limbo.flowjob.broker.core.meta.job;
 
+import org.limbo.flowjob.api.constants.JobStatus;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +39,11 @@ public interface JobInstanceRepository {
 
     void saveAll(List<JobInstance> jobInstances);
 
+    /**
+     * 批量插入新创建的 JobInstance，用于批量调度 plan 的热点路径
+     */
+    void batchInsert(List<JobInstance> jobInstances);
+
     boolean executing(String jobInstanceId, String agentId, LocalDateTime startAt);
 
     boolean success(String jobInstanceId, LocalDateTime endAt, String context);
@@ -43,8 +52,23 @@ public interface JobInstanceRepository {
 
     boolean report(String jobInstanceId, LocalDateTime lastReportAt);
 
+    /**
+     * 批量更新执行中 job 的上报时间
+     *
+     * @return 更新的数量
+     */
+    int report(Collection<String> jobInstanceIds, LocalDateTime lastReportAt);
+
     JobInstance getLatest(String planInstanceId, String jobId);
 
+    /**
+     * 获取实例下每个 job 最新一条 JobInstance 的状态
+     *
+     * @param instanceId 实例ID
+     * @return jobId, 状态
+     */
+    Map<String, JobStatus> getLatestStatuses(String instanceId);
+
     List<JobInstance> findByExecuteCheck(URL brokerUrl, LocalDateTime lastReportAtStart, LocalDateTime lastReportAtEnd, String startId, Integer limit);
 
     List<JobInstance> findInSchedule(URL brokerUrl, LocalDateTime lastReportAt, LocalDateTime triggerAt, String startId, Integer limit);
@@ -67,4 +91,15 @@ public interface JobInstanceRepository {
      */
     boolean updateBroker(String id, URL oldBrokerUrl, URL newBrokerUrl);
 
+    /**
+     * 按 slot 批量迁移 broker 下的 JobInstance
+     *
+     * @param oldBrokerUrl 旧的broker
+     * @param newBrokerUrl 新的broker
+     * @param slots        迁移的 slot
+     * @param fence        迁移时持有的锁凭证，凭证失效或为 null 时不迁移
+     * @return 迁移的数量
+     */
+    int updateBroker(URL oldBrokerUrl, URL newBrokerUrl, Collection<Integer> slots, LockFence fence);
+
 }
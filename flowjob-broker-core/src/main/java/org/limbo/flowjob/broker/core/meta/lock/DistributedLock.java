@@ -26,7 +26,8 @@ public interface DistributedLock {
 
     /**
      * 尝试加锁，如果锁被占有返回失败
-     * 可重入，已有锁对象可以重复加锁刷新锁的过期时间
+     * 可重入，已有锁对象可以重复加锁刷新锁的过期时间，释放次数与加锁次数相同时才真正释放
+     * 持有期间会在后台续期，直到释放
      *
      * @param name   锁名
      * @param expire 加锁时间/毫秒
@@ -40,4 +41,12 @@ public interface DistributedLock {
      * @param name 锁名
      */
     boolean unlock(String name);
+
+    /**
+     * 当前节点持有锁的凭证
+     *
+     * @param name 锁名
+     * @return 未持有锁时返回 null
+     */
+    LockFence fence(String name);
 }
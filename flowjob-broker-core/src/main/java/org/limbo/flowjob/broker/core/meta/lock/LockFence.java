@@ -0,0 +1,47 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.lock;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 持有锁时的凭证，每次重新获得锁 token 都会递增。
+ * 需要在持锁期间执行的写操作可以带上凭证，由存储层确认锁仍被持有后再写入，避免锁过期后旧持有者的写入覆盖新持有者。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class LockFence {
+
+    /**
+     * 锁名
+     */
+    private final String name;
+
+    /**
+     * 获得锁时的 token
+     */
+    private final long token;
+
+}
@@ -22,7 +22,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.constants.TriggerType;
-import org.limbo.flowjob.broker.core.agent.AgentRegistry;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
@@ -31,6 +30,7 @@ import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.meta.instance.DelayInstance;
 import org.limbo.flowjob.broker.core.meta.instance.DelayInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.instance.Instance;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceFactory;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
@@ -60,11 +60,12 @@ public class DelayInstanceProcessor extends InstanceProcessor {
     public DelayInstanceProcessor(MetaTaskScheduler metaTaskScheduler,
                                   IDGenerator idGenerator,
                                   NodeManger nodeManger,
-                                  AgentRegistry agentRegistry,
+                                  JobDispatcher jobDispatcher,
+                                  JobDeadlines jobDeadlines,
                                   TransactionService transactionService,
                                   DelayInstanceRepository delayInstanceRepository,
                                   JobInstanceRepository jobInstanceRepository) {
-        super(agentRegistry, nodeManger, idGenerator, metaTaskScheduler, transactionService, jobInstanceRepository);
+        super(jobDispatcher, jobDeadlines, nodeManger, idGenerator, metaTaskScheduler, transactionService, jobInstanceRepository);
         this.delayInstanceRepository = delayInstanceRepository;
     }
 
@@ -106,7 +107,7 @@ public class DelayInstanceProcessor extends InstanceProcessor {
         }
         if (CollectionUtils.isNotEmpty(scheduleContext.getWaitScheduleJobs())) {
             for (JobInstance jobInstance : scheduleContext.getWaitScheduleJobs()) {
-                JobInstanceTask metaTask = new JobInstanceTask(jobInstance, agentRegistry);
+                JobInstanceTask metaTask = new JobInstanceTask(jobInstance, jobDispatcher);
                 metaTaskScheduler.schedule(metaTask);
             }
         }
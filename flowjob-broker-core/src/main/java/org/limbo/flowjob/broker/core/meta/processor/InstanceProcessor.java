@@ -21,16 +21,15 @@ package org.limbo.flowjob.broker.core.meta.processor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.ExecuteResult;
-import org.limbo.flowjob.api.constants.JobStatus;
 import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.api.param.broker.JobFeedbackParam;
-import org.limbo.flowjob.broker.core.agent.AgentRegistry;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.meta.IDType;
 import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.meta.instance.Instance;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceFactory;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
@@ -52,7 +51,9 @@ import java.util.List;
 @Slf4j
 public abstract class InstanceProcessor {
 
-    protected final AgentRegistry agentRegistry;
+    protected final JobDispatcher jobDispatcher;
+
+    protected final JobDeadlines jobDeadlines;
 
     protected final NodeManger nodeManger;
 
@@ -64,13 +65,15 @@ public abstract class InstanceProcessor {
 
     protected final JobInstanceRepository jobInstanceRepository;
 
-    protected InstanceProcessor(AgentRegistry agentRegistry,
+    protected InstanceProcessor(JobDispatcher jobDispatcher,
+                                JobDeadlines jobDeadlines,
                                 NodeManger nodeManger,
                                 IDGenerator idGenerator,
                                 MetaTaskScheduler metaTaskScheduler,
                                 TransactionService transactionService,
                                 JobInstanceRepository jobInstanceRepository) {
-        this.agentRegistry = agentRegistry;
+        this.jobDispatcher = jobDispatcher;
+        this.jobDeadlines = jobDeadlines;
         this.nodeManger = nodeManger;
         this.idGenerator = idGenerator;
         this.metaTaskScheduler = metaTaskScheduler;
@@ -84,10 +87,14 @@ public abstract class InstanceProcessor {
     public boolean jobExecuting(String agentId, String jobInstanceId) {
         log.info("Receive Job executing info agentId={} jobInstanceId={}", agentId, jobInstanceId);
         JobInstance jobInstance = jobInstanceRepository.get(jobInstanceId);
-        return transactionService.transactional(() -> {
+        boolean executing = transactionService.transactional(() -> {
             instanceExecuting(jobInstance.getInstanceId());
             return jobInstanceRepository.executing(jobInstanceId, agentId, TimeUtils.currentLocalDateTime());
         });
+        if (executing) {
+            jobDeadlines.executing(jobInstanceId);
+        }
+        return executing;
     }
 
     /**
@@ -103,7 +110,11 @@ public abstract class InstanceProcessor {
      */
     public boolean jobReport(String jobInstanceId) {
         log.info("Receive Job report jobInstanceId={}", jobInstanceId);
-        return transactionService.transactional(() -> jobInstanceRepository.report(jobInstanceId, TimeUtils.currentLocalDateTime()));
+        boolean reported = transactionService.transactional(() -> jobInstanceRepository.report(jobInstanceId, TimeUtils.currentLocalDateTime()));
+        if (reported) {
+            jobDeadlines.report(jobInstanceId);
+        }
+        return reported;
     }
 
     /**
@@ -135,6 +146,7 @@ public abstract class InstanceProcessor {
                     throw new IllegalStateException("Unexpect execute result: " + param.getResult());
             }
         });
+        jobDeadlines.remove(jobInstanceId);
 
         asyncSchedule(scheduleContext);
     }
@@ -157,6 +169,7 @@ public abstract class InstanceProcessor {
         }
 
         DAG<WorkflowJobInfo> dag = instance.getDag();
+        JobProgress progress = jobProgress(instanceId);
 
         // 当前节点的子节点
         List<WorkflowJobInfo> subJobInfos = dag.subNodes(jobId);
@@ -164,7 +177,7 @@ public abstract class InstanceProcessor {
         if (CollectionUtils.isEmpty(subJobInfos)) {
             // 当前节点为叶子节点 检测 Plan 实例是否已经执行完成
             // 1. 所有节点都已经成功或者失败 2. 这里只关心plan的成功更新，失败是在task回调
-            if (checkJobsSuccess(instanceId, dag.lasts(), true)) {
+            if (progress.isSuccess(dag.lasts(), true)) {
                 handlerInstanceComplete(instanceId, true, scheduleContext);
             }
             return scheduleContext;
@@ -174,7 +187,7 @@ public abstract class InstanceProcessor {
             List<JobInstance> subJobInstances = new ArrayList<>();
             for (WorkflowJobInfo subJobInfo : subJobInfos) {
                 // 前置节点已经完成则可以下发
-                if (checkJobsSuccess(instanceId, dag.preNodes(subJobInfo.getId()), true) && TriggerType.SCHEDULE == subJobInfo.getTriggerType()) {
+                if (progress.isSuccess(dag.preNodes(subJobInfo.getId()), true) && TriggerType.SCHEDULE == subJobInfo.getTriggerType()) {
                     String jobInstanceId = idGenerator.generateId(IDType.JOB_INSTANCE);
                     Node elect = nodeManger.elect(jobInstanceId);
                     JobInstance subJobInstance = JobInstanceFactory.create(jobInstanceId, instanceId, instance.getType(), elect.getUrl(), instance.getAttributes(), jobInstance.getContext(), subJobInfo, triggerAt);
@@ -245,33 +258,19 @@ public abstract class InstanceProcessor {
      */
     protected abstract void asyncSchedule(ScheduleContext scheduleContext);
 
+    /**
+     * 实例下 job 的执行进度，第一次使用时加载
+     */
+    protected JobProgress jobProgress(String instanceId) {
+        return new JobProgress(instanceId, () -> jobInstanceRepository.getLatestStatuses(instanceId));
+    }
+
     /**
      * 校验 instance 下对应 job 的 jobInstance 是否都执行成功 或者失败了但是可以忽略失败
-     * todo 性能
      *
      * @param checkSkipWhenFail 和 continueWithFail 同时 true，当job执行失败，会认为执行成功
      */
     public boolean checkJobsSuccess(String planInstanceId, List<WorkflowJobInfo> jobInfos, boolean checkSkipWhenFail) {
-        if (CollectionUtils.isEmpty(jobInfos) || jobInfos.size() <= 1) {
-            return true;
-        }
-
-        for (WorkflowJobInfo jobInfo : jobInfos) {
-            JobInstance jobInstance = jobInstanceRepository.getLatest(planInstanceId, jobInfo.getId());
-            if (jobInstance == null) {
-                // 按新流程 job 应该统一创建 不存在有些job还未创建情况的
-                log.warn("job doesn't create completable in PlanInstance:{} where jobId:{}", planInstanceId, jobInfo.getId());
-                return false;
-            }
-            if (jobInstance.getStatus() == JobStatus.FAILED) {
-                if (!checkSkipWhenFail || !jobInfo.isSkipWhenFail()) {
-                    return false;
-                }
-
-            } else if (jobInstance.getStatus() != JobStatus.SUCCEED) {
-                return false; // 执行中
-            }
-        }
-        return true;
+        return jobProgress(planInstanceId).isSuccess(jobInfos, checkSkipWhenFail);
     }
 }
@@ -18,28 +18,144 @@
 
 package org.limbo.flowjob.broker.core.meta.processor;
 
-import org.limbo.flowjob.api.constants.rpc.HttpAgentApi;
+import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
-import org.limbo.flowjob.common.lb.LBStrategy;
-import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
-import org.limbo.flowjob.common.rpc.RPCInvocation;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
+ * agent 选择。心跳上报的 availableQueueLimit 是一个快照，两次心跳之间本地记录已下发的数量来估算剩余空位，
+ * 从剩余空位大于0的 agent 中随机取两个，选择剩余空位更多的一个（power of two choices）。
+ *
  * @author Devil
  * @since 2024/1/4
  */
 public class JobDispatchSelect {
 
-    private static final LBStrategy<ScheduleAgent> lbStrategy = new RoundRobinLBStrategy<>();
-
-    private static final RPCInvocation lbInvocation = RPCInvocation.builder()
-            .path(HttpAgentApi.API_JOB_RECEIVE)
-            .build();
+    /**
+     * agentId - 本次心跳之后的下发情况
+     */
+    private static final Map<String, AgentLoad> LOADS = new ConcurrentHashMap<>();
 
     public static ScheduleAgent select(List<ScheduleAgent> agents) {
-        return lbStrategy.select(agents, lbInvocation).orElse(null);
+        if (CollectionUtils.isEmpty(agents)) {
+            return null;
+        }
+
+        List<ScheduleAgent> candidates = new ArrayList<>(agents.size());
+        for (ScheduleAgent agent : agents) {
+            if (freeSlots(agent) > 0) {
+                candidates.add(agent);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        ScheduleAgent selected;
+        if (candidates.size() == 1) {
+            selected = candidates.get(0);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int i = random.nextInt(candidates.size());
+            int j = random.nextInt(candidates.size() - 1);
+            if (j >= i) {
+                j++;
+            }
+            ScheduleAgent a = candidates.get(i);
+            ScheduleAgent b = candidates.get(j);
+            selected = freeSlots(a) >= freeSlots(b) ? a : b;
+        }
+
+        load(selected).inflight.incrementAndGet();
+        pruneIfNecessary(agents);
+        return selected;
+    }
+
+    /**
+     * 下发失败，job 没有进入 agent 的队列，归还占用。
+     * agent 为选择时的快照，期间收到新的心跳已经重新计数的，不再归还
+     */
+    public static void release(ScheduleAgent agent, int count) {
+        AgentLoad load = LOADS.get(agent.getId());
+        if (load == null || !Objects.equals(load.heartbeatAt, agent.getLastHeartbeatAt())) {
+            return;
+        }
+        load.inflight.updateAndGet(inflight -> Math.max(inflight - count, 0));
+    }
+
+    /**
+     * job 被 agent 拒绝，认为 agent 已满，直到下次心跳前不再选择
+     */
+    public static void rejected(ScheduleAgent agent) {
+        AgentLoad load = LOADS.get(agent.getId());
+        if (load != null) {
+            load.saturated = true;
+        }
+    }
+
+    /**
+     * 估算的剩余空位
+     */
+    static int freeSlots(ScheduleAgent agent) {
+        Integer limit = agent.getAvailableQueueLimit();
+        if (limit == null || limit <= 0) {
+            return 0;
+        }
+        AgentLoad load = load(agent);
+        return load.saturated ? 0 : limit - load.inflight.get();
+    }
+
+    /**
+     * 心跳更新后 availableQueueLimit 已经是最新值，重新计数。只在选择时调用，旧的快照不会回退计数
+     */
+    private static AgentLoad load(ScheduleAgent agent) {
+        return LOADS.compute(agent.getId(), (id, load) -> {
+            if (load == null || isAfter(agent.getLastHeartbeatAt(), load.heartbeatAt)) {
+                return new AgentLoad(agent.getLastHeartbeatAt());
+            }
+            return load;
+        });
+    }
+
+    private static boolean isAfter(LocalDateTime heartbeatAt, LocalDateTime current) {
+        if (heartbeatAt == null) {
+            return false;
+        }
+        return current == null || heartbeatAt.isAfter(current);
+    }
+
+    /**
+     * 清理已下线 agent 的记录
+     */
+    private static void pruneIfNecessary(List<ScheduleAgent> agents) {
+        if (LOADS.size() <= agents.size() * 2 + 16) {
+            return;
+        }
+        Set<String> ids = agents.stream().map(ScheduleAgent::getId).collect(Collectors.toSet());
+        LOADS.keySet().retainAll(ids);
+    }
+
+    private static class AgentLoad {
+
+        private final LocalDateTime heartbeatAt;
+
+        private final AtomicInteger inflight = new AtomicInteger();
+
+        private volatile boolean saturated;
+
+        private AgentLoad(LocalDateTime heartbeatAt) {
+            this.heartbeatAt = heartbeatAt;
+        }
     }
 
 }
@@ -0,0 +1,264 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.processor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.api.constants.JobStatus;
+import org.limbo.flowjob.broker.core.agent.AgentRegistry;
+import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
+import org.limbo.flowjob.broker.core.meta.job.JobInstance;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 将 job 下发给 agent。同一个 agent 的 job 在 linger 时间内攒批，达到批次上限或等待超时后通过一次请求下发。
+ * 被 agent 拒绝的 job（如队列已满）会换一个 agent 再尝试一次，仍失败则等待 JobScheduleCheckTask 重新调度。
+ *
+ * @author Brozen
+ * @since 2024-03-18
+ */
+@Slf4j
+public class JobDispatcher {
+
+    private final AgentRegistry agentRegistry;
+
+    private final JobDeadlines jobDeadlines;
+
+    /**
+     * 攒批等待时间，毫秒，小于等于0时不攒批
+     */
+    private final long lingerMillis;
+
+    /**
+     * 单批次最大 job 数
+     */
+    private final int maxBatchSize;
+
+    /**
+     * agentId - 待下发的批次
+     */
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final Timer timer = new Timer("JobDispatcher-linger", true);
+
+    public JobDispatcher(AgentRegistry agentRegistry, JobDeadlines jobDeadlines, long lingerMillis, int maxBatchSize) {
+        this.agentRegistry = agentRegistry;
+        this.jobDeadlines = jobDeadlines;
+        this.lingerMillis = lingerMillis;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+    }
+
+    /**
+     * 下发job给agent
+     */
+    public void dispatch(JobInstance jobInstance) {
+        if (jobInstance.getStatus() == JobStatus.SCHEDULING) {
+            // 超时未开始执行由 JobScheduleCheckTask 重新调度
+            jobDeadlines.scheduling(jobInstance.getId());
+        }
+        dispatch(new Pending(jobInstance, null));
+    }
+
+    private void dispatch(Pending pending) {
+        JobInstance jobInstance = pending.jobInstance;
+        if (jobInstance.getStatus() != JobStatus.SCHEDULING) {
+            return;
+        }
+
+        // 选择 agent
+        List<ScheduleAgent> agents = agentRegistry.all().stream()
+                .filter(a -> a.getAvailableQueueLimit() > 0)
+                .filter(ScheduleAgent::isEnabled)
+                .filter(a -> !StringUtils.equals(a.getId(), pending.rejectedBy))
+                .collect(Collectors.toList());
+        ScheduleAgent agent = JobDispatchSelect.select(agents);
+        if (agent == null) {
+            // 状态检测的时候自动重试
+            if (log.isDebugEnabled()) {
+                log.debug("No alive server for job={}", jobInstance.getId());
+            }
+            return;
+        }
+
+        if (lingerMillis <= 0 || maxBatchSize <= 1) {
+            CommonThreadPool.IO.submit(() -> send(agent, Collections.singletonList(pending)));
+            return;
+        }
+
+        Batch batch = batches.computeIfAbsent(agent.getId(), id -> new Batch());
+        List<Pending> full = null;
+        LingerTask linger = null;
+        synchronized (batch) {
+            batch.agent = agent;
+            batch.pendings.add(pending);
+            if (batch.pendings.size() >= maxBatchSize) {
+                full = batch.drain();
+            } else if (batch.pendings.size() == 1) {
+                linger = new LingerTask(batch, batch.generation);
+                batch.linger = linger;
+            }
+        }
+
+        if (full != null) {
+            List<Pending> sending = full;
+            CommonThreadPool.IO.submit(() -> send(agent, sending));
+        } else if (linger != null) {
+            timer.schedule(linger, lingerMillis);
+        }
+    }
+
+    /**
+     * rpc 执行
+     */
+    private void send(ScheduleAgent agent, List<Pending> pendings) {
+        if (pendings.isEmpty()) {
+            return;
+        }
+
+        List<JobInstance> jobInstances = pendings.stream().map(p -> p.jobInstance).collect(Collectors.toList());
+        Map<String, Boolean> result;
+        try {
+            if (jobInstances.size() == 1) {
+                JobInstance jobInstance = jobInstances.get(0);
+                log.info("Try dispatch JobInstance id={} to agent={}", jobInstance.getId(), agent.getId());
+                // 可能存在接口超时导致重复下发，HttpBrokerApi.API_JOB_EXECUTING 由对应接口处理
+                result = Collections.singletonMap(jobInstance.getId(), agent.dispatch(jobInstance));
+            } else {
+                log.info("Try dispatch {} JobInstances to agent={}", jobInstances.size(), agent.getId());
+                result = agent.batchDispatch(jobInstances);
+            }
+        } catch (Exception e) {
+            log.error("Dispatch {} JobInstances to agent={} fail", jobInstances.size(), agent.getId(), e);
+            JobDispatchSelect.release(agent, jobInstances.size());
+            return;
+        }
+
+        int rejected = 0;
+        List<Pending> retries = new ArrayList<>();
+        for (Pending pending : pendings) {
+            String jobInstanceId = pending.jobInstance.getId();
+            boolean accepted = BooleanUtils.isTrue(result.get(jobInstanceId));
+            log.info("Dispatch JobInstance id={} to agent={} success={}", jobInstanceId, agent.getId(), accepted);
+            if (accepted) {
+                continue;
+            }
+            rejected++;
+            if (pending.rejectedBy == null) {
+                // 被拒绝时换一个 agent 重试一次
+                retries.add(new Pending(pending.jobInstance, agent.getId()));
+            }
+        }
+
+        // 拒绝的反馈给选择器，后续下发不再选中此 agent 直到下次心跳
+        if (rejected > 0) {
+            JobDispatchSelect.release(agent, rejected);
+            JobDispatchSelect.rejected(agent);
+        }
+        for (Pending retry : retries) {
+            dispatch(retry);
+        }
+    }
+
+    private static class Pending {
+
+        private final JobInstance jobInstance;
+
+        /**
+         * 拒绝过此 job 的 agent
+         */
+        private final String rejectedBy;
+
+        private Pending(JobInstance jobInstance, String rejectedBy) {
+            this.jobInstance = jobInstance;
+            this.rejectedBy = rejectedBy;
+        }
+    }
+
+    private static class Batch {
+
+        private ScheduleAgent agent;
+
+        private List<Pending> pendings = new ArrayList<>();
+
+        /**
+         * 每次下发后递增，用于识别已经过期的 linger 定时
+         */
+        private long generation;
+
+        /**
+         * 当前批次的 linger 定时
+         */
+        private LingerTask linger;
+
+        private List<Pending> drain() {
+            List<Pending> drained = pendings;
+            pendings = new ArrayList<>();
+            generation++;
+            if (linger != null) {
+                linger.cancel();
+                linger = null;
+            }
+            return drained;
+        }
+    }
+
+    private class LingerTask extends TimerTask {
+
+        private final Batch batch;
+
+        /**
+         * 创建时批次的 generation，批次已经下发过的不再处理
+         */
+        private final long generation;
+
+        private LingerTask(Batch batch, long generation) {
+            this.batch = batch;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            ScheduleAgent agent;
+            List<Pending> pendings;
+            synchronized (batch) {
+                // 批次已满提前下发，新的批次由自己的定时处理
+                if (batch.generation != generation) {
+                    return;
+                }
+                agent = batch.agent;
+                pendings = batch.drain();
+            }
+            if (!pendings.isEmpty()) {
+                CommonThreadPool.IO.submit(() -> send(agent, pendings));
+            }
+        }
+    }
+
+}
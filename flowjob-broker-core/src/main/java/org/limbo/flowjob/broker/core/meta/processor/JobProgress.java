@@ -0,0 +1,83 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.processor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.api.constants.JobStatus;
+import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 实例下各 job 最新状态的快照，第一次判断时通过一次查询加载，之后每条边的判断都是 O(1)。
+ * 同一个实例的 job 会分散到不同 broker 处理，因此快照只在一次反馈处理（实例已加锁）内有效，不跨事务缓存。
+ *
+ * @author Brozen
+ * @since 2024-03-18
+ */
+@Slf4j
+public class JobProgress {
+
+    private final String instanceId;
+
+    private final Supplier<Map<String, JobStatus>> loader;
+
+    private Map<String, JobStatus> statuses;
+
+    public JobProgress(String instanceId, Supplier<Map<String, JobStatus>> loader) {
+        this.instanceId = instanceId;
+        this.loader = loader;
+    }
+
+    /**
+     * 校验 job 是否都执行成功 或者失败了但是可以忽略失败
+     *
+     * @param checkSkipWhenFail 和 continueWithFail 同时 true，当job执行失败，会认为执行成功
+     */
+    public boolean isSuccess(List<WorkflowJobInfo> jobInfos, boolean checkSkipWhenFail) {
+        if (CollectionUtils.isEmpty(jobInfos) || jobInfos.size() <= 1) {
+            return true;
+        }
+
+        if (statuses == null) {
+            statuses = loader.get();
+        }
+        for (WorkflowJobInfo jobInfo : jobInfos) {
+            JobStatus status = statuses.get(jobInfo.getId());
+            if (status == null) {
+                // 按新流程 job 应该统一创建 不存在有些job还未创建情况的
+                log.warn("job doesn't create completable in PlanInstance:{} where jobId:{}", instanceId, jobInfo.getId());
+                return false;
+            }
+            if (status == JobStatus.FAILED) {
+                if (!checkSkipWhenFail || !jobInfo.isSkipWhenFail()) {
+                    return false;
+                }
+
+            } else if (status != JobStatus.SUCCEED) {
+                return false; // 执行中
+            }
+        }
+        return true;
+    }
+
+}
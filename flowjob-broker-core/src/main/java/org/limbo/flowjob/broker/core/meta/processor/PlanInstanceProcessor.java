@@ -25,7 +25,6 @@ import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.constants.ScheduleType;
 import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.api.param.broker.JobFeedbackParam;
-import org.limbo.flowjob.broker.core.agent.AgentRegistry;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.exceptions.VerifyException;
@@ -38,6 +37,7 @@ import org.limbo.flowjob.broker.core.meta.instance.Instance;
 import org.limbo.flowjob.broker.core.meta.instance.InstanceFactory;
 import org.limbo.flowjob.broker.core.meta.instance.PlanInstance;
 import org.limbo.flowjob.broker.core.meta.instance.PlanInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceFactory;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
@@ -55,8 +55,12 @@ import java.text.MessageFormat;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 处理整体调度的逻辑
@@ -74,12 +78,13 @@ public class PlanInstanceProcessor extends InstanceProcessor {
     public PlanInstanceProcessor(MetaTaskScheduler metaTaskScheduler,
                                  IDGenerator idGenerator,
                                  NodeManger nodeManger,
-                                 AgentRegistry agentRegistry,
+                                 JobDispatcher jobDispatcher,
+                                 JobDeadlines jobDeadlines,
                                  PlanRepository planRepository,
                                  TransactionService transactionService,
                                  PlanInstanceRepository planInstanceRepository,
                                  JobInstanceRepository jobInstanceRepository) {
-        super(agentRegistry, nodeManger, idGenerator, metaTaskScheduler, transactionService, jobInstanceRepository);
+        super(jobDispatcher, jobDeadlines, nodeManger, idGenerator, metaTaskScheduler, transactionService, jobInstanceRepository);
         this.planRepository = planRepository;
         this.planInstanceRepository = planInstanceRepository;
     }
@@ -96,38 +101,13 @@ public class PlanInstanceProcessor extends InstanceProcessor {
             // 悲观锁快速释放，不阻塞后续任务
             Plan currentPlan = planRepository.lockAndGet(plan.getId());
 
-            Verifies.notNull(currentPlan, MessageFormat.format("plan:{0} is null", planId));
-
-            // 判断任务配置信息是否变动：任务是由之前时间创建的 调度时候如果版本改变 可能会有调度时间的变化本次就无需执行
-            // 比如 5s 执行一次 分别在 5s 10s 15s 在11s的时候内存里下次执行为 15s 此时修改为 2s 执行一次 那么重新加载plan后应该为 12s 14s 所以15s这次可以跳过
-            Verifies.verify(Objects.equals(version, currentPlan.getVersion()), MessageFormat.format("plan:{0} version {1} change to {2}", planId, version, currentPlan.getVersion()));
-
-            ScheduleOption scheduleOption = currentPlan.getScheduleOption();
+            verifyPlan(plan, currentPlan, triggerType);
 
             // 判断是否由当前节点执行
             if (TriggerType.API != triggerType) {
-
-                Verifies.verify(currentPlan.isEnabled(), MessageFormat.format("plan:{0} is not enabled", planId));
-
                 // 校验是否重复创建
                 PlanInstance latelyPlanInstance = planInstanceRepository.getLatelyTrigger(planId, version, currentPlan.getScheduleOption().getScheduleType(), triggerType);
-                switch (scheduleOption.getScheduleType()) {
-                    case FIXED_RATE:
-                    case CRON:
-                        if (!(latelyPlanInstance == null || !triggerAt.isEqual(latelyPlanInstance.getTriggerAt()))) {
-                            throw new VerifyException(MessageFormat.format("Duplicate create PlanInstance,triggerAt:{0} planId[{1}] Version[{2}] oldPlanInstance[{3}]",
-                                    triggerAt, planId, version, latelyPlanInstance.getId()));
-                        }
-                        break;
-                    case FIXED_DELAY:
-                        if (!(latelyPlanInstance == null || (!triggerAt.isEqual(latelyPlanInstance.getTriggerAt()) && latelyPlanInstance.getStatus().isCompleted()))) {
-                            throw new VerifyException(MessageFormat.format("Please wait last PlanInstance[{0}] complete.Plan[{1}] Version[{2}]",
-                                    latelyPlanInstance.getId(), planId, version));
-                        }
-                        break;
-                    default:
-                        throw new VerifyException(MsgConstants.UNKNOWN + " scheduleType:" + currentPlan.getScheduleOption().getScheduleType());
-                }
+                verifyDuplicate(currentPlan, latelyPlanInstance, triggerAt);
             }
 
             String id = idGenerator.generateId(IDType.INSTANCE);
@@ -138,15 +118,7 @@ public class PlanInstanceProcessor extends InstanceProcessor {
 
             planInstanceRepository.save(planInstance);
 
-            // 获取头部节点
-            List<JobInstance> jobInstances = new ArrayList<>();
-            for (WorkflowJobInfo jobInfo : plan.getDag().origins()) {
-                if (TriggerType.SCHEDULE == jobInfo.getTriggerType()) {
-                    String jobInstanceId = idGenerator.generateId(IDType.JOB_INSTANCE);
-                    Node elect = nodeManger.elect(jobInstanceId);
-                    jobInstances.add(JobInstanceFactory.create(jobInstanceId, planInstance.getId(), planInstance.getType(), elect.getUrl(), attributes, new Attributes(), jobInfo, triggerAt));
-                }
-            }
+            List<JobInstance> jobInstances = createOriginJobs(plan, planInstance, attributes, triggerAt);
             jobInstanceRepository.saveAll(jobInstances);
             scheduleContext.setWaitScheduleJobs(jobInstances);
             return id;
@@ -156,6 +128,142 @@ public class PlanInstanceProcessor extends InstanceProcessor {
         return instanceId;
     }
 
+    /**
+     * 批量调度同一时刻触发的plan，在一个事务内批量加锁、校验并批量写入实例
+     * 单个plan校验失败不影响其它plan，对应结果中返回 VerifyException；整批写入失败时降级为逐个调度
+     *
+     * @return 按入参顺序返回每个plan的调度结果
+     */
+    public List<PlanScheduleResult> scheduleBatch(List<Plan> plans, TriggerType triggerType, LocalDateTime triggerAt) {
+        if (CollectionUtils.isEmpty(plans)) {
+            return Collections.emptyList();
+        }
+
+        ScheduleContext scheduleContext = new ScheduleContext();
+        List<PlanScheduleResult> results;
+        try {
+            results = transactionService.transactional(() -> doScheduleBatch(plans, triggerType, triggerAt, scheduleContext));
+        } catch (Exception e) {
+            log.warn("batch schedule plans fail size:{} triggerAt:{}, fallback to schedule one by one", plans.size(), triggerAt, e);
+            results = new ArrayList<>(plans.size());
+            for (Plan plan : plans) {
+                try {
+                    results.add(PlanScheduleResult.success(plan.getId(), schedule(plan, triggerType, new Attributes(), triggerAt)));
+                } catch (RuntimeException ex) {
+                    results.add(PlanScheduleResult.fail(plan.getId(), ex));
+                }
+            }
+            return results;
+        }
+
+        asyncSchedule(scheduleContext);
+        return results;
+    }
+
+    private List<PlanScheduleResult> doScheduleBatch(List<Plan> plans, TriggerType triggerType, LocalDateTime triggerAt, ScheduleContext scheduleContext) {
+        Set<String> planIds = plans.stream().map(Plan::getId).collect(Collectors.toSet());
+
+        // 按 planId 顺序加锁
+        Map<String, Plan> currentPlans = planRepository.lockAndGet(planIds).stream()
+                .collect(Collectors.toMap(Plan::getId, p -> p));
+
+        Map<String, PlanInstance> latelyPlanInstances = new HashMap<>();
+        if (TriggerType.API != triggerType) {
+            Map<String, String> planVersions = currentPlans.values().stream()
+                    .collect(Collectors.toMap(Plan::getId, Plan::getVersion));
+            latelyPlanInstances.putAll(planInstanceRepository.getLatelyTriggers(planVersions, triggerType));
+        }
+
+        List<PlanScheduleResult> results = new ArrayList<>(plans.size());
+        List<PlanInstance> planInstances = new ArrayList<>();
+        List<JobInstance> jobInstances = new ArrayList<>();
+        for (Plan plan : plans) {
+            try {
+                Plan currentPlan = currentPlans.get(plan.getId());
+                verifyPlan(plan, currentPlan, triggerType);
+                if (TriggerType.API != triggerType) {
+                    verifyDuplicate(currentPlan, latelyPlanInstances.get(plan.getId()), triggerAt);
+                }
+
+                Attributes attributes = new Attributes();
+                String id = idGenerator.generateId(IDType.INSTANCE);
+                PlanInstance planInstance = InstanceFactory.create(id, currentPlan, attributes, triggerAt);
+                planInstances.add(planInstance);
+                jobInstances.addAll(createOriginJobs(plan, planInstance, attributes, triggerAt));
+                // 同一批次内重复的plan也需要判重
+                latelyPlanInstances.put(plan.getId(), planInstance);
+                results.add(PlanScheduleResult.success(plan.getId(), id));
+            } catch (VerifyException e) {
+                results.add(PlanScheduleResult.fail(plan.getId(), e));
+            }
+        }
+
+        // 实例ID由 uk 保证唯一，冲突时整批回滚后降级逐个调度
+        planInstanceRepository.batchInsert(planInstances);
+        jobInstanceRepository.batchInsert(jobInstances);
+        scheduleContext.setWaitScheduleJobs(jobInstances);
+        return results;
+    }
+
+    /**
+     * 校验plan是否可以调度
+     */
+    private void verifyPlan(Plan plan, Plan currentPlan, TriggerType triggerType) {
+        String planId = plan.getId();
+        String version = plan.getVersion();
+
+        Verifies.notNull(currentPlan, MessageFormat.format("plan:{0} is null", planId));
+
+        // 判断任务配置信息是否变动：任务是由之前时间创建的 调度时候如果版本改变 可能会有调度时间的变化本次就无需执行
+        // 比如 5s 执行一次 分别在 5s 10s 15s 在11s的时候内存里下次执行为 15s 此时修改为 2s 执行一次 那么重新加载plan后应该为 12s 14s 所以15s这次可以跳过
+        Verifies.verify(Objects.equals(version, currentPlan.getVersion()), MessageFormat.format("plan:{0} version {1} change to {2}", planId, version, currentPlan.getVersion()));
+
+        if (TriggerType.API != triggerType) {
+            Verifies.verify(currentPlan.isEnabled(), MessageFormat.format("plan:{0} is not enabled", planId));
+        }
+    }
+
+    /**
+     * 校验是否重复创建
+     */
+    private void verifyDuplicate(Plan currentPlan, PlanInstance latelyPlanInstance, LocalDateTime triggerAt) {
+        String planId = currentPlan.getId();
+        String version = currentPlan.getVersion();
+        ScheduleOption scheduleOption = currentPlan.getScheduleOption();
+        switch (scheduleOption.getScheduleType()) {
+            case FIXED_RATE:
+            case CRON:
+                if (!(latelyPlanInstance == null || !triggerAt.isEqual(latelyPlanInstance.getTriggerAt()))) {
+                    throw new VerifyException(MessageFormat.format("Duplicate create PlanInstance,triggerAt:{0} planId[{1}] Version[{2}] oldPlanInstance[{3}]",
+                            triggerAt, planId, version, latelyPlanInstance.getId()));
+                }
+                break;
+            case FIXED_DELAY:
+                if (!(latelyPlanInstance == null || (!triggerAt.isEqual(latelyPlanInstance.getTriggerAt()) && latelyPlanInstance.getStatus().isCompleted()))) {
+                    throw new VerifyException(MessageFormat.format("Please wait last PlanInstance[{0}] complete.Plan[{1}] Version[{2}]",
+                            latelyPlanInstance.getId(), planId, version));
+                }
+                break;
+            default:
+                throw new VerifyException(MsgConstants.UNKNOWN + " scheduleType:" + scheduleOption.getScheduleType());
+        }
+    }
+
+    /**
+     * 获取头部节点 生成对应的 JobInstance
+     */
+    private List<JobInstance> createOriginJobs(Plan plan, PlanInstance planInstance, Attributes attributes, LocalDateTime triggerAt) {
+        List<JobInstance> jobInstances = new ArrayList<>();
+        for (WorkflowJobInfo jobInfo : plan.getDag().origins()) {
+            if (TriggerType.SCHEDULE == jobInfo.getTriggerType()) {
+                String jobInstanceId = idGenerator.generateId(IDType.JOB_INSTANCE);
+                Node elect = nodeManger.elect(jobInstanceId);
+                jobInstances.add(JobInstanceFactory.create(jobInstanceId, planInstance.getId(), planInstance.getType(), elect.getUrl(), attributes, new Attributes(), jobInfo, triggerAt));
+            }
+        }
+        return jobInstances;
+    }
+
     /**
      * api 方式下发节点任务
      */
@@ -255,7 +363,7 @@ public class PlanInstanceProcessor extends InstanceProcessor {
         }
         if (CollectionUtils.isNotEmpty(scheduleContext.getWaitScheduleJobs())) {
             for (JobInstance jobInstance : scheduleContext.getWaitScheduleJobs()) {
-                JobInstanceTask metaTask = new JobInstanceTask(jobInstance, agentRegistry);
+                JobInstanceTask metaTask = new JobInstanceTask(jobInstance, jobDispatcher);
                 metaTaskScheduler.schedule(metaTask);
             }
         }
@@ -0,0 +1,61 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.processor;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 批量调度中单个plan的调度结果
+ *
+ * @author Brozen
+ * @since 2024-03-15
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class PlanScheduleResult {
+
+    private final String planId;
+
+    /**
+     * 创建的 PlanInstance ID，失败时为空
+     */
+    private final String instanceId;
+
+    /**
+     * 失败原因，校验不通过时为 VerifyException
+     */
+    private final RuntimeException error;
+
+    public static PlanScheduleResult success(String planId, String instanceId) {
+        return new PlanScheduleResult(planId, instanceId, null);
+    }
+
+    public static PlanScheduleResult fail(String planId, RuntimeException error) {
+        return new PlanScheduleResult(planId, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+}
@@ -21,9 +21,11 @@ package org.limbo.flowjob.broker.core.meta.task;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.ExecuteResult;
+import org.limbo.flowjob.api.constants.JobStatus;
 import org.limbo.flowjob.api.param.broker.JobFeedbackParam;
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.processor.InstanceProcessor;
@@ -38,6 +40,7 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -47,6 +50,7 @@ import java.util.TimerTask;
  * 1. agent服务真实下线
  * 2. agent服务假死
  * 3. agent完成job调用broker的接口失败
+ * 本节点下发的 job 通过 JobDeadlines 检测上报超时，启动或 slot 分配变化后以及每隔一段时间扫表兜底
  */
 @Slf4j
 public class JobExecuteCheckTask {
@@ -59,18 +63,27 @@ public class JobExecuteCheckTask {
 
     private final InstanceProcessorFactory instanceProcessorFactory;
 
+    private final JobDeadlines jobDeadlines;
+
+    /**
+     * 扫表兜底的间隔
+     */
+    private static final Duration RECOVER_INTERVAL = Duration.ofMinutes(5);
+
     public JobExecuteCheckTask(JobInstanceRepository jobInstanceRepository,
                                Broker broker,
                                NodeManger nodeManger,
-                               InstanceProcessorFactory instanceProcessorFactory) {
+                               InstanceProcessorFactory instanceProcessorFactory,
+                               JobDeadlines jobDeadlines) {
         this.jobInstanceRepository = jobInstanceRepository;
         this.broker = broker;
         this.nodeManger = nodeManger;
         this.instanceProcessorFactory = instanceProcessorFactory;
+        this.jobDeadlines = jobDeadlines;
     }
 
     public void init() {
-        new Timer().schedule(new InnerTask(), 0, Duration.ofSeconds(5).toMillis());
+        new Timer().schedule(new InnerTask(), 0, Duration.ofSeconds(1).toMillis());
     }
 
     private class InnerTask extends TimerTask {
@@ -80,6 +93,13 @@ public class JobExecuteCheckTask {
          */
         private LocalDateTime lastCheckTime = LocalDateTimeUtils.parse("2000-01-01 00:00:00", Formatters.YMD_HMS);
 
+        /**
+         * 上次扫表时间
+         */
+        private LocalDateTime lastRecoverTime;
+
+        private long lastSlotVersion = -1;
+
         @Override
         public void run() {
             try {
@@ -88,35 +108,78 @@ public class JobExecuteCheckTask {
                     return;
                 }
 
-                LocalDateTime checkStartTime = lastCheckTime.plusSeconds(-1);
-                LocalDateTime checkEndTime = TimeUtils.currentLocalDateTime().plus(-(JobConstant.JOB_REPORT_SECONDS + 5), ChronoUnit.SECONDS);
-
-                Integer limit = 100;
-                String startId = "";
-                List<JobInstance> jobInstances = jobInstanceRepository.findByExecuteCheck(broker.getRpcBaseURL(), checkStartTime, checkEndTime, startId, limit);
-                while (CollectionUtils.isNotEmpty(jobInstances)) {
-                    for (JobInstance instance : jobInstances) {
-                        CommonThreadPool.IO.submit(() -> {
-                            try {
-                                JobFeedbackParam param = JobFeedbackParam.builder()
-                                        .result(ExecuteResult.FAILED)
-                                        .errorMsg(String.format("agent %s is offline", instance.getAgentId()))
-                                        .build();
-                                InstanceProcessor processor = instanceProcessorFactory.getProcessor(instance.getInstanceType());
-                                processor.feedback(instance.getId(), param);
-                            } catch (Exception e) {
-                                log.error("[JobExecuteCheckTask] handler job fail with error jobInstanceId={}", instance.getId(), e);
-                            }
-                        });
-                    }
-                    startId = jobInstances.get(jobInstances.size() - 1).getId();
-                    jobInstances = jobInstanceRepository.findByExecuteCheck(broker.getRpcBaseURL(), checkStartTime, checkEndTime, startId, limit);
+                checkDeadlines();
+
+                LocalDateTime currentTime = TimeUtils.currentLocalDateTime();
+                long slotVersion = nodeManger.slotVersion();
+                if (lastRecoverTime == null || slotVersion != lastSlotVersion || !lastRecoverTime.plus(RECOVER_INTERVAL).isAfter(currentTime)) {
+                    recover();
+                    lastRecoverTime = currentTime;
+                    lastSlotVersion = slotVersion;
                 }
-                lastCheckTime = checkEndTime;
             } catch (Exception e) {
                 log.error("[{}] execute fail", this.getClass().getSimpleName(), e);
             }
         }
+
+        /**
+         * 处理上报超时的 job，上报可能由其它 broker 处理，需要以数据库中的上报时间为准
+         */
+        private void checkDeadlines() {
+            List<String> jobInstanceIds = jobDeadlines.expiredExecuting(100);
+            while (CollectionUtils.isNotEmpty(jobInstanceIds)) {
+                long now = TimeUtils.currentInstant().toEpochMilli();
+                for (String jobInstanceId : jobInstanceIds) {
+                    JobInstance jobInstance = jobInstanceRepository.get(jobInstanceId);
+                    if (jobInstance == null || jobInstance.getStatus() != JobStatus.EXECUTING
+                            || !Objects.equals(String.valueOf(jobInstance.getBrokerUrl()), broker.getRpcBaseURL().toString())) {
+                        continue;
+                    }
+                    LocalDateTime lastActiveAt = jobInstance.lastActiveAt();
+                    if (lastActiveAt != null && TimeUtils.toTimestamp(lastActiveAt) + JobDeadlines.REPORT_TIMEOUT > now) {
+                        jobDeadlines.executing(jobInstanceId, lastActiveAt);
+                        continue;
+                    }
+                    handleTimeout(jobInstance);
+                }
+                jobInstanceIds = jobDeadlines.expiredExecuting(100);
+            }
+        }
+
+        /**
+         * 扫表处理未被记录的 job，如重启前或从其它 broker 迁移过来的
+         */
+        private void recover() {
+            LocalDateTime checkStartTime = lastCheckTime.plusSeconds(-1);
+            LocalDateTime checkEndTime = TimeUtils.currentLocalDateTime().plus(-(JobConstant.JOB_REPORT_SECONDS + 5), ChronoUnit.SECONDS);
+
+            Integer limit = 100;
+            String startId = "";
+            List<JobInstance> jobInstances = jobInstanceRepository.findByExecuteCheck(broker.getRpcBaseURL(), checkStartTime, checkEndTime, startId, limit);
+            while (CollectionUtils.isNotEmpty(jobInstances)) {
+                for (JobInstance instance : jobInstances) {
+                    handleTimeout(instance);
+                }
+                startId = jobInstances.get(jobInstances.size() - 1).getId();
+                jobInstances = jobInstanceRepository.findByExecuteCheck(broker.getRpcBaseURL(), checkStartTime, checkEndTime, startId, limit);
+            }
+            lastCheckTime = checkEndTime;
+        }
+
+        private void handleTimeout(JobInstance instance) {
+            CommonThreadPool.IO.submit(() -> {
+                try {
+                    JobFeedbackParam param = JobFeedbackParam.builder()
+                            .result(ExecuteResult.FAILED)
+                            .errorMsg(String.format("agent %s is offline", instance.getAgentId()))
+                            .build();
+                    InstanceProcessor processor = instanceProcessorFactory.getProcessor(instance.getInstanceType());
+                    processor.feedback(instance.getId(), param);
+                } catch (Exception e) {
+                    log.error("[JobExecuteCheckTask] handler job fail with error jobInstanceId={}", instance.getId(), e);
+                }
+            });
+        }
     }
 
 }
@@ -20,11 +20,13 @@ package org.limbo.flowjob.broker.core.meta.task;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
-import org.limbo.flowjob.broker.core.agent.AgentRegistry;
+import org.limbo.flowjob.api.constants.JobStatus;
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.processor.JobDispatcher;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
@@ -32,11 +34,13 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Objects;
 import java.util.Timer;
 import java.util.TimerTask;
 
 /**
  * 处理长时间还在调度中，未进行下发的 JobInstance
+ * 本节点下发的 job 通过 JobDeadlines 检测超时，启动或 slot 分配变化后以及每隔一段时间扫表兜底
  */
 @Slf4j
 public class JobScheduleCheckTask {
@@ -47,30 +51,43 @@ public class JobScheduleCheckTask {
 
     private final NodeManger nodeManger;
 
-    private final AgentRegistry agentRegistry;
+    private final JobDispatcher jobDispatcher;
+
+    private final JobDeadlines jobDeadlines;
 
     private final JobInstanceRepository jobInstanceRepository;
 
     public static final long INTERVAL = 10000; // 10s
 
+    /**
+     * 扫表兜底的间隔
+     */
+    private static final Duration RECOVER_INTERVAL = Duration.ofMinutes(5);
+
     public JobScheduleCheckTask(MetaTaskScheduler scheduler,
                                 Broker broker,
                                 NodeManger nodeManger,
-                                AgentRegistry agentRegistry,
+                                JobDispatcher jobDispatcher,
+                                JobDeadlines jobDeadlines,
                                 JobInstanceRepository jobInstanceRepository) {
         this.scheduler = scheduler;
         this.broker = broker;
         this.nodeManger = nodeManger;
-        this.agentRegistry = agentRegistry;
+        this.jobDispatcher = jobDispatcher;
+        this.jobDeadlines = jobDeadlines;
         this.jobInstanceRepository = jobInstanceRepository;
     }
 
     public void init() {
-        new Timer().schedule(new InnerTask(), 0, Duration.ofMillis(INTERVAL).toMillis());
+        new Timer().schedule(new InnerTask(), 0, Duration.ofSeconds(1).toMillis());
     }
 
     private class InnerTask extends TimerTask {
 
+        private LocalDateTime lastRecoverTime;
+
+        private long lastSlotVersion = -1;
+
         @Override
         public void run() {
             try {
@@ -79,24 +96,61 @@ public class JobScheduleCheckTask {
                     return;
                 }
 
-                // 一段时候后还是 还是 SCHEDULING 状态的，需要重新调度
-                Integer limit = 100;
-                String startId = "";
-                LocalDateTime currentTime = TimeUtils.currentLocalDateTime();
+                checkDeadlines();
 
-                List<JobInstance> jobInstances = jobInstanceRepository.findInSchedule(broker.getRpcBaseURL(), currentTime.plus(-INTERVAL, ChronoUnit.MILLIS), currentTime, startId, limit);
-                while (CollectionUtils.isNotEmpty(jobInstances)) {
-                    for (JobInstance jobInstance : jobInstances) {
-                        JobInstanceTask metaTask = new JobInstanceTask(jobInstance, agentRegistry);
-                        scheduler.schedule(metaTask);
-                    }
-                    startId = jobInstances.get(jobInstances.size() - 1).getId();
-                    jobInstances = jobInstanceRepository.findInSchedule(broker.getRpcBaseURL(), currentTime.plus(-INTERVAL, ChronoUnit.MILLIS), currentTime, startId, limit);
+                LocalDateTime currentTime = TimeUtils.currentLocalDateTime();
+                long slotVersion = nodeManger.slotVersion();
+                if (lastRecoverTime == null || slotVersion != lastSlotVersion || !lastRecoverTime.plus(RECOVER_INTERVAL).isAfter(currentTime)) {
+                    recover(currentTime);
+                    lastRecoverTime = currentTime;
+                    lastSlotVersion = slotVersion;
                 }
             } catch (Exception e) {
                 log.error("[{}] execute fail", this.getClass().getSimpleName(), e);
             }
         }
+
+        /**
+         * 处理下发后超时未开始执行的 job
+         */
+        private void checkDeadlines() {
+            List<String> jobInstanceIds = jobDeadlines.expiredScheduling(100);
+            while (CollectionUtils.isNotEmpty(jobInstanceIds)) {
+                for (String jobInstanceId : jobInstanceIds) {
+                    JobInstance jobInstance = jobInstanceRepository.get(jobInstanceId);
+                    if (jobInstance == null || !Objects.equals(String.valueOf(jobInstance.getBrokerUrl()), broker.getRpcBaseURL().toString())) {
+                        continue;
+                    }
+                    if (jobInstance.getStatus() == JobStatus.SCHEDULING) {
+                        scheduler.schedule(new JobInstanceTask(jobInstance, jobDispatcher));
+                    } else if (jobInstance.getStatus() == JobStatus.EXECUTING) {
+                        // 开始执行的请求可能由其它 broker 处理
+                        LocalDateTime lastActiveAt = jobInstance.lastActiveAt();
+                        jobDeadlines.executing(jobInstanceId, lastActiveAt != null ? lastActiveAt : TimeUtils.currentLocalDateTime());
+                    }
+                }
+                jobInstanceIds = jobDeadlines.expiredScheduling(100);
+            }
+        }
+
+        /**
+         * 扫表处理未被记录的 job，如重启前或从其它 broker 迁移过来的
+         */
+        private void recover(LocalDateTime currentTime) {
+            // 一段时候后还是 还是 SCHEDULING 状态的，需要重新调度
+            Integer limit = 100;
+            String startId = "";
+
+            List<JobInstance> jobInstances = jobInstanceRepository.findInSchedule(broker.getRpcBaseURL(), currentTime.plus(-INTERVAL, ChronoUnit.MILLIS), currentTime, startId, limit);
+            while (CollectionUtils.isNotEmpty(jobInstances)) {
+                for (JobInstance jobInstance : jobInstances) {
+                    JobInstanceTask metaTask = new JobInstanceTask(jobInstance, jobDispatcher);
+                    scheduler.schedule(metaTask);
+                }
+                startId = jobInstances.get(jobInstances.size() - 1).getId();
+                jobInstances = jobInstanceRepository.findInSchedule(broker.getRpcBaseURL(), currentTime.plus(-INTERVAL, ChronoUnit.MILLIS), currentTime, startId, limit);
+            }
+        }
     }
 
 }
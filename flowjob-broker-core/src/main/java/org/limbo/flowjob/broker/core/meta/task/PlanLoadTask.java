@@ -19,37 +19,63 @@
 package org.limbo.flowjob.broker.core.meta.task;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.broker.core.cluster.Broker;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
 import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.info.PlanChange;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
-import org.limbo.flowjob.common.utils.time.Formatters;
-import org.limbo.flowjob.common.utils.time.LocalDateTimeUtils;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
+import java.net.URL;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 获取plan下发
- * 第一次会获取所有的，后续则获取近期更新的
+ * 第一次会获取所有的，后续则按 broker 的变更序号消费 plan 变更日志。
+ * 变更序号在写入时分配，并发事务中较小的序号可能较晚提交，游标只推进到提交窗口之外，窗口内已消费的变更记录下来避免重复处理
  */
 @Slf4j
 public class PlanLoadTask {
 
+    /**
+     * 每次拉取的变更数量
+     */
+    private static final int CHANGE_LIMIT = 500;
+
+    /**
+     * 变更的提交窗口，记录时间早于此窗口的变更认为所在事务已经结束
+     */
+    private static final Duration CHANGE_COMMIT_WINDOW = Duration.ofSeconds(10);
+
     private final MetaTaskScheduler scheduler;
 
     private final PlanRepository planRepository;
 
+    private final PlanChangeRepository planChangeRepository;
+
     private final PlanInstanceProcessor processor;
 
+    private final PlanScheduleGroupRegistry groupRegistry;
+
     /**
      * 当前节点
      */
@@ -57,53 +83,206 @@ public class PlanLoadTask {
 
     private final NodeManger nodeManger;
 
+    /**
+     * 启动时按页加载的每页数量
+     */
+    private final int loadPageSize;
+
+    /**
+     * 启动时并行组装的页数
+     */
+    private final int loadParallelism;
+
+    /**
+     * 单独调度的plan planId - scheduleId
+     */
+    private final Map<String, String> scheduleIds = new ConcurrentHashMap<>();
+
+    /**
+     * 已消费的变更序号，为空时需要全量加载。不大于此序号的变更都已消费
+     */
+    private Long sequence;
+
+    /**
+     * 大于 sequence 但已经消费的变更序号，位于提交窗口内
+     */
+    private final Set<Long> consumedSequences = new HashSet<>();
+
     public PlanLoadTask(MetaTaskScheduler scheduler,
                         PlanRepository planRepository,
+                        PlanChangeRepository planChangeRepository,
                         PlanInstanceProcessor processor,
+                        PlanScheduleGroupRegistry groupRegistry,
                         Broker broker,
-                        NodeManger nodeManger) {
+                        NodeManger nodeManger,
+                        int loadPageSize,
+                        int loadParallelism) {
         this.scheduler = scheduler;
         this.planRepository = planRepository;
+        this.planChangeRepository = planChangeRepository;
         this.processor = processor;
+        this.groupRegistry = groupRegistry;
         this.broker = broker;
         this.nodeManger = nodeManger;
+        this.loadPageSize = loadPageSize;
+        this.loadParallelism = Math.max(loadParallelism, 1);
     }
 
     public void init() {
         new Timer().schedule(new InnerTask(), 0, Duration.ofSeconds(1).toMillis());
     }
 
-    private class InnerTask extends TimerTask {
+    /**
+     * 调度plan 调度配置相同的plan合并调度
+     */
+    private void schedule(Plan plan) {
+        unschedule(plan.getId());
+        if (TriggerType.SCHEDULE != plan.getTriggerType() || !plan.isEnabled()) {
+            return;
+        }
+        if (groupRegistry.schedule(plan)) {
+            return;
+        }
+        PlanScheduleTask metaTask = new PlanScheduleTask(plan, processor, scheduler);
+        scheduler.schedule(metaTask);
+        scheduleIds.put(plan.getId(), metaTask.scheduleId());
+    }
 
-        private LocalDateTime loadTimePoint = LocalDateTimeUtils.parse("2000-01-01 00:00:00", Formatters.YMD_HMS);
+    private void unschedule(String planId) {
+        String scheduleId = scheduleIds.remove(planId);
+        if (scheduleId != null) {
+            scheduler.unschedule(scheduleId);
+        }
+        groupRegistry.unschedule(planId);
+    }
 
-        @Override
-        public void run() {
-            try {
-                // 判断自己是否存在 --- 可能由于心跳异常导致不存活
-                if (!nodeManger.alive(broker.getRpcBaseURL().toString())) {
-                    return;
+    /**
+     * 第一次全量加载，后续增量消费变更。由定时任务单线程调用
+     */
+    public void load() {
+        // 判断自己是否存在 --- 可能由于心跳异常导致不存活
+        if (!nodeManger.alive(broker.getRpcBaseURL().toString())) {
+            return;
+        }
+
+        if (sequence == null) {
+            loadAll();
+        } else {
+            loadChanges();
+        }
+    }
+
+    /**
+     * 启动时全量加载 按 planId 分页，每页组装完成后立即调度，不需要等所有plan加载完
+     */
+    private void loadAll() {
+        // 窗口内的变更可能还未全部提交，全量加载后重新消费
+        long latest = planChangeRepository.latestSequence(TimeUtils.currentLocalDateTime().minus(CHANGE_COMMIT_WINDOW));
+        URL brokerUrl = broker.getRpcBaseURL();
+        Deque<CompletableFuture<Void>> loadings = new ArrayDeque<>();
+        String startId = "";
+        int count = 0;
+        while (true) {
+            List<String> planIds = planRepository.findEnabledIds(brokerUrl, startId, loadPageSize);
+            if (planIds.isEmpty()) {
+                break;
+            }
+            // 控制并行组装的页数
+            while (loadings.size() >= loadParallelism) {
+                loadings.poll().join();
+            }
+            loadings.add(CompletableFuture.runAsync(() -> {
+                for (Plan plan : planRepository.list(planIds)) {
+                    schedule(plan);
                 }
+            }, CommonThreadPool.IO));
 
-                // 调度当前时间以及未来的任务
-                List<Plan> plans = planRepository.loadUpdatedPlans(broker.getRpcBaseURL(), loadTimePoint.plusSeconds(-1)); // 防止部分延迟导致变更丢失
-                loadTimePoint = TimeUtils.currentLocalDateTime();
-                if (CollectionUtils.isEmpty(plans)) {
-                    return;
+            count += planIds.size();
+            if (planIds.size() < loadPageSize) {
+                break;
+            }
+            startId = planIds.get(planIds.size() - 1);
+        }
+        // 有失败的页时抛出异常 下次重新全量加载
+        loadings.forEach(CompletableFuture::join);
+        sequence = latest;
+        consumedSequences.clear();
+        log.info("[PlanLoadTask] load plans count:{} sequence:{}", count, latest);
+    }
+
+    /**
+     * 增量消费变更，游标按序号推进到第一个位于提交窗口内的变更之前，窗口内已消费的变更下次跳过
+     */
+    private void loadChanges() {
+        LocalDateTime committedBefore = TimeUtils.currentLocalDateTime().minus(CHANGE_COMMIT_WINDOW);
+        long readSequence = sequence;
+        boolean committed = true;
+        while (true) {
+            List<PlanChange> changes = planChangeRepository.findAfter(broker.getRpcBaseURL(), readSequence, CHANGE_LIMIT);
+            if (changes.isEmpty()) {
+                break;
+            }
+            Set<String> planIds = new LinkedHashSet<>();
+            for (PlanChange change : changes) {
+                if (!consumedSequences.contains(change.getSequence())) {
+                    planIds.add(change.getPlanId());
                 }
-                for (Plan plan : plans) {
-                    PlanScheduleTask metaTask = new PlanScheduleTask(plan, processor, scheduler);
-                    // 移除老的
-                    scheduler.unschedule(metaTask.scheduleId());
-                    // 调度新的
-                    if (TriggerType.SCHEDULE == plan.getTriggerType() && plan.isEnabled()) {
-                        scheduler.schedule(metaTask);
-                    }
+            }
+
+            reload(planIds);
+
+            for (PlanChange change : changes) {
+                committed = committed && change.getChangedAt().isBefore(committedBefore);
+                if (committed) {
+                    sequence = change.getSequence();
+                } else {
+                    consumedSequences.add(change.getSequence());
                 }
+            }
+            readSequence = changes.get(changes.size() - 1).getSequence();
+
+            if (changes.size() < CHANGE_LIMIT) {
+                break;
+            }
+        }
+        consumedSequences.removeIf(s -> s <= sequence);
+    }
+
+    /**
+     * 按最新状态重新调度变更的plan
+     */
+    private void reload(Collection<String> planIds) {
+        if (planIds.isEmpty()) {
+            return;
+        }
+        String brokerUrl = broker.getRpcBaseURL().toString();
+        Set<String> unloaded = new HashSet<>(planIds);
+        for (Plan plan : planRepository.list(planIds)) {
+            unloaded.remove(plan.getId());
+            // 已经迁移到其它节点
+            if (plan.getBrokerUrl() == null || !Objects.equals(brokerUrl, plan.getBrokerUrl().toString())) {
+                unschedule(plan.getId());
+            } else {
+                schedule(plan);
+            }
+        }
+        // 已经删除
+        for (String planId : unloaded) {
+            unschedule(planId);
+        }
+    }
+
+    private class InnerTask extends TimerTask {
+
+        @Override
+        public void run() {
+            try {
+                load();
             } catch (Exception e) {
-                log.error("[{}] execute fail", this.getClass().getSimpleName(), e);
+                log.error("[PlanLoadTask] execute fail", e);
             }
         }
+
     }
 
 }
@@ -0,0 +1,208 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 将调度配置相同的 Plan 合并为一个 {@link PlanScheduleGroupTask}，减少时间轮上的任务数以及触发时间的计算。
+ * 目前支持 CRON（相同表达式）以及 FIXED_RATE（相同间隔且下次触发时间对齐），FIXED_DELAY 依赖每个 Plan 的执行反馈，不做合并。
+ * FIXED_RATE 的下次触发时间与单独调度时一致，由各个 Plan 的上次触发时间或开始时间计算。
+ *
+ * @author Brozen
+ * @since 2024-03-14
+ */
+@Slf4j
+public class PlanScheduleGroupRegistry {
+
+    private static final long SECOND_MILLIS = 1000;
+
+    private final MetaTaskScheduler metaTaskScheduler;
+
+    private final PlanInstanceProcessor processor;
+
+    /**
+     * 是否开启合并
+     */
+    private final boolean enabled;
+
+    /**
+     * 触发时每批次处理的plan数量
+     */
+    private final int fanOutBatchSize;
+
+    /**
+     * groupKey - group
+     */
+    private final Map<String, PlanScheduleGroupTask> groups = new HashMap<>();
+
+    /**
+     * planId - groupKey
+     */
+    private final Map<String, String> planGroups = new HashMap<>();
+
+    public PlanScheduleGroupRegistry(MetaTaskScheduler metaTaskScheduler, PlanInstanceProcessor processor,
+                                     boolean enabled, int fanOutBatchSize) {
+        this.metaTaskScheduler = metaTaskScheduler;
+        this.processor = processor;
+        this.enabled = enabled;
+        this.fanOutBatchSize = Math.max(fanOutBatchSize, 1);
+    }
+
+    /**
+     * 将plan加入对应的分组，如果分组不存在则创建并注册到时间轮
+     *
+     * @return 是否加入分组，不支持分组的plan返回false，需要单独调度
+     */
+    public synchronized boolean schedule(Plan plan) {
+        String groupKey = enabled ? groupKey(plan) : null;
+
+        // 调度配置变化的plan需要从原分组移除
+        String oldGroupKey = planGroups.get(plan.getId());
+        if (oldGroupKey != null && !oldGroupKey.equals(groupKey)) {
+            removeFromGroup(plan.getId(), oldGroupKey, null);
+        }
+        if (groupKey == null) {
+            return false;
+        }
+
+        LocalDateTime nextTriggerAt = nextTriggerAt(plan);
+        PlanScheduleGroupTask group = groups.get(groupKey);
+        if (group == null) {
+            group = new PlanScheduleGroupTask(groupKey, groupScheduleOption(plan.getScheduleOption(), nextTriggerAt), fanOutBatchSize, processor, this, metaTaskScheduler);
+            groups.put(groupKey, group);
+            metaTaskScheduler.schedule(group);
+        }
+        group.addPlan(plan, nextTriggerAt);
+        planGroups.put(plan.getId(), groupKey);
+        return true;
+    }
+
+    /**
+     * 将plan从所在分组移除，分组为空时从时间轮移除
+     */
+    public synchronized void unschedule(String planId) {
+        unschedule(planId, null);
+    }
+
+    /**
+     * 将plan从所在分组移除，分组为空时从时间轮移除
+     *
+     * @param version 不为空时只有分组中的plan为此版本才移除
+     */
+    synchronized void unschedule(String planId, String version) {
+        String groupKey = planGroups.get(planId);
+        if (groupKey == null) {
+            return;
+        }
+        removeFromGroup(planId, groupKey, version);
+    }
+
+    private void removeFromGroup(String planId, String groupKey, String version) {
+        PlanScheduleGroupTask group = groups.get(groupKey);
+        if (group == null || !group.removePlan(planId, version)) {
+            return;
+        }
+        planGroups.remove(planId);
+        if (group.isEmpty()) {
+            groups.remove(groupKey);
+            metaTaskScheduler.unschedule(group.scheduleId());
+        }
+    }
+
+    /**
+     * @return 分组数
+     */
+    public synchronized int groupCount() {
+        return groups.size();
+    }
+
+    /**
+     * 计算plan所属的分组
+     *
+     * @return 不支持分组返回null
+     */
+    public static String groupKey(Plan plan) {
+        ScheduleOption scheduleOption = plan.getScheduleOption();
+        if (scheduleOption == null || scheduleOption.getScheduleType() == null) {
+            return null;
+        }
+        switch (scheduleOption.getScheduleType()) {
+            case CRON:
+                if (scheduleOption.getScheduleCron() == null || scheduleOption.getScheduleCronType() == null) {
+                    return null;
+                }
+                return ScheduleType.CRON.name() + ":" + scheduleOption.getScheduleCronType() + ":" + scheduleOption.getScheduleCron();
+            case FIXED_RATE:
+                long interval = scheduleOption.getScheduleInterval().toMillis();
+                // 触发时间精确到秒，间隔非整秒的无法对齐
+                if (interval <= 0 || interval % SECOND_MILLIS != 0) {
+                    return null;
+                }
+                long phase = Math.floorMod(TimeUtils.toInstant(nextTriggerAt(plan)).toEpochMilli(), interval);
+                return ScheduleType.FIXED_RATE.name() + ":" + interval + ":" + phase;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * plan 单独调度时的下次触发时间，FIXED_RATE 有上次触发时间的在其基础上加间隔，否则取开始时间，不早于当前时间，精确到秒
+     *
+     * @return 非 FIXED_RATE 返回null
+     */
+    static LocalDateTime nextTriggerAt(Plan plan) {
+        ScheduleOption scheduleOption = plan.getScheduleOption();
+        if (ScheduleType.FIXED_RATE != scheduleOption.getScheduleType()) {
+            return null;
+        }
+        long next;
+        if (plan.getLatelyTriggerAt() != null) {
+            next = TimeUtils.toInstant(plan.getLatelyTriggerAt()).toEpochMilli() + scheduleOption.getScheduleInterval().toMillis();
+        } else {
+            Duration delay = scheduleOption.getScheduleDelay();
+            next = TimeUtils.toInstant(scheduleOption.getScheduleStartAt()).toEpochMilli() + (delay == null ? 0 : delay.toMillis());
+        }
+        next = Math.max(next, TimeUtils.currentInstant().toEpochMilli());
+        return TimeUtils.toLocalDateTime(next - Math.floorMod(next, SECOND_MILLIS));
+    }
+
+    /**
+     * 分组使用的调度配置，不包含各个plan的开始结束时间，FIXED_RATE 从首个加入的plan的下次触发时间起按间隔对齐
+     */
+    private static ScheduleOption groupScheduleOption(ScheduleOption scheduleOption, LocalDateTime nextTriggerAt) {
+        if (ScheduleType.FIXED_RATE == scheduleOption.getScheduleType()) {
+            return new ScheduleOption(ScheduleType.FIXED_RATE, nextTriggerAt, null, Duration.ZERO, scheduleOption.getScheduleInterval(), null, null);
+        }
+        return new ScheduleOption(scheduleOption.getScheduleType(), null, null, Duration.ZERO, null,
+                scheduleOption.getScheduleCron(), scheduleOption.getScheduleCronType());
+    }
+
+}
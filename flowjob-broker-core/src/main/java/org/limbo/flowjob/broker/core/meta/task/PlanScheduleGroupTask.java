@@ -0,0 +1,234 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.meta.task;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.Lists;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.api.constants.TriggerType;
+import org.limbo.flowjob.broker.core.exceptions.VerifyException;
+import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.meta.processor.PlanScheduleResult;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.LoopMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 调度配置相同的一组 Plan，时间轮上只注册一个任务，触发时分批为组内的 Plan 创建 Instance
+ *
+ * @author Brozen
+ * @since 2024-03-14
+ */
+@Slf4j
+public class PlanScheduleGroupTask extends LoopMetaTask {
+
+    /**
+     * 分组标识 {@link PlanScheduleGroupRegistry#groupKey(Plan)}
+     */
+    @Getter
+    private final String groupKey;
+
+    /**
+     * 组内的plan planId - plan
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+    /**
+     * FIXED_RATE 的plan加入分组时计算的下次触发时间，在此之前的触发跳过 planId - triggerAt
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final Map<String, LocalDateTime> firstTriggerAts = new ConcurrentHashMap<>();
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final PlanInstanceProcessor processor;
+
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final PlanScheduleGroupRegistry registry;
+
+    /**
+     * 每批次触发的plan数量
+     */
+    private final int fanOutBatchSize;
+
+    public PlanScheduleGroupTask(String groupKey, ScheduleOption scheduleOption, int fanOutBatchSize,
+                                 PlanInstanceProcessor processor, PlanScheduleGroupRegistry registry,
+                                 MetaTaskScheduler metaTaskScheduler) {
+        super(null, null, scheduleOption, metaTaskScheduler);
+        this.groupKey = groupKey;
+        this.fanOutBatchSize = fanOutBatchSize;
+        this.processor = processor;
+        this.registry = registry;
+    }
+
+    /**
+     * 加入plan
+     * @param plan plan
+     * @param nextTriggerAt plan 单独调度时的下次触发时间，为空时不校验
+     */
+    void addPlan(Plan plan, LocalDateTime nextTriggerAt) {
+        plans.put(plan.getId(), plan);
+        if (nextTriggerAt == null) {
+            firstTriggerAts.remove(plan.getId());
+        } else {
+            firstTriggerAts.put(plan.getId(), nextTriggerAt);
+        }
+    }
+
+    /**
+     * 移除plan
+     * @param planId planId
+     * @param version 为空时不校验版本
+     */
+    boolean removePlan(String planId, String version) {
+        boolean removed;
+        if (version == null) {
+            removed = plans.remove(planId) != null;
+        } else {
+            Plan plan = plans.get(planId);
+            removed = plan != null && version.equals(plan.getVersion()) && plans.remove(planId, plan);
+        }
+        if (removed) {
+            firstTriggerAts.remove(planId);
+        }
+        return removed;
+    }
+
+    boolean isEmpty() {
+        return plans.isEmpty();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    @Override
+    protected void executeTask() {
+        LocalDateTime triggerAt = getLastTriggerAt();
+        List<Plan> members = new ArrayList<>(plans.values());
+        for (List<Plan> batch : Lists.partition(members, fanOutBatchSize)) {
+            CommonThreadPool.IO.submit(() -> trigger(batch, triggerAt));
+        }
+    }
+
+    /**
+     * 为一批plan创建instance
+     */
+    private void trigger(List<Plan> batch, LocalDateTime triggerAt) {
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        Map<String, Plan> duePlans = new LinkedHashMap<>();
+        for (Plan plan : batch) {
+            ScheduleOption scheduleOption = plan.getScheduleOption();
+            LocalDateTime scheduleEndAt = scheduleOption.getScheduleEndAt();
+            if (scheduleEndAt != null && scheduleEndAt.isBefore(now)) {
+                continue;
+            }
+            // 同组的 FIXED_RATE plan 开始时间、上次触发时间可能不同，未到自身的触发时间不触发
+            LocalDateTime firstTriggerAt = firstTriggerAts.get(plan.getId());
+            if (firstTriggerAt != null && firstTriggerAt.isAfter(triggerAt)) {
+                continue;
+            }
+            duePlans.put(plan.getId(), plan);
+        }
+        if (duePlans.isEmpty()) {
+            return;
+        }
+
+        List<PlanScheduleResult> results;
+        try {
+            results = processor.scheduleBatch(new ArrayList<>(duePlans.values()), TriggerType.SCHEDULE, triggerAt);
+        } catch (Exception e) {
+            log.error("{} batch size {} execute fail", scheduleId(), duePlans.size(), e);
+            return;
+        }
+
+        for (PlanScheduleResult result : results) {
+            if (result.isSuccess()) {
+                continue;
+            }
+            Plan plan = duePlans.get(result.getPlanId());
+            if (result.getError() instanceof VerifyException) {
+                log.error("{} plan {} schedule verify fail", scheduleId(), plan.getId(), result.getError());
+                registry.unschedule(plan.getId(), plan.getVersion());
+            } else {
+                log.error("{} plan {} execute fail", scheduleId(), plan.getId(), result.getError());
+            }
+        }
+    }
+
+    @Override
+    public LocalDateTime calNextTriggerAt() {
+        ScheduleOption scheduleOption = getScheduleOption();
+        if (ScheduleType.FIXED_RATE != scheduleOption.getScheduleType()) {
+            LocalDateTime triggerAt = super.calNextTriggerAt();
+            return triggerAt.truncatedTo(ChronoUnit.SECONDS);  // 这里获取到的是毫秒 转为秒
+        }
+
+        // 按首个plan的触发时间对齐 取不早于当前秒的第一个触发点，与plan单独调度时的触发时间一致
+        long interval = scheduleOption.getScheduleInterval().toMillis();
+        long phase = TimeUtils.toInstant(scheduleOption.getScheduleStartAt()).toEpochMilli();
+        long from = TimeUtils.currentInstant().toEpochMilli();
+        from = from - Math.floorMod(from, 1000L);
+        LocalDateTime lastTriggerAt = getLastTriggerAt();
+        if (lastTriggerAt != null) {
+            from = Math.max(from, TimeUtils.toInstant(lastTriggerAt).toEpochMilli() + 1);
+        }
+        long next = from + Math.floorMod(phase - from, interval);
+        return TimeUtils.toLocalDateTime(next);
+    }
+
+    @Override
+    public String getType() {
+        return "Plan_Group";
+    }
+
+    @Override
+    public String getMetaId() {
+        return groupKey;
+    }
+
+}
@@ -29,13 +29,19 @@ import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.broker.core.exceptions.VerifyException;
 import org.limbo.flowjob.broker.core.meta.info.Plan;
 import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.meta.processor.PlanScheduleResult;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.LoopMetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 调度PLan的信息创建Instance
@@ -88,8 +94,7 @@ public class PlanScheduleTask extends LoopMetaTask {
             } else {
                 triggerAt = getLastTriggerAt();
             }
-            LocalDateTime scheduleEndAt = getScheduleOption().getScheduleEndAt();
-            if (scheduleEndAt != null && scheduleEndAt.isBefore(TimeUtils.currentLocalDateTime())) {
+            if (scheduleEnded()) {
                 return;
             }
 
@@ -103,6 +108,73 @@ public class PlanScheduleTask extends LoopMetaTask {
         }
     }
 
+    /**
+     * FIXED_RATE、CRON 的 plan 在同一批到期时合并创建实例，FIXED_DELAY 需要等待上次执行完成，单独执行
+     */
+    @Override
+    public Object batchKey() {
+        if (plan == null || getScheduleOption() == null) {
+            return null;
+        }
+        ScheduleType scheduleType = getScheduleOption().getScheduleType();
+        return ScheduleType.FIXED_RATE == scheduleType || ScheduleType.CRON == scheduleType ? processor : null;
+    }
+
+    /**
+     * 同一批到期的 plan 按触发时间分组，每组在一个事务中创建实例
+     */
+    @Override
+    public void executeBatch(List<MetaTask> tasks) {
+        Map<LocalDateTime, List<PlanScheduleTask>> triggers = new LinkedHashMap<>();
+        for (MetaTask task : tasks) {
+            PlanScheduleTask planTask = (PlanScheduleTask) task;
+            planTask.advanceFixedRate();
+            if (planTask.scheduleEnded()) {
+                planTask.feedback();
+                continue;
+            }
+            triggers.computeIfAbsent(planTask.getLastTriggerAt(), k -> new ArrayList<>()).add(planTask);
+        }
+        for (Map.Entry<LocalDateTime, List<PlanScheduleTask>> entry : triggers.entrySet()) {
+            scheduleBatch(entry.getValue(), entry.getKey());
+        }
+    }
+
+    private void scheduleBatch(List<PlanScheduleTask> tasks, LocalDateTime triggerAt) {
+        List<Plan> plans = new ArrayList<>(tasks.size());
+        for (PlanScheduleTask task : tasks) {
+            plans.add(task.getPlan());
+        }
+        try {
+            // 结果与入参顺序一致
+            List<PlanScheduleResult> results = processor.scheduleBatch(plans, TriggerType.SCHEDULE, triggerAt);
+            for (int i = 0; i < results.size(); i++) {
+                PlanScheduleResult result = results.get(i);
+                if (result.isSuccess()) {
+                    continue;
+                }
+                PlanScheduleTask task = tasks.get(i);
+                if (result.getError() instanceof VerifyException) {
+                    log.error("{} schedule verify fail", task.scheduleId(), result.getError());
+                    metaTaskScheduler.unschedule(task.scheduleId());
+                } else {
+                    log.error("{} execute fail", task.scheduleId(), result.getError());
+                }
+            }
+        } catch (Exception e) {
+            log.error("plan batch size {} triggerAt {} execute fail", plans.size(), triggerAt, e);
+        } finally {
+            for (PlanScheduleTask task : tasks) {
+                task.feedback();
+            }
+        }
+    }
+
+    private boolean scheduleEnded() {
+        LocalDateTime scheduleEndAt = getScheduleOption().getScheduleEndAt();
+        return scheduleEndAt != null && scheduleEndAt.isBefore(TimeUtils.currentLocalDateTime());
+    }
+
     @Override
     public LocalDateTime calNextTriggerAt() {
         LocalDateTime triggerAt = super.calNextTriggerAt();
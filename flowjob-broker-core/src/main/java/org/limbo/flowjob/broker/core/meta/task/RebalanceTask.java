@@ -21,14 +21,22 @@ package org.limbo.flowjob.broker.core.meta.task;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
+import org.limbo.flowjob.broker.core.cluster.BrokerSlots;
 import org.limbo.flowjob.broker.core.cluster.Node;
 import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.cluster.SlotRepository;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
 import org.limbo.flowjob.broker.core.meta.lock.DistributedLock;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.net.URL;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
@@ -42,33 +50,166 @@ import java.util.stream.Collectors;
 @Slf4j
 public class RebalanceTask {
 
+    /**
+     * plan 变更日志保留时长
+     */
+    private static final Duration PLAN_CHANGE_RETENTION = Duration.ofDays(1);
+
+    private static final Duration PLAN_CHANGE_CLEAN_INTERVAL = Duration.ofHours(1);
+
+    private static final String SLOT_LOCK = "SLOT_LOCK";
+
     private final NodeManger nodeManger;
 
     private final DistributedLock lock;
 
     private final PlanRepository planRepository;
 
+    private final PlanChangeRepository planChangeRepository;
+
     private final JobInstanceRepository jobInstanceRepository;
 
+    private final SlotRepository slotRepository;
+
     public RebalanceTask(NodeManger nodeManger,
                          DistributedLock lock,
                          PlanRepository planRepository,
-                         JobInstanceRepository jobInstanceRepository) {
+                         PlanChangeRepository planChangeRepository,
+                         JobInstanceRepository jobInstanceRepository,
+                         SlotRepository slotRepository) {
         this.nodeManger = nodeManger;
         this.lock = lock;
         this.planRepository = planRepository;
+        this.planChangeRepository = planChangeRepository;
         this.jobInstanceRepository = jobInstanceRepository;
+        this.slotRepository = slotRepository;
     }
 
     public void init() {
         new Timer().schedule(new InnerTask(), 0, Duration.ofSeconds(10).toMillis());
     }
 
+    /**
+     * 重新分配 slot 并刷新本节点的 slot 归属。由定时任务单线程调用
+     */
+    public void rebalance() {
+        rebalanceSlots();
+
+        nodeManger.refreshSlots(slotRepository.findAll());
+    }
+
+    /**
+     * 按存活节点重新分配 slot，slot 归属变化时将 plan、job 按 slot 批量迁移到新的 broker，保证数据的 broker 与 slot 归属一致。
+     * 迁移后到其它节点刷新 slot 归属前，新建的数据仍可能写到旧的 broker，调度按数据的 broker 进行，这部分数据由旧的 broker 继续负责。
+     */
+    private void rebalanceSlots() {
+        if (!lock.tryLock(SLOT_LOCK, 15000)) {
+            return;
+        }
+        try {
+            LockFence fence = lock.fence(SLOT_LOCK);
+            if (fence == null) {
+                // 加锁后续期失败 已经被其它节点获得
+                log.warn("[RebalanceTask] slot lock lost before rebalance");
+                return;
+            }
+            Map<Integer, URL> current = slotRepository.findAll();
+            Map<Integer, URL> changed = new HashMap<>();
+            Map<String, URL> oldUrls = new HashMap<>();
+            Map<String, Map<String, List<Integer>>> movedSlots = new HashMap<>();
+            Map<String, URL> ownerUrls = new HashMap<>();
+            Map<String, List<Integer>> ownerSlots = new HashMap<>();
+            for (int slot = 0; slot < BrokerSlots.SLOT_COUNT; slot++) {
+                Node node = nodeManger.assignSlot(slot);
+                if (node == null) {
+                    continue;
+                }
+                String owner = node.getUrl().toString();
+                ownerUrls.put(owner, node.getUrl());
+                ownerSlots.computeIfAbsent(owner, k -> new ArrayList<>()).add(slot);
+                URL old = current.get(slot);
+                if (old == null || !owner.equals(old.toString())) {
+                    changed.put(slot, node.getUrl());
+                    // 旧的 broker 仍存活 由 rebalance 主动迁移
+                    if (old != null && nodeManger.alive(old.toString())) {
+                        oldUrls.put(old.toString(), old);
+                        movedSlots.computeIfAbsent(old.toString(), k -> new HashMap<>())
+                                .computeIfAbsent(owner, k -> new ArrayList<>()).add(slot);
+                    }
+                }
+            }
+
+            migrateDeadBrokers(ownerUrls, ownerSlots, fence);
+            migrateLiveBrokers(oldUrls, ownerUrls, movedSlots, fence);
+
+            // 数据迁移完成后再更新分配，迁移期间锁被其它节点获得则放弃
+            if (MapUtils.isNotEmpty(changed) && slotRepository.save(changed, fence)) {
+                log.info("[RebalanceTask] reassign slot count:{}", changed.size());
+            }
+        } finally {
+            lock.unlock(SLOT_LOCK);
+        }
+    }
+
+    private void migrateDeadBrokers(Map<String, URL> ownerUrls, Map<String, List<Integer>> ownerSlots, LockFence fence) {
+        while (true) {
+            List<URL> brokerUrls = nodeManger.allAlive().stream().map(Node::getUrl).collect(Collectors.toList());
+            Map<String, URL> deadBrokers = new HashMap<>();
+            collectDeadBrokers(planRepository.findNotInBrokers(brokerUrls, 100), deadBrokers);
+            collectDeadBrokers(jobInstanceRepository.findNotInBrokers(brokerUrls, 100), deadBrokers);
+            if (MapUtils.isEmpty(deadBrokers)) {
+                return;
+            }
+
+            int moved = 0;
+            for (URL dead : deadBrokers.values()) {
+                for (Map.Entry<String, List<Integer>> entry : ownerSlots.entrySet()) {
+                    URL owner = ownerUrls.get(entry.getKey());
+                    int plans = planRepository.updateBroker(dead, owner, entry.getValue(), fence);
+                    int jobs = jobInstanceRepository.updateBroker(dead, owner, entry.getValue(), fence);
+                    if (plans > 0 || jobs > 0) {
+                        log.info("[RebalanceTask] move from {} to {} plans:{} jobs:{}", dead, owner, plans, jobs);
+                    }
+                    moved += plans + jobs;
+                }
+            }
+            if (moved <= 0) {
+                return;
+            }
+        }
+    }
+
+    private void migrateLiveBrokers(Map<String, URL> oldUrls, Map<String, URL> ownerUrls,
+                                    Map<String, Map<String, List<Integer>>> movedSlots, LockFence fence) {
+        for (Map.Entry<String, Map<String, List<Integer>>> moved : movedSlots.entrySet()) {
+            URL old = oldUrls.get(moved.getKey());
+            for (Map.Entry<String, List<Integer>> entry : moved.getValue().entrySet()) {
+                URL owner = ownerUrls.get(entry.getKey());
+                int plans = planRepository.updateBroker(old, owner, entry.getValue(), fence);
+                int jobs = jobInstanceRepository.updateBroker(old, owner, entry.getValue(), fence);
+                log.info("[RebalanceTask] move slots:{} from {} to {} plans:{} jobs:{}", entry.getValue().size(), old, owner, plans, jobs);
+            }
+        }
+    }
+
+    private void collectDeadBrokers(Map<String, URL> notInBrokers, Map<String, URL> deadBrokers) {
+        if (MapUtils.isEmpty(notInBrokers)) {
+            return;
+        }
+        for (URL url : notInBrokers.values()) {
+            // 如果重新上线了需要忽略
+            if (url == null || nodeManger.alive(url.toString())) {
+                continue;
+            }
+            deadBrokers.put(url.toString(), url);
+        }
+    }
+
     private class InnerTask extends TimerTask {
 
-        private static final String PLAN_LOCK = "PLAN_LOCK";
+        private static final String PLAN_CHANGE_LOCK = "PLAN_CHANGE_LOCK";
 
-        private static final String JOB_LOCK = "JOB_LOCK";
+        private LocalDateTime planChangeCleanAt;
 
         @Override
         public void run() {
@@ -78,67 +219,33 @@ public class RebalanceTask {
                     return;
                 }
 
-                rebalancePlan();
+                rebalance();
 
-                rebalanceJob();
+                cleanPlanChange();
 
             } catch (Exception e) {
                 log.error("[RebalanceTask] run fail", e);
             }
         }
 
-        private void rebalancePlan() {
-            while (true) {
-                if (!lock.tryLock(PLAN_LOCK, 5000)) {
-                    return;
-                }
-
-                List<URL> brokerUrls = nodeManger.allAlive().stream().map(Node::getUrl).collect(Collectors.toList());
-                Map<String, URL> notInBrokers = planRepository.findNotInBrokers(brokerUrls, 100);
-                if (MapUtils.isEmpty(notInBrokers)) {
-                    lock.unlock(PLAN_LOCK);
-                    return;
-                }
-
-                for (Map.Entry<String, URL> entry : notInBrokers.entrySet()) {
-                    String planId = entry.getKey();
-                    URL url = entry.getValue();
-                    // 如果重新上线了需要忽略
-                    if (url != null && nodeManger.alive(url.toString())) {
-                        continue;
-                    }
-                    Node elect = nodeManger.elect(planId);
-                    planRepository.updateBroker(planId, url, elect.getUrl());
-                }
-                lock.unlock(PLAN_LOCK);
+        /**
+         * 清理过期的 plan 变更日志
+         */
+        private void cleanPlanChange() {
+            LocalDateTime now = TimeUtils.currentLocalDateTime();
+            if (planChangeCleanAt != null && planChangeCleanAt.plus(PLAN_CHANGE_CLEAN_INTERVAL).isAfter(now)) {
+                return;
             }
-        }
-
-        private void rebalanceJob() {
-            while (true) {
-                if (!lock.tryLock(JOB_LOCK, 5000)) {
-                    return;
-                }
-
-                List<URL> brokerUrls = nodeManger.allAlive().stream().map(Node::getUrl).collect(Collectors.toList());
-                Map<String, URL> notInBrokers = jobInstanceRepository.findNotInBrokers(brokerUrls, 100);
-                if (MapUtils.isEmpty(notInBrokers)) {
-                    lock.unlock(JOB_LOCK);
-                    return;
-                }
-
-                for (Map.Entry<String, URL> entry : notInBrokers.entrySet()) {
-                    String jobInstanceId = entry.getKey();
-                    URL url = entry.getValue();
-                    // 如果重新上线了需要忽略
-                    if (url != null && nodeManger.alive(url.toString())) {
-                        continue;
-                    }
-                    Node elect = nodeManger.elect(jobInstanceId);
-                    jobInstanceRepository.updateBroker(jobInstanceId, url, elect.getUrl());
-                }
-                lock.unlock(JOB_LOCK);
+            if (!lock.tryLock(PLAN_CHANGE_LOCK, 5000)) {
+                return;
+            }
+            try {
+                int count = planChangeRepository.clean(now.minus(PLAN_CHANGE_RETENTION));
+                log.info("[RebalanceTask] clean plan change count:{}", count);
+            } finally {
+                lock.unlock(PLAN_CHANGE_LOCK);
             }
+            planChangeCleanAt = now;
         }
 
     }
@@ -18,21 +18,31 @@ package org.limbo.flowjob.broker.core.schedule.calculator;
 
 import com.cronutils.model.Cron;
 import com.cronutils.model.CronType;
-import com.cronutils.model.definition.CronDefinition;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.model.time.ExecutionTime;
 import com.cronutils.parser.CronParser;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.extern.slf4j.Slf4j;
 import org.limbo.flowjob.api.constants.ScheduleType;
 import org.limbo.flowjob.broker.core.schedule.Calculated;
 import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
 import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
 
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * CRON调度时间计算器
+ * 解析后的 {@link ExecutionTime} 会按 cron + cronType 缓存，触发计算时不再重复解析表达式
  *
  * @author Brozen
  * @since 2021-05-21
@@ -40,6 +50,24 @@ import java.util.Optional;
 @Slf4j
 public class CronScheduleCalculator extends ScheduleCalculator {
 
+    /**
+     * 缓存的表达式上限
+     */
+    private static final int MAX_CACHED_CRON = 10000;
+
+    /**
+     * 各类型cron的解析器，解析器是线程安全的
+     */
+    private static final Map<CronType, CronParser> PARSERS = new ConcurrentHashMap<>();
+
+    /**
+     * 已解析的表达式 key 为 cronType + cron
+     */
+    private static final Cache<String, ExecutionTime> EXECUTION_TIMES = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_CRON)
+            .recordStats()
+            .build();
+
     protected CronScheduleCalculator() {
         super(ScheduleType.CRON);
     }
@@ -56,7 +84,7 @@ public class CronScheduleCalculator extends ScheduleCalculator {
         String cron = scheduleOption.getScheduleCron();
         String cronType = scheduleOption.getScheduleCronType();
         try {
-            ExecutionTime executionTime = ExecutionTime.forCron(getCron(cron, cronType));
+            ExecutionTime executionTime = getExecutionTime(cron, cronType);
 
             // 解析下次触发时间
             Optional<ZonedDateTime> nextSchedule = executionTime.nextExecution(ZonedDateTime.now());
@@ -71,10 +99,59 @@ public class CronScheduleCalculator extends ScheduleCalculator {
         }
     }
 
+    /**
+     * 计算某个时间点之后的 N 次触发时间
+     *
+     * @param cron     cron表达式
+     * @param cronType cron表达式类型 {@link CronType}
+     * @param from     开始时间戳 不包含
+     * @param count    计算的次数
+     * @return 升序的触发时间戳，如果后续没有触发时间，数组长度会小于 count
+     */
+    public static long[] nextExecutions(String cron, String cronType, long from, int count) {
+        ExecutionTime executionTime = getExecutionTime(cron, cronType);
+        long[] executions = new long[count];
+        ZonedDateTime current = Instant.ofEpochMilli(from).atZone(ZoneId.systemDefault());
+        int size = 0;
+        while (size < count) {
+            Optional<ZonedDateTime> next = executionTime.nextExecution(current);
+            if (!next.isPresent()) {
+                break;
+            }
+            current = next.get();
+            executions[size++] = current.toInstant().toEpochMilli();
+        }
+        return size == count ? executions : Arrays.copyOf(executions, size);
+    }
+
+    /**
+     * 获取已解析的表达式，不存在则解析后放入缓存
+     *
+     * @throws IllegalArgumentException 表达式无法解析
+     */
+    public static ExecutionTime getExecutionTime(String cron, String cronType) {
+        try {
+            return EXECUTION_TIMES.get(cronType + ":" + cron, () -> ExecutionTime.forCron(getCron(cron, cronType)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause);
+        }
+    }
+
+    /**
+     * 表达式缓存命中情况
+     */
+    public static CacheStats cacheStats() {
+        return EXECUTION_TIMES.stats();
+    }
+
     public static Cron getCron(String cron, String cronType) {
         // 校验CRON表达式
-        CronDefinition cronDefinition = CronDefinitionBuilder.instanceDefinitionFor(CronType.valueOf(cronType));
-        CronParser parser = new CronParser(cronDefinition);
+        CronParser parser = PARSERS.computeIfAbsent(CronType.valueOf(cronType),
+                type -> new CronParser(CronDefinitionBuilder.instanceDefinitionFor(type)));
         return parser.parse(cron);
     }
 
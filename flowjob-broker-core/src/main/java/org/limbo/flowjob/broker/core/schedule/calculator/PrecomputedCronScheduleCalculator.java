@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.limbo.flowjob.broker.core.schedule.calculator;
+
+import org.limbo.flowjob.broker.core.schedule.Calculated;
+import org.limbo.flowjob.broker.core.schedule.DelegatedScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+
+import java.time.Clock;
+
+/**
+ * 预先计算后续 N 次触发时间的CRON计算器，每个调度对象持有一个实例。
+ * 触发时从预计算的时间环中取下一个时间点，取完后再批量计算，稳定运行时不需要每次都进行计算。
+ *
+ * @author Brozen
+ * @since 2024-03-12
+ */
+public class PrecomputedCronScheduleCalculator extends DelegatedScheduleCalculator {
+
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * 每次预计算的触发次数
+     */
+    private final int precomputeSize;
+
+    /**
+     * 判断触发时间是否已经过去时使用的时钟
+     */
+    private final Clock clock;
+
+    /**
+     * 预计算的触发时间
+     */
+    private long[] fireTimes = EMPTY;
+
+    /**
+     * 下一个未使用的触发时间下标
+     */
+    private int cursor;
+
+    /**
+     * 预计算时使用的表达式，表达式变化后需要重新计算
+     */
+    private String cronKey;
+
+    public PrecomputedCronScheduleCalculator(ScheduleCalculator delegated, int precomputeSize) {
+        this(delegated, precomputeSize, Clock.systemDefaultZone());
+    }
+
+    public PrecomputedCronScheduleCalculator(ScheduleCalculator delegated, int precomputeSize, Clock clock) {
+        super(delegated);
+        this.precomputeSize = precomputeSize;
+        this.clock = clock;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param calculated 待调度对象
+     * @return
+     */
+    @Override
+    public Long calculate(Calculated calculated) {
+        return doCalculate(calculated);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param calculated 待调度对象
+     * @return
+     */
+    @Override
+    public synchronized Long doCalculate(Calculated calculated) {
+        ScheduleOption scheduleOption = calculated.scheduleOption();
+        String cron = scheduleOption.getScheduleCron();
+        String cronType = scheduleOption.getScheduleCronType();
+        String key = cronType + ":" + cron;
+        if (!key.equals(cronKey)) {
+            cronKey = key;
+            fireTimes = EMPTY;
+            cursor = 0;
+        }
+
+        // 跳过已经过去的时间点
+        long now = clock.millis();
+        while (cursor < fireTimes.length) {
+            long fireTime = fireTimes[cursor++];
+            if (fireTime > now) {
+                return fireTime;
+            }
+        }
+
+        // 时间环已用完 重新计算
+        try {
+            fireTimes = CronScheduleCalculator.nextExecutions(cron, cronType, now, precomputeSize);
+        } catch (Exception e) {
+            fireTimes = EMPTY;
+            return super.doCalculate(calculated);
+        }
+        cursor = 0;
+        if (fireTimes.length == 0) {
+            return ScheduleCalculator.NO_TRIGGER;
+        }
+        return fireTimes[cursor++];
+    }
+
+}
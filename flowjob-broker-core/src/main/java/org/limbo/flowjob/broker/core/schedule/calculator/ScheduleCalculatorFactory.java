@@ -47,11 +47,25 @@ public class ScheduleCalculatorFactory {
      * @return 触发时间计算器
      */
     public static ScheduleCalculator create(ScheduleType scheduleType) {
+        return create(scheduleType, 0);
+    }
+
+    /**
+     * 根据作业调度类型，创建作业触发时间计算器
+     * @param scheduleType 调度方式
+     * @param cronPrecomputeSize CRON 预计算触发时间的次数，小于等于1表示不预计算
+     * @return 触发时间计算器
+     */
+    public static ScheduleCalculator create(ScheduleType scheduleType, int cronPrecomputeSize) {
         ScheduleCalculator calculator = scheduleCalculators.get(scheduleType);
-        if (calculator != null) {
-            return new DelegatedScheduleCalculator(calculator);
+        if (calculator == null) {
+            throw new IllegalStateException("cannot apply for " + scheduleType);
         }
 
-        throw new IllegalStateException("cannot apply for " + scheduleType);
+        if (ScheduleType.CRON == scheduleType && cronPrecomputeSize > 1) {
+            return new PrecomputedCronScheduleCalculator(calculator, cronPrecomputeSize);
+        }
+        return new DelegatedScheduleCalculator(calculator);
     }
+
 }
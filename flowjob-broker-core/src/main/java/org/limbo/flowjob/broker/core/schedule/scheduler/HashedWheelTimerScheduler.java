@@ -22,16 +22,31 @@ import io.netty.util.HashedWheelTimer;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.schedule.Scheduled;
 import org.limbo.flowjob.common.thread.NamedThreadFactory;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 基于Netty时间轮算法的作业执行器。一个作业申请执行后，会计算下次执行的间隔，并注册到时间轮上。
  * 当时间轮触发作业执行时，将进入作业下发流程，并将生成的实例分发给下游。
+ * <p>
+ * 时间轮线程只负责收集到期的任务并放入分发队列，任务的执行由独立的分发线程池批量拉取后完成，
+ * 避免任务中的阻塞操作（如数据库事务）拖慢时间轮，导致后续任务触发出现漂移。
+ * 同一批拉取的任务中，{@link #batchKey(Scheduled)} 相同的任务会通过 {@link #executeBatch(List)} 合并执行。
  *
  * @author Brozen
  * @since 2021-05-18
@@ -45,10 +60,68 @@ public abstract class HashedWheelTimerScheduler<T extends Scheduled> implements
     private final Timer timer;
 
     /**
-     * 使用指定执行器构造一个调度器，该调度器基于哈希时间轮算法。
+     * 时间轮每个 tick 的时长，毫秒
      */
-    protected HashedWheelTimerScheduler(long tickDuration, TimeUnit unit) {
-        this.timer = new HashedWheelTimer(NamedThreadFactory.newInstance(this.getClass().getSimpleName()), tickDuration, unit);
+    private final long tickMillis;
+
+    /**
+     * 时间轮到期后待执行的任务
+     */
+    private final BlockingQueue<T> dispatchQueue;
+
+    /**
+     * 执行到期任务的线程池
+     */
+    private final ExecutorService dispatchPool;
+
+    /**
+     * 执行到期任务的线程数
+     */
+    private final int dispatchThreads;
+
+    /**
+     * 每批次最多拉取的任务数
+     */
+    private final int dispatchBatchSize;
+
+    /**
+     * 分发线程是否已启动
+     */
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /**
+     * 最近一次任务触发时相对预期时间的漂移，毫秒
+     */
+    private final AtomicLong tickDrift = new AtomicLong();
+
+    /**
+     * 任务触发相对预期时间的最大漂移，毫秒
+     */
+    private final AtomicLong maxTickDrift = new AtomicLong();
+
+    /**
+     * 已分发执行的任务数
+     */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+
+    /**
+     * 分发队列已满被退回时间轮的任务数
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 使用指定配置构造一个调度器，该调度器基于哈希时间轮算法。分发线程在首次调度任务时启动。
+     *
+     * @param config 时间轮 tick 时长、分发线程数、队列长度、每批次拉取数等配置
+     */
+    protected HashedWheelTimerScheduler(BrokerConfig.MetaTaskConfig config) {
+        String name = this.getClass().getSimpleName();
+        this.timer = new HashedWheelTimer(NamedThreadFactory.newInstance(name), config.getTickDuration(), TimeUnit.MILLISECONDS);
+        this.tickMillis = Math.max(config.getTickDuration(), 1);
+        this.dispatchQueue = new LinkedBlockingQueue<>(config.getDispatchQueueSize());
+        this.dispatchThreads = Math.max(config.getDispatchThreads(), 1);
+        this.dispatchBatchSize = Math.max(config.getDispatchBatchSize(), 1);
+        this.dispatchPool = Executors.newFixedThreadPool(dispatchThreads, NamedThreadFactory.newInstance(name + "-Dispatch"));
     }
 
     protected void calAndSchedule(T scheduled) {
@@ -56,24 +129,194 @@ public abstract class HashedWheelTimerScheduler<T extends Scheduled> implements
         long delay = Duration.between(TimeUtils.currentLocalDateTime(), scheduled.scheduleAt()).toMillis();
         delay = delay < 0 ? 0 : delay;
 
-        // 在timer上调度作业执行
+        newTimeout(scheduled, delay);
+    }
+
+    /**
+     * 在timer上调度作业，到期后仅放入分发队列，不在时间轮线程中执行
+     */
+    private void newTimeout(T scheduled, long delay) {
+        startDispatch();
+        long expectAt = System.currentTimeMillis() + delay;
         this.timer.newTimeout(timeout -> {
-            Throwable thrown = null;
-            try {
-                // 已经取消调度了，则不再重新调度作业
-                if (scheduled.stopped()) {
-                    return;
-                }
-                scheduled.execute();
-            } catch (Exception e) {
-                log.error("[HashedWheelTimerScheduler] schedule fail id:{}", scheduled.scheduleId(), e);
-                thrown = e;
-            } finally {
-                afterExecute(scheduled, thrown);
+            // 已经取消调度了，则不再重新调度作业
+            if (scheduled.stopped()) {
+                return;
+            }
+
+            long drift = Math.max(System.currentTimeMillis() - expectAt, 0);
+            tickDrift.set(drift);
+            maxTickDrift.accumulateAndGet(drift, Math::max);
+
+            if (!dispatchQueue.offer(scheduled)) {
+                // 队列已满 放回时间轮下一个 tick 再尝试，时间轮线程不阻塞
+                rejectedCount.incrementAndGet();
+                log.warn("[HashedWheelTimerScheduler] dispatch queue is full, delay id:{} queueDepth:{}", scheduled.scheduleId(), dispatchQueue.size());
+                newTimeout(scheduled, tickMillis);
             }
         }, delay, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 启动分发线程，只会执行一次
+     */
+    private void startDispatch() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        for (int i = 0; i < dispatchThreads; i++) {
+            dispatchPool.execute(new DispatchLoop());
+        }
+    }
+
+    /**
+     * 执行到期任务
+     */
+    private void dispatch(T scheduled) {
+        Throwable thrown = null;
+        try {
+            // 已经取消调度了，则不再重新调度作业
+            if (scheduled.stopped()) {
+                return;
+            }
+            scheduled.execute();
+        } catch (Exception e) {
+            log.error("[HashedWheelTimerScheduler] schedule fail id:{}", scheduled.scheduleId(), e);
+            thrown = e;
+        } finally {
+            dispatchedCount.incrementAndGet();
+            afterExecute(scheduled, thrown);
+        }
+    }
+
+    /**
+     * 执行一批到期任务，分组标识相同的任务合并执行，其余逐个执行
+     */
+    private void dispatchBatch(List<T> batch) {
+        Map<Object, List<T>> groups = new LinkedHashMap<>();
+        for (T scheduled : batch) {
+            Object key = batchKey(scheduled);
+            if (key == null || scheduled.stopped()) {
+                dispatch(scheduled);
+            } else {
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(scheduled);
+            }
+        }
+        for (List<T> group : groups.values()) {
+            if (group.size() == 1) {
+                dispatch(group.get(0));
+            } else {
+                dispatchGroup(group);
+            }
+        }
+    }
+
+    /**
+     * 合并执行分组标识相同的任务
+     */
+    private void dispatchGroup(List<T> group) {
+        Throwable thrown = null;
+        try {
+            executeBatch(group);
+        } catch (Exception e) {
+            log.error("[HashedWheelTimerScheduler] batch schedule fail size:{}", group.size(), e);
+            thrown = e;
+        } finally {
+            dispatchedCount.addAndGet(group.size());
+            for (T scheduled : group) {
+                afterExecute(scheduled, thrown);
+            }
+        }
+    }
+
+    /**
+     * 同一批拉取的任务中，分组标识相同的任务可以合并执行
+     *
+     * @return 分组标识，为空时单独执行
+     */
+    protected Object batchKey(T scheduled) {
+        return null;
+    }
+
+    /**
+     * 合并执行分组标识相同的多个任务，默认逐个执行，支持合并的调度器覆盖此方法
+     */
+    protected void executeBatch(List<T> scheduled) {
+        for (T task : scheduled) {
+            if (!task.stopped()) {
+                task.execute();
+            }
+        }
+    }
+
     protected abstract void afterExecute(T scheduled, Throwable thrown);
 
+    /**
+     * @return 等待执行的到期任务数
+     */
+    public int getQueueDepth() {
+        return dispatchQueue.size();
+    }
+
+    /**
+     * @return 最近一次任务触发的漂移，毫秒
+     */
+    public long getTickDrift() {
+        return tickDrift.get();
+    }
+
+    /**
+     * @return 任务触发的最大漂移，毫秒
+     */
+    public long getMaxTickDrift() {
+        return maxTickDrift.get();
+    }
+
+    /**
+     * @return 已执行的任务数
+     */
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return 由于分发队列已满被延迟的次数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 停止时间轮以及分发线程
+     */
+    public void shutdown() {
+        timer.stop();
+        dispatchPool.shutdownNow();
+    }
+
+    /**
+     * 分发线程 批量拉取到期任务并执行
+     */
+    private class DispatchLoop implements Runnable {
+
+        @Override
+        public void run() {
+            List<T> batch = new ArrayList<>(dispatchBatchSize);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(dispatchQueue.take());
+                    dispatchQueue.drainTo(batch, dispatchBatchSize - 1);
+                    dispatchBatch(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("[HashedWheelTimerScheduler] dispatch fail", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+    }
+
 }
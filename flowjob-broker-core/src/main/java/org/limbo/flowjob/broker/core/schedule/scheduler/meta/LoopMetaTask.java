@@ -110,17 +110,31 @@ public abstract class LoopMetaTask extends MetaTask implements Calculated {
     }
 
     protected void executeFixedRate() {
+        advanceFixedRate();
+        executeTask();
+        feedback();
+    }
+
+    /**
+     * 固定频率的任务执行前推进触发时间，并重新放入时间轮
+     */
+    protected void advanceFixedRate() {
         lastTriggerAt = nextTriggerAt;
         nextTriggerAt = calNextTriggerAt();
         metaTaskScheduler.reschedule(this);
-        executeTask();
+    }
+
+    /**
+     * 记录任务执行完成的时间
+     */
+    protected void feedback() {
         lastFeedbackAt = TimeUtils.currentLocalDateTime();
     }
 
     protected void executeFixedDelay() {
         lastTriggerAt = nextTriggerAt;
         executeTask();
-        lastFeedbackAt = TimeUtils.currentLocalDateTime();
+        feedback();
         nextTriggerAt = calNextTriggerAt();
         metaTaskScheduler.reschedule(this);
     }
@@ -168,7 +182,7 @@ public abstract class LoopMetaTask extends MetaTask implements Calculated {
      */
     private ScheduleCalculator lazyInitTriggerCalculator() {
         if (scheduleCalculator == null) {
-            scheduleCalculator = ScheduleCalculatorFactory.create(scheduleOption.getScheduleType());
+            scheduleCalculator = ScheduleCalculatorFactory.create(scheduleOption.getScheduleType(), metaTaskScheduler.getCronPrecomputeSize());
         }
         return scheduleCalculator;
     }
@@ -18,6 +18,8 @@ package org.limbo.flowjob.broker.core.schedule.scheduler.meta;
 
 import org.limbo.flowjob.broker.core.schedule.Scheduled;
 
+import java.util.List;
+
 /**
  * @author Brozen
  * @since 2022-10-11
@@ -67,4 +69,24 @@ public abstract class MetaTask implements Scheduled {
     public boolean verify() {
         return true;
     }
+
+    /**
+     * 同一批到期的任务中，batchKey 相同的任务会通过 {@link #executeBatch(List)} 合并执行
+     *
+     * @return 为空时单独执行
+     */
+    public Object batchKey() {
+        return null;
+    }
+
+    /**
+     * 合并执行 batchKey 相同的一组任务，由组内任意一个任务调用
+     *
+     * @param tasks 包含当前任务
+     */
+    public void executeBatch(List<MetaTask> tasks) {
+        for (MetaTask task : tasks) {
+            task.execute();
+        }
+    }
 }
@@ -17,11 +17,12 @@
 package org.limbo.flowjob.broker.core.schedule.scheduler.meta;
 
 import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.schedule.scheduler.HashedWheelTimerScheduler;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Brozen
@@ -32,9 +33,29 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
 
     private final Map<String, MetaTask> scheduling;
 
-    public MetaTaskScheduler(long tickDuration, TimeUnit unit) {
-        super(tickDuration, unit);
+    /**
+     * CRON 任务预计算的后续触发次数，小于等于1表示不预计算
+     */
+    private final int cronPrecomputeSize;
+
+    public MetaTaskScheduler(BrokerConfig.MetaTaskConfig config) {
+        super(config);
         this.scheduling = new ConcurrentHashMap<>();
+        this.cronPrecomputeSize = config.getCronPrecomputeSize();
+    }
+
+    /**
+     * @return CRON 任务预计算的后续触发次数
+     */
+    public int getCronPrecomputeSize() {
+        return cronPrecomputeSize;
+    }
+
+    /**
+     * @return 调度中的任务数
+     */
+    public int getSchedulingCount() {
+        return scheduling.size();
     }
 
     @Override
@@ -70,6 +91,16 @@ public class MetaTaskScheduler extends HashedWheelTimerScheduler<MetaTask> {
         }
     }
 
+    @Override
+    protected Object batchKey(MetaTask scheduled) {
+        return scheduled.batchKey();
+    }
+
+    @Override
+    protected void executeBatch(List<MetaTask> scheduled) {
+        scheduled.get(0).executeBatch(scheduled);
+    }
+
     public void reschedule(MetaTask task) {
         String scheduleId = task.scheduleId();
         try {
@@ -0,0 +1,107 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.schedule.selector;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+import org.limbo.flowjob.common.lb.Invocation;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 资源加权选择。worker 的权重为还能容纳的作业数量：剩余队列数、可用CPU/作业CPU、可用内存/作业内存 三者取小，
+ * 按权重随机选择，避免所有作业都集中到当前资源最多的 worker 上。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class ResourceWeightedWorkerSelector implements WorkerSelector {
+
+    /**
+     * 作业未设置CPU需求时，按此核心数估算可容纳的作业数量
+     */
+    private static final float DEFAULT_CPU_REQUIREMENT = 0.1F;
+
+    /**
+     * {@inheritDoc}
+     * @param invocation 选择内容
+     * @param workers 待下发上下文可用的worker
+     * @return
+     */
+    @Override
+    public Worker select(Invocation invocation, List<Worker> workers) {
+        if (CollectionUtils.isEmpty(workers)) {
+            return null;
+        }
+        if (workers.size() == 1) {
+            return workers.get(0);
+        }
+
+        Float cpuRequirement = null;
+        Long ramRequirement = null;
+        if (invocation instanceof WorkerSelectInvocation) {
+            cpuRequirement = ((WorkerSelectInvocation) invocation).getCpuRequirement();
+            ramRequirement = ((WorkerSelectInvocation) invocation).getRamRequirement();
+        }
+
+        double[] weights = new double[workers.size()];
+        double total = 0;
+        for (int i = 0; i < workers.size(); i++) {
+            weights[i] = weight(workers.get(i).getMetric(), cpuRequirement, ramRequirement);
+            total += weights[i];
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // 都没有资源信息时退化为随机
+        if (total <= 0) {
+            return workers.get(random.nextInt(workers.size()));
+        }
+
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return workers.get(i);
+            }
+        }
+        return workers.get(workers.size() - 1);
+    }
+
+    /**
+     * 计算 worker 还能容纳多少个作业
+     */
+    private double weight(WorkerMetric metric, Float cpuRequirement, Long ramRequirement) {
+        WorkerAvailableResource resource = metric == null ? null : metric.getAvailableResource();
+        if (resource == null || resource.getAvailableQueueLimit() <= 0) {
+            return 0;
+        }
+
+        double weight = resource.getAvailableQueueLimit();
+        float cpu = cpuRequirement != null && cpuRequirement > 0 ? cpuRequirement : DEFAULT_CPU_REQUIREMENT;
+        weight = Math.min(weight, Math.max(resource.getAvailableCpu(), 0) / cpu);
+        if (ramRequirement != null && ramRequirement > 0) {
+            weight = Math.min(weight, (double) Math.max(resource.getAvailableRam(), 0) / ramRequirement);
+        }
+        return weight;
+    }
+
+}
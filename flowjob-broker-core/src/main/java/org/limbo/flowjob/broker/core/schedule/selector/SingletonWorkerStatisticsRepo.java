@@ -38,7 +38,9 @@ import java.util.stream.Collectors;
  *
  * @author Brozen
  * @since 2022-12-21
+ * @deprecated 所有下发记录共用一个列表和读写锁，查询需要扫描全部记录，使用 {@link SlidingWindowWorkerStatisticsRepo}
  */
+@Deprecated
 public class SingletonWorkerStatisticsRepo extends Lockable<List<SingletonWorkerStatisticsRepo.WorkerDispatchRecord>> implements WorkerStatisticsRepository {
 
     /**
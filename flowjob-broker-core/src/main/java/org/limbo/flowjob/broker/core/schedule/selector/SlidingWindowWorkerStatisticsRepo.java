@@ -0,0 +1,89 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.schedule.selector;
+
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.common.lb.SlidingWindowLBServerStatistics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 单机内存存储 Worker 统计数据，基于 {@link SlidingWindowLBServerStatistics}，每个 worker 一个按时间分桶的环形计数器。
+ * 记录下发为常数时间且无锁，查询为 O(worker * 桶数)，内存只与 worker 数量和桶数有关。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class SlidingWindowWorkerStatisticsRepo implements WorkerStatisticsRepository {
+
+    private final SlidingWindowLBServerStatistics statistics;
+
+    /**
+     * 默认 1 分钟一个桶，最久统计 12H
+     */
+    public SlidingWindowWorkerStatisticsRepo() {
+        this.statistics = new SlidingWindowLBServerStatistics();
+    }
+
+    public SlidingWindowWorkerStatisticsRepo(Duration bucketDuration, int bucketCount) {
+        this.statistics = new SlidingWindowLBServerStatistics(bucketDuration, bucketCount);
+    }
+
+
+    /**
+     * 记录任务被下发
+     */
+    @Override
+    public void recordDispatched(Worker worker) {
+        statistics.record(worker.getId(), 1);
+    }
+
+
+    /**
+     * 记录任务被下发多次
+     */
+    @Override
+    public void recordDispatched(Worker worker, int times) {
+        statistics.record(worker.getId(), times);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @param workerIds Worker ID 集合
+     * @param limit 查询时间点
+     * @return
+     */
+    @Override
+    public List<WorkerLBStatistics> list(Set<String> workerIds, Instant limit) {
+        long limitMillis = limit.toEpochMilli();
+        List<WorkerLBStatistics> result = new ArrayList<>(workerIds.size());
+        for (String workerId : workerIds) {
+            long lastDispatchAt = statistics.latestAccessAt(workerId);
+            Instant lastDispatchTaskAt = lastDispatchAt > limitMillis ? Instant.ofEpochMilli(lastDispatchAt) : null;
+            result.add(new WorkerLBStatistics(workerId, lastDispatchTaskAt, statistics.accessTimes(workerId, limitMillis)));
+        }
+        return result;
+    }
+
+}
@@ -18,6 +18,7 @@
 
 package org.limbo.flowjob.broker.core.schedule.selector;
 
+import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.common.lb.Invocation;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
@@ -36,6 +37,18 @@ public class WorkerSelectInvocation implements Invocation {
 
     private Map<String, String> lbParameters;
 
+    /**
+     * 作业需要的CPU核心数，可能为 null
+     */
+    @Getter
+    private Float cpuRequirement;
+
+    /**
+     * 作业需要的内存，单位MB，可能为 null
+     */
+    @Getter
+    private Long ramRequirement;
+
     private static final String LB_PREFIX = "worker.lb.";
 
     public WorkerSelectInvocation(String executorName, Attributes attributes) {
@@ -44,6 +57,12 @@ public class WorkerSelectInvocation implements Invocation {
         putStringEntry(this.lbParameters, attributes);
     }
 
+    public WorkerSelectInvocation(String executorName, Attributes attributes, Float cpuRequirement, Long ramRequirement) {
+        this(executorName, attributes);
+        this.cpuRequirement = cpuRequirement;
+        this.ramRequirement = ramRequirement;
+    }
+
     /**
      * @param attrMap
      * @param attr
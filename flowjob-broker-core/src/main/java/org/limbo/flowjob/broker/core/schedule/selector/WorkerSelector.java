@@ -33,6 +33,7 @@ import java.util.List;
  *     <li>{@link LoadBalanceType#LEAST_FREQUENTLY_USED}</li>
  *     <li>{@link LoadBalanceType#LEAST_RECENTLY_USED}</li>
  *     <li>{@link LoadBalanceType#CONSISTENT_HASH}</li>
+ *     <li>{@link LoadBalanceType#RESOURCE_WEIGHTED}</li>
  * </ul>
  *
  * @author Brozen
@@ -21,6 +21,7 @@ package org.limbo.flowjob.broker.core.schedule.selector;
 import lombok.Setter;
 import org.limbo.flowjob.api.constants.LoadBalanceType;
 import org.limbo.flowjob.api.constants.MsgConstants;
+import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.common.lb.LBServerStatisticsProvider;
 import org.limbo.flowjob.common.lb.strategies.AppointLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
@@ -51,13 +52,19 @@ public class WorkerSelectorFactory {
 
     private final Map<LoadBalanceType, Supplier<WorkerSelector>> selectors = new EnumMap<>(LoadBalanceType.class);
 
+    /**
+     * 一致性哈希缓存了服务组对应的哈希环，所有选择器共用一个实例
+     */
+    private final ConsistentHashLBStrategy<Worker> consistentHashStrategy = new ConsistentHashLBStrategy<>();
+
     public WorkerSelectorFactory() {
         selectors.put(LoadBalanceType.RANDOM, () -> new LBStrategyWorkerSelector(new RandomLBStrategy<>()));
         selectors.put(LoadBalanceType.ROUND_ROBIN, () -> new LBStrategyWorkerSelector(new RoundRobinLBStrategy<>()));
         selectors.put(LoadBalanceType.LEAST_FREQUENTLY_USED, () -> new LBStrategyWorkerSelector(new LFULBStrategy<>(this.lbServerStatisticsProvider)));
         selectors.put(LoadBalanceType.LEAST_RECENTLY_USED, () -> new LBStrategyWorkerSelector(new LRULBStrategy<>(this.lbServerStatisticsProvider)));
         selectors.put(LoadBalanceType.APPOINT, () -> new LBStrategyWorkerSelector(new AppointLBStrategy<>()));
-        selectors.put(LoadBalanceType.CONSISTENT_HASH, () -> new LBStrategyWorkerSelector(new ConsistentHashLBStrategy<>()));
+        selectors.put(LoadBalanceType.CONSISTENT_HASH, () -> new LBStrategyWorkerSelector(consistentHashStrategy));
+        selectors.put(LoadBalanceType.RESOURCE_WEIGHTED, ResourceWeightedWorkerSelector::new);
     }
 
     /**
@@ -43,6 +43,19 @@ public interface WorkerStatisticsRepository extends LBServerStatisticsProvider {
     void recordDispatched(Worker worker);
 
 
+    /**
+     * 记录任务被下发多次，用于 agent 批量上报
+     *
+     * @param worker 接收任务的 worker
+     * @param times 下发次数
+     */
+    default void recordDispatched(Worker worker, int times) {
+        for (int i = 0; i < times; i++) {
+            recordDispatched(worker);
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      * @param serverIds 服务 ID 结合
@@ -130,6 +130,7 @@ public class Worker implements LBServer {
      */
     public void heartbeat(WorkerMetric metric) {
         this.metric = metric;
+        this.status = WorkerStatus.RUNNING;
     }
 
 
@@ -31,7 +31,6 @@ import org.limbo.flowjob.broker.core.worker.dispatch.WorkerFilter;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * @author Devil
@@ -57,14 +56,6 @@ public class WorkerDomainService {
     public List<Worker> filterJobWorkers(JobInstance jobInstance, boolean filterExecutor, boolean filterTag, boolean filterResource, boolean lbSelect) {
         JobInfo jobInfo = jobInstance.getJobInfo();
 
-        List<Worker> workers = workerRegistry.all().stream()
-                .filter(Worker::isEnabled)
-                .collect(Collectors.toList());
-
-        if (CollectionUtils.isEmpty(workers)) {
-            return Collections.emptyList();
-        }
-
         DispatchOption dispatchOption = jobInfo.getDispatchOption();
         if (dispatchOption == null) {
             log.warn("Job has none dispatchOption id={}", jobInstance.getId());
@@ -72,7 +63,7 @@ public class WorkerDomainService {
         }
 
         // 过滤
-        WorkerFilter workerFilter = new WorkerFilter(jobInfo.getExecutorName(), dispatchOption.getTagFilters(), workers);
+        WorkerFilter workerFilter = new WorkerFilter(jobInfo.getExecutorName(), dispatchOption.getTagFilters(), workerRegistry.index(), workerRegistry::get);
         if (filterExecutor) {
             workerFilter.filterExecutor();
         }
@@ -84,9 +75,14 @@ public class WorkerDomainService {
         }
 
         if (lbSelect) {
-            WorkerSelectInvocation invocation = new WorkerSelectInvocation(jobInfo.getExecutorName(), jobInstance.getAttributes());
+            WorkerSelectInvocation invocation = new WorkerSelectInvocation(jobInfo.getExecutorName(), jobInstance.getAttributes(),
+                    dispatchOption.getCpuRequirement(), dispatchOption.getRamRequirement());
             WorkerSelector workerSelector = workerSelectorFactory.newSelector(jobInfo.getDispatchOption().getLoadBalanceType());
-            Worker select = workerSelector.select(invocation, workerFilter.get());
+            List<Worker> workers = workerFilter.get();
+            if (CollectionUtils.isEmpty(workers)) {
+                return Collections.emptyList();
+            }
+            Worker select = workerSelector.select(invocation, workers);
             if (select == null) {
                 return Collections.emptyList();
             } else {
@@ -94,9 +90,7 @@ public class WorkerDomainService {
                 return Collections.singletonList(select);
             }
         } else {
-            for (Worker worker : workerFilter.get()) {
-                workerStatisticsRepository.recordDispatched(worker);
-            }
+            // 返回的是候选 worker，实际下发由 agent 批量上报
             return workerFilter.get();
         }
     }
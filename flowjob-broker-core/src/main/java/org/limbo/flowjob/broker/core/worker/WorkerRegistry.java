@@ -21,6 +21,9 @@ package org.limbo.flowjob.broker.core.worker;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.api.constants.WorkerStatus;
+import org.limbo.flowjob.broker.core.cluster.HeartbeatBuffer;
+import org.limbo.flowjob.broker.core.worker.dispatch.WorkerIndex;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.common.constants.WorkerConstant;
 import org.limbo.flowjob.common.utils.time.Formatters;
@@ -30,12 +33,17 @@ import org.limbo.flowjob.common.utils.time.TimeUtils;
 import java.net.URL;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @author Devil
@@ -53,11 +61,48 @@ public class WorkerRegistry {
 
     private final WorkerRepository workerRepository;
 
+    /**
+     * 本节点收到的心跳，定时批量写入
+     */
+    private final HeartbeatBuffer<WorkerMetric> heartbeats;
+
+    /**
+     * worker 索引快照，worker 上下线或执行器、标签变化后重建
+     */
+    private volatile WorkerIndex index = WorkerIndex.EMPTY;
+
+    private volatile boolean indexChanged = true;
+
     public WorkerRegistry(WorkerRepository workerRepository) {
         this.workerRepository = workerRepository;
+        this.heartbeats = new HeartbeatBuffer<>("WorkerHeartbeatFlusher", WorkerConstant.HEARTBEAT_FLUSH_MILLIS, workerRepository::saveHeartbeats);
+    }
+
+    /**
+     * 接收心跳，立即更新内存中的 worker，指标延迟批量写入
+     *
+     * @return worker 不在本节点内存中时返回 null
+     */
+    public Worker heartbeat(String workerId, WorkerMetric metric) {
+        Worker worker = RUNNING_WORKER_MAP.get(workerId);
+        if (worker == null) {
+            return null;
+        }
+        worker.heartbeat(metric);
+        heartbeats.offer(workerId, metric);
+        return worker;
+    }
+
+    /**
+     * 本节点内存中没有的 worker 发送心跳后加入
+     */
+    public void online(Worker worker) {
+        put(worker);
+        heartbeats.offer(worker.getId(), worker.getMetric());
     }
 
     public void init() {
+        heartbeats.start();
         new Timer().schedule(new WorkerOnlineCheckTask(), 0, heartbeatTimeout.toMillis());
         new Timer().schedule(new WorkerFusingCheckTask(), 0, heartbeatTimeout.toMillis());
         new Timer().schedule(new WorkerTerminatedCheckTask(), 0, heartbeatTimeout.toMillis());
@@ -67,6 +112,57 @@ public class WorkerRegistry {
         return RUNNING_WORKER_MAP.values();
     }
 
+    public Worker get(String workerId) {
+        return RUNNING_WORKER_MAP.get(workerId);
+    }
+
+    /**
+     * 获取 worker 索引，有变化时才重建
+     */
+    public WorkerIndex index() {
+        if (indexChanged) {
+            synchronized (this) {
+                if (indexChanged) {
+                    // 先清除标记再读取，构建期间的变化会在下次重建
+                    indexChanged = false;
+                    index = new WorkerIndex(new ArrayList<>(RUNNING_WORKER_MAP.values()));
+                }
+            }
+        }
+        return index;
+    }
+
+    private Worker put(Worker worker) {
+        Worker old = RUNNING_WORKER_MAP.put(worker.getId(), worker);
+        if (old == null || !sameRoute(old, worker)) {
+            indexChanged = true;
+        }
+        return old;
+    }
+
+    private void remove(String workerId) {
+        if (RUNNING_WORKER_MAP.remove(workerId) != null) {
+            indexChanged = true;
+        }
+    }
+
+    /**
+     * 索引相关的属性是否相同
+     */
+    private static boolean sameRoute(Worker w1, Worker w2) {
+        return w1.isEnabled() == w2.isEnabled()
+                && Objects.equals(w1.getUrl(), w2.getUrl())
+                && Objects.equals(w1.getTags(), w2.getTags())
+                && Objects.equals(executorNames(w1), executorNames(w2));
+    }
+
+    private static Set<String> executorNames(Worker worker) {
+        if (CollectionUtils.isEmpty(worker.getExecutors())) {
+            return Collections.emptySet();
+        }
+        return worker.getExecutors().stream().map(WorkerExecutor::getName).collect(Collectors.toSet());
+    }
+
     private class WorkerOnlineCheckTask extends TimerTask {
 
         private static final String TASK_NAME = "[WorkerOnlineCheckTask]";
@@ -86,7 +182,12 @@ public class WorkerRegistry {
                     for (Worker worker : workers) {
                         URL url = worker.getUrl();
                         WorkerMetric metric = worker.getMetric();
-                        Worker n = RUNNING_WORKER_MAP.put(worker.getId(), worker);
+                        // 本节点收到的心跳更新，保留内存中的指标
+                        Worker local = RUNNING_WORKER_MAP.get(worker.getId());
+                        if (local != null && isAfter(local.getMetric(), metric.getLastHeartbeatAt())) {
+                            worker.heartbeat(local.getMetric());
+                        }
+                        Worker n = put(worker);
                         if (n == null && log.isDebugEnabled()) {
                             log.debug("{} find online id: {}, host: {}, port: {} lastHeartbeat:{}", TASK_NAME, worker.getId(), url.getHost(), url.getPort(), LocalTimeUtils.format(metric.getLastHeartbeatAt(), Formatters.YMD_HMS));
                         }
@@ -118,10 +219,15 @@ public class WorkerRegistry {
                 if (CollectionUtils.isNotEmpty(workers)) {
                     for (Worker worker : workers) {
                         WorkerMetric metric = worker.getMetric();
+                        // 本节点收到了新的心跳，还未写入
+                        Worker local = RUNNING_WORKER_MAP.get(worker.getId());
+                        if (local != null && isAfter(local.getMetric(), endTime)) {
+                            continue;
+                        }
                         if (log.isDebugEnabled()) {
                             log.debug("{} find id: {} lastHeartbeat:{}", TASK_NAME, worker.getId(), LocalTimeUtils.format(metric.getLastHeartbeatAt(), Formatters.YMD_HMS));
                         }
-                        RUNNING_WORKER_MAP.remove(worker.getId());
+                        remove(worker.getId());
                         // 更新状态
                         if (WorkerStatus.RUNNING == worker.getStatus()) {
                             workerRepository.updateStatus(worker.getId(), WorkerStatus.RUNNING.status, WorkerStatus.FUSING.status);
@@ -156,7 +262,7 @@ public class WorkerRegistry {
                         if (log.isDebugEnabled()) {
                             log.debug("{} find id: {} lastHeartbeat:{}", TASK_NAME, worker.getId(), LocalTimeUtils.format(metric.getLastHeartbeatAt(), Formatters.YMD_HMS));
                         }
-                        RUNNING_WORKER_MAP.remove(worker.getId());
+                        remove(worker.getId());
                         // 更新状态
                         if (WorkerStatus.FUSING == worker.getStatus()) {
                             workerRepository.updateStatus(worker.getId(), WorkerStatus.FUSING.status, WorkerStatus.TERMINATED.status);
@@ -170,4 +276,8 @@ public class WorkerRegistry {
         }
     }
 
+    private static boolean isAfter(WorkerMetric metric, LocalDateTime time) {
+        return metric != null && metric.getLastHeartbeatAt() != null && (time == null || metric.getLastHeartbeatAt().isAfter(time));
+    }
+
 }
@@ -16,9 +16,12 @@
 
 package org.limbo.flowjob.broker.core.worker;
 
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
+
 import javax.annotation.Nullable;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Brozen
@@ -39,6 +42,12 @@ public interface WorkerRepository {
      */
     void saveMetric(Worker worker);
 
+    /**
+     * 批量写入心跳，更新指标并将 worker 置为运行中
+     * @param metrics workerId - 指标
+     */
+    void saveHeartbeats(Map<String, WorkerMetric> metrics);
+
 
     /**
      * 根据id查询worker
@@ -29,6 +29,7 @@ import org.limbo.flowjob.broker.core.worker.Worker;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
@@ -60,6 +61,13 @@ public class TagFilterOption {
      */
     private TagFilterCondition condition;
 
+    /**
+     * 编译后的正则缓存，key 为正则表达式
+     */
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    private static final int PATTERN_CACHE_SIZE = 1024;
+
 
     /**
      * 过滤 Worker，判断是否符合条件。
@@ -83,7 +91,7 @@ public class TagFilterOption {
                     return CollectionUtils.isNotEmpty(values) && !values.contains(this.tagValue);
 
                 case MUST_MATCH_VALUE_REGEX:
-                    Pattern pattern = Pattern.compile(this.tagValue);
+                    Pattern pattern = pattern();
                     return CollectionUtils.isNotEmpty(values) && values.stream().anyMatch(s -> pattern.matcher(s).find());
 
                 case MATCH_HOST_PORT:
@@ -95,4 +103,18 @@ public class TagFilterOption {
         };
     }
 
+    /**
+     * 获取 tagValue 编译后的正则，相同表达式只编译一次
+     */
+    public Pattern pattern() {
+        Pattern pattern = PATTERNS.get(this.tagValue);
+        if (pattern == null) {
+            if (PATTERNS.size() >= PATTERN_CACHE_SIZE) {
+                PATTERNS.clear();
+            }
+            pattern = PATTERNS.computeIfAbsent(this.tagValue, Pattern::compile);
+        }
+        return pattern;
+    }
+
 }
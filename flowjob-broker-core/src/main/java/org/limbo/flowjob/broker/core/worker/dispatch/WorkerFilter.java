@@ -20,47 +20,46 @@ package org.limbo.flowjob.broker.core.worker.dispatch;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.limbo.flowjob.broker.core.worker.Worker;
-import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
 import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
- * 基于配置过滤出合适的worker
+ * 基于配置过滤出合适的worker。执行器、标签通过 {@link WorkerIndex} 求交集，资源最后在候选集上检查。
  */
 public class WorkerFilter {
 
     private String executorName;
     private List<TagFilterOption> tagFilters;
-    private List<Worker> workers;
+    private WorkerIndex index;
 
-    public WorkerFilter(String executorName, List<TagFilterOption> tagFilters, List<Worker> workers) {
+    /**
+     * 根据 workerId 获取当前的 worker，worker 已下线返回 null
+     */
+    private Function<String, Worker> workers;
+
+    /**
+     * 候选 worker 在索引中的下标
+     */
+    private BitSet candidates;
+
+    public WorkerFilter(String executorName, List<TagFilterOption> tagFilters, WorkerIndex index, Function<String, Worker> workers) {
         this.executorName = executorName;
         this.tagFilters = tagFilters;
-        this.workers = CollectionUtils.isEmpty(workers) ? Collections.emptyList() : workers;
+        this.index = index == null ? WorkerIndex.EMPTY : index;
+        this.workers = workers;
+        this.candidates = this.index.enabled();
     }
 
     /**
      * 基于执行器选择
      */
     public WorkerFilter filterExecutor() {
-        this.workers = workers.stream()
-                .filter(worker -> {
-                    List<WorkerExecutor> executors = worker.getExecutors();
-                    if (CollectionUtils.isEmpty(executors)) {
-                        return false;
-                    }
-                    // 判断是否有对应的执行器
-                    for (WorkerExecutor executor : executors) {
-                        if (executor.getName().equals(executorName)) {
-                            return true;
-                        }
-                    }
-                    return false;
-                })
-                .collect(Collectors.toList());
+        candidates.and(index.executor(executorName));
         return this;
     }
 
@@ -73,7 +72,10 @@ public class WorkerFilter {
             return this;
         }
         for (TagFilterOption tagFilter : tagFilters) {
-            this.workers = workers.stream().filter(tagFilter.asPredicate()).collect(Collectors.toList());
+            if (candidates.isEmpty()) {
+                break;
+            }
+            candidates.and(index.tag(tagFilter));
         }
         return this;
     }
@@ -82,27 +84,44 @@ public class WorkerFilter {
      * 基于资源过滤
      */
     public WorkerFilter filterResources(Float cpuRequirement, Long ramRequirement) {
-        this.workers = workers.stream().filter(worker -> {
-            WorkerAvailableResource availableResource = worker.getMetric().getAvailableResource();
-            if (availableResource.getAvailableQueueLimit() <= 0) {
-                return false;
-            }
-            if (cpuRequirement != null && availableResource.getAvailableCpu() < cpuRequirement) {
-                return false;
-            }
-            if (ramRequirement != null && availableResource.getAvailableRam() < ramRequirement) {
-                return false;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Worker worker = workers.apply(index.workerId(i));
+            if (worker == null || !hasResource(worker.getMetric(), cpuRequirement, ramRequirement)) {
+                candidates.clear(i);
             }
-            return true;
-        }).collect(Collectors.toList());
+        }
         return this;
     }
 
+    private boolean hasResource(WorkerMetric metric, Float cpuRequirement, Long ramRequirement) {
+        WorkerAvailableResource availableResource = metric == null ? null : metric.getAvailableResource();
+        if (availableResource == null) {
+            return false;
+        }
+        if (availableResource.getAvailableQueueLimit() <= 0) {
+            return false;
+        }
+        if (cpuRequirement != null && availableResource.getAvailableCpu() < cpuRequirement) {
+            return false;
+        }
+        if (ramRequirement != null && availableResource.getAvailableRam() < ramRequirement) {
+            return false;
+        }
+        return true;
+    }
+
     /**
      * 获取worker
      */
     public List<Worker> get() {
-        return workers;
+        List<Worker> result = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Worker worker = workers.apply(index.workerId(i));
+            if (worker != null) {
+                result.add(worker);
+            }
+        }
+        return result;
     }
 
 }
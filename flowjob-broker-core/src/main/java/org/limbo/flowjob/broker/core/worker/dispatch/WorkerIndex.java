@@ -0,0 +1,195 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.core.worker.dispatch;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+
+import java.net.URL;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * worker 倒排索引，按执行器、标签建立 worker 位图，过滤时只做位运算。
+ * 索引是不可变的快照，只在 worker 上下线或执行器、标签变化时重建，心跳不会触发重建。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class WorkerIndex {
+
+    public static final WorkerIndex EMPTY = new WorkerIndex(Collections.emptyList());
+
+    /**
+     * 位图下标对应的 workerId
+     */
+    private final String[] workerIds;
+
+    /**
+     * 启用的 worker
+     */
+    private final BitSet enabled = new BitSet();
+
+    /**
+     * 执行器名称 -> worker
+     */
+    private final Map<String, BitSet> executors = new HashMap<>();
+
+    /**
+     * 标签名 -> worker
+     */
+    private final Map<String, BitSet> tagNames = new HashMap<>();
+
+    /**
+     * 标签名 -> 标签值 -> worker
+     */
+    private final Map<String, Map<String, BitSet>> tagValues = new HashMap<>();
+
+    /**
+     * host:port -> worker
+     */
+    private final Map<String, BitSet> addresses = new HashMap<>();
+
+    public WorkerIndex(Collection<Worker> workers) {
+        this.workerIds = new String[workers.size()];
+        int i = 0;
+        for (Worker worker : workers) {
+            workerIds[i] = worker.getId();
+            if (worker.isEnabled()) {
+                enabled.set(i);
+            }
+
+            List<WorkerExecutor> workerExecutors = worker.getExecutors();
+            if (CollectionUtils.isNotEmpty(workerExecutors)) {
+                for (WorkerExecutor executor : workerExecutors) {
+                    executors.computeIfAbsent(executor.getName(), k -> new BitSet()).set(i);
+                }
+            }
+
+            Map<String, List<String>> tags = worker.getTags();
+            if (MapUtils.isNotEmpty(tags)) {
+                for (Map.Entry<String, List<String>> tag : tags.entrySet()) {
+                    if (CollectionUtils.isEmpty(tag.getValue())) {
+                        continue;
+                    }
+                    tagNames.computeIfAbsent(tag.getKey(), k -> new BitSet()).set(i);
+                    Map<String, BitSet> values = tagValues.computeIfAbsent(tag.getKey(), k -> new HashMap<>());
+                    for (String value : tag.getValue()) {
+                        values.computeIfAbsent(value, k -> new BitSet()).set(i);
+                    }
+                }
+            }
+
+            URL url = worker.getUrl();
+            if (url != null) {
+                addresses.computeIfAbsent(address(url.getHost(), url.getPort()), k -> new BitSet()).set(i);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * 所有启用的 worker
+     */
+    public BitSet enabled() {
+        return (BitSet) enabled.clone();
+    }
+
+    /**
+     * 拥有执行器的 worker
+     */
+    public BitSet executor(String executorName) {
+        return copy(executors.get(executorName));
+    }
+
+    /**
+     * 满足标签条件的 worker
+     */
+    public BitSet tag(TagFilterOption option) {
+        String tagName = option.getTagName();
+        String tagValue = option.getTagValue();
+        switch (option.getCondition()) {
+            case EXISTS:
+                return copy(tagNames.get(tagName));
+
+            case NOT_EXISTS:
+                BitSet absent = new BitSet();
+                absent.set(0, workerIds.length);
+                BitSet exists = tagNames.get(tagName);
+                if (exists != null) {
+                    absent.andNot(exists);
+                }
+                return absent;
+
+            case MUST_MATCH_VALUE:
+                return copy(MapUtils.getObject(tagValues.get(tagName), tagValue));
+
+            case MUST_NOT_MATCH_VALUE:
+                BitSet notMatch = copy(tagNames.get(tagName));
+                BitSet match = MapUtils.getObject(tagValues.get(tagName), tagValue);
+                if (match != null) {
+                    notMatch.andNot(match);
+                }
+                return notMatch;
+
+            case MUST_MATCH_VALUE_REGEX:
+                // 同一标签下不同的值通常很少，遍历值而不是遍历 worker
+                BitSet matched = new BitSet();
+                Map<String, BitSet> values = tagValues.get(tagName);
+                if (values != null) {
+                    Pattern pattern = option.pattern();
+                    for (Map.Entry<String, BitSet> value : values.entrySet()) {
+                        if (pattern.matcher(value.getKey()).find()) {
+                            matched.or(value.getValue());
+                        }
+                    }
+                }
+                return matched;
+
+            case MATCH_HOST_PORT:
+                return copy(addresses.get(address(tagName, Integer.parseInt(tagValue))));
+
+            default:
+                return new BitSet();
+        }
+    }
+
+    /**
+     * 位图下标对应的 workerId
+     */
+    public String workerId(int i) {
+        return workerIds[i];
+    }
+
+    private static BitSet copy(BitSet bits) {
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    private static String address(String host, int port) {
+        return host + ":" + port;
+    }
+
+}
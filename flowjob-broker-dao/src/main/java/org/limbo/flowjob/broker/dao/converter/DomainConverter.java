@@ -24,6 +24,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.api.constants.AgentStatus;
 import org.limbo.flowjob.api.constants.ScheduleType;
 import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
+import org.limbo.flowjob.broker.core.cluster.BrokerSlots;
 import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
@@ -76,6 +77,7 @@ public class DomainConverter {
         entity.setJobInstanceId(jobInstance.getId());
         entity.setAgentId(jobInstance.getAgentId());
         entity.setBrokerUrl(jobInstance.getBrokerUrl() == null ? "" : jobInstance.getBrokerUrl().toString());
+        entity.setSlot(BrokerSlots.slot(jobInstance.getId()));
         entity.setRetryTimes(jobInstance.getRetryTimes());
         entity.setInstanceId(jobInstance.getInstanceId());
         entity.setInstanceType(jobInstance.getInstanceType().type);
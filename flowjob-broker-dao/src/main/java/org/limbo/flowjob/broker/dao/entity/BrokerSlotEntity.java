@@ -0,0 +1,65 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * slot 分配给的 broker
+ *
+ * @author Brozen
+ * @since 2024-03-19
+ */
+@Setter
+@Getter
+@Table(name = "flowjob_broker_slot")
+@Entity
+@DynamicInsert
+@DynamicUpdate
+public class BrokerSlotEntity extends BaseEntity {
+
+    private static final long serialVersionUID = -4186027351196530743L;
+
+    /**
+     * 数据库自增id
+     */
+    @Column(updatable = false)
+    private Long id;
+
+    @Id
+    private Integer slot;
+
+    /**
+     * 归属的 broker
+     */
+    private String brokerUrl;
+
+    @Override
+    public Object getUid() {
+        return slot;
+    }
+}
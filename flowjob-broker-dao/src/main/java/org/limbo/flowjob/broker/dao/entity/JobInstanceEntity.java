@@ -41,6 +41,11 @@ public class JobInstanceEntity extends BaseEntity {
      */
     private String brokerUrl;
 
+    /**
+     * 所在的 slot，由 jobInstanceId 计算
+     */
+    private Integer slot;
+
     private String instanceId;
 
     private Integer instanceType;
@@ -62,6 +62,11 @@ public class LockEntity extends BaseEntity {
      */
     private LocalDateTime expireAt;
 
+    /**
+     * 每次重新获得锁时递增
+     */
+    private Long token;
+
 
     @Override
     public Object getUid() {
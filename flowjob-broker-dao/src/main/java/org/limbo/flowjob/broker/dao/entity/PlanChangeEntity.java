@@ -0,0 +1,66 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicInsert;
+import org.hibernate.annotations.DynamicUpdate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * plan 变更日志 自增id作为变更序号
+ *
+ * @author Brozen
+ * @since 2024-03-16
+ */
+@Setter
+@Getter
+@Table(name = "flowjob_plan_change")
+@Entity
+@DynamicInsert
+@DynamicUpdate
+public class PlanChangeEntity extends BaseEntity {
+
+    private static final long serialVersionUID = 3416380231587129584L;
+
+    /**
+     * 数据库自增id 即变更序号
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String planId;
+
+    /**
+     * 需要感知本次变更的 broker
+     */
+    private String brokerUrl;
+
+    @Override
+    public Object getUid() {
+        return id;
+    }
+}
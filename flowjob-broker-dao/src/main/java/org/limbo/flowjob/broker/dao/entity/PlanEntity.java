@@ -40,6 +40,11 @@ public class PlanEntity extends BaseEntity {
      */
     private String brokerUrl;
 
+    /**
+     * 所在的 slot，由 planId 计算
+     */
+    private Integer slot;
+
     /**
      * 所属应用
      */
@@ -20,17 +20,22 @@ package org.limbo.flowjob.broker.dao.repositories;
 
 import lombok.Setter;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
+import org.limbo.flowjob.api.constants.AgentStatus;
 import org.limbo.flowjob.broker.core.agent.AgentRepository;
 import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
 import org.limbo.flowjob.broker.dao.entity.AgentEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -40,9 +45,14 @@ import java.util.stream.Collectors;
 @Repository
 public class AgentRepo implements AgentRepository {
 
+    private static final String SAVE_HEARTBEAT_SQL = "update flowjob_agent set available_queue_limit = ?, last_heartbeat_at = ?, status = ? where agent_id = ?";
+
     @Setter(onMethod_ = @Inject)
     protected AgentEntityRepo agentEntityRepo;
 
+    @Setter(onMethod_ = @Inject)
+    private JdbcTemplate jdbcTemplate;
+
     @Override
     public ScheduleAgent get(String id) {
         AgentEntity agent = agentEntityRepo.findById(id).orElse(null);
@@ -67,4 +77,17 @@ public class AgentRepo implements AgentRepository {
         return agentEntityRepo.updateStatus(agentId, oldStatus, newStatus) > 0;
     }
 
+    @Override
+    public void saveHeartbeats(Map<String, ScheduleAgent> agents) {
+        if (MapUtils.isEmpty(agents)) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(agents.size());
+        for (Map.Entry<String, ScheduleAgent> entry : agents.entrySet()) {
+            ScheduleAgent agent = entry.getValue();
+            args.add(new Object[]{agent.getAvailableQueueLimit(), agent.getLastHeartbeatAt(), AgentStatus.RUNNING.status, entry.getKey()});
+        }
+        jdbcTemplate.batchUpdate(SAVE_HEARTBEAT_SQL, args);
+    }
+
 }
@@ -28,6 +28,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -59,6 +60,12 @@ public interface JobInstanceEntityRepo extends JpaRepository<JobInstanceEntity,
     @Query(value = "select * from flowjob_job_instance where instance_id = :instanceId and  job_id = :jobId order by trigger_at desc limit 1", nativeQuery = true)
     JobInstanceEntity findByLatest(@Param("instanceId") String instanceId, @Param("jobId") String jobId);
 
+    /**
+     * 只查询 job_id, status，按 uk_instance_job 索引顺序返回，同一 job 重试次数最大的在最后
+     */
+    @Query(value = "select job_id, status from flowjob_job_instance where instance_id = :instanceId order by job_id, retry_times", nativeQuery = true)
+    List<Object[]> findStatusesByInstanceId(@Param("instanceId") String instanceId);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update JobInstanceEntity " +
             " set status = " + ConstantsPool.JOB_EXECUTING + ", agentId = :agentId , startAt = :startAt " +
@@ -71,6 +78,12 @@ public interface JobInstanceEntityRepo extends JpaRepository<JobInstanceEntity,
             " where jobInstanceId = :jobInstanceId and status = " + ConstantsPool.JOB_EXECUTING)
     int report(@Param("jobInstanceId") String jobInstanceId, @Param("lastReportAt") LocalDateTime lastReportAt);
 
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update JobInstanceEntity " +
+            " set lastReportAt = :lastReportAt " +
+            " where jobInstanceId in :jobInstanceIds and status = " + ConstantsPool.JOB_EXECUTING)
+    int batchReport(@Param("jobInstanceIds") Collection<String> jobInstanceIds, @Param("lastReportAt") LocalDateTime lastReportAt);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update JobInstanceEntity " +
             "set status = " + ConstantsPool.JOB_EXECUTE_SUCCEED + ", context = :context, endAt = :endAt " +
@@ -94,4 +107,8 @@ public interface JobInstanceEntityRepo extends JpaRepository<JobInstanceEntity,
     @Query(value = "update JobInstanceEntity set brokerUrl = :newBrokerUrl where jobInstanceId = :jobInstanceId and brokerUrl = :oldBrokerUrl ")
     int updateBroker(@Param("jobInstanceId") String jobInstanceId, @Param("oldBrokerUrl") String oldBrokerUrl, @Param("newBrokerUrl") String newBrokerUrl);
 
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update flowjob_job_instance set broker_url = :newBrokerUrl where broker_url = :oldBrokerUrl and slot in :slots", nativeQuery = true)
+    int updateBroker(@Param("oldBrokerUrl") String oldBrokerUrl, @Param("newBrokerUrl") String newBrokerUrl, @Param("slots") Collection<Integer> slots);
+
 }
@@ -27,15 +27,18 @@ import org.limbo.flowjob.broker.core.exceptions.VerifyException;
 import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
 import org.limbo.flowjob.broker.core.meta.job.JobInstance;
 import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.broker.core.utils.Verifies;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
 import org.limbo.flowjob.broker.dao.entity.DelayInstanceEntity;
 import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
-import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
+import org.limbo.flowjob.broker.dao.support.EntityBatchInserter;
+import org.limbo.flowjob.broker.dao.support.PlanVersion;
+import org.limbo.flowjob.broker.dao.support.PlanVersionCache;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 import org.limbo.flowjob.common.utils.dag.DAG;
-import org.limbo.flowjob.common.utils.json.JacksonUtils;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.stereotype.Repository;
 
@@ -44,6 +47,7 @@ import javax.transaction.Transactional;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -66,11 +70,17 @@ public class JobInstanceRepo implements JobInstanceRepository {
     private PlanInstanceEntityRepo planInstanceEntityRepo;
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
+    private PlanVersionCache planVersionCache;
 
     @Setter(onMethod_ = @Inject)
     private DelayInstanceEntityRepo delayInstanceEntityRepo;
 
+    @Setter(onMethod_ = @Inject)
+    private EntityBatchInserter entityBatchInserter;
+
+    @Setter(onMethod_ = @Inject)
+    private LockEntityRepo lockEntityRepo;
+
     @Override
     public JobInstance get(String id) {
         JobInstanceEntity entity = jobInstanceEntityRepo.findById(id).orElse(null);
@@ -103,6 +113,17 @@ public class JobInstanceRepo implements JobInstanceRepository {
         jobInstanceEntityRepo.flush();
     }
 
+    @Override
+    @Transactional
+    public void batchInsert(List<JobInstance> jobInstances) {
+        if (CollectionUtils.isEmpty(jobInstances)) {
+            return;
+        }
+        // 这里都是新生成的ID，直接走 JDBC batch 插入，避免 JPA 逐条 merge 查询
+        List<JobInstanceEntity> jobInstanceEntities = jobInstances.stream().map(DomainConverter::toJobInstanceEntity).collect(Collectors.toList());
+        entityBatchInserter.insert(JobInstanceEntity.class, jobInstanceEntities);
+    }
+
     @Override
     @Transactional
     public boolean executing(String jobInstanceId, String agentId, LocalDateTime startAt) {
@@ -127,6 +148,15 @@ public class JobInstanceRepo implements JobInstanceRepository {
         return jobInstanceEntityRepo.report(jobInstanceId, lastReportAt) > 0;
     }
 
+    @Override
+    @Transactional
+    public int report(Collection<String> jobInstanceIds, LocalDateTime lastReportAt) {
+        if (CollectionUtils.isEmpty(jobInstanceIds)) {
+            return 0;
+        }
+        return jobInstanceEntityRepo.batchReport(jobInstanceIds, lastReportAt);
+    }
+
     @Override
     public JobInstance getLatest(String planInstanceId, String jobId) {
         JobInstanceEntity entity = jobInstanceEntityRepo.findByLatest(planInstanceId, jobId);
@@ -137,6 +167,17 @@ public class JobInstanceRepo implements JobInstanceRepository {
         }
     }
 
+    @Override
+    public Map<String, JobStatus> getLatestStatuses(String instanceId) {
+        List<Object[]> rows = jobInstanceEntityRepo.findStatusesByInstanceId(instanceId);
+        Map<String, JobStatus> statuses = new HashMap<>();
+        // 按重试次数升序，后面的覆盖前面的即为最新
+        for (Object[] row : rows) {
+            statuses.put((String) row[0], JobStatus.parse((Number) row[1]));
+        }
+        return statuses;
+    }
+
     @Override
     public List<JobInstance> findByExecuteCheck(URL brokerUrl, LocalDateTime lastReportAtStart, LocalDateTime lastReportAtEnd, String startId, Integer limit) {
         List<JobInstanceEntity> jobInstanceEntities = jobInstanceEntityRepo.findByExecuteCheck(brokerUrl.toString(), lastReportAtStart, lastReportAtEnd, startId, limit);
@@ -177,6 +218,17 @@ public class JobInstanceRepo implements JobInstanceRepository {
         return jobInstanceEntityRepo.updateBroker(id, oldStr, newStr) > 0;
     }
 
+    @Override
+    @Transactional
+    public int updateBroker(URL oldBrokerUrl, URL newBrokerUrl, Collection<Integer> slots, LockFence fence) {
+        if (CollectionUtils.isEmpty(slots) || !lockEntityRepo.holds(fence)) {
+            return 0;
+        }
+        String oldStr = oldBrokerUrl == null ? "" : oldBrokerUrl.toString();
+        String newStr = newBrokerUrl == null ? "" : newBrokerUrl.toString();
+        return jobInstanceEntityRepo.updateBroker(oldStr, newStr, slots);
+    }
+
     private List<JobInstance> assemble(List<JobInstanceEntity> entities) {
         Map<Integer, List<JobInstanceEntity>> typeGroup = entities.stream().collect(Collectors.groupingBy(JobInstanceEntity::getInstanceType));
         List<JobInstance> list = new ArrayList<>();
@@ -193,12 +245,11 @@ public class JobInstanceRepo implements JobInstanceRepository {
             List<PlanInstanceEntity> planInstanceEntities = planInstanceEntityRepo.findAllById(instanceIds);
             Map<String, PlanInstanceEntity> planInstanceEntityMap = planInstanceEntities.stream().collect(Collectors.toMap(PlanInstanceEntity::getPlanInstanceId, e -> e));
             Set<String> planInfoIds = planInstanceEntities.stream().map(PlanInstanceEntity::getPlanInfoId).collect(Collectors.toSet());
-            List<PlanInfoEntity> planInfoEntities = planInfoEntityRepo.findAllById(planInfoIds);
-            Map<String, PlanInfoEntity> planInfoEntityMap = planInfoEntities.stream().collect(Collectors.toMap(PlanInfoEntity::getPlanInfoId, e -> e));
+            Map<String, PlanVersion> planVersionMap = planVersionCache.getAll(planInfoIds);
             list.addAll(planTypeEntities.stream().map(e -> {
                 PlanInstanceEntity planInstanceEntity = planInstanceEntityMap.get(e.getInstanceId());
-                PlanInfoEntity planInfoEntity = planInfoEntityMap.get(planInstanceEntity.getPlanInfoId());
-                return assemble(e, planInstanceEntity.getAttributes(), planInfoEntity.getJobInfo());
+                PlanVersion planVersion = planVersionMap.get(planInstanceEntity.getPlanInfoId());
+                return assemble(e, planInstanceEntity.getAttributes(), planVersion.getJobInfo(e.getJobId()));
             }).collect(Collectors.toList()));
         }
         // delay
@@ -212,7 +263,7 @@ public class JobInstanceRepo implements JobInstanceRepository {
             Map<String, DelayInstanceEntity> map = delayInstanceEntities.stream().collect(Collectors.toMap(DelayInstanceEntity::getInstanceId, v -> v));
             list.addAll(delayTypeEntities.stream().map(e -> {
                 DelayInstanceEntity delayInstanceEntity = map.get(e.getInstanceId());
-                return assemble(e, delayInstanceEntity.getAttributes(), delayInstanceEntity.getJobInfo());
+                return assemble(e, delayInstanceEntity.getAttributes(), delayJobInfo(e, delayInstanceEntity));
             }).collect(Collectors.toList()));
         }
 
@@ -223,26 +274,28 @@ public class JobInstanceRepo implements JobInstanceRepository {
         InstanceType instanceType = InstanceType.parse(entity.getInstanceType());
         if (InstanceType.STANDALONE == instanceType || InstanceType.WORKFLOW == instanceType) {
             PlanInstanceEntity planInstanceEntity = planInstanceEntityRepo.findById(entity.getInstanceId()).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INSTANCE + entity.getInstanceId()));
-            PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(planInstanceEntity.getPlanInfoId()).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + planInstanceEntity.getPlanInfoId()));
-            return assemble(entity, planInstanceEntity.getAttributes(), planInfoEntity.getJobInfo());
+            PlanVersion planVersion = Verifies.requireNotNull(planVersionCache.get(planInstanceEntity.getPlanInfoId()), MsgConstants.CANT_FIND_PLAN_INFO + planInstanceEntity.getPlanInfoId());
+            return assemble(entity, planInstanceEntity.getAttributes(), planVersion.getJobInfo(entity.getJobId()));
         } else if (InstanceType.DELAY_STANDALONE == instanceType) {
             DelayInstanceEntity delayInstanceEntity = delayInstanceEntityRepo.findById(entity.getInstanceId()).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_DELAY_INSTANCE + entity.getInstanceId()));
-            return assemble(entity, delayInstanceEntity.getAttributes(), delayInstanceEntity.getJobInfo());
+            return assemble(entity, delayInstanceEntity.getAttributes(), delayJobInfo(entity, delayInstanceEntity));
         } else {
             return null;
         }
     }
 
-    private JobInstance assemble(JobInstanceEntity entity, String instanceAttributes, String jobInfoJson) {
+    /**
+     * 延迟任务的 job 配置跟随实例保存，不走 plan 版本缓存
+     */
+    private WorkflowJobInfo delayJobInfo(JobInstanceEntity entity, DelayInstanceEntity delayInstanceEntity) {
+        DAG<WorkflowJobInfo> dag = DomainConverter.toJobDag(delayInstanceEntity.getJobInfo());
+        return dag.getNode(entity.getJobId());
+    }
+
+    private JobInstance assemble(JobInstanceEntity entity, String instanceAttributes, WorkflowJobInfo jobInfo) {
         InstanceType instanceType = InstanceType.parse(entity.getInstanceType());
-        WorkflowJobInfo jobInfo;
-        if (InstanceType.STANDALONE == instanceType) {
-            jobInfo = JacksonUtils.parseObject(jobInfoJson, WorkflowJobInfo.class);
-        } else if (InstanceType.WORKFLOW == instanceType || InstanceType.DELAY_STANDALONE == instanceType) {
-            DAG<WorkflowJobInfo> dag = DomainConverter.toJobDag(jobInfoJson);
-            jobInfo = dag.getNode(entity.getJobId());
-        } else {
-            throw new IllegalArgumentException("Illegal InstanceType id:" + entity.getJobInstanceId());
+        if (jobInfo == null) {
+            throw new IllegalArgumentException("Can't find job:" + entity.getJobId() + " of job instance:" + entity.getJobInstanceId());
         }
 
         Attributes attributes = new Attributes();
@@ -262,6 +315,7 @@ public class JobInstanceRepo implements JobInstanceRepository {
                 .status(JobStatus.parse(entity.getStatus()))
                 .startAt(entity.getStartAt())
                 .endAt(entity.getEndAt())
+                .lastReportAt(entity.getLastReportAt())
                 .build();
     }
 
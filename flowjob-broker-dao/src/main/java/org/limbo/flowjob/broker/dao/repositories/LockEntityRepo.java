@@ -18,8 +18,17 @@
 
 package org.limbo.flowjob.broker.dao.repositories;
 
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
 import org.limbo.flowjob.broker.dao.entity.LockEntity;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 /**
  * @author Devil
@@ -29,5 +38,50 @@ public interface LockEntityRepo extends JpaRepository<LockEntity, String> {
 
     LockEntity findByName(String name);
 
-    int deleteByName(String name);
+    /**
+     * 一条语句完成加锁：锁不存在时新增；锁已过期时换为新的持有者并递增 token；持有者为自己时延长过期时间。
+     * 赋值按顺序执行，owner、token 判断的是原过期时间，expire_at 判断的是更新后的持有者。
+     */
+    @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRES_NEW)
+    @Modifying(clearAutomatically = true)
+    @Query(value = "insert into flowjob_lock (name, owner, expire_at, token) values (:name, :owner, :expireAt, 1) " +
+            " on duplicate key update " +
+            " owner = case when expire_at < :now then values(owner) else owner end, " +
+            " token = case when expire_at < :now then token + 1 else token end, " +
+            " expire_at = case when owner = values(owner) then values(expire_at) else expire_at end", nativeQuery = true)
+    int acquire(@Param("name") String name, @Param("owner") String owner, @Param("expireAt") LocalDateTime expireAt, @Param("now") LocalDateTime now);
+
+    /**
+     * 续期，锁已被其它节点获得时返回0
+     */
+    @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRES_NEW)
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update flowjob_lock set expire_at = :expireAt " +
+            " where name = :name and owner = :owner and token = :token and expire_at >= :now", nativeQuery = true)
+    int renew(@Param("name") String name, @Param("owner") String owner, @Param("token") Long token,
+              @Param("expireAt") LocalDateTime expireAt, @Param("now") LocalDateTime now);
+
+    /**
+     * 释放锁只将锁置为过期，保留记录使 token 保持递增
+     */
+    @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRES_NEW)
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update flowjob_lock set expire_at = :now where name = :name and owner = :owner and token = :token", nativeQuery = true)
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("token") Long token, @Param("now") LocalDateTime now);
+
+    /**
+     * 加行锁确认凭证有效，在提交前其它节点无法获得该锁
+     */
+    @Query(value = "select count(*) from flowjob_lock where name = :name and token = :token and expire_at >= :now for update", nativeQuery = true)
+    int lockFence(@Param("name") String name, @Param("token") Long token, @Param("now") LocalDateTime now);
+
+    /**
+     * 需要在写操作的事务中调用
+     *
+     * @param fence 为 null 时视为未持有
+     * @return 凭证是否仍然有效
+     */
+    default boolean holds(LockFence fence) {
+        return fence != null && lockFence(fence.getName(), fence.getToken(), TimeUtils.currentLocalDateTime()) > 0;
+    }
 }
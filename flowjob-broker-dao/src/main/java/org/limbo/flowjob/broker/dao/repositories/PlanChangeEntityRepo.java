@@ -0,0 +1,64 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.repositories;
+
+import org.limbo.flowjob.broker.dao.entity.PlanChangeEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Brozen
+ * @since 2024-03-16
+ */
+public interface PlanChangeEntityRepo extends JpaRepository<PlanChangeEntity, Long> {
+
+    @Query(value = "select coalesce(max(id), 0) from flowjob_plan_change where created_at < :before", nativeQuery = true)
+    long findMaxIdBefore(@Param("before") LocalDateTime before);
+
+    /**
+     * 走 (broker_url, id) 索引，无变更时只有一次索引探测
+     */
+    @Query(value = "select * from flowjob_plan_change where broker_url = :brokerUrl and id > :id order by id limit :limit", nativeQuery = true)
+    List<PlanChangeEntity> findAfter(@Param("brokerUrl") String brokerUrl, @Param("id") Long id, @Param("limit") Integer limit);
+
+    /**
+     * 为 slot 批量迁移的 plan 写入变更，一条语句完成
+     *
+     * @param notifyBrokerUrl 接收变更的 broker
+     */
+    @Modifying
+    @Query(value = "insert into flowjob_plan_change (plan_id, broker_url, created_at) " +
+            "select plan_id, :notifyBrokerUrl, :createdAt from flowjob_plan " +
+            "where broker_url = :oldBrokerUrl and slot in :slots and is_enabled = true and is_deleted = false", nativeQuery = true)
+    int insertMoved(@Param("oldBrokerUrl") String oldBrokerUrl,
+                    @Param("notifyBrokerUrl") String notifyBrokerUrl,
+                    @Param("slots") Collection<Integer> slots,
+                    @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query(value = "delete from flowjob_plan_change where created_at < :createdAt", nativeQuery = true)
+    int deleteBefore(@Param("createdAt") LocalDateTime createdAt);
+
+}
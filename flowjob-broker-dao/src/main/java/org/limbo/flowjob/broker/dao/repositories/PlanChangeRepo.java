@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.repositories;
+
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.broker.core.meta.info.PlanChange;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
+import org.limbo.flowjob.broker.dao.entity.PlanChangeEntity;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-16
+ */
+@Repository
+public class PlanChangeRepo implements PlanChangeRepository {
+
+    @Setter(onMethod_ = @Inject)
+    private PlanChangeEntityRepo planChangeEntityRepo;
+
+    @Override
+    @Transactional
+    public void record(String planId, String... brokerUrls) {
+        Set<String> urls = new LinkedHashSet<>();
+        for (String brokerUrl : brokerUrls) {
+            if (StringUtils.isNotBlank(brokerUrl)) {
+                urls.add(brokerUrl);
+            }
+        }
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        List<PlanChangeEntity> entities = new ArrayList<>();
+        for (String url : urls) {
+            PlanChangeEntity entity = new PlanChangeEntity();
+            entity.setPlanId(planId);
+            entity.setBrokerUrl(url);
+            entity.setCreatedAt(now);
+            entities.add(entity);
+        }
+        if (entities.isEmpty()) {
+            return;
+        }
+        planChangeEntityRepo.saveAll(entities);
+    }
+
+    /**
+     * 记录按 slot 批量迁移的 plan，需要在迁移的事务中、更新 plan 之前调用。
+     * 同 {@link #record} 新旧 broker 都会收到变更，旧的 broker 仍存活时据此停止调度
+     *
+     * @return 新的 broker 记录的条数
+     */
+    @Transactional
+    public int recordMoved(String oldBrokerUrl, String newBrokerUrl, Collection<Integer> slots) {
+        LocalDateTime now = TimeUtils.currentLocalDateTime();
+        int count = planChangeEntityRepo.insertMoved(oldBrokerUrl, newBrokerUrl, slots, now);
+        if (StringUtils.isNotBlank(oldBrokerUrl)) {
+            planChangeEntityRepo.insertMoved(oldBrokerUrl, oldBrokerUrl, slots, now);
+        }
+        return count;
+    }
+
+    @Override
+    public long latestSequence(LocalDateTime before) {
+        return planChangeEntityRepo.findMaxIdBefore(before);
+    }
+
+    @Override
+    public List<PlanChange> findAfter(URL brokerUrl, long sequence, int limit) {
+        return planChangeEntityRepo.findAfter(brokerUrl.toString(), sequence, limit).stream()
+                .map(e -> new PlanChange(e.getId(), e.getPlanId(), e.getCreatedAt()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional
+    public int clean(LocalDateTime before) {
+        return planChangeEntityRepo.deleteBefore(before);
+    }
+
+}
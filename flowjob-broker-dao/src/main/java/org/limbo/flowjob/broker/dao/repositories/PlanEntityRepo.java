@@ -26,6 +26,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -38,9 +39,16 @@ public interface PlanEntityRepo extends JpaRepository<PlanEntity, String>, JpaSp
     @Query(value = "select * from flowjob_plan where plan_id = :planId for update", nativeQuery = true)
     PlanEntity selectForUpdate(@Param("planId") String planId);
 
+    @Query(value = "select * from flowjob_plan where plan_id in :planIds order by plan_id for update", nativeQuery = true)
+    List<PlanEntity> selectForUpdate(@Param("planIds") Collection<String> planIds);
+
     @Query(value = "select * from flowjob_plan where plan_id in :planIds and is_enabled = true and is_deleted = false", nativeQuery = true)
     List<PlanEntity> loadPlans(@Param("planIds") List<String> planIds);
 
+    @Query(value = "select plan_id from flowjob_plan where broker_url = :brokerUrl and plan_id > :startId and is_enabled = true and is_deleted = false " +
+            "order by plan_id limit :limit", nativeQuery = true)
+    List<String> findEnabledIds(@Param("brokerUrl") String brokerUrl, @Param("startId") String startId, @Param("limit") Integer limit);
+
     @Query(value = "select * from flowjob_plan where broker_url not in :brokerUrls and is_enabled = true and is_deleted = false limit :limit ", nativeQuery = true)
     List<PlanEntity> findNotInBrokers(@Param("brokerUrls") List<String> brokerUrls, @Param("limit") Integer limit);
 
@@ -48,6 +56,10 @@ public interface PlanEntityRepo extends JpaRepository<PlanEntity, String>, JpaSp
     @Query(value = "update PlanEntity set brokerUrl = :newBrokerUrl where planId = :planId and brokerUrl = :oldBrokerUrl ")
     int updateBroker(@Param("planId") String planId, @Param("oldBrokerUrl") String oldBrokerUrl, @Param("newBrokerUrl") String newBrokerUrl);
 
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update flowjob_plan set broker_url = :newBrokerUrl where broker_url = :oldBrokerUrl and slot in :slots", nativeQuery = true)
+    int updateBroker(@Param("oldBrokerUrl") String oldBrokerUrl, @Param("newBrokerUrl") String newBrokerUrl, @Param("slots") Collection<Integer> slots);
+
     /**
      * 修改过的plan
      */
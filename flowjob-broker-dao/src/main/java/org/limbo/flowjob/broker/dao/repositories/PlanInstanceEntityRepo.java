@@ -27,6 +27,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -45,11 +46,28 @@ public interface PlanInstanceEntityRepo extends JpaRepository<PlanInstanceEntity
             "order by trigger_at desc limit 1", nativeQuery = true)
     PlanInstanceEntity findLatelyTrigger(@Param("planId") String planId, @Param("planInfoId") String planInfoId, @Param("scheduleType") Integer scheduleType, @Param("triggerType") Integer triggerType);
 
+    /**
+     * 批量获取每个plan对应版本下最近一次触发的实例 plan_info_id 已经确定了调度方式
+     */
+    @Query(value = "select i.* from flowjob_plan_instance i join (" +
+            "select plan_id, max(trigger_at) as trigger_at from flowjob_plan_instance " +
+            "where plan_id in :planIds and plan_info_id in :planInfoIds and trigger_type = :triggerType group by plan_id" +
+            ") t on i.plan_id = t.plan_id and i.trigger_at = t.trigger_at " +
+            "where i.plan_info_id in :planInfoIds and i.trigger_type = :triggerType", nativeQuery = true)
+    List<PlanInstanceEntity> findLatelyTriggers(@Param("planIds") Collection<String> planIds, @Param("planInfoIds") Collection<String> planInfoIds, @Param("triggerType") Integer triggerType);
+
     @Query(value = "select * from flowjob_plan_instance " +
             "where plan_id = :planId and schedule_type = :scheduleType and trigger_type = :triggerType and plan_info_id =:planInfoId " +
             "order by feedback_at desc limit 1", nativeQuery = true)
     PlanInstanceEntity findLatelyFeedback(@Param("planId") String planId, @Param("planInfoId") String planInfoId, @Param("scheduleType") Integer scheduleType, @Param("triggerType") Integer triggerType);
 
+    @Query(value = "select i.* from flowjob_plan_instance i join (" +
+            "select plan_id, max(feedback_at) as feedback_at from flowjob_plan_instance " +
+            "where plan_id in :planIds and plan_info_id in :planInfoIds and trigger_type = :triggerType group by plan_id" +
+            ") t on i.plan_id = t.plan_id and i.feedback_at = t.feedback_at " +
+            "where i.plan_info_id in :planInfoIds and i.trigger_type = :triggerType", nativeQuery = true)
+    List<PlanInstanceEntity> findLatelyFeedbacks(@Param("planIds") Collection<String> planIds, @Param("planInfoIds") Collection<String> planInfoIds, @Param("triggerType") Integer triggerType);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update PlanInstanceEntity set status = " + ConstantsPool.INSTANCE_EXECUTING + ", startAt = :startAt " +
             " where planInstanceId = :planInstanceId and status = " + ConstantsPool.INSTANCE_SCHEDULING)
@@ -19,26 +19,28 @@
 package org.limbo.flowjob.broker.dao.repositories;
 
 import lombok.Setter;
-import org.limbo.flowjob.api.constants.InstanceType;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
 import org.limbo.flowjob.api.constants.InstanceStatus;
 import org.limbo.flowjob.api.constants.ScheduleType;
 import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.broker.core.meta.instance.PlanInstance;
 import org.limbo.flowjob.broker.core.meta.instance.PlanInstanceRepository;
-import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
-import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
-import org.limbo.flowjob.broker.dao.converter.DomainConverter;
-import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
+import org.limbo.flowjob.broker.dao.support.EntityBatchInserter;
+import org.limbo.flowjob.broker.dao.support.PlanVersion;
+import org.limbo.flowjob.broker.dao.support.PlanVersionCache;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
-import org.limbo.flowjob.common.utils.dag.DAG;
-import org.limbo.flowjob.common.utils.json.JacksonUtils;
 import org.springframework.stereotype.Repository;
 
 import javax.inject.Inject;
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Devil
@@ -51,7 +53,10 @@ public class PlanInstanceRepo implements PlanInstanceRepository {
     private PlanInstanceEntityRepo planInstanceEntityRepo;
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
+    private PlanVersionCache planVersionCache;
+
+    @Setter(onMethod_ = @Inject)
+    private EntityBatchInserter entityBatchInserter;
 
     @Override
     public PlanInstance get(String id) {
@@ -78,38 +83,48 @@ public class PlanInstanceRepo implements PlanInstanceRepository {
         return assemble(planInstanceEntity);
     }
 
+    @Override
+    public Map<String, PlanInstance> getLatelyTriggers(Map<String, String> planVersions, TriggerType triggerType) {
+        if (MapUtils.isEmpty(planVersions)) {
+            return Collections.emptyMap();
+        }
+        List<PlanInstanceEntity> entities = planInstanceEntityRepo.findLatelyTriggers(planVersions.keySet(), planVersions.values(), triggerType.type);
+        if (CollectionUtils.isEmpty(entities)) {
+            return Collections.emptyMap();
+        }
+        Map<String, PlanVersion> planVersionMap = planVersionCache.getAll(planVersions.values());
+        Map<String, PlanInstance> map = new HashMap<>();
+        for (PlanInstanceEntity entity : entities) {
+            map.put(entity.getPlanId(), assemble(entity, planVersionMap.get(entity.getPlanInfoId())));
+        }
+        return map;
+    }
+
     private PlanInstance assemble(PlanInstanceEntity planInstanceEntity) {
         if (planInstanceEntity == null) {
             return null;
         }
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(planInstanceEntity.getPlanInfoId()).orElse(null);
-        if (planInfoEntity == null) {
+        return assemble(planInstanceEntity, planVersionCache.get(planInstanceEntity.getPlanInfoId()));
+    }
+
+    private PlanInstance assemble(PlanInstanceEntity planInstanceEntity, PlanVersion planVersion) {
+        if (planVersion == null) {
             return PlanInstance.builder()
                     .id(planInstanceEntity.getPlanInstanceId())
                     .build();
         }
 
-        InstanceType instanceType = InstanceType.parse(planInfoEntity.getPlanType());
         InstanceStatus status = InstanceStatus.parse(planInstanceEntity.getStatus());
 
-        ScheduleOption scheduleOption = DomainConverter.toScheduleOption(planInfoEntity);
-        DAG<WorkflowJobInfo> dag;
-        if (InstanceType.STANDALONE == instanceType) {
-            WorkflowJobInfo jobInfo = JacksonUtils.parseObject(planInfoEntity.getJobInfo(), WorkflowJobInfo.class);
-            dag = new DAG<>(Collections.singletonList(jobInfo));
-        } else {
-            dag = DomainConverter.toJobDag(planInfoEntity.getJobInfo());
-        }
-
         return PlanInstance.builder()
                 .id(planInstanceEntity.getPlanInstanceId())
                 .planId(planInstanceEntity.getPlanId())
                 .version(planInstanceEntity.getPlanInfoId())
                 .status(status)
-                .type(instanceType)
+                .type(planVersion.getType())
                 .triggerType(TriggerType.parse(planInstanceEntity.getTriggerType()))
-                .scheduleType(scheduleOption.getScheduleType())
-                .dag(dag)
+                .scheduleType(planVersion.getScheduleOption().getScheduleType())
+                .dag(planVersion.getDag())
                 .attributes(new Attributes(planInstanceEntity.getAttributes()))
                 .triggerAt(planInstanceEntity.getTriggerAt())
                 .startAt(planInstanceEntity.getStartAt())
@@ -120,6 +135,21 @@ public class PlanInstanceRepo implements PlanInstanceRepository {
     @Override
     @Transactional
     public void save(PlanInstance instance) {
+        planInstanceEntityRepo.saveAndFlush(toEntity(instance));
+    }
+
+    @Override
+    @Transactional
+    public void batchInsert(List<PlanInstance> instances) {
+        if (CollectionUtils.isEmpty(instances)) {
+            return;
+        }
+        // 直接走 JDBC batch，避免 JPA 对指定主键的实体逐条 merge 查询
+        List<PlanInstanceEntity> entities = instances.stream().map(this::toEntity).collect(Collectors.toList());
+        entityBatchInserter.insert(PlanInstanceEntity.class, entities);
+    }
+
+    private PlanInstanceEntity toEntity(PlanInstance instance) {
         PlanInstanceEntity planInstanceEntity = new PlanInstanceEntity();
         planInstanceEntity.setPlanInstanceId(instance.getId());
         planInstanceEntity.setPlanId(instance.getPlanId());
@@ -131,7 +161,7 @@ public class PlanInstanceRepo implements PlanInstanceRepository {
         planInstanceEntity.setTriggerAt(instance.getTriggerAt());
         planInstanceEntity.setStartAt(instance.getStartAt());
         planInstanceEntity.setFeedbackAt(instance.getFeedbackAt());
-        planInstanceEntityRepo.saveAndFlush(planInstanceEntity);
+        return planInstanceEntity;
     }
 
     @Override
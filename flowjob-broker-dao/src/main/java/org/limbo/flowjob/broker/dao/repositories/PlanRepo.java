@@ -20,20 +20,18 @@ package org.limbo.flowjob.broker.dao.repositories;
 
 import lombok.Setter;
 import org.apache.commons.collections4.CollectionUtils;
-import org.limbo.flowjob.api.constants.InstanceType;
 import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.constants.TriggerType;
 import org.limbo.flowjob.broker.core.exceptions.VerifyException;
 import org.limbo.flowjob.broker.core.meta.info.Plan;
 import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
-import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
-import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.broker.core.utils.Verifies;
 import org.limbo.flowjob.broker.dao.converter.DomainConverter;
 import org.limbo.flowjob.broker.dao.entity.PlanEntity;
-import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
 import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
-import org.limbo.flowjob.common.utils.dag.DAG;
-import org.limbo.flowjob.common.utils.json.JacksonUtils;
+import org.limbo.flowjob.broker.dao.support.PlanVersion;
+import org.limbo.flowjob.broker.dao.support.PlanVersionCache;
 import org.springframework.stereotype.Repository;
 
 import javax.inject.Inject;
@@ -42,11 +40,13 @@ import java.net.URL;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -60,53 +60,85 @@ public class PlanRepo implements PlanRepository {
     private PlanEntityRepo planEntityRepo;
 
     @Setter(onMethod_ = @Inject)
-    private PlanInfoEntityRepo planInfoEntityRepo;
+    private PlanVersionCache planVersionCache;
 
     @Setter(onMethod_ = @Inject)
     private PlanInstanceEntityRepo planInstanceEntityRepo;
 
+    @Setter(onMethod_ = @Inject)
+    private PlanChangeRepo planChangeRepo;
+
+    @Setter(onMethod_ = @Inject)
+    private LockEntityRepo lockEntityRepo;
+
     @Override
     public Plan get(String id) {
         PlanEntity planEntity = planEntityRepo.findById(id).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN + id));
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(planEntity.getCurrentVersion())
-                .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion()));
-        return assemble(planEntity, planInfoEntity);
+        PlanVersion planVersion = Verifies.requireNotNull(planVersionCache.get(planEntity.getCurrentVersion()), MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion());
+        return assemble(planEntity, planVersion);
     }
 
     @Override
     @Transactional
     public Plan lockAndGet(String id) {
         PlanEntity planEntity = planEntityRepo.selectForUpdate(id);
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(planEntity.getCurrentVersion())
-                .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion()));
-        return assemble(planEntity, planInfoEntity);
+        PlanVersion planVersion = Verifies.requireNotNull(planVersionCache.get(planEntity.getCurrentVersion()), MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion());
+        return assemble(planEntity, planVersion);
+    }
+
+    @Override
+    @Transactional
+    public List<Plan> lockAndGet(Collection<String> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        List<PlanEntity> planEntities = planEntityRepo.selectForUpdate(ids);
+        if (CollectionUtils.isEmpty(planEntities)) {
+            return Collections.emptyList();
+        }
+        // 锁内只读取版本信息，最近一次调度由调用方按需批量查询
+        List<String> versions = planEntities.stream().map(PlanEntity::getCurrentVersion).collect(Collectors.toList());
+        Map<String, PlanVersion> planVersionMap = planVersionCache.getAll(versions);
+        List<Plan> plans = new ArrayList<>();
+        for (PlanEntity planEntity : planEntities) {
+            PlanVersion planVersion = planVersionMap.get(planEntity.getCurrentVersion());
+            if (planVersion != null) {
+                plans.add(assemble(planEntity, planVersion, null, null));
+            }
+        }
+        return plans;
     }
 
     @Override
     public Plan getByVersion(String id, String version) {
         PlanEntity planEntity = planEntityRepo.findById(id).orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN + id));
-        PlanInfoEntity planInfoEntity = planInfoEntityRepo.findById(version)
-                .orElseThrow(VerifyException.supplier(MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion()));
-        if (!Objects.equals(planInfoEntity.getPlanId(), planEntity.getPlanId())) {
+        PlanVersion planVersion = Verifies.requireNotNull(planVersionCache.get(version), MsgConstants.CANT_FIND_PLAN_INFO + planEntity.getCurrentVersion());
+        if (!Objects.equals(planVersion.getPlanId(), planEntity.getPlanId())) {
             throw new IllegalArgumentException("plan:" + id + " version:" + version + " not match");
         }
-        return assemble(planEntity, planInfoEntity);
+        return assemble(planEntity, planVersion);
     }
 
     @Override
-    public List<Plan> loadUpdatedPlans(URL brokerUrl, LocalDateTime updatedAt) {
-        List<PlanEntity> planEntities = planEntityRepo.loadUpdatedPlans(brokerUrl.toString(), updatedAt);
-        if (CollectionUtils.isEmpty(planEntities)) {
+    public List<Plan> list(Collection<String> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
             return Collections.emptyList();
         }
-        List<String> versions = planEntities.stream().map(PlanEntity::getCurrentVersion).collect(Collectors.toList());
-        List<PlanInfoEntity> planInfoEntities = planInfoEntityRepo.findAllById(versions);
-        Map<String, PlanInfoEntity> planInfoEntityMap = planInfoEntities.stream().collect(Collectors.toMap(PlanInfoEntity::getPlanInfoId, p -> p));
-        List<Plan> list = new ArrayList<>();
-        for (PlanEntity planEntity : planEntities) {
-            list.add(assemble(planEntity, planInfoEntityMap.get(planEntity.getCurrentVersion())));
-        }
-        return list;
+        List<PlanEntity> planEntities = planEntityRepo.findAllById(ids).stream()
+                .filter(p -> !p.isDeleted())
+                .collect(Collectors.toList());
+        return assemble(planEntities);
+    }
+
+    @Override
+    public List<Plan> loadUpdatedPlans(URL brokerUrl, LocalDateTime updatedAt) {
+        List<PlanEntity> planEntities = planEntityRepo.loadUpdatedPlans(brokerUrl.toString(), updatedAt);
+        return assemble(planEntities);
+    }
+
+    @Override
+    public List<String> findEnabledIds(URL brokerUrl, String startId, int limit) {
+        return planEntityRepo.findEnabledIds(brokerUrl.toString(), startId == null ? "" : startId, limit);
     }
 
     @Override
@@ -128,37 +160,84 @@ public class PlanRepo implements PlanRepository {
     public boolean updateBroker(String id, URL oldBrokerUrl, URL newBrokerUrl) {
         String oldStr = oldBrokerUrl == null ? "" : oldBrokerUrl.toString();
         String newStr = newBrokerUrl == null ? "" : newBrokerUrl.toString();
-        return planEntityRepo.updateBroker(id, oldStr, newStr) > 0;
+        if (planEntityRepo.updateBroker(id, oldStr, newStr) <= 0) {
+            return false;
+        }
+        planChangeRepo.record(id, oldStr, newStr);
+        return true;
     }
 
-    private Plan assemble(PlanEntity planEntity, PlanInfoEntity planInfoEntity) {
-        InstanceType instanceType = InstanceType.parse(planInfoEntity.getPlanType());
-        TriggerType triggerType = TriggerType.parse(planInfoEntity.getTriggerType());
+    @Override
+    @Transactional
+    public int updateBroker(URL oldBrokerUrl, URL newBrokerUrl, Collection<Integer> slots, LockFence fence) {
+        if (CollectionUtils.isEmpty(slots) || !lockEntityRepo.holds(fence)) {
+            return 0;
+        }
+        String oldStr = oldBrokerUrl == null ? "" : oldBrokerUrl.toString();
+        String newStr = newBrokerUrl == null ? "" : newBrokerUrl.toString();
+        // 先按迁移前的归属写入变更，再整体更新
+        planChangeRepo.recordMoved(oldStr, newStr, slots);
+        return planEntityRepo.updateBroker(oldStr, newStr, slots);
+    }
 
-        // 获取最近一次调度的planInstance和最近一次结束的planInstance
-        ScheduleOption scheduleOption = DomainConverter.toScheduleOption(planInfoEntity);
+    /**
+     * 批量组装 最近一次调度和反馈的实例按触发方式分组批量查询
+     */
+    private List<Plan> assemble(List<PlanEntity> planEntities) {
+        if (CollectionUtils.isEmpty(planEntities)) {
+            return Collections.emptyList();
+        }
+        List<String> versions = planEntities.stream().map(PlanEntity::getCurrentVersion).collect(Collectors.toList());
+        Map<String, PlanVersion> planVersionMap = planVersionCache.getAll(versions);
+
+        Map<String, PlanInstanceEntity> latelyTriggers = new HashMap<>();
+        Map<String, PlanInstanceEntity> latelyFeedbacks = new HashMap<>();
+        Map<TriggerType, List<PlanVersion>> triggerTypeGroup = planVersionMap.values().stream()
+                .collect(Collectors.groupingBy(PlanVersion::getTriggerType));
+        for (Map.Entry<TriggerType, List<PlanVersion>> entry : triggerTypeGroup.entrySet()) {
+            Set<String> planIds = entry.getValue().stream().map(PlanVersion::getPlanId).collect(Collectors.toSet());
+            Set<String> planInfoIds = entry.getValue().stream().map(PlanVersion::getVersion).collect(Collectors.toSet());
+            for (PlanInstanceEntity entity : planInstanceEntityRepo.findLatelyTriggers(planIds, planInfoIds, entry.getKey().type)) {
+                latelyTriggers.put(entity.getPlanId(), entity);
+            }
+            for (PlanInstanceEntity entity : planInstanceEntityRepo.findLatelyFeedbacks(planIds, planInfoIds, entry.getKey().type)) {
+                latelyFeedbacks.put(entity.getPlanId(), entity);
+            }
+        }
 
-        PlanInstanceEntity latelyTrigger = planInstanceEntityRepo.findLatelyTrigger(planEntity.getPlanId(), planEntity.getCurrentVersion(), scheduleOption.getScheduleType().type, triggerType.type);
-        PlanInstanceEntity latelyFeedback = planInstanceEntityRepo.findLatelyFeedback(planEntity.getPlanId(), planEntity.getCurrentVersion(), scheduleOption.getScheduleType().type, triggerType.type);
+        List<Plan> plans = new ArrayList<>();
+        for (PlanEntity planEntity : planEntities) {
+            PlanVersion planVersion = planVersionMap.get(planEntity.getCurrentVersion());
+            if (planVersion == null) {
+                continue;
+            }
+            String planId = planEntity.getPlanId();
+            plans.add(assemble(planEntity, planVersion, latelyTriggers.get(planId), latelyFeedbacks.get(planId)));
+        }
+        return plans;
+    }
 
+    private Plan assemble(PlanEntity planEntity, PlanVersion planVersion) {
+        int scheduleType = planVersion.getScheduleOption().getScheduleType().type;
+        int triggerType = planVersion.getTriggerType().type;
+
+        // 获取最近一次调度的planInstance和最近一次结束的planInstance
+        PlanInstanceEntity latelyTrigger = planInstanceEntityRepo.findLatelyTrigger(planEntity.getPlanId(), planEntity.getCurrentVersion(), scheduleType, triggerType);
+        PlanInstanceEntity latelyFeedback = planInstanceEntityRepo.findLatelyFeedback(planEntity.getPlanId(), planEntity.getCurrentVersion(), scheduleType, triggerType);
+        return assemble(planEntity, planVersion, latelyTrigger, latelyFeedback);
+    }
+
+    private Plan assemble(PlanEntity planEntity, PlanVersion planVersion, PlanInstanceEntity latelyTrigger, PlanInstanceEntity latelyFeedback) {
         LocalDateTime latelyTriggerAt = latelyTrigger == null || latelyTrigger.getTriggerAt() == null ? null : latelyTrigger.getTriggerAt().truncatedTo(ChronoUnit.SECONDS);
         LocalDateTime latelyFeedbackAt = latelyFeedback == null || latelyFeedback.getFeedbackAt() == null ? null : latelyFeedback.getFeedbackAt().truncatedTo(ChronoUnit.SECONDS);
 
-        DAG<WorkflowJobInfo> dag;
-        if (InstanceType.STANDALONE == instanceType) {
-            WorkflowJobInfo jobInfo = JacksonUtils.parseObject(planInfoEntity.getJobInfo(), WorkflowJobInfo.class);
-            dag = new DAG<>(Collections.singletonList(jobInfo));
-        } else {
-            dag = DomainConverter.toJobDag(planInfoEntity.getJobInfo());
-        }
-
         return Plan.builder()
-                .id(planInfoEntity.getPlanId())
-                .version(planInfoEntity.getPlanInfoId())
-                .type(instanceType)
-                .triggerType(triggerType)
-                .scheduleOption(scheduleOption)
-                .dag(dag)
+                .id(planVersion.getPlanId())
+                .version(planVersion.getVersion())
+                .type(planVersion.getType())
+                .triggerType(planVersion.getTriggerType())
+                .scheduleOption(planVersion.getScheduleOption())
+                .dag(planVersion.getDag())
                 .latelyTriggerAt(latelyTriggerAt)
                 .latelyFeedbackAt(latelyFeedbackAt)
                 .brokerUrl(DomainConverter.brokerUrl(planEntity.getBrokerUrl()))
@@ -0,0 +1,80 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.repositories;
+
+import lombok.Setter;
+import org.apache.commons.collections4.MapUtils;
+import org.limbo.flowjob.broker.core.cluster.SlotRepository;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.entity.BrokerSlotEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.inject.Inject;
+import javax.transaction.Transactional;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Brozen
+ * @since 2024-03-19
+ */
+@Repository
+public class SlotRepo implements SlotRepository {
+
+    private static final String UPSERT_SQL = "insert into flowjob_broker_slot (slot, broker_url) values (?, ?) " +
+            "on duplicate key update broker_url = values(broker_url)";
+
+    @Setter(onMethod_ = @Inject)
+    private BrokerSlotEntityRepo brokerSlotEntityRepo;
+
+    @Setter(onMethod_ = @Inject)
+    private JdbcTemplate jdbcTemplate;
+
+    @Setter(onMethod_ = @Inject)
+    private LockEntityRepo lockEntityRepo;
+
+    @Override
+    public Map<Integer, URL> findAll() {
+        Map<Integer, URL> owners = new HashMap<>();
+        for (BrokerSlotEntity entity : brokerSlotEntityRepo.findAll()) {
+            owners.put(entity.getSlot(), DomainConverter.brokerUrl(entity.getBrokerUrl()));
+        }
+        return owners;
+    }
+
+    @Override
+    @Transactional
+    public boolean save(Map<Integer, URL> owners, LockFence fence) {
+        if (MapUtils.isEmpty(owners) || !lockEntityRepo.holds(fence)) {
+            return false;
+        }
+        List<Object[]> args = new ArrayList<>(owners.size());
+        for (Map.Entry<Integer, URL> entry : owners.entrySet()) {
+            args.add(new Object[]{entry.getKey(), entry.getValue() == null ? "" : entry.getValue().toString()});
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+        return true;
+    }
+
+}
@@ -25,6 +25,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -44,6 +45,10 @@ public interface WorkerEntityRepo extends JpaRepository<WorkerEntity, String>, J
     @Query(value = "update WorkerEntity set status = :status where workerId = :workerId")
     int updateStatus(@Param("workerId") String workerId, @Param("status") Integer status);
 
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update WorkerEntity set status = :status where workerId in :workerIds and status <> :status")
+    int updateStatus(@Param("workerIds") Collection<String> workerIds, @Param("status") Integer status);
+
     @Modifying(clearAutomatically = true)
     @Query(value = "update WorkerEntity set status = :newStatus where workerId = :workerId and status = :oldStatus ")
     int updateStatus(@Param("workerId") String workerId, @Param("oldStatus") Integer oldStatus, @Param("newStatus") Integer newStatus);
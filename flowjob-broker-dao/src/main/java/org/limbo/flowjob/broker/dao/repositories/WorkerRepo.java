@@ -21,7 +21,9 @@ package org.limbo.flowjob.broker.dao.repositories;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.api.constants.WorkerStatus;
 import org.limbo.flowjob.broker.core.meta.IDGenerator;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.WorkerRepository;
@@ -33,6 +35,7 @@ import org.limbo.flowjob.broker.dao.entity.WorkerMetricEntity;
 import org.limbo.flowjob.broker.dao.entity.WorkerTagEntity;
 import org.limbo.flowjob.common.utils.time.TimeUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import javax.inject.Inject;
@@ -53,6 +56,10 @@ import java.util.stream.Collectors;
 @Repository
 public class WorkerRepo implements WorkerRepository {
 
+    private static final String SAVE_HEARTBEAT_SQL = "insert into flowjob_worker_metric (worker_id, available_cpu, available_queue_limit, available_ram, last_heartbeat_at) " +
+            "values (?, ?, ?, ?, ?) on duplicate key update available_cpu = values(available_cpu), available_queue_limit = values(available_queue_limit), " +
+            "available_ram = values(available_ram), last_heartbeat_at = values(last_heartbeat_at)";
+
     @Setter(onMethod_ = @Inject)
     private WorkerEntityRepo workerEntityRepo;
 
@@ -68,6 +75,9 @@ public class WorkerRepo implements WorkerRepository {
     @Setter(onMethod_ = @Inject)
     private IDGenerator idGenerator;
 
+    @Setter(onMethod_ = @Inject)
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * worker 心跳过期时间 毫秒
      */
@@ -127,6 +137,23 @@ public class WorkerRepo implements WorkerRepository {
         metricEntityRepo.saveAndFlush(Objects.requireNonNull(metricPo));
     }
 
+    @Override
+    @Transactional
+    public void saveHeartbeats(Map<String, WorkerMetric> metrics) {
+        if (MapUtils.isEmpty(metrics)) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(metrics.size());
+        for (Map.Entry<String, WorkerMetric> entry : metrics.entrySet()) {
+            WorkerMetricEntity metric = WorkerEntityConverter.toMetricEntity(entry.getKey(), entry.getValue());
+            args.add(new Object[]{
+                    metric.getWorkerId(), metric.getAvailableCpu(), metric.getAvailableQueueLimit(), metric.getAvailableRam(), metric.getLastHeartbeatAt()
+            });
+        }
+        jdbcTemplate.batchUpdate(SAVE_HEARTBEAT_SQL, args);
+        workerEntityRepo.updateStatus(metrics.keySet(), WorkerStatus.RUNNING.status);
+    }
+
 
     /**
      * {@inheritDoc}
@@ -0,0 +1,120 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.support;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按实体映射生成 insert 语句，通过 JDBC batch 批量插入新生成主键的实体，避免 JPA 对指定主键的实体逐条 merge 查询。
+ * 表名、列名均取自 Hibernate 的实体元数据，与 {@link org.hibernate.annotations.DynamicInsert} 一致只插入非空字段，
+ * 非空字段不同的实体分别生成语句。仅支持单列的基础类型属性。
+ *
+ * @author Devil
+ * @since 2024/3/13
+ */
+@Component
+public class EntityBatchInserter {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * entityClass + 非空字段 - sql
+     */
+    private final Map<String, String> sqlCache = new ConcurrentHashMap<>();
+
+    public EntityBatchInserter(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 批量插入实体，实体主键需要已经生成
+     */
+    public <T> void insert(Class<T> entityClass, List<T> entities) {
+        if (CollectionUtils.isEmpty(entities)) {
+            return;
+        }
+        AbstractEntityPersister persister = persister(entityClass);
+        String[] propertyNames = persister.getPropertyNames();
+        boolean[] insertable = persister.getPropertyInsertability();
+        Type[] types = persister.getPropertyTypes();
+        for (int i = 0; i < propertyNames.length; i++) {
+            if (insertable[i] && (types[i].isAssociationType() || persister.getPropertyColumnNames(i).length != 1)) {
+                throw new IllegalArgumentException("Unsupported property " + propertyNames[i] + " of " + entityClass.getName());
+            }
+        }
+
+        // 按非空字段分组，同一组使用同一个语句
+        Map<BitSet, List<Object[]>> groups = new LinkedHashMap<>();
+        for (T entity : entities) {
+            Object id = persister.getIdentifier(entity, (SharedSessionContractImplementor) null);
+            Object[] values = persister.getPropertyValues(entity);
+            BitSet columns = new BitSet(values.length);
+            List<Object> args = new ArrayList<>(values.length + 1);
+            args.add(id);
+            for (int i = 0; i < values.length; i++) {
+                if (insertable[i] && values[i] != null) {
+                    columns.set(i);
+                    args.add(values[i]);
+                }
+            }
+            groups.computeIfAbsent(columns, k -> new ArrayList<>()).add(args.toArray());
+        }
+
+        for (Map.Entry<BitSet, List<Object[]>> group : groups.entrySet()) {
+            String sql = sqlCache.computeIfAbsent(entityClass.getName() + group.getKey(), k -> insertSql(persister, group.getKey()));
+            jdbcTemplate.batchUpdate(sql, group.getValue());
+        }
+    }
+
+    private String insertSql(AbstractEntityPersister persister, BitSet columns) {
+        StringJoiner names = new StringJoiner(", ", "(", ")");
+        StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+        names.add(persister.getIdentifierColumnNames()[0]);
+        placeholders.add("?");
+        for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+            names.add(persister.getPropertyColumnNames(i)[0]);
+            placeholders.add("?");
+        }
+        return "insert into " + persister.getTableName() + " " + names + " values " + placeholders;
+    }
+
+    private AbstractEntityPersister persister(Class<?> entityClass) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        return (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(entityClass);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.support;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.limbo.flowjob.api.constants.InstanceType;
+import org.limbo.flowjob.api.constants.TriggerType;
+import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.dao.converter.DomainConverter;
+import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
+import org.limbo.flowjob.common.utils.dag.DAG;
+import org.limbo.flowjob.common.utils.json.JacksonUtils;
+
+import java.util.Collections;
+
+/**
+ * 解析后的 plan 版本信息，plan_info 按版本不可变，因此可以安全的缓存和共享
+ *
+ * @author Brozen
+ * @since 2024-03-17
+ */
+@Getter
+@ToString(exclude = "dag")
+public class PlanVersion {
+
+    private final String planId;
+
+    private final String version;
+
+    private final InstanceType type;
+
+    private final TriggerType triggerType;
+
+    private final ScheduleOption scheduleOption;
+
+    private final DAG<WorkflowJobInfo> dag;
+
+    /**
+     * 原始 job_info 的长度，作为缓存权重
+     */
+    private final int weight;
+
+    private PlanVersion(PlanInfoEntity entity) {
+        this.planId = entity.getPlanId();
+        this.version = entity.getPlanInfoId();
+        this.type = InstanceType.parse(entity.getPlanType());
+        this.triggerType = TriggerType.parse(entity.getTriggerType());
+        this.scheduleOption = DomainConverter.toScheduleOption(entity);
+        if (InstanceType.STANDALONE == type) {
+            WorkflowJobInfo jobInfo = JacksonUtils.parseObject(entity.getJobInfo(), WorkflowJobInfo.class);
+            this.dag = new DAG<>(Collections.singletonList(jobInfo));
+        } else {
+            this.dag = DomainConverter.toJobDag(entity.getJobInfo());
+        }
+        this.weight = entity.getJobInfo() == null ? 1 : Math.max(entity.getJobInfo().length(), 1);
+    }
+
+    public static PlanVersion of(PlanInfoEntity entity) {
+        return new PlanVersion(entity);
+    }
+
+    /**
+     * 获取 job 配置，单任务时只有一个节点
+     */
+    public WorkflowJobInfo getJobInfo(String jobId) {
+        if (InstanceType.STANDALONE == type) {
+            return dag.nodes().get(0);
+        }
+        return dag.getNode(jobId);
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.broker.dao.support;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.limbo.flowjob.broker.dao.entity.PlanInfoEntity;
+import org.limbo.flowjob.broker.dao.repositories.PlanInfoEntityRepo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * plan 版本缓存，key 为 planInfoId
+ * 按 job_info 长度计算权重淘汰，超大的 workflow 超过单段容量时不会被缓存，不会撑爆内存
+ *
+ * @author Brozen
+ * @since 2024-03-17
+ */
+@Slf4j
+@Component
+public class PlanVersionCache {
+
+    private final PlanInfoEntityRepo planInfoEntityRepo;
+
+    private final Cache<String, PlanVersion> cache;
+
+    public PlanVersionCache(PlanInfoEntityRepo planInfoEntityRepo,
+                            @Value("${flowjob.broker.plan-version-cache.max-weight:33554432}") long maxWeight,
+                            @Value("${flowjob.broker.plan-version-cache.expire-after-access:1h}") Duration expireAfterAccess) {
+        this.planInfoEntityRepo = planInfoEntityRepo;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String version, PlanVersion planVersion) -> planVersion.getWeight())
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取版本信息
+     *
+     * @return 版本不存在返回 null
+     */
+    public PlanVersion get(String version) {
+        if (version == null) {
+            return null;
+        }
+        PlanVersion planVersion = cache.getIfPresent(version);
+        if (planVersion != null) {
+            return planVersion;
+        }
+        PlanInfoEntity entity = planInfoEntityRepo.findById(version).orElse(null);
+        return entity == null ? null : put(entity);
+    }
+
+    /**
+     * 批量获取版本信息，未命中的一次查询
+     *
+     * @return version - PlanVersion 不存在的版本不返回
+     */
+    public Map<String, PlanVersion> getAll(Collection<String> versions) {
+        if (CollectionUtils.isEmpty(versions)) {
+            return Collections.emptyMap();
+        }
+        Map<String, PlanVersion> result = new HashMap<>(cache.getAllPresent(versions));
+        if (result.size() == versions.size()) {
+            return result;
+        }
+        Set<String> missed = new HashSet<>(versions);
+        missed.removeAll(result.keySet());
+        for (PlanInfoEntity entity : planInfoEntityRepo.findAllById(missed)) {
+            result.put(entity.getPlanInfoId(), put(entity));
+        }
+        return result;
+    }
+
+    private PlanVersion put(PlanInfoEntity entity) {
+        PlanVersion planVersion = PlanVersion.of(entity);
+        cache.put(planVersion.getVersion(), planVersion);
+        return planVersion;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long hitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long missCount() {
+        return cache.stats().missCount();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+}
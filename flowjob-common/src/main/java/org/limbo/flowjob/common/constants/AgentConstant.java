@@ -24,4 +24,34 @@ package org.limbo.flowjob.common.constants;
  */
 public interface AgentConstant {
     int HEARTBEAT_TIMEOUT_SECOND = 3;
+
+    /**
+     * broker 批量写入心跳的间隔
+     */
+    int HEARTBEAT_FLUSH_MILLIS = 500;
+
+    /**
+     * agent 缓存 job 可用 worker 的时长
+     */
+    int JOB_WORKERS_LEASE_MILLIS = 10000;
+
+    /**
+     * agent 批量上报任务下发统计的间隔
+     */
+    int DISPATCHED_REPORT_MILLIS = 1000;
+
+    /**
+     * 异步下发时同时下发中的 task 数量初始值
+     */
+    int DISPATCH_WINDOW_INIT = 16;
+
+    /**
+     * 异步下发时同时下发中的 task 数量上限
+     */
+    int DISPATCH_WINDOW_MAX = 256;
+
+    /**
+     * 异步下发等待中的 task 上限，超出的由 TaskScheduleChecker 下发
+     */
+    int DISPATCH_PENDING_LIMIT = 100000;
 }
@@ -25,4 +25,14 @@ package org.limbo.flowjob.common.constants;
 public interface JobConstant {
 
     int JOB_REPORT_SECONDS = 5;
+
+    /**
+     * 单次批量上报的 job 数量
+     */
+    int JOB_BATCH_REPORT_SIZE = 500;
+
+    /**
+     * job 完成反馈失败后的重试间隔
+     */
+    int JOB_COMPLETE_RETRY_MILLIS = 1000;
 }
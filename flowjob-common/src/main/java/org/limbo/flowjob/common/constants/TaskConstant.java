@@ -25,4 +25,19 @@ package org.limbo.flowjob.common.constants;
 public interface TaskConstant {
 
     int TASK_REPORT_SECONDS = 60;
+
+    /**
+     * reduce 任务每次拉取 map 结果的数量
+     */
+    int REDUCE_RESULT_PAGE_SIZE = 1000;
+
+    /**
+     * 流式提交子任务时每次提交的数量
+     */
+    int SUB_TASK_CHUNK_SIZE = 1000;
+
+    /**
+     * 流式提交子任务时同时提交中的批次上限
+     */
+    int SUB_TASK_MAX_INFLIGHT_CHUNKS = 4;
 }
@@ -24,4 +24,9 @@ package org.limbo.flowjob.common.constants;
  */
 public interface WorkerConstant {
     int HEARTBEAT_TIMEOUT_SECOND = 3;
+
+    /**
+     * broker 批量写入心跳的间隔
+     */
+    int HEARTBEAT_FLUSH_MILLIS = 500;
 }
@@ -0,0 +1,209 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.lb;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的服务访问统计，每个服务一个按时间分桶的环形计数器。
+ * 记录访问为常数时间且无锁，查询为 O(服务数 * 桶数)，内存只与服务数量和桶数有关。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class SlidingWindowLBServerStatistics implements LBServerStatisticsProvider {
+
+    /**
+     * 每个桶统计的时长，毫秒
+     */
+    private final long bucketMillis;
+
+    /**
+     * 桶数量，bucketMillis * bucketCount 为最久统计时长
+     */
+    private final int bucketCount;
+
+    private final Map<String, AccessCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 下次清理长时间没有访问的服务的时间
+     */
+    private final AtomicLong nextCleanAt = new AtomicLong();
+
+    /**
+     * 默认 1 分钟一个桶，最久统计 12H
+     */
+    public SlidingWindowLBServerStatistics() {
+        this(Duration.ofMinutes(1), 720);
+    }
+
+    public SlidingWindowLBServerStatistics(Duration bucketDuration, int bucketCount) {
+        if (bucketDuration.toMillis() <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("bucketDuration and bucketCount must be positive");
+        }
+        this.bucketMillis = bucketDuration.toMillis();
+        this.bucketCount = bucketCount;
+    }
+
+
+    /**
+     * 记录服务被访问
+     *
+     * @param serverId 服务 ID
+     * @param times 访问次数
+     */
+    public void record(String serverId, int times) {
+        if (times <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        counters.computeIfAbsent(serverId, id -> new AccessCounter()).record(now, times);
+        clean(now);
+    }
+
+
+    /**
+     * 某一时间点后的访问次数
+     */
+    public int accessTimes(String serverId, long sinceMillis) {
+        AccessCounter counter = counters.get(serverId);
+        return counter == null ? 0 : counter.sum(sinceMillis, System.currentTimeMillis());
+    }
+
+
+    /**
+     * 最近一次访问时间，没有访问过返回 0
+     */
+    public long latestAccessAt(String serverId) {
+        AccessCounter counter = counters.get(serverId);
+        return counter == null ? 0 : counter.latestAccessAt.get();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @param serverIds 服务 ID 结合
+     * @param interval 查询的统计信息时长
+     * @return
+     */
+    @Override
+    public List<LBServerStatistics> getStatistics(Set<String> serverIds, Duration interval) {
+        long since = System.currentTimeMillis() - interval.toMillis();
+        List<LBServerStatistics> statistics = new ArrayList<>(serverIds.size());
+        for (String serverId : serverIds) {
+            long latestAccessAt = latestAccessAt(serverId);
+            Instant latest = latestAccessAt > since ? Instant.ofEpochMilli(latestAccessAt) : Instant.EPOCH;
+            int times = accessTimes(serverId, since);
+            statistics.add(new LBServerStatistics() {
+                @Override
+                public String getServerId() {
+                    return serverId;
+                }
+
+                @Override
+                public Instant getLatestAccessAt() {
+                    return latest;
+                }
+
+                @Override
+                public int getAccessTimes() {
+                    return times;
+                }
+            });
+        }
+        return statistics;
+    }
+
+
+    /**
+     * 每个桶周期清理一次超过统计时长没有访问的服务，防止下线的服务一直占用内存
+     */
+    private void clean(long now) {
+        long cleanAt = nextCleanAt.get();
+        if (now < cleanAt || !nextCleanAt.compareAndSet(cleanAt, now + bucketMillis)) {
+            return;
+        }
+        long expireAt = now - bucketMillis * bucketCount;
+        counters.values().removeIf(counter -> counter.latestAccessAt.get() < expireAt);
+    }
+
+
+    private class AccessCounter {
+
+        private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(bucketCount);
+
+        private final AtomicLong latestAccessAt = new AtomicLong();
+
+        void record(long now, int times) {
+            long epoch = now / bucketMillis;
+            int idx = (int) (epoch % bucketCount);
+            Bucket bucket = buckets.get(idx);
+            // 桶过期后替换成新桶，CAS 失败说明其他线程已替换
+            while (bucket == null || bucket.epoch < epoch) {
+                Bucket newBucket = new Bucket(epoch);
+                if (buckets.compareAndSet(idx, bucket, newBucket)) {
+                    bucket = newBucket;
+                } else {
+                    bucket = buckets.get(idx);
+                }
+            }
+            bucket.count.add(times);
+            latestAccessAt.accumulateAndGet(now, Math::max);
+        }
+
+        int sum(long sinceMillis, long now) {
+            long minEpoch = Math.max(sinceMillis / bucketMillis, now / bucketMillis - bucketCount + 1);
+            long sum = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.epoch >= minEpoch) {
+                    sum += bucket.count.sum();
+                }
+            }
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        }
+
+    }
+
+
+    private static class Bucket {
+
+        /**
+         * 桶对应的时间段，时间戳 / bucketMillis
+         */
+        private final long epoch;
+
+        private final LongAdder count = new LongAdder();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+    }
+
+}
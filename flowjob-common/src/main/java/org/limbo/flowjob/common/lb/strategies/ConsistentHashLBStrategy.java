@@ -24,15 +24,21 @@ import org.apache.commons.lang3.StringUtils;
 import org.limbo.flowjob.common.lb.AbstractLBStrategy;
 import org.limbo.flowjob.common.lb.Invocation;
 import org.limbo.flowjob.common.lb.LBServer;
+import org.limbo.flowjob.common.utils.HashUtils;
 import org.limbo.flowjob.common.utils.MD5Utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 一致性哈希负载。同一组服务共用一个哈希环（或 Maglev 查找表），不同的调用目标之间共享，服务变化后重新构建。
+ * 此类是线程安全的，建议单例使用。
+ *
  * @author Brozen
  * @since 2022-09-02
  */
@@ -44,17 +50,43 @@ public class ConsistentHashLBStrategy<S extends LBServer> extends AbstractLBStra
      */
     public static final String HASH_PARAM_NAME = "consistentHash.hashParamName";
 
+    /**
+     * 选择方式，参考 {@link Mode}，未设置时使用 {@link ConsistentHashLBStrategy#mode}
+     */
+    public static final String MODE_PARAM_NAME = "consistentHash.mode";
+
+    /**
+     * 最多缓存的服务组数量，超过后清空重建
+     */
+    private static final int MAX_SELECTORS = 256;
+
     /**
      * 一致性哈希算法中，计算 LBServer 虚拟节点时的分片数量。默认 64。
      */
     @Setter
     private int replicas = 64;
 
+    /**
+     * Maglev 查找表大小，需要是质数且远大于服务数量。默认 65537。
+     */
+    @Setter
+    private int lookupTableSize = 65537;
+
+    /**
+     * 默认的选择方式
+     */
+    @Setter
+    private Mode mode = Mode.RING;
+
+    /**
+     * 服务组对应的选择器，所有调用目标共享
+     */
+    private final ConcurrentHashMap<SelectorKey, HashSelector> selectors = new ConcurrentHashMap<>();
 
     /**
-     * 存储 url 对应的 一致性hash选择器
+     * 最近一次使用的选择器，服务组未变化时直接使用
      */
-    private final ConcurrentHashMap<String, ConsistentHashSelector<S>> selectors = new ConcurrentHashMap<>();
+    private volatile HashSelector latest;
 
 
     /**
@@ -65,75 +97,234 @@ public class ConsistentHashLBStrategy<S extends LBServer> extends AbstractLBStra
      */
     @Override
     protected Optional<S> doSelect(List<S> servers, Invocation invocation) {
-        String targetId = invocation.getInvokeTargetId();
-        ConsistentHashSelector<S> selector = selectors.get(targetId);
-        int serversHashcode = servers.hashCode();
-        if (selector == null || selector.serversHashCode != serversHashcode) {
-            selector = new ConsistentHashSelector<>(servers, serversHashcode);
-            this.selectors.putIfAbsent(targetId, selector);
+        Map<String, String> parameters = invocation.getLBParameters();
+        SelectorKey key = new SelectorKey(mode(parameters), servers);
+
+        HashSelector selector = latest;
+        if (selector == null || !selector.key.equals(key)) {
+            if (selectors.size() >= MAX_SELECTORS) {
+                selectors.clear();
+            }
+            selector = selectors.computeIfAbsent(key, this::newSelector);
+            latest = selector;
+        }
+
+        // 选择器按 servers 顺序构建，返回的下标和 servers 对应
+        return Optional.of(servers.get(selector.select(hash(invocation, parameters))));
+    }
+
+
+    private Mode mode(Map<String, String> parameters) {
+        String modeName = parameters.get(MODE_PARAM_NAME);
+        if (StringUtils.isBlank(modeName)) {
+            return mode;
         }
+        for (Mode m : Mode.values()) {
+            if (m.name().equalsIgnoreCase(modeName)) {
+                return m;
+            }
+        }
+        return mode;
+    }
+
+
+    private HashSelector newSelector(SelectorKey key) {
+        if (log.isDebugEnabled()) {
+            log.debug("[ConsistentHashLBStrategy] build {} selector for servers {}", key.mode, key.serverIds);
+        }
+        return key.mode == Mode.MAGLEV ? new MaglevSelector(key) : new RingSelector(key);
+    }
+
+
+    /**
+     * 计算调用的 64 位哈希值。优先使用参数中配置的 hash 参数，未配置则使用 invocation 本身。
+     */
+    private long hash(Invocation invocation, Map<String, String> parameters) {
+        String paramName = parameters.get(HASH_PARAM_NAME);
+        // 基于配置的hash 参数名称 从参数里面获取对应参数
+        String hashValue = StringUtils.isNotBlank(paramName) ? parameters.get(paramName) : null;
+        if (hashValue != null) {
+            return HashUtils.hash64(hashValue);
+        }
+        return HashUtils.mix64(invocation.hashCode());
+    }
+
+
+    /**
+     * MD5 签名中第 number 组 32 位数据
+     */
+    private static long hash(byte[] digest, int number) {
+        return (((long) (digest[3 + number * 4] & 0xFF) << 24)
+                | ((long) (digest[2 + number * 4] & 0xFF) << 16)
+                | ((long) (digest[1 + number * 4] & 0xFF) << 8)
+                | (digest[number * 4] & 0xFF))
+                & 0xFFFFFFFFL;
+    }
+
+
+    /**
+     * 选择方式
+     */
+    public enum Mode {
+
+        /**
+         * 哈希环，选择时二分查找虚拟节点，O(log(replicas * n))
+         */
+        RING,
+
+        /**
+         * Maglev 查找表，选择时 O(1)，服务变化时大部分 key 的映射保持不变
+         */
+        MAGLEV,
 
-        return selector.select(invocation);
     }
 
 
     /**
-     * 一致性哈希选择器，将一组服务传递给此选择器，选择器将为每个服务生成 {@link ConsistentHashLBStrategy#replicas} 个虚拟节点。
-     * 选择时，根据 {@link Invocation#hashCode()} 选择一个虚拟节点。
+     * 服务组，服务 ID 及顺序相同视为同一组
      */
-    class ConsistentHashSelector<SERVER extends LBServer> {
+    private static class SelectorKey {
+
+        private final Mode mode;
+
+        private final String[] serverIds;
+
+        private final int hashCode;
+
+        SelectorKey(Mode mode, List<? extends LBServer> servers) {
+            this.mode = mode;
+            this.serverIds = new String[servers.size()];
+            for (int i = 0; i < serverIds.length; i++) {
+                serverIds[i] = servers.get(i).getServerId();
+            }
+            this.hashCode = 31 * mode.hashCode() + Arrays.hashCode(serverIds);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SelectorKey)) {
+                return false;
+            }
+            SelectorKey that = (SelectorKey) o;
+            return hashCode == that.hashCode && mode == that.mode && Arrays.equals(serverIds, that.serverIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return mode + Arrays.toString(serverIds);
+        }
+    }
+
+
+    private abstract static class HashSelector {
+
+        final SelectorKey key;
+
+        HashSelector(SelectorKey key) {
+            this.key = key;
+        }
 
-        private final TreeMap<Long, SERVER> virtualServers;
+        /**
+         * 根据 hash 选择服务，返回服务在服务组中的下标
+         */
+        abstract int select(long hash);
+
+    }
+
+
+    /**
+     * 哈希环，为每个服务生成 {@link ConsistentHashLBStrategy#replicas} 个虚拟节点，虚拟节点按位置排序后二分查找。
+     */
+    private class RingSelector extends HashSelector {
 
-        private final int serversHashCode;
+        private final long[] slots;
 
-        public ConsistentHashSelector(List<SERVER> servers, int serversHashCode) {
-            this.virtualServers = new TreeMap<>();
-            this.serversHashCode = serversHashCode;
+        private final int[] servers;
 
-            for (SERVER server : servers) {
+        RingSelector(SelectorKey key) {
+            super(key);
+            List<long[]> virtualServers = new ArrayList<>(key.serverIds.length * replicas);
+            for (int s = 0; s < key.serverIds.length; s++) {
                 // MD5 签名结果，每 32 位作为一组计算 slot，32 位对应 4 个字节，因此除以 4
-                String sid = server.getServerId();
-                for (int i = 0; i < replicas / 4; i++) {
+                String sid = Objects.toString(key.serverIds[s]);
+                for (int i = 0; i < Math.max(replicas / 4, 1); i++) {
                     byte[] digest = MD5Utils.bytes(sid + i);
                     for (int j = 0; j < 4; j++) {
-                        long slot = hash(digest, j);
-                        this.virtualServers.put(slot, server);
+                        virtualServers.add(new long[]{hash(digest, j), s});
                     }
                 }
             }
-        }
+            virtualServers.sort((v1, v2) -> Long.compare(v1[0], v2[0]));
 
-
-        /**
-         * 选择一个服务，根据入参 Invocation 的 hashcode 计算。
-         */
-        public Optional<SERVER> select(Invocation invocation) {
-            Map<String, String> parameters = invocation.getLBParameters();
-            String paramName = parameters.get(HASH_PARAM_NAME);
-            // 基于配置的hash 参数名称 从参数里面获取对应参数
-            Object hashObj = StringUtils.isNotBlank(paramName) ? parameters.get(paramName) : null;
-            hashObj = hashObj == null ? invocation : hashObj;
-
-            long hashcode = hashObj.hashCode();
-            Map.Entry<Long, SERVER> entry = virtualServers.ceilingEntry(hashcode);
-            if (entry == null) {
-                entry = virtualServers.firstEntry();
+            this.slots = new long[virtualServers.size()];
+            this.servers = new int[virtualServers.size()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = virtualServers.get(i)[0];
+                servers[i] = (int) virtualServers.get(i)[1];
             }
+        }
 
-            return Optional.ofNullable(entry.getValue());
+        @Override
+        int select(long hash) {
+            long slot = hash & 0xFFFFFFFFL;
+            int idx = Arrays.binarySearch(slots, slot);
+            if (idx < 0) {
+                idx = -idx - 1;
+            }
+            return servers[idx == slots.length ? 0 : idx];
         }
+    }
+
+
+    /**
+     * Maglev 查找表，每个服务按自己的排列轮流占据表中的位置，选择时直接取模查表。
+     */
+    private class MaglevSelector extends HashSelector {
 
+        private final int[] table;
 
+        MaglevSelector(SelectorKey key) {
+            super(key);
+            int n = key.serverIds.length;
+            int size = lookupTableSize;
+            long[] offsets = new long[n];
+            long[] skips = new long[n];
+            for (int s = 0; s < n; s++) {
+                byte[] digest = MD5Utils.bytes(Objects.toString(key.serverIds[s]));
+                offsets[s] = hash(digest, 0) % size;
+                skips[s] = hash(digest, 1) % (size - 1) + 1;
+            }
 
-        private long hash(byte[] digest, int number) {
-            return (((long) (digest[3 + number * 4] & 0xFF) << 24)
-                    | ((long) (digest[2 + number * 4] & 0xFF) << 16)
-                    | ((long) (digest[1 + number * 4] & 0xFF) << 8)
-                    | (digest[number * 4] & 0xFF))
-                    & 0xFFFFFFFFL;
+            this.table = new int[size];
+            Arrays.fill(table, -1);
+            long[] next = new long[n];
+            int filled = 0;
+            while (filled < size) {
+                for (int s = 0; s < n && filled < size; s++) {
+                    int c = (int) ((offsets[s] + next[s] * skips[s]) % size);
+                    while (table[c] >= 0) {
+                        next[s]++;
+                        c = (int) ((offsets[s] + next[s] * skips[s]) % size);
+                    }
+                    table[c] = s;
+                    next[s]++;
+                    filled++;
+                }
+            }
         }
 
+        @Override
+        int select(long hash) {
+            return table[(int) Long.remainderUnsigned(hash, table.length)];
+        }
     }
 
 }
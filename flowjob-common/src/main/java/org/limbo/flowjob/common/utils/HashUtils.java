@@ -0,0 +1,62 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 非加密的 64 位哈希，用于负载均衡、布隆过滤器等只要求分布均匀的场景
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public final class HashUtils {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private HashUtils() {
+    }
+
+    /**
+     * 对 UTF-8 编码做 FNV-1a 后再做一次 fmix64，保证相近的字符串在低位也足够分散
+     */
+    public static long hash64(String value) {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * MurmurHash3 fmix64
+     */
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
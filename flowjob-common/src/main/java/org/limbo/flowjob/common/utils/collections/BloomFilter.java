@@ -0,0 +1,118 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.common.utils.collections;
+
+import org.limbo.flowjob.common.utils.HashUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 字符串布隆过滤器，判断不存在时一定不存在，判断存在时可能误判。
+ * 元素数量超过当前容量时追加一层容量翻倍、误判率减半的过滤器，整体误判率不超过初始误判率的两倍。
+ * 非线程安全。
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+public class BloomFilter {
+
+    private final List<Layer> layers = new ArrayList<>();
+
+    public BloomFilter(int expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("illegal bloom filter param expectedInsertions=" + expectedInsertions + " fpp=" + fpp);
+        }
+        layers.add(new Layer(expectedInsertions, fpp));
+    }
+
+    public void put(String value) {
+        long hash = HashUtils.hash64(value);
+        if (mightContain(hash)) {
+            return;
+        }
+        Layer last = layers.get(layers.size() - 1);
+        if (last.count >= last.capacity) {
+            last = new Layer(last.capacity * 2L, last.fpp / 2);
+            layers.add(last);
+        }
+        last.put(hash);
+    }
+
+    public boolean mightContain(String value) {
+        return mightContain(HashUtils.hash64(value));
+    }
+
+    private boolean mightContain(long hash) {
+        for (Layer layer : layers) {
+            if (layer.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Layer {
+
+        private final long[] bits;
+
+        private final long bitSize;
+
+        private final int hashes;
+
+        private final long capacity;
+
+        private final double fpp;
+
+        private long count;
+
+        Layer(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.bits = new long[(int) Math.max(1, (m + 63) >>> 6)];
+            this.bitSize = bits.length * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) bitSize / capacity * Math.log(2)));
+        }
+
+        void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long idx = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+                bits[(int) (idx >>> 6)] |= 1L << idx;
+            }
+            count++;
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                long idx = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitSize;
+                if ((bits[(int) (idx >>> 6)] & (1L << idx)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
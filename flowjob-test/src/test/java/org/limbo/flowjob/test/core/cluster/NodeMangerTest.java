@@ -0,0 +1,125 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.cluster.Node;
+import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
+import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.mockito.Mockito;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Brozen
+ * @since 2024-03-19
+ */
+class NodeMangerTest {
+
+    private static final int ID_COUNT = 10000;
+
+    private NodeManger nodeManger;
+
+    private List<Node> nodes;
+
+    @BeforeEach
+    void setUp() throws MalformedURLException {
+        nodeManger = new NodeManger(Mockito.mock(PlanRepository.class), Mockito.mock(JobInstanceRepository.class));
+        nodes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(new Node("broker-" + i, new URL("http://127.0.0.1:" + (8080 + i))));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        // 节点信息是静态的 避免影响其它用例
+        nodes.forEach(nodeManger::offline);
+    }
+
+    @Test
+    void testElectEmpty() {
+        Assertions.assertNull(nodeManger.elect("id"));
+    }
+
+    @Test
+    void testNodeOffline() {
+        for (int i = 0; i < 3; i++) {
+            nodeManger.online(nodes.get(i));
+        }
+        Map<String, URL> before = electAll();
+
+        Node offline = nodes.get(2);
+        nodeManger.offline(offline);
+        Map<String, URL> after = electAll();
+
+        // 只有下线节点的 id 重新分配到其它节点
+        for (Map.Entry<String, URL> entry : before.entrySet()) {
+            URL owner = after.get(entry.getKey());
+            Assertions.assertNotEquals(offline.getUrl(), owner);
+            if (!entry.getValue().equals(offline.getUrl())) {
+                Assertions.assertEquals(entry.getValue(), owner);
+            }
+        }
+    }
+
+    @Test
+    void testNodeOnline() {
+        for (int i = 0; i < 3; i++) {
+            nodeManger.online(nodes.get(i));
+        }
+        Map<String, URL> before = electAll();
+
+        Node online = nodes.get(3);
+        nodeManger.online(online);
+        Map<String, URL> after = electAll();
+
+        // 变化的 id 都分配给了新节点，且只占一部分
+        int moved = 0;
+        for (Map.Entry<String, URL> entry : before.entrySet()) {
+            URL owner = after.get(entry.getKey());
+            if (!entry.getValue().equals(owner)) {
+                Assertions.assertEquals(online.getUrl(), owner);
+                moved++;
+            }
+        }
+        Assertions.assertTrue(moved > ID_COUNT / 10, "moved " + moved);
+        Assertions.assertTrue(moved < ID_COUNT / 2, "moved " + moved);
+    }
+
+    private Map<String, URL> electAll() {
+        Map<String, URL> owners = new HashMap<>();
+        for (int i = 0; i < ID_COUNT; i++) {
+            String id = "job-" + i;
+            owners.put(id, nodeManger.elect(id).getUrl());
+        }
+        return owners;
+    }
+
+}
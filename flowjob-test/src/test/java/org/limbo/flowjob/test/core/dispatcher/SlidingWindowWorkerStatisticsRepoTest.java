@@ -0,0 +1,73 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.dispatcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.schedule.selector.SlidingWindowWorkerStatisticsRepo;
+import org.limbo.flowjob.broker.core.schedule.selector.WorkerLBStatistics;
+import org.limbo.flowjob.broker.core.worker.Worker;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class SlidingWindowWorkerStatisticsRepoTest {
+
+    @Test
+    void testRecordAndList() {
+        SlidingWindowWorkerStatisticsRepo repo = new SlidingWindowWorkerStatisticsRepo();
+        Worker w1 = Worker.builder().id("w_1").build();
+        Worker w2 = Worker.builder().id("w_2").build();
+        for (int i = 0; i < 5; i++) {
+            repo.recordDispatched(w1);
+        }
+        repo.recordDispatched(w2);
+
+        Set<String> ids = new HashSet<>();
+        ids.add("w_1");
+        ids.add("w_2");
+        ids.add("w_3");
+        List<WorkerLBStatistics> list = repo.list(ids, Instant.now().plusSeconds(-600));
+        Map<String, WorkerLBStatistics> statistics = list.stream().collect(Collectors.toMap(WorkerLBStatistics::getWorkerId, Function.identity()));
+
+        Assertions.assertEquals(3, statistics.size());
+        Assertions.assertEquals(5, statistics.get("w_1").getDispatchTimes());
+        Assertions.assertEquals(1, statistics.get("w_2").getDispatchTimes());
+        Assertions.assertNotNull(statistics.get("w_2").getLastDispatchTaskAt());
+        Assertions.assertEquals(0, statistics.get("w_3").getDispatchTimes());
+        Assertions.assertNull(statistics.get("w_3").getLastDispatchTaskAt());
+
+        // 查询时间点之后没有下发记录
+        List<WorkerLBStatistics> future = repo.list(ids, Instant.now().plusSeconds(600));
+        for (WorkerLBStatistics s : future) {
+            Assertions.assertEquals(0, s.getDispatchTimes());
+            Assertions.assertNull(s.getLastDispatchTaskAt());
+        }
+    }
+
+}
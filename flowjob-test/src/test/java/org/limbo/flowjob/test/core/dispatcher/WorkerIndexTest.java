@@ -0,0 +1,170 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.dispatcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.TagFilterCondition;
+import org.limbo.flowjob.api.constants.WorkerStatus;
+import org.limbo.flowjob.broker.core.worker.Worker;
+import org.limbo.flowjob.broker.core.worker.dispatch.TagFilterOption;
+import org.limbo.flowjob.broker.core.worker.dispatch.WorkerFilter;
+import org.limbo.flowjob.broker.core.worker.dispatch.WorkerIndex;
+import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 索引过滤的结果需要与 {@link TagFilterOption#asPredicate()} 逐个判断一致
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class WorkerIndexTest {
+
+    private List<Worker> workers;
+
+    private Map<String, Worker> workerMap;
+
+    private WorkerIndex index;
+
+    @BeforeEach
+    void setUp() throws MalformedURLException {
+        workers = new ArrayList<>();
+        workers.add(worker("w1", "http://10.0.0.1:8080", true, tags("env", "prod", "zone", "a"), "hello"));
+        workers.add(worker("w2", "http://10.0.0.1:8081", true, tags("env", "test", "zone", "b"), "hello", "world"));
+        workers.add(worker("w3", "http://10.0.0.2:8080", true, tags("env", "prod", "env", "gray"), "world"));
+        workers.add(worker("w4", "http://10.0.0.3:8080", true, tags("zone", "a"), "hello"));
+        // 标签值为空视为没有该标签
+        Map<String, List<String>> emptyEnv = tags("zone", "c");
+        emptyEnv.put("env", Collections.emptyList());
+        workers.add(worker("w5", "http://10.0.0.4:8080", true, emptyEnv, "hello"));
+        workers.add(worker("w6", "http://10.0.0.5:8080", true, new HashMap<>(), "hello"));
+        // 未启用
+        workers.add(worker("w7", "http://10.0.0.1:8082", false, tags("env", "prod"), "hello"));
+        workerMap = workers.stream().collect(Collectors.toMap(Worker::getId, Function.identity()));
+        index = new WorkerIndex(workers);
+    }
+
+    @Test
+    void testTagEquivalence() {
+        for (TagFilterOption option : options()) {
+            BitSet bits = index.tag(option);
+            List<String> actual = new ArrayList<>();
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                actual.add(index.workerId(i));
+            }
+            List<String> expect = workers.stream().filter(option.asPredicate()).map(Worker::getId).collect(Collectors.toList());
+            Assertions.assertEquals(expect, actual, () -> describe(option));
+        }
+    }
+
+    @Test
+    void testFilterEquivalence() {
+        List<TagFilterOption> options = options();
+        for (String executor : Arrays.asList("hello", "world", "none")) {
+            for (TagFilterOption first : options) {
+                for (TagFilterOption second : options) {
+                    List<TagFilterOption> tagFilters = Arrays.asList(first, second);
+                    List<String> actual = new WorkerFilter(executor, tagFilters, index, workerMap::get)
+                            .filterExecutor()
+                            .filterTags()
+                            .get().stream().map(Worker::getId).collect(Collectors.toList());
+                    List<String> expect = workers.stream()
+                            .filter(Worker::isEnabled)
+                            .filter(w -> w.getExecutors().stream().anyMatch(e -> e.getName().equals(executor)))
+                            .filter(first.asPredicate().and(second.asPredicate()))
+                            .map(Worker::getId)
+                            .collect(Collectors.toList());
+                    Assertions.assertEquals(expect, actual, () -> executor + " " + describe(first) + " " + describe(second));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testOfflineWorker() {
+        // 索引快照中的 worker 已下线
+        List<Worker> result = new WorkerFilter("hello", Collections.emptyList(), index, id -> "w1".equals(id) ? null : workerMap.get(id))
+                .filterExecutor()
+                .filterTags()
+                .get();
+        Assertions.assertFalse(result.stream().anyMatch(w -> "w1".equals(w.getId())));
+        Assertions.assertEquals(4, result.size());
+    }
+
+    private List<TagFilterOption> options() {
+        List<TagFilterOption> options = new ArrayList<>();
+        for (String name : Arrays.asList("env", "zone", "missing")) {
+            options.add(option(name, null, TagFilterCondition.EXISTS));
+            options.add(option(name, null, TagFilterCondition.NOT_EXISTS));
+            for (String value : Arrays.asList("prod", "a", "gray", "none")) {
+                options.add(option(name, value, TagFilterCondition.MUST_MATCH_VALUE));
+                options.add(option(name, value, TagFilterCondition.MUST_NOT_MATCH_VALUE));
+            }
+            for (String regex : Arrays.asList("^pr", "a|b", "x+", ".*")) {
+                options.add(option(name, regex, TagFilterCondition.MUST_MATCH_VALUE_REGEX));
+            }
+        }
+        options.add(option("10.0.0.1", "8080", TagFilterCondition.MATCH_HOST_PORT));
+        options.add(option("10.0.0.1", "8082", TagFilterCondition.MATCH_HOST_PORT));
+        options.add(option("10.0.0.9", "8080", TagFilterCondition.MATCH_HOST_PORT));
+        return options;
+    }
+
+    private TagFilterOption option(String name, String value, TagFilterCondition condition) {
+        return TagFilterOption.builder().tagName(name).tagValue(value).condition(condition).build();
+    }
+
+    private String describe(TagFilterOption option) {
+        return option.getCondition() + "(" + option.getTagName() + ", " + option.getTagValue() + ")";
+    }
+
+    private Map<String, List<String>> tags(String... kvs) {
+        Map<String, List<String>> tags = new HashMap<>();
+        for (int i = 0; i < kvs.length; i += 2) {
+            tags.computeIfAbsent(kvs[i], k -> new ArrayList<>()).add(kvs[i + 1]);
+        }
+        return tags;
+    }
+
+    private Worker worker(String id, String url, boolean enabled, Map<String, List<String>> tags, String... executors) throws MalformedURLException {
+        return Worker.builder()
+                .id(id)
+                .name(id)
+                .url(new URL(url))
+                .status(WorkerStatus.RUNNING)
+                .enabled(enabled)
+                .executors(Arrays.stream(executors).map(name -> WorkerExecutor.builder().name(name).build()).collect(Collectors.toList()))
+                .tags(tags)
+                .build();
+    }
+
+}
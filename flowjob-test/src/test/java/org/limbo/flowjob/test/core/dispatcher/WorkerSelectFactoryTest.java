@@ -18,6 +18,7 @@
 
 package org.limbo.flowjob.test.core.dispatcher;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -29,6 +30,8 @@ import org.limbo.flowjob.broker.core.schedule.selector.WorkerSelectorFactory;
 import org.limbo.flowjob.broker.core.schedule.selector.WorkerStatisticsRepository;
 import org.limbo.flowjob.broker.core.worker.Worker;
 import org.limbo.flowjob.broker.core.worker.executor.WorkerExecutor;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerAvailableResource;
+import org.limbo.flowjob.broker.core.worker.metric.WorkerMetric;
 import org.limbo.flowjob.common.utils.attribute.Attributes;
 
 import java.net.MalformedURLException;
@@ -142,4 +145,22 @@ class WorkerSelectFactoryTest {
         }
     }
 
+    @Test
+    void testResourceWeighted() {
+        List<Worker> resourceWorkers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Worker worker = Worker.builder()
+                    .id("w_" + i)
+                    .metric(new WorkerMetric(new WorkerAvailableResource(4, 1024, i), null))
+                    .build();
+            resourceWorkers.add(worker);
+        }
+        WorkerSelector workerSelector = factory.newSelector(LoadBalanceType.RESOURCE_WEIGHTED);
+        for (int i = 0; i < 30; i++) {
+            Worker select = workerSelector.select(emptyInvocation, resourceWorkers);
+            // 没有剩余队列的 worker 不会被选中
+            Assertions.assertNotEquals("w_0", select.getId());
+        }
+    }
+
 }
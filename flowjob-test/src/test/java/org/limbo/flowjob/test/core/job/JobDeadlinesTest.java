@@ -0,0 +1,139 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.job;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+import org.limbo.flowjob.test.support.TickClock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class JobDeadlinesTest {
+
+    private TickClock clock;
+
+    private JobDeadlines deadlines;
+
+    @BeforeEach
+    void setUp() {
+        clock = new TickClock(System.currentTimeMillis());
+        deadlines = new JobDeadlines(clock);
+    }
+
+    @Test
+    void testScheduleExpired() {
+        deadlines.scheduling("j1");
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT - 1);
+        deadlines.scheduling("j2");
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+
+        clock.tick(1);
+        Assertions.assertEquals(Collections.singletonList("j1"), deadlines.expiredScheduling(10));
+        // 取出后不再记录
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT);
+        Assertions.assertEquals(Collections.singletonList("j2"), deadlines.expiredScheduling(10));
+    }
+
+    @Test
+    void testExpiredLimit() {
+        deadlines.scheduling("j1");
+        deadlines.scheduling("j2");
+        deadlines.scheduling("j3");
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT);
+        Assertions.assertEquals(2, deadlines.expiredScheduling(2).size());
+        Assertions.assertEquals(1, deadlines.expiredScheduling(2).size());
+    }
+
+    @Test
+    void testExecutingRefreshOnReport() {
+        deadlines.scheduling("j1");
+        deadlines.executing("j1");
+        // 开始执行后不再检查调度超时
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT);
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+
+        clock.tick(JobDeadlines.REPORT_TIMEOUT - JobDeadlines.SCHEDULE_TIMEOUT - 1);
+        deadlines.report("j1");
+        clock.tick(1);
+        Assertions.assertTrue(deadlines.expiredExecuting(10).isEmpty());
+
+        clock.tick(JobDeadlines.REPORT_TIMEOUT - 1);
+        Assertions.assertEquals(Collections.singletonList("j1"), deadlines.expiredExecuting(10));
+    }
+
+    @Test
+    void testIgnoreOtherBroker() {
+        // 非本节点下发的 job 不记录
+        deadlines.executing("j1");
+        deadlines.report("j1");
+        clock.tick(JobDeadlines.REPORT_TIMEOUT);
+        Assertions.assertTrue(deadlines.expiredExecuting(10).isEmpty());
+    }
+
+    @Test
+    void testExecutingByLastReport() {
+        deadlines.scheduling("j1");
+        deadlines.executing("j1", TimeUtils.toLocalDateTime(clock.millis() - 1000));
+        clock.tick(JobDeadlines.REPORT_TIMEOUT - 1000);
+        Assertions.assertEquals(Collections.singletonList("j1"), deadlines.expiredExecuting(10));
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+    }
+
+    @Test
+    void testRemoveOnComplete() {
+        deadlines.scheduling("j1");
+        deadlines.scheduling("j2");
+        deadlines.executing("j2");
+        deadlines.remove("j1");
+        deadlines.remove("j2");
+        clock.tick(JobDeadlines.REPORT_TIMEOUT);
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+        Assertions.assertTrue(deadlines.expiredExecuting(10).isEmpty());
+
+        // 结束后的上报不会重新记录
+        deadlines.report("j2");
+        clock.tick(JobDeadlines.REPORT_TIMEOUT);
+        Assertions.assertTrue(deadlines.expiredExecuting(10).isEmpty());
+    }
+
+    @Test
+    void testRescheduleReplacesDeadline() {
+        deadlines.scheduling("j1");
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT - 1);
+        // 重新下发后以新的时间为准
+        deadlines.scheduling("j1");
+        deadlines.scheduling("j2");
+        clock.tick(1);
+        Assertions.assertTrue(deadlines.expiredScheduling(10).isEmpty());
+        clock.tick(JobDeadlines.SCHEDULE_TIMEOUT);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("j1", "j2")), new HashSet<>(deadlines.expiredScheduling(10)));
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
+import org.limbo.flowjob.broker.core.meta.processor.JobDispatchSelect;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author Devil
+ * @since 2024/1/4
+ */
+class JobDispatchSelectTest {
+
+    @Test
+    void testPowerOfTwoChoices() {
+        LocalDateTime heartbeatAt = LocalDateTime.now();
+        ScheduleAgent large = agent(UUID.randomUUID().toString(), 5, heartbeatAt);
+        ScheduleAgent small = agent(UUID.randomUUID().toString(), 2, heartbeatAt);
+        List<ScheduleAgent> agents = Arrays.asList(large, small);
+
+        // 两个候选时总是选择剩余空位更多的
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertSame(large, JobDispatchSelect.select(agents));
+        }
+        // 估算的空位用完后不再选择
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertNotNull(JobDispatchSelect.select(agents));
+        }
+        Assertions.assertNull(JobDispatchSelect.select(agents));
+    }
+
+    @Test
+    void testRejectedUntilHeartbeat() {
+        String id = UUID.randomUUID().toString();
+        LocalDateTime heartbeatAt = LocalDateTime.now();
+        ScheduleAgent agent = agent(id, 10, heartbeatAt);
+        List<ScheduleAgent> agents = Collections.singletonList(agent);
+
+        Assertions.assertSame(agent, JobDispatchSelect.select(agents));
+        JobDispatchSelect.release(agent, 1);
+        JobDispatchSelect.rejected(agent);
+        Assertions.assertNull(JobDispatchSelect.select(agents));
+
+        // 新的心跳重新计数
+        ScheduleAgent beat = agent(id, 10, heartbeatAt.plusSeconds(1));
+        Assertions.assertSame(beat, JobDispatchSelect.select(Collections.singletonList(beat)));
+    }
+
+    @Test
+    void testReleaseAfterHeartbeat() {
+        String id = UUID.randomUUID().toString();
+        LocalDateTime heartbeatAt = LocalDateTime.now();
+        ScheduleAgent agent = agent(id, 2, heartbeatAt);
+        Assertions.assertSame(agent, JobDispatchSelect.select(Collections.singletonList(agent)));
+
+        // 下发过程中收到心跳，选择时按新的心跳重新计数
+        ScheduleAgent beat = agent(id, 2, heartbeatAt.plusSeconds(1));
+        List<ScheduleAgent> agents = Collections.singletonList(beat);
+        Assertions.assertSame(beat, JobDispatchSelect.select(agents));
+
+        // 旧的快照归还、拒绝不影响新的计数
+        JobDispatchSelect.release(agent, 1);
+        JobDispatchSelect.release(agent, 1);
+        Assertions.assertSame(beat, JobDispatchSelect.select(agents));
+        Assertions.assertNull(JobDispatchSelect.select(agents));
+
+        // 旧的快照选择时不会回退计数
+        Assertions.assertNull(JobDispatchSelect.select(Collections.singletonList(agent)));
+    }
+
+    @Test
+    void testInflightNotNegative() {
+        String id = UUID.randomUUID().toString();
+        ScheduleAgent agent = agent(id, 2, LocalDateTime.now());
+        List<ScheduleAgent> agents = Collections.singletonList(agent);
+
+        Assertions.assertSame(agent, JobDispatchSelect.select(agents));
+        // 重复归还不会超出心跳上报的空位
+        JobDispatchSelect.release(agent, 1);
+        JobDispatchSelect.release(agent, 3);
+        Assertions.assertSame(agent, JobDispatchSelect.select(agents));
+        Assertions.assertSame(agent, JobDispatchSelect.select(agents));
+        Assertions.assertNull(JobDispatchSelect.select(agents));
+    }
+
+    private ScheduleAgent agent(String id, int availableQueueLimit, LocalDateTime heartbeatAt) {
+        return ScheduleAgent.builder()
+                .id(id)
+                .availableQueueLimit(availableQueueLimit)
+                .lastHeartbeatAt(heartbeatAt)
+                .enabled(true)
+                .build();
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.JobStatus;
+import org.limbo.flowjob.broker.core.agent.AgentRegistry;
+import org.limbo.flowjob.broker.core.agent.ScheduleAgent;
+import org.limbo.flowjob.broker.core.agent.rpc.AgentRpc;
+import org.limbo.flowjob.broker.core.meta.job.JobDeadlines;
+import org.limbo.flowjob.broker.core.meta.job.JobInstance;
+import org.limbo.flowjob.broker.core.meta.processor.JobDispatcher;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-18
+ */
+class JobDispatcherTest {
+
+    private AgentRpc rpc;
+
+    private AgentRegistry agentRegistry;
+
+    @BeforeEach
+    void setUp() {
+        rpc = Mockito.mock(AgentRpc.class);
+        Mockito.when(rpc.dispatch(Mockito.any(JobInstance.class))).thenReturn(true);
+        Mockito.when(rpc.batchDispatch(Mockito.anyList())).thenAnswer(invocation -> {
+            List<JobInstance> instances = invocation.getArgument(0);
+            return instances.stream().collect(Collectors.toMap(JobInstance::getId, i -> true));
+        });
+        // 每个用例使用不同的 agent，避免选择器中的计数互相影响
+        ScheduleAgent agent = ScheduleAgent.builder()
+                .id(UUID.randomUUID().toString())
+                .availableQueueLimit(1000)
+                .lastHeartbeatAt(LocalDateTime.now())
+                .enabled(true)
+                .rpc(rpc)
+                .build();
+        agentRegistry = Mockito.mock(AgentRegistry.class);
+        Mockito.when(agentRegistry.all()).thenReturn(Collections.singletonList(agent));
+    }
+
+    @Test
+    void testFlushWhenFull() {
+        JobDispatcher dispatcher = new JobDispatcher(agentRegistry, new JobDeadlines(), 60000, 3);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch(job("j" + i));
+        }
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<JobInstance>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(rpc, Mockito.timeout(2000)).batchDispatch(captor.capture());
+        Assertions.assertEquals(3, captor.getValue().size());
+    }
+
+    @Test
+    void testFlushAfterLinger() {
+        JobDispatcher dispatcher = new JobDispatcher(agentRegistry, new JobDeadlines(), 200, 10);
+        dispatcher.dispatch(job("j1"));
+        dispatcher.dispatch(job("j2"));
+
+        Mockito.verify(rpc, Mockito.after(100).never()).batchDispatch(Mockito.anyList());
+        Mockito.verify(rpc, Mockito.timeout(2000)).batchDispatch(Mockito.argThat(instances -> instances.size() == 2));
+    }
+
+    @Test
+    void testStaleLingerIgnored() {
+        JobDispatcher dispatcher = new JobDispatcher(agentRegistry, new JobDeadlines(), 1000, 2);
+        // 第一个批次攒满后提前下发，其 linger 定时已经过期
+        dispatcher.dispatch(job("j1"));
+        dispatcher.dispatch(job("j2"));
+        Mockito.verify(rpc, Mockito.timeout(2000)).batchDispatch(Mockito.anyList());
+
+        sleep(400);
+        JobInstance j3 = job("j3");
+        dispatcher.dispatch(j3);
+
+        // 过期的定时不会提前下发新的批次
+        Mockito.verify(rpc, Mockito.after(800).never()).dispatch(j3);
+        Mockito.verify(rpc, Mockito.timeout(2000)).dispatch(j3);
+        Mockito.verify(rpc, Mockito.times(1)).batchDispatch(Mockito.anyList());
+    }
+
+    private JobInstance job(String id) {
+        return JobInstance.builder().id(id).status(JobStatus.SCHEDULING).build();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+
+package org.limbo.flowjob.test.core.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.JobStatus;
+import org.limbo.flowjob.broker.core.meta.info.WorkflowJobInfo;
+import org.limbo.flowjob.broker.core.meta.processor.JobProgress;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Brozen
+ * @since 2024-03-18
+ */
+class JobProgressTest {
+
+    @Test
+    void testLoadOnce() {
+        Map<String, JobStatus> statuses = new HashMap<>();
+        statuses.put("j1", JobStatus.SUCCEED);
+        statuses.put("j2", JobStatus.SUCCEED);
+        statuses.put("j3", JobStatus.EXECUTING);
+        AtomicInteger loads = new AtomicInteger();
+        JobProgress progress = new JobProgress("i1", () -> {
+            loads.incrementAndGet();
+            return statuses;
+        });
+
+        // 单个前置节点不需要查询
+        Assertions.assertTrue(progress.isSuccess(Collections.singletonList(job("j3", false)), false));
+        Assertions.assertEquals(0, loads.get());
+
+        Assertions.assertTrue(progress.isSuccess(Arrays.asList(job("j1", false), job("j2", false)), false));
+        Assertions.assertFalse(progress.isSuccess(Arrays.asList(job("j1", false), job("j3", false)), false));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testFailedAndMissing() {
+        Map<String, JobStatus> statuses = new HashMap<>();
+        statuses.put("j1", JobStatus.SUCCEED);
+        statuses.put("j2", JobStatus.FAILED);
+        JobProgress progress = new JobProgress("i1", () -> statuses);
+
+        // 失败的 job 只有允许跳过且开启校验时认为成功
+        Assertions.assertFalse(progress.isSuccess(Arrays.asList(job("j1", false), job("j2", false)), true));
+        Assertions.assertFalse(progress.isSuccess(Arrays.asList(job("j1", false), job("j2", true)), false));
+        Assertions.assertTrue(progress.isSuccess(Arrays.asList(job("j1", false), job("j2", true)), true));
+
+        // 还未创建的 job
+        Assertions.assertFalse(progress.isSuccess(Arrays.asList(job("j1", false), job("j4", false)), true));
+    }
+
+    private WorkflowJobInfo job(String id, boolean skipWhenFail) {
+        WorkflowJobInfo jobInfo = new WorkflowJobInfo();
+        jobInfo.setId(id);
+        jobInfo.setSkipWhenFail(skipWhenFail);
+        return jobInfo;
+    }
+
+}
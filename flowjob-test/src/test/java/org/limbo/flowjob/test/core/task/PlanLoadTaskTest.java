@@ -0,0 +1,175 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.task;
+
+import com.cronutils.model.CronType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.api.constants.TriggerType;
+import org.limbo.flowjob.broker.core.cluster.Broker;
+import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.info.PlanChange;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
+import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
+import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.meta.task.PlanLoadTask;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleGroupRegistry;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-16
+ */
+class PlanLoadTaskTest {
+
+    private static final String CRON = "0/5 * * * * ? *";
+
+    private URL brokerUrl;
+
+    private URL otherBrokerUrl;
+
+    private MetaTaskScheduler scheduler;
+
+    private PlanRepository planRepository;
+
+    private PlanChangeRepository planChangeRepository;
+
+    private PlanLoadTask task;
+
+    @BeforeEach
+    void setUp() throws MalformedURLException {
+        brokerUrl = new URL("http://127.0.0.1:8080");
+        otherBrokerUrl = new URL("http://127.0.0.1:8081");
+        scheduler = Mockito.mock(MetaTaskScheduler.class);
+        planRepository = Mockito.mock(PlanRepository.class);
+        planChangeRepository = Mockito.mock(PlanChangeRepository.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        Broker broker = Mockito.mock(Broker.class);
+        Mockito.when(broker.getRpcBaseURL()).thenReturn(brokerUrl);
+        NodeManger nodeManger = Mockito.mock(NodeManger.class);
+        Mockito.when(nodeManger.alive(brokerUrl.toString())).thenReturn(true);
+        PlanScheduleGroupRegistry groupRegistry = new PlanScheduleGroupRegistry(scheduler, processor, false, 10);
+        task = new PlanLoadTask(scheduler, planRepository, planChangeRepository, processor, groupRegistry, broker, nodeManger, 2, 2);
+    }
+
+    @Test
+    void testLoadAllThenChanges() {
+        Mockito.when(planChangeRepository.latestSequence(Mockito.any(LocalDateTime.class))).thenReturn(10L);
+        Mockito.when(planRepository.findEnabledIds(brokerUrl, "", 2)).thenReturn(Arrays.asList("p1", "p2"));
+        Mockito.when(planRepository.findEnabledIds(brokerUrl, "p2", 2)).thenReturn(Collections.singletonList("p3"));
+        Mockito.when(planRepository.list(Arrays.asList("p1", "p2"))).thenReturn(Arrays.asList(plan("p1", "1", brokerUrl), plan("p2", "1", brokerUrl)));
+        Mockito.when(planRepository.list(Collections.singletonList("p3"))).thenReturn(Collections.singletonList(plan("p3", "1", brokerUrl)));
+
+        task.load();
+        ArgumentCaptor<MetaTask> loaded = ArgumentCaptor.forClass(MetaTask.class);
+        Mockito.verify(scheduler, Mockito.times(3)).schedule(loaded.capture());
+        List<String> loadedIds = loaded.getAllValues().stream().map(MetaTask::scheduleId).collect(Collectors.toList());
+
+        // p1 更新版本 p2 迁移到其它节点 p3 被删除
+        LocalDateTime changedAt = LocalDateTime.now().minusMinutes(1);
+        Mockito.when(planChangeRepository.findAfter(brokerUrl, 10L, 500)).thenReturn(Arrays.asList(
+                new PlanChange(11, "p1", changedAt),
+                new PlanChange(12, "p2", changedAt),
+                new PlanChange(14, "p3", changedAt)
+        ));
+        Mockito.when(planRepository.list(Mockito.argThat(ids -> ids != null && ids.size() == 3)))
+                .thenReturn(Arrays.asList(plan("p1", "2", brokerUrl), plan("p2", "1", otherBrokerUrl)));
+
+        Mockito.clearInvocations(scheduler);
+        task.load();
+
+        ArgumentCaptor<MetaTask> captor = ArgumentCaptor.forClass(MetaTask.class);
+        Mockito.verify(scheduler, Mockito.times(1)).schedule(captor.capture());
+        Assertions.assertFalse(loadedIds.contains(captor.getValue().scheduleId()));
+        for (String scheduleId : loadedIds) {
+            Mockito.verify(scheduler).unschedule(scheduleId);
+        }
+
+        // 提交窗口之外的变更 推进到已读取的最大序号
+        task.load();
+        Mockito.verify(planChangeRepository).findAfter(brokerUrl, 14L, 500);
+    }
+
+    @Test
+    void testChangesInCommitWindow() {
+        Mockito.when(planChangeRepository.latestSequence(Mockito.any(LocalDateTime.class))).thenReturn(10L);
+        Mockito.when(planRepository.findEnabledIds(brokerUrl, "", 2)).thenReturn(Collections.emptyList());
+        task.load();
+
+        // 12 已提交 11 所在事务还未提交
+        LocalDateTime committedAt = LocalDateTime.now().minusMinutes(1);
+        LocalDateTime recentAt = LocalDateTime.now();
+        Mockito.when(planChangeRepository.findAfter(brokerUrl, 10L, 500)).thenReturn(Collections.singletonList(
+                new PlanChange(12, "p2", recentAt)
+        ));
+        Mockito.when(planRepository.list(Mockito.anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> plan(id, "1", brokerUrl)).collect(Collectors.toList());
+        });
+        task.load();
+        Mockito.verify(planRepository).list(Collections.singleton("p2"));
+
+        // 窗口内的变更不推进游标，已消费的不重复加载，晚提交的 11 仍然能读取到
+        Mockito.when(planChangeRepository.findAfter(brokerUrl, 10L, 500)).thenReturn(Arrays.asList(
+                new PlanChange(11, "p1", committedAt),
+                new PlanChange(12, "p2", recentAt)
+        ));
+        task.load();
+        Mockito.verify(planRepository).list(Collections.singleton("p1"));
+        Mockito.verify(planRepository, Mockito.times(1)).list(Collections.singleton("p2"));
+
+        // 变更移出窗口后推进游标
+        Mockito.when(planChangeRepository.findAfter(brokerUrl, 11L, 500)).thenReturn(Collections.singletonList(
+                new PlanChange(12, "p2", committedAt)
+        ));
+        task.load();
+        Mockito.verify(planRepository, Mockito.times(1)).list(Collections.singleton("p2"));
+        task.load();
+        Mockito.verify(planChangeRepository).findAfter(brokerUrl, 12L, 500);
+    }
+
+    private Plan plan(String id, String version, URL url) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.CRON, null, null, null, null, CRON, CronType.QUARTZ.name());
+        return Plan.builder()
+                .id(id)
+                .version(version)
+                .triggerType(TriggerType.SCHEDULE)
+                .scheduleOption(option)
+                .brokerUrl(url)
+                .enabled(true)
+                .build();
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.task;
+
+import com.cronutils.model.CronType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.api.constants.TriggerType;
+import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleGroupRegistry;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleGroupTask;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Brozen
+ * @since 2024-03-14
+ */
+class PlanScheduleGroupTest {
+
+    private static final String CRON_A = "0/5 * * * * ? *";
+
+    private static final String CRON_B = "0/10 * * * * ? *";
+
+    @Test
+    void testGroupSameSchedule() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        PlanScheduleGroupRegistry registry = new PlanScheduleGroupRegistry(scheduler, processor, true, 10);
+
+        Assertions.assertTrue(registry.schedule(cronPlan("p1", "1", CRON_A)));
+        Assertions.assertTrue(registry.schedule(cronPlan("p2", "1", CRON_A)));
+        Assertions.assertFalse(registry.schedule(fixDelayPlan("p3")));
+        Assertions.assertEquals(1, registry.groupCount());
+        Mockito.verify(scheduler, Mockito.times(1)).schedule(Mockito.any(MetaTask.class));
+
+        // 未开启时不做合并
+        PlanScheduleGroupRegistry disabled = new PlanScheduleGroupRegistry(scheduler, processor, false, 10);
+        Assertions.assertFalse(disabled.schedule(cronPlan("p1", "1", CRON_A)));
+        Assertions.assertEquals(0, disabled.groupCount());
+    }
+
+    @Test
+    void testUngroupOnPlanUpdate() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        PlanScheduleGroupRegistry registry = new PlanScheduleGroupRegistry(scheduler, processor, true, 10);
+
+        registry.schedule(cronPlan("p1", "1", CRON_A));
+        ArgumentCaptor<MetaTask> captor = ArgumentCaptor.forClass(MetaTask.class);
+        Mockito.verify(scheduler).schedule(captor.capture());
+        String oldGroupId = captor.getValue().scheduleId();
+
+        // 调度配置变化 从原分组移除，原分组为空后从时间轮移除
+        registry.schedule(cronPlan("p1", "2", CRON_B));
+        Assertions.assertEquals(1, registry.groupCount());
+        Mockito.verify(scheduler).unschedule(oldGroupId);
+
+        // 改为不支持合并的调度方式 从分组移除
+        Assertions.assertFalse(registry.schedule(fixDelayPlan("p1")));
+        Assertions.assertEquals(0, registry.groupCount());
+
+        registry.schedule(cronPlan("p2", "1", CRON_A));
+        registry.unschedule("p2");
+        Assertions.assertEquals(0, registry.groupCount());
+    }
+
+    @Test
+    void testFanOut() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        PlanScheduleGroupRegistry registry = new PlanScheduleGroupRegistry(scheduler, processor, true, 2);
+
+        Set<String> planIds = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            registry.schedule(cronPlan("p" + i, "1", CRON_A));
+            planIds.add("p" + i);
+        }
+        ArgumentCaptor<MetaTask> taskCaptor = ArgumentCaptor.forClass(MetaTask.class);
+        Mockito.verify(scheduler).schedule(taskCaptor.capture());
+        PlanScheduleGroupTask group = (PlanScheduleGroupTask) taskCaptor.getValue();
+        Assertions.assertEquals(5, group.size());
+
+        group.execute();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Plan>> batchCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(processor, Mockito.timeout(5000).times(3))
+                .scheduleBatch(batchCaptor.capture(), Mockito.eq(TriggerType.SCHEDULE), Mockito.any(LocalDateTime.class));
+        Set<String> triggered = new HashSet<>();
+        for (List<Plan> batch : batchCaptor.getAllValues()) {
+            Assertions.assertTrue(batch.size() <= 2);
+            batch.forEach(plan -> Assertions.assertTrue(triggered.add(plan.getId())));
+        }
+        Assertions.assertEquals(planIds, triggered);
+        Mockito.verify(scheduler).reschedule(group);
+    }
+
+    @Test
+    void testFixedRateReloadWithLastTrigger() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        PlanScheduleGroupRegistry registry = new PlanScheduleGroupRegistry(scheduler, processor, true, 10);
+
+        LocalDateTime now = TimeUtils.currentLocalDateTime().truncatedTo(ChronoUnit.SECONDS);
+        LocalDateTime startAt = now.minusHours(1);
+        // 重新加载时从上次触发时间起算，而不是按开始时间对齐
+        Assertions.assertTrue(registry.schedule(fixRatePlan("p1", startAt, now.minusSeconds(4))));
+        ArgumentCaptor<MetaTask> captor = ArgumentCaptor.forClass(MetaTask.class);
+        Mockito.verify(scheduler).schedule(captor.capture());
+        PlanScheduleGroupTask group = (PlanScheduleGroupTask) captor.getValue();
+        Assertions.assertEquals(now.plusSeconds(6), group.getNextTriggerAt());
+
+        // 下次触发时间对齐的plan合并，不对齐的单独分组
+        Assertions.assertTrue(registry.schedule(fixRatePlan("p2", now.plusSeconds(6), null)));
+        Assertions.assertTrue(registry.schedule(fixRatePlan("p3", startAt, now.minusSeconds(7))));
+        Assertions.assertEquals(2, group.size());
+        Assertions.assertEquals(2, registry.groupCount());
+
+        // 开始时间未到的plan 在自身触发时间之前不触发
+        Assertions.assertTrue(registry.schedule(fixRatePlan("p4", now.plusSeconds(16), null)));
+        Assertions.assertEquals(3, group.size());
+
+        group.execute();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Plan>> batchCaptor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(processor, Mockito.timeout(5000))
+                .scheduleBatch(batchCaptor.capture(), Mockito.eq(TriggerType.SCHEDULE), Mockito.eq(now.plusSeconds(6)));
+        Set<String> triggered = new HashSet<>();
+        batchCaptor.getValue().forEach(plan -> triggered.add(plan.getId()));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("p1", "p2")), triggered);
+    }
+
+    private Plan cronPlan(String id, String version, String cron) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.CRON, null, null, null, null, cron, CronType.QUARTZ.name());
+        return Plan.builder().id(id).version(version).scheduleOption(option).enabled(true).build();
+    }
+
+    private Plan fixRatePlan(String id, LocalDateTime startAt, LocalDateTime latelyTriggerAt) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.FIXED_RATE, startAt, null, Duration.ZERO, Duration.ofSeconds(10), null, null);
+        return Plan.builder().id(id).version("1").scheduleOption(option).latelyTriggerAt(latelyTriggerAt).enabled(true).build();
+    }
+
+    private Plan fixDelayPlan(String id) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.FIXED_DELAY, null, null, null, Duration.ofSeconds(5), null, null);
+        return Plan.builder().id(id).version("2").scheduleOption(option).enabled(true).build();
+    }
+
+}
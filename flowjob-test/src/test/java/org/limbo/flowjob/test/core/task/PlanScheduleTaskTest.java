@@ -0,0 +1,108 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.task;
+
+import com.cronutils.model.CronType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.api.constants.TriggerType;
+import org.limbo.flowjob.broker.core.exceptions.VerifyException;
+import org.limbo.flowjob.broker.core.meta.info.Plan;
+import org.limbo.flowjob.broker.core.meta.processor.PlanInstanceProcessor;
+import org.limbo.flowjob.broker.core.meta.processor.PlanScheduleResult;
+import org.limbo.flowjob.broker.core.meta.task.PlanScheduleTask;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTask;
+import org.limbo.flowjob.broker.core.schedule.scheduler.meta.MetaTaskScheduler;
+import org.limbo.flowjob.common.utils.attribute.Attributes;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Brozen
+ * @since 2024-03-15
+ */
+class PlanScheduleTaskTest {
+
+    private static final String CRON = "0/5 * * * * ? *";
+
+    @Test
+    void testBatchKey() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+
+        PlanScheduleTask t1 = new PlanScheduleTask(cronPlan("p1"), processor, scheduler);
+        PlanScheduleTask t2 = new PlanScheduleTask(cronPlan("p2"), processor, scheduler);
+        Assertions.assertNotNull(t1.batchKey());
+        Assertions.assertEquals(t1.batchKey(), t2.batchKey());
+
+        // FIXED_DELAY 需要等待上次执行完成 不合并
+        PlanScheduleTask t3 = new PlanScheduleTask(fixDelayPlan("p3"), processor, scheduler);
+        Assertions.assertNull(t3.batchKey());
+    }
+
+    @Test
+    void testExecuteBatch() {
+        MetaTaskScheduler scheduler = Mockito.mock(MetaTaskScheduler.class);
+        PlanInstanceProcessor processor = Mockito.mock(PlanInstanceProcessor.class);
+        Mockito.when(processor.scheduleBatch(Mockito.anyList(), Mockito.eq(TriggerType.SCHEDULE), Mockito.any(LocalDateTime.class)))
+                .thenReturn(Arrays.asList(
+                        PlanScheduleResult.success("p1", "i1"),
+                        PlanScheduleResult.fail("p2", new VerifyException("plan:p2 version 1 change to 2"))
+                ));
+
+        PlanScheduleTask t1 = new PlanScheduleTask(cronPlan("p1"), processor, scheduler);
+        PlanScheduleTask t2 = new PlanScheduleTask(cronPlan("p2"), processor, scheduler);
+        List<MetaTask> tasks = Arrays.asList(t1, t2);
+        t1.executeBatch(tasks);
+
+        // 同一时刻触发的 plan 在一次调用中创建实例
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Plan>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(processor).scheduleBatch(captor.capture(), Mockito.eq(TriggerType.SCHEDULE), Mockito.eq(t1.getLastTriggerAt()));
+        Assertions.assertEquals(Arrays.asList("p1", "p2"), captor.getValue().stream().map(Plan::getId).collect(Collectors.toList()));
+        Mockito.verify(processor, Mockito.never()).schedule(Mockito.any(), Mockito.any(), Mockito.any(Attributes.class), Mockito.any());
+
+        // 每个任务都推进到下次触发时间 校验失败的从时间轮移除
+        Mockito.verify(scheduler).reschedule(t1);
+        Mockito.verify(scheduler).reschedule(t2);
+        Mockito.verify(scheduler).unschedule(t2.scheduleId());
+        Mockito.verify(scheduler, Mockito.never()).unschedule(t1.scheduleId());
+        Assertions.assertNotNull(t1.getLastFeedbackAt());
+        Assertions.assertNotNull(t2.getLastFeedbackAt());
+    }
+
+    private Plan cronPlan(String id) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.CRON, null, null, null, null, CRON, CronType.QUARTZ.name());
+        return Plan.builder().id(id).version("1").triggerType(TriggerType.SCHEDULE).scheduleOption(option).enabled(true).build();
+    }
+
+    private Plan fixDelayPlan(String id) {
+        ScheduleOption option = new ScheduleOption(ScheduleType.FIXED_DELAY, LocalDateTime.now(), null, null, Duration.ofSeconds(5), null, null);
+        return Plan.builder().id(id).version("1").triggerType(TriggerType.SCHEDULE).scheduleOption(option).enabled(true).build();
+    }
+
+}
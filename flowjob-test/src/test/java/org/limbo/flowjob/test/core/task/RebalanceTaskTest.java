@@ -0,0 +1,158 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.core.task;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.cluster.BrokerSlots;
+import org.limbo.flowjob.broker.core.cluster.Node;
+import org.limbo.flowjob.broker.core.cluster.NodeManger;
+import org.limbo.flowjob.broker.core.cluster.SlotRepository;
+import org.limbo.flowjob.broker.core.meta.info.PlanChangeRepository;
+import org.limbo.flowjob.broker.core.meta.info.PlanRepository;
+import org.limbo.flowjob.broker.core.meta.job.JobInstanceRepository;
+import org.limbo.flowjob.broker.core.meta.lock.DistributedLock;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.broker.core.meta.task.RebalanceTask;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Brozen
+ * @since 2024-03-19
+ */
+class RebalanceTaskTest {
+
+    private Node nodeA;
+
+    private Node nodeB;
+
+    private NodeManger nodeManger;
+
+    private DistributedLock lock;
+
+    private PlanRepository planRepository;
+
+    private JobInstanceRepository jobInstanceRepository;
+
+    private SlotRepository slotRepository;
+
+    private RebalanceTask task;
+
+    private LockFence fence;
+
+    @BeforeEach
+    void setUp() throws MalformedURLException {
+        nodeA = new Node("a", new URL("http://127.0.0.1:8080"));
+        nodeB = new Node("b", new URL("http://127.0.0.1:8081"));
+        nodeManger = Mockito.mock(NodeManger.class);
+        Mockito.when(nodeManger.allAlive()).thenReturn(Arrays.asList(nodeA, nodeB));
+        Mockito.when(nodeManger.alive(nodeA.getUrl().toString())).thenReturn(true);
+        Mockito.when(nodeManger.alive(nodeB.getUrl().toString())).thenReturn(true);
+        // B 上线后分得奇数 slot
+        Mockito.when(nodeManger.assignSlot(Mockito.anyInt()))
+                .thenAnswer(invocation -> (int) invocation.getArgument(0) % 2 == 0 ? nodeA : nodeB);
+
+        fence = new LockFence("SLOT_LOCK", 1);
+        lock = Mockito.mock(DistributedLock.class);
+        Mockito.when(lock.tryLock(Mockito.eq("SLOT_LOCK"), Mockito.anyLong())).thenReturn(true);
+        Mockito.when(lock.fence("SLOT_LOCK")).thenReturn(fence);
+
+        planRepository = Mockito.mock(PlanRepository.class);
+        jobInstanceRepository = Mockito.mock(JobInstanceRepository.class);
+        slotRepository = Mockito.mock(SlotRepository.class);
+        task = new RebalanceTask(nodeManger, lock, planRepository, Mockito.mock(PlanChangeRepository.class), jobInstanceRepository, slotRepository);
+    }
+
+    @Test
+    void testMigrateLiveBroker() {
+        Map<Integer, URL> current = new HashMap<>();
+        for (int slot = 0; slot < BrokerSlots.SLOT_COUNT; slot++) {
+            current.put(slot, nodeA.getUrl());
+        }
+        Mockito.when(slotRepository.findAll()).thenReturn(current);
+
+        task.rebalance();
+
+        // slot 在存活节点间迁移 数据跟随 slot 迁移
+        List<Integer> oddSlots = new ArrayList<>();
+        for (int slot = 1; slot < BrokerSlots.SLOT_COUNT; slot += 2) {
+            oddSlots.add(slot);
+        }
+        ArgumentCaptor<Collection<Integer>> plans = slotsCaptor();
+        Mockito.verify(planRepository).updateBroker(Mockito.eq(nodeA.getUrl()), Mockito.eq(nodeB.getUrl()), plans.capture(), Mockito.eq(fence));
+        Assertions.assertEquals(oddSlots, new ArrayList<>(plans.getValue()));
+        ArgumentCaptor<Collection<Integer>> jobs = slotsCaptor();
+        Mockito.verify(jobInstanceRepository).updateBroker(Mockito.eq(nodeA.getUrl()), Mockito.eq(nodeB.getUrl()), jobs.capture(), Mockito.eq(fence));
+        Assertions.assertEquals(oddSlots, new ArrayList<>(jobs.getValue()));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Integer, URL>> saved = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(slotRepository).save(saved.capture(), Mockito.eq(fence));
+        Assertions.assertEquals(oddSlots.size(), saved.getValue().size());
+        Assertions.assertTrue(saved.getValue().values().stream().allMatch(url -> url.equals(nodeB.getUrl())));
+        Mockito.verify(lock).unlock("SLOT_LOCK");
+    }
+
+    @Test
+    void testUnchanged() {
+        Map<Integer, URL> current = new HashMap<>();
+        for (int slot = 0; slot < BrokerSlots.SLOT_COUNT; slot++) {
+            current.put(slot, slot % 2 == 0 ? nodeA.getUrl() : nodeB.getUrl());
+        }
+        Mockito.when(slotRepository.findAll()).thenReturn(current);
+
+        task.rebalance();
+
+        Mockito.verify(planRepository, Mockito.never()).updateBroker(Mockito.any(URL.class), Mockito.any(URL.class), Mockito.anyCollection(), Mockito.any());
+        Mockito.verify(jobInstanceRepository, Mockito.never()).updateBroker(Mockito.any(URL.class), Mockito.any(URL.class), Mockito.anyCollection(), Mockito.any());
+        Mockito.verify(slotRepository, Mockito.never()).save(Mockito.anyMap(), Mockito.any());
+        Mockito.verify(nodeManger).refreshSlots(current);
+    }
+
+    @Test
+    void testFenceLost() {
+        Mockito.when(slotRepository.findAll()).thenReturn(new HashMap<>());
+        // 加锁成功但续期失败 已不再持有
+        Mockito.when(lock.fence("SLOT_LOCK")).thenReturn(null);
+
+        task.rebalance();
+
+        Mockito.verify(planRepository, Mockito.never()).updateBroker(Mockito.any(URL.class), Mockito.any(URL.class), Mockito.anyCollection(), Mockito.any());
+        Mockito.verify(jobInstanceRepository, Mockito.never()).updateBroker(Mockito.any(URL.class), Mockito.any(URL.class), Mockito.anyCollection(), Mockito.any());
+        Mockito.verify(slotRepository, Mockito.never()).save(Mockito.anyMap(), Mockito.any());
+        Mockito.verify(lock).unlock("SLOT_LOCK");
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<Collection<Integer>> slotsCaptor() {
+        return ArgumentCaptor.forClass(Collection.class);
+    }
+
+}
@@ -19,13 +19,16 @@
 package org.limbo.flowjob.test.lb;
 
 import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.limbo.flowjob.common.rpc.RPCInvocation;
+import org.limbo.flowjob.common.lb.strategies.ConsistentHashLBStrategy;
 import org.limbo.flowjob.common.lb.strategies.RoundRobinLBStrategy;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -76,5 +79,41 @@ class LBStrategyTest {
     }
 
 
+    @Test
+    void testConsistentHash() {
+        for (ConsistentHashLBStrategy.Mode mode : ConsistentHashLBStrategy.Mode.values()) {
+            ConsistentHashLBStrategy<IntegerLBServer> strategy = new ConsistentHashLBStrategy<>();
+            List<IntegerLBServer> lessServers = servers.subList(1, servers.size());
+            int moved = 0;
+            Map<Integer, Integer> hits = Maps.newHashMap();
+            for (int i = 0; i < 1000; i++) {
+                Map<String, String> params = Maps.newHashMap();
+                params.put(ConsistentHashLBStrategy.HASH_PARAM_NAME, "key");
+                params.put(ConsistentHashLBStrategy.MODE_PARAM_NAME, mode.name());
+                params.put("key", "k" + i);
+                RPCInvocation invocation = new RPCInvocation("test" + i, params);
+
+                IntegerLBServer s1 = strategy.select(servers, invocation).orElse(null);
+                IntegerLBServer s2 = strategy.select(servers, invocation).orElse(null);
+                Assertions.assertSame(s1, s2);
+                hits.merge(s1.getValue(), 1, Integer::sum);
+
+                // 移除一个服务后，只有原本落在该服务上的 key 会改变
+                IntegerLBServer s3 = strategy.select(lessServers, invocation).orElse(null);
+                Assertions.assertNotNull(s3);
+                if (s1 != s3) {
+                    moved++;
+                }
+            }
+            // 1000 个 key 应分布到所有服务上，且不会过度集中
+            Assertions.assertEquals(servers.size(), hits.size(), mode.name());
+            for (int count : hits.values()) {
+                Assertions.assertTrue(count > 30 && count < 250, mode + " hits " + hits);
+            }
+            // 移除 1/10 的服务，迁移的 key 应接近 10%
+            Assertions.assertTrue(moved >= hits.get(servers.get(0).getValue()), mode + " moved " + moved);
+            Assertions.assertTrue(moved < 300, mode + " moved " + moved);
+        }
+    }
 
 }
@@ -0,0 +1,154 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.repo;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.dao.entity.JobInstanceEntity;
+import org.limbo.flowjob.broker.dao.entity.PlanInstanceEntity;
+import org.limbo.flowjob.broker.dao.support.EntityBatchInserter;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 使用实体元数据生成的批量插入语句，插入结果需要与 JPA 映射一致
+ *
+ * @author Devil
+ * @since 2024/3/13
+ */
+class EntityBatchInserterTest {
+
+    private SessionFactory sessionFactory;
+
+    private EntityBatchInserter inserter;
+
+    @BeforeEach
+    void setUp() {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(JobInstanceEntity.class)
+                .addAnnotatedClass(PlanInstanceEntity.class)
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.setImplicitNamingStrategy(new SpringImplicitNamingStrategy());
+        configuration.setPhysicalNamingStrategy(new SpringPhysicalNamingStrategy());
+        sessionFactory = configuration.buildSessionFactory();
+        inserter = new EntityBatchInserter(sessionFactory, new JdbcTemplate(new DriverManagerDataSource(url)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void testInsertJobInstances() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<JobInstanceEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            JobInstanceEntity entity = new JobInstanceEntity();
+            entity.setJobInstanceId("ji_" + i);
+            entity.setJobId("j_" + i);
+            entity.setInstanceId("pi_1");
+            entity.setInstanceType(1);
+            entity.setBrokerUrl("http://127.0.0.1:8080");
+            entity.setSlot(i);
+            entity.setStatus(1);
+            entity.setRetryTimes(0);
+            entity.setTriggerAt(now);
+            entity.setLastReportAt(now);
+            // 部分实体的非空字段不同 需要使用不同的语句
+            if (i % 2 == 0) {
+                entity.setAgentId("a_" + i);
+                entity.setContext("{\"k\":" + i + "}");
+            }
+            entities.add(entity);
+        }
+
+        inserter.insert(JobInstanceEntity.class, entities);
+
+        EntityManager em = sessionFactory.createEntityManager();
+        try {
+            for (JobInstanceEntity expect : entities) {
+                JobInstanceEntity actual = em.find(JobInstanceEntity.class, expect.getJobInstanceId());
+                Assertions.assertNotNull(actual);
+                Assertions.assertEquals(expect.getJobId(), actual.getJobId());
+                Assertions.assertEquals(expect.getInstanceId(), actual.getInstanceId());
+                Assertions.assertEquals(expect.getInstanceType(), actual.getInstanceType());
+                Assertions.assertEquals(expect.getBrokerUrl(), actual.getBrokerUrl());
+                Assertions.assertEquals(expect.getSlot(), actual.getSlot());
+                Assertions.assertEquals(expect.getStatus(), actual.getStatus());
+                Assertions.assertEquals(expect.getRetryTimes(), actual.getRetryTimes());
+                Assertions.assertEquals(expect.getAgentId(), actual.getAgentId());
+                Assertions.assertEquals(expect.getContext(), actual.getContext());
+                Assertions.assertEquals(expect.getTriggerAt(), actual.getTriggerAt());
+                Assertions.assertEquals(expect.getLastReportAt(), actual.getLastReportAt());
+                Assertions.assertNull(actual.getStartAt());
+                Assertions.assertFalse(actual.isDeleted());
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    void testInsertPlanInstances() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        PlanInstanceEntity entity = new PlanInstanceEntity();
+        entity.setPlanInstanceId("pi_1");
+        entity.setPlanId("p_1");
+        entity.setPlanInfoId("pv_1");
+        entity.setStatus(1);
+        entity.setTriggerType(1);
+        entity.setScheduleType(1);
+        entity.setAttributes("{}");
+        entity.setTriggerAt(now);
+
+        inserter.insert(PlanInstanceEntity.class, Collections.singletonList(entity));
+        inserter.insert(PlanInstanceEntity.class, Collections.emptyList());
+
+        EntityManager em = sessionFactory.createEntityManager();
+        try {
+            PlanInstanceEntity actual = em.find(PlanInstanceEntity.class, "pi_1");
+            Assertions.assertNotNull(actual);
+            Assertions.assertEquals("p_1", actual.getPlanId());
+            Assertions.assertEquals("pv_1", actual.getPlanInfoId());
+            Assertions.assertEquals("{}", actual.getAttributes());
+            Assertions.assertEquals(now, actual.getTriggerAt());
+            Assertions.assertNull(actual.getFeedbackAt());
+        } finally {
+            em.close();
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.application.component.DatabaseDistributedLock;
+import org.limbo.flowjob.broker.core.cluster.Broker;
+import org.limbo.flowjob.broker.core.meta.lock.LockFence;
+import org.limbo.flowjob.broker.dao.entity.LockEntity;
+import org.limbo.flowjob.broker.dao.repositories.LockEntityRepo;
+import org.limbo.flowjob.common.utils.time.TimeUtils;
+import org.mockito.Mockito;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.LocalDateTime;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class DatabaseDistributedLockTest {
+
+    private static final String NAME = "TEST_LOCK";
+
+    private static final String OWNER = "http://127.0.0.1:8080";
+
+    private LockEntityRepo lockEntityRepo;
+
+    private DatabaseDistributedLock lock;
+
+    @BeforeEach
+    void setUp() throws MalformedURLException {
+        lockEntityRepo = Mockito.mock(LockEntityRepo.class);
+        Broker broker = Mockito.mock(Broker.class);
+        Mockito.when(broker.getRpcBaseURL()).thenReturn(new URL(OWNER));
+        lock = new DatabaseDistributedLock();
+        lock.setLockEntityRepo(lockEntityRepo);
+        lock.setBroker(broker);
+    }
+
+    @Test
+    void testTokenIncrement() {
+        held(OWNER, 1L);
+        Assertions.assertTrue(lock.tryLock(NAME, 10000));
+        Assertions.assertEquals(1L, lock.fence(NAME).getToken());
+        Assertions.assertTrue(unlock(1L));
+        Assertions.assertNull(lock.fence(NAME));
+
+        // 重新获得锁 token 递增
+        held(OWNER, 2L);
+        Assertions.assertTrue(lock.tryLock(NAME, 10000));
+        Assertions.assertEquals(2L, lock.fence(NAME).getToken());
+        Assertions.assertTrue(unlock(2L));
+    }
+
+    @Test
+    void testReentrant() {
+        held(OWNER, 1L);
+        Assertions.assertTrue(lock.tryLock(NAME, 10000));
+        Assertions.assertTrue(lock.tryLock(NAME, 10000));
+
+        Assertions.assertTrue(lock.unlock(NAME));
+        Assertions.assertNotNull(lock.fence(NAME));
+        Mockito.verify(lockEntityRepo, Mockito.never()).release(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong(), Mockito.any());
+
+        Assertions.assertTrue(unlock(1L));
+        Assertions.assertNull(lock.fence(NAME));
+    }
+
+    @Test
+    void testHeldByOthers() {
+        held("http://127.0.0.1:8081", 3L);
+        Assertions.assertFalse(lock.tryLock(NAME, 10000));
+        Assertions.assertNull(lock.fence(NAME));
+        Assertions.assertFalse(lock.unlock(NAME));
+    }
+
+    @Test
+    void testRenew() {
+        held(OWNER, 1L);
+        Mockito.when(lockEntityRepo.renew(Mockito.eq(NAME), Mockito.eq(OWNER), Mockito.eq(1L), Mockito.any(), Mockito.any())).thenReturn(1);
+        Assertions.assertTrue(lock.tryLock(NAME, 300));
+
+        // 持有期间后台续期
+        Mockito.verify(lockEntityRepo, Mockito.timeout(2000).atLeast(2)).renew(Mockito.eq(NAME), Mockito.eq(OWNER), Mockito.eq(1L), Mockito.any(), Mockito.any());
+        Assertions.assertEquals(1L, lock.fence(NAME).getToken());
+
+        // 释放后不再续期
+        Assertions.assertTrue(unlock(1L));
+        Mockito.clearInvocations(lockEntityRepo);
+        sleep(300);
+        Mockito.verify(lockEntityRepo, Mockito.never()).renew(Mockito.anyString(), Mockito.anyString(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void testLost() {
+        held(OWNER, 1L);
+        Mockito.when(lockEntityRepo.renew(Mockito.eq(NAME), Mockito.eq(OWNER), Mockito.eq(1L), Mockito.any(), Mockito.any())).thenReturn(0);
+        Assertions.assertTrue(lock.tryLock(NAME, 300));
+
+        // 续期失败后不再认为持有
+        Mockito.verify(lockEntityRepo, Mockito.timeout(2000)).renew(Mockito.eq(NAME), Mockito.eq(OWNER), Mockito.eq(1L), Mockito.any(), Mockito.any());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (lock.fence(NAME) != null && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+        Assertions.assertNull(lock.fence(NAME));
+        Assertions.assertFalse(lock.unlock(NAME));
+    }
+
+    @Test
+    void testHoldsNullFence() {
+        LockEntityRepo repo = Mockito.mock(LockEntityRepo.class, Mockito.CALLS_REAL_METHODS);
+        Mockito.doReturn(1).when(repo).lockFence(Mockito.eq(NAME), Mockito.eq(1L), Mockito.any());
+
+        Assertions.assertFalse(repo.holds(null));
+        Assertions.assertTrue(repo.holds(new LockFence(NAME, 1L)));
+        Mockito.verify(repo, Mockito.times(1)).lockFence(Mockito.anyString(), Mockito.anyLong(), Mockito.any());
+    }
+
+    private void held(String owner, Long token) {
+        LockEntity entity = new LockEntity();
+        entity.setName(NAME);
+        entity.setOwner(owner);
+        entity.setToken(token);
+        entity.setExpireAt(TimeUtils.currentLocalDateTime().plusMinutes(1));
+        Mockito.when(lockEntityRepo.findByName(NAME)).thenReturn(entity);
+    }
+
+    private boolean unlock(Long token) {
+        Mockito.when(lockEntityRepo.release(Mockito.eq(NAME), Mockito.eq(OWNER), Mockito.eq(token), Mockito.any(LocalDateTime.class))).thenReturn(1);
+        return lock.unlock(NAME);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.application.component.IDGeneratorComponent;
+import org.limbo.flowjob.broker.application.config.BrokerProperties;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
+import org.limbo.flowjob.broker.core.meta.IDType;
+import org.limbo.flowjob.broker.dao.entity.IdEntity;
+import org.limbo.flowjob.broker.dao.repositories.IdEntityRepo;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class IDGeneratorComponentTest {
+
+    private static final int STEP = 10;
+
+    private final AtomicLong currentId = new AtomicLong();
+
+    private IdEntityRepo idEntityRepo;
+
+    private IDGeneratorComponent generator;
+
+    @BeforeEach
+    void setUp() {
+        idEntityRepo = Mockito.mock(IdEntityRepo.class);
+        Mockito.when(idEntityRepo.findById(IDType.APP.name())).thenAnswer(invocation -> {
+            IdEntity entity = new IdEntity();
+            entity.setType(IDType.APP.name());
+            entity.setCurrentId(currentId.get());
+            entity.setStep(STEP);
+            return Optional.of(entity);
+        });
+        Mockito.when(idEntityRepo.casGainId(Mockito.eq(IDType.APP.name()), Mockito.anyLong(), Mockito.anyLong()))
+                .thenAnswer(invocation -> currentId.compareAndSet(invocation.getArgument(2), invocation.getArgument(1)) ? 1 : 0);
+
+        generator = new IDGeneratorComponent();
+        generator.setIdEntityRepo(idEntityRepo);
+        generator.setBrokerProperties(new BrokerProperties());
+        generator.afterPropertiesSet();
+    }
+
+    @Test
+    void testPreload() {
+        Assertions.assertEquals("1", generator.generateId(IDType.APP));
+        // 消耗达到比例后异步加载下一个号段 短时间内再次加载步长翻倍
+        Mockito.verify(idEntityRepo, Mockito.timeout(1000)).casGainId(IDType.APP.name(), (long) STEP + STEP * 2, (long) STEP);
+        Assertions.assertEquals(STEP + STEP * 2, currentId.get());
+    }
+
+    @Test
+    void testSwitchSegment() {
+        for (int i = 1; i <= STEP; i++) {
+            Assertions.assertEquals(String.valueOf(i), generator.generateId(IDType.APP));
+        }
+        // 当前号段用完后切换到预加载的号段 中间没有空洞
+        Assertions.assertEquals(String.valueOf(STEP + 1), generator.generateId(IDType.APP));
+        Mockito.verify(idEntityRepo).casGainId(IDType.APP.name(), (long) STEP, 0L);
+        Mockito.verify(idEntityRepo).casGainId(IDType.APP.name(), (long) STEP * 3, (long) STEP);
+    }
+
+    @Test
+    void testConcurrent() {
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    ids.add(generator.generateId(IDType.APP));
+                }
+                return ids;
+            }));
+        }
+        Set<String> ids = new HashSet<>();
+        for (CompletableFuture<List<String>> future : futures) {
+            ids.addAll(future.join());
+        }
+        Assertions.assertEquals(2000, ids.size());
+    }
+
+    @Test
+    void testSnowflakeWorkerId() {
+        BrokerProperties properties = new BrokerProperties();
+        properties.getId().setMode(BrokerConfig.IdMode.SNOWFLAKE);
+        IDGeneratorComponent snowflake = new IDGeneratorComponent();
+        snowflake.setBrokerProperties(properties);
+
+        // 未配置机器号时启动失败
+        Assertions.assertThrows(IllegalStateException.class, snowflake::afterPropertiesSet);
+
+        properties.getId().setWorkerId(1024L);
+        Assertions.assertThrows(IllegalArgumentException.class, snowflake::afterPropertiesSet);
+
+        properties.getId().setWorkerId(1L);
+        snowflake.afterPropertiesSet();
+        Assertions.assertNotEquals(snowflake.generateId(IDType.APP), snowflake.generateId(IDType.APP));
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.meta.SnowflakeIDGenerator;
+import org.limbo.flowjob.test.support.TickClock;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class SnowflakeIDGeneratorTest {
+
+    private static final long WORKER_ID = 5;
+
+    @Test
+    void testWorkerId() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SnowflakeIDGenerator(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SnowflakeIDGenerator(SnowflakeIDGenerator.MAX_WORKER_ID + 1));
+
+        SnowflakeIDGenerator generator = new SnowflakeIDGenerator(WORKER_ID, new TickClock(System.currentTimeMillis()));
+        Assertions.assertEquals(WORKER_ID, workerId(generator.nextId()));
+    }
+
+    @Test
+    void testSequenceWrap() {
+        TickClock clock = new TickClock(System.currentTimeMillis());
+        SnowflakeIDGenerator generator = new SnowflakeIDGenerator(WORKER_ID, clock);
+
+        long first = generator.nextId();
+        long last = first;
+        for (int i = 1; i < 4096; i++) {
+            long id = generator.nextId();
+            Assertions.assertTrue(id > last);
+            Assertions.assertEquals(timestamp(first), timestamp(id));
+            Assertions.assertEquals(i, sequence(id));
+            last = id;
+        }
+
+        // 同一毫秒序列号用完 借用下一毫秒
+        long borrowed = generator.nextId();
+        Assertions.assertTrue(borrowed > last);
+        Assertions.assertEquals(timestamp(first) + 1, timestamp(borrowed));
+        Assertions.assertEquals(0, sequence(borrowed));
+
+        // 时钟追上后从借用的时间继续
+        clock.tick(1);
+        long next = generator.nextId();
+        Assertions.assertEquals(timestamp(borrowed), timestamp(next));
+        Assertions.assertEquals(1, sequence(next));
+    }
+
+    @Test
+    void testClockRollback() {
+        TickClock clock = new TickClock(System.currentTimeMillis());
+        SnowflakeIDGenerator generator = new SnowflakeIDGenerator(WORKER_ID, clock);
+
+        long before = generator.nextId();
+        clock.tick(-500);
+        long after = generator.nextId();
+        // 回拨时沿用上次的时间戳
+        Assertions.assertTrue(after > before);
+        Assertions.assertEquals(timestamp(before), timestamp(after));
+        Assertions.assertEquals(sequence(before) + 1, sequence(after));
+
+        clock.tick(501);
+        long recovered = generator.nextId();
+        Assertions.assertEquals(timestamp(before) + 1, timestamp(recovered));
+        Assertions.assertEquals(0, sequence(recovered));
+    }
+
+    private long timestamp(long id) {
+        return id >>> 22;
+    }
+
+    private long workerId(long id) {
+        return (id >>> 12) & SnowflakeIDGenerator.MAX_WORKER_ID;
+    }
+
+    private long sequence(long id) {
+        return id & 4095;
+    }
+
+}
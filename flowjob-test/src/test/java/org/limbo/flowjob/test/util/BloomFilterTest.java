@@ -0,0 +1,78 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.common.utils.collections.BloomFilter;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegative() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        // 超出预期容量十倍，追加多层后已加入的元素仍然都能判断存在
+        for (int i = 0; i < 10000; i++) {
+            filter.put("task-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertTrue(filter.mightContain("task-" + i), "task-" + i);
+        }
+    }
+
+    @Test
+    void testSizing() {
+        // 未超出容量时误判率接近设定值
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("task-" + i);
+        }
+        Assertions.assertTrue(falsePositiveRate(filter) < 0.015);
+
+        // 扩容后整体误判率不超过设定值的两倍
+        BloomFilter growing = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            growing.put("task-" + i);
+        }
+        Assertions.assertTrue(falsePositiveRate(growing) < 0.02);
+    }
+
+    @Test
+    void testIllegalParam() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+
+    private double falsePositiveRate(BloomFilter filter) {
+        int probes = 100000;
+        int positives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("absent-" + i)) {
+                positives++;
+            }
+        }
+        return (double) positives / probes;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.util;
+
+import com.cronutils.model.CronType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.api.constants.ScheduleType;
+import org.limbo.flowjob.broker.core.schedule.Calculated;
+import org.limbo.flowjob.broker.core.schedule.ScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.ScheduleOption;
+import org.limbo.flowjob.broker.core.schedule.calculator.CronScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.calculator.PrecomputedCronScheduleCalculator;
+import org.limbo.flowjob.broker.core.schedule.calculator.ScheduleCalculatorFactory;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * @author Brozen
+ * @since 2024-03-12
+ */
+class CronCalculatorTest {
+
+    private static final String CRON = "0/5 * * * * ? *";
+
+    @Test
+    void testNextExecutions() {
+        long now = System.currentTimeMillis();
+        long[] executions = CronScheduleCalculator.nextExecutions(CRON, CronType.QUARTZ.name(), now, 10);
+        Assertions.assertEquals(10, executions.length);
+        Assertions.assertTrue(executions[0] > now);
+        for (int i = 1; i < executions.length; i++) {
+            Assertions.assertEquals(5000, executions[i] - executions[i - 1]);
+        }
+    }
+
+    @Test
+    void testCache() {
+        CronScheduleCalculator.getExecutionTime(CRON, CronType.QUARTZ.name());
+        long hit = CronScheduleCalculator.cacheStats().hitCount();
+        CronScheduleCalculator.getExecutionTime(CRON, CronType.QUARTZ.name());
+        Assertions.assertEquals(hit + 1, CronScheduleCalculator.cacheStats().hitCount());
+    }
+
+    @Test
+    void testPrecompute() {
+        Calculated calculated = new Calculated() {
+
+            private final ScheduleOption option = new ScheduleOption(ScheduleType.CRON, null, null, null, null, CRON, CronType.QUARTZ.name());
+
+            @Override
+            public ScheduleOption scheduleOption() {
+                return option;
+            }
+
+            @Override
+            public LocalDateTime lastTriggerAt() {
+                return null;
+            }
+
+            @Override
+            public LocalDateTime lastFeedbackAt() {
+                return null;
+            }
+        };
+
+        // 两种计算都从同一个固定时间点开始，不受执行时跨过触发时间点的影响
+        long now = System.currentTimeMillis();
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(now), ZoneId.systemDefault());
+        long[] expects = CronScheduleCalculator.nextExecutions(CRON, CronType.QUARTZ.name(), now, 8);
+        ScheduleCalculator precomputed = new PrecomputedCronScheduleCalculator(ScheduleCalculatorFactory.create(ScheduleType.CRON), 8, clock);
+        for (long expect : expects) {
+            Assertions.assertEquals(expect, precomputed.calculate(calculated));
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.test.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.common.utils.HashUtils;
+
+/**
+ * @author Brozen
+ * @since 2024-03-20
+ */
+class HashUtilsTest {
+
+    @Test
+    void testMix64() {
+        // MurmurHash3 fmix64 的参考值
+        Assertions.assertEquals(0L, HashUtils.mix64(0));
+        Assertions.assertEquals(0xb456bcfc34c2cb2cL, HashUtils.mix64(1));
+    }
+
+    @Test
+    void testHash64() {
+        // FNV-1a("") 为 offset basis，FNV-1a("a") = 0xaf63dc4c8601ec8c
+        Assertions.assertEquals(HashUtils.mix64(0xcbf29ce484222325L), HashUtils.hash64(""));
+        Assertions.assertEquals(HashUtils.mix64(0xaf63dc4c8601ec8cL), HashUtils.hash64("a"));
+        Assertions.assertEquals(0x82a2a958a9bece5bL, HashUtils.hash64("a"));
+        // 按 UTF-8 编码计算
+        Assertions.assertEquals(0xac1551f190d89794L, HashUtils.hash64("任务"));
+    }
+
+}
@@ -22,6 +22,7 @@ import com.cronutils.model.CronType;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.junit.jupiter.api.Test;
+import org.limbo.flowjob.broker.core.cluster.BrokerConfig;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.CronMetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixDelayMetaTask;
 import org.limbo.flowjob.broker.core.schedule.scheduler.meta.FixRateMetaTask;
@@ -31,7 +32,6 @@ import org.limbo.flowjob.common.utils.time.TimeUtils;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author Devil
@@ -40,7 +40,7 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 class MetaTaskTest {
 
-    MetaTaskScheduler metaTaskScheduler = new MetaTaskScheduler(100L, TimeUnit.MILLISECONDS);
+    MetaTaskScheduler metaTaskScheduler = new MetaTaskScheduler(new BrokerConfig.MetaTaskConfig());
 
     @Test
     void testTime() {
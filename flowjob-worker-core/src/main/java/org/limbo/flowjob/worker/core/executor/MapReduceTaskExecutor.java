@@ -17,13 +17,22 @@
 package org.limbo.flowjob.worker.core.executor;
 
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.limbo.flowjob.api.dto.agent.TaskResultDTO;
+import org.limbo.flowjob.common.constants.TaskConstant;
 import org.limbo.flowjob.common.utils.json.JacksonUtils;
 import org.limbo.flowjob.worker.core.domain.SubTask;
 import org.limbo.flowjob.worker.core.domain.Task;
+import org.limbo.flowjob.worker.core.rpc.WorkerAgentRpc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BinaryOperator;
 
 /**
  * 任务执行器
@@ -44,6 +53,9 @@ public abstract class MapReduceTaskExecutor implements TaskExecutor {
                 task.setResult(result == null ? "" : JacksonUtils.toJSONString(result));
                 break;
             case REDUCE:
+                if (CollectionUtils.isEmpty(task.getReduceAttributes())) {
+                    loadMapResults(task);
+                }
                 reduce(task);
                 break;
             default:
@@ -67,12 +79,20 @@ public abstract class MapReduceTaskExecutor implements TaskExecutor {
         }
         int maxSize = 100;
         if (subTasks.size() > maxSize) {
-            throw new IllegalArgumentException("sub task size > " + maxSize);
+            throw new IllegalArgumentException("sub task size > " + maxSize + ", use openSubTaskSubmitter instead");
         }
         ExecuteContext executeContext = ThreadLocalContext.getExecuteContext();
         return executeContext.getAgentRpc().submitSubTasks(task, subTasks);
     }
 
+    /**
+     * 流式提交大量子任务，需在执行线程中打开并在 sharding 结束前关闭
+     */
+    protected SubTaskSubmitter openSubTaskSubmitter(Task task) {
+        ExecuteContext executeContext = ThreadLocalContext.getExecuteContext();
+        return new SubTaskSubmitter(executeContext.getAgentRpc(), task);
+    }
+
     /**
      * 处理map分片任务
      *
@@ -87,4 +107,87 @@ public abstract class MapReduceTaskExecutor implements TaskExecutor {
      */
     public abstract void reduce(Task task);
 
+    /**
+     * 合并两个 map 结果，需满足结合律。默认为 null，reduce 时 {@link Task#getReduceAttributes()} 中为全部 map 结果。
+     * 返回非 null 时，拉取 map 结果的同时按树形逐层合并，{@link Task#getReduceAttributes()} 中只有合并后的一个结果，
+     * 内存占用与 map 任务数量无关。
+     */
+    protected BinaryOperator<Map<String, Object>> combiner() {
+        return null;
+    }
+
+    /**
+     * 从 agent 分页拉取 map 结果
+     */
+    private void loadMapResults(Task task) {
+        WorkerAgentRpc agentRpc = ThreadLocalContext.getExecuteContext().getAgentRpc();
+        BinaryOperator<Map<String, Object>> combiner = combiner();
+        TreeCombiner treeCombiner = combiner == null ? null : new TreeCombiner(combiner);
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        String startTaskId = "";
+        List<TaskResultDTO> page = agentRpc.pageTaskResults(task, startTaskId, TaskConstant.REDUCE_RESULT_PAGE_SIZE);
+        while (CollectionUtils.isNotEmpty(page)) {
+            for (TaskResultDTO dto : page) {
+                Map<String, Object> result = StringUtils.isBlank(dto.getResult()) ? new HashMap<>()
+                        : JacksonUtils.parseObject(dto.getResult(), new TypeReference<Map<String, Object>>() {
+                });
+                if (treeCombiner != null) {
+                    treeCombiner.add(result);
+                } else {
+                    results.add(Collections.unmodifiableMap(result));
+                }
+            }
+            startTaskId = page.get(page.size() - 1).getTaskId();
+            page = agentRpc.pageTaskResults(task, startTaskId, TaskConstant.REDUCE_RESULT_PAGE_SIZE);
+        }
+
+        if (treeCombiner != null) {
+            Map<String, Object> combined = treeCombiner.result();
+            results = combined == null ? Collections.emptyList() : Collections.singletonList(Collections.unmodifiableMap(combined));
+        }
+        task.setReduceAttributes(results);
+    }
+
+    /**
+     * 按二进制进位的方式合并：第 i 层保存由 2^i 个结果合并成的部分结果，两个同层结果合并后进入上一层，
+     * 合并树保持平衡，结果越合并越大时比逐个合并更省。
+     */
+    private static class TreeCombiner {
+
+        private final BinaryOperator<Map<String, Object>> combiner;
+
+        private final List<Map<String, Object>> levels = new ArrayList<>();
+
+        TreeCombiner(BinaryOperator<Map<String, Object>> combiner) {
+            this.combiner = combiner;
+        }
+
+        void add(Map<String, Object> result) {
+            int level = 0;
+            // 高层的部分结果来自更早的 map 任务，放在前面保证顺序
+            while (level < levels.size() && levels.get(level) != null) {
+                result = combiner.apply(levels.get(level), result);
+                levels.set(level, null);
+                level++;
+            }
+            if (level == levels.size()) {
+                levels.add(result);
+            } else {
+                levels.set(level, result);
+            }
+        }
+
+        Map<String, Object> result() {
+            Map<String, Object> combined = null;
+            for (Map<String, Object> partial : levels) {
+                if (partial != null) {
+                    combined = combined == null ? partial : combiner.apply(partial, combined);
+                }
+            }
+            return combined;
+        }
+
+    }
+
 }
@@ -0,0 +1,159 @@
+/*
+ *
+ *  * Copyright 2020-2024 Limbo Team (https://github.com/limbo-world).
+ *  *
+ *  * Licensed under the Apache License, Version 2.0 (the "License");
+ *  * you may not use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  * 	http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.
+ *
+ */
+
+package org.limbo.flowjob.worker.core.executor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.limbo.flowjob.common.constants.TaskConstant;
+import org.limbo.flowjob.common.thread.CommonThreadPool;
+import org.limbo.flowjob.worker.core.domain.SubTask;
+import org.limbo.flowjob.worker.core.domain.Task;
+import org.limbo.flowjob.worker.core.rpc.WorkerAgentRpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式提交子任务，用于大量子任务的 sharding。
+ * 子任务按批次异步提交给 agent，同时提交中的批次有上限，超出时 {@link #submit(SubTask)} 阻塞等待；
+ * agent 会按 taskId 去重，失败的批次可以直接重试。
+ * <pre>
+ * try (SubTaskSubmitter submitter = openSubTaskSubmitter(task)) {
+ *     submitter.submit(subTask);
+ * }
+ * </pre>
+ *
+ * @author Brozen
+ * @since 2024-03-20
+ */
+@Slf4j
+public class SubTaskSubmitter implements AutoCloseable {
+
+    private static final int RETRY_TIMES = 3;
+
+    private final WorkerAgentRpc agentRpc;
+
+    private final Task task;
+
+    private final int chunkSize;
+
+    private final int maxInflightChunks;
+
+    private final Semaphore inflight;
+
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private List<SubTask> chunk;
+
+    private boolean closed = false;
+
+    public SubTaskSubmitter(WorkerAgentRpc agentRpc, Task task) {
+        this(agentRpc, task, TaskConstant.SUB_TASK_CHUNK_SIZE, TaskConstant.SUB_TASK_MAX_INFLIGHT_CHUNKS);
+    }
+
+    public SubTaskSubmitter(WorkerAgentRpc agentRpc, Task task, int chunkSize, int maxInflightChunks) {
+        this.agentRpc = agentRpc;
+        this.task = task;
+        this.chunkSize = chunkSize;
+        this.maxInflightChunks = maxInflightChunks;
+        this.inflight = new Semaphore(maxInflightChunks);
+        this.chunk = new ArrayList<>(chunkSize);
+    }
+
+    /**
+     * 添加子任务，攒满一批后异步提交
+     */
+    public void submit(SubTask subTask) {
+        if (closed) {
+            throw new IllegalStateException("SubTaskSubmitter is closed");
+        }
+        checkError();
+        chunk.add(subTask);
+        if (chunk.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * 提交剩余子任务并等待所有批次完成，有批次提交失败时抛出异常
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!chunk.isEmpty()) {
+            flush();
+        }
+        try {
+            inflight.acquire(maxInflightChunks);
+            inflight.release(maxInflightChunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting sub tasks submit", e);
+        }
+        checkError();
+    }
+
+    private void flush() {
+        List<SubTask> subTasks = chunk;
+        chunk = new ArrayList<>(chunkSize);
+        try {
+            inflight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting sub tasks", e);
+        }
+        CommonThreadPool.IO.execute(() -> {
+            try {
+                doSubmit(subTasks);
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            } finally {
+                inflight.release();
+            }
+        });
+    }
+
+    private void doSubmit(List<SubTask> subTasks) {
+        RuntimeException last = null;
+        for (int i = 0; i < RETRY_TIMES; i++) {
+            try {
+                if (Boolean.TRUE.equals(agentRpc.submitSubTasks(task, subTasks))) {
+                    return;
+                }
+                last = new IllegalStateException("agent refused sub tasks");
+            } catch (RuntimeException e) {
+                last = e;
+            }
+            log.warn("Submit sub tasks fail jobId={} taskId={} size={} times={}", task.getJobId(), task.getTaskId(), subTasks.size(), i + 1, last);
+        }
+        throw last;
+    }
+
+    private void checkError() {
+        Throwable e = error.get();
+        if (e != null) {
+            throw new IllegalStateException("Submit sub tasks fail jobId=" + task.getJobId(), e);
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
 
 package org.limbo.flowjob.worker.core.rpc;
 
+import org.limbo.flowjob.api.dto.agent.TaskResultDTO;
 import org.limbo.flowjob.worker.core.domain.SubTask;
 import org.limbo.flowjob.worker.core.domain.Task;
 import org.limbo.flowjob.worker.core.domain.Worker;
@@ -33,6 +34,13 @@ public interface WorkerAgentRpc {
 
     Boolean submitSubTasks(Task task, List<SubTask> subTasks);
 
+    /**
+     * 分页拉取 map 任务结果，用于 reduce
+     *
+     * @param startTaskId 从此 taskId 之后开始
+     */
+    List<TaskResultDTO> pageTaskResults(Task task, String startTaskId, int limit);
+
     /**
      * 反馈任务开始执行
      */
@@ -23,9 +23,11 @@ import lombok.Getter;
 import lombok.Setter;
 import org.limbo.flowjob.api.constants.MsgConstants;
 import org.limbo.flowjob.api.dto.ResponseDTO;
+import org.limbo.flowjob.api.dto.agent.TaskResultDTO;
 import org.limbo.flowjob.api.param.agent.SubTaskCreateParam;
 import org.limbo.flowjob.api.param.agent.TaskFeedbackParam;
 import org.limbo.flowjob.api.param.agent.TaskReportParam;
+import org.limbo.flowjob.api.param.agent.TaskResultQueryParam;
 import org.limbo.flowjob.common.exception.RegisterFailException;
 import org.limbo.flowjob.common.exception.RpcException;
 import org.limbo.flowjob.common.http.OKHttpRpc;
@@ -70,6 +72,25 @@ public class OkHttpAgentRpc extends OKHttpRpc<BaseLBServer> implements WorkerAge
         return response.getData();
     }
 
+    @Override
+    public List<TaskResultDTO> pageTaskResults(Task task, String startTaskId, int limit) {
+        TaskResultQueryParam param = TaskResultQueryParam.builder()
+                .jobId(task.getJobId())
+                .startTaskId(startTaskId)
+                .limit(limit)
+                .build();
+
+        ResponseDTO<List<TaskResultDTO>> response = executePost(task.getRpcUrl() + API_TASK_RESULT_PAGE, param, new TypeReference<ResponseDTO<List<TaskResultDTO>>>() {
+        });
+
+        if (response == null || !response.success()) {
+            String msg = response == null ? MsgConstants.UNKNOWN : (response.getCode() + ":" + response.getMessage());
+            throw new RpcException("Worker page task results failed: " + msg);
+        }
+
+        return response.getData();
+    }
+
     @Override
     public Boolean reportTaskExecuting(Task task) {
         TaskReportParam param = RpcParamFactory.taskReportParam(task.getJobId(), task.getTaskId(), worker.getId(), worker.getRpcBaseURL());
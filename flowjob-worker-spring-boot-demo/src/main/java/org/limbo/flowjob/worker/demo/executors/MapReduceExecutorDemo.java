@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BinaryOperator;
 
 /**
  * @author Devil
@@ -70,6 +71,18 @@ public class MapReduceExecutorDemo extends MapReduceTaskExecutor {
         return result;
     }
 
+    /**
+     * 拉取 map 结果时即合并，reduce 中只会收到一个合并后的结果
+     */
+    @Override
+    protected BinaryOperator<Map<String, Object>> combiner() {
+        return (r1, r2) -> {
+            Map<String, Object> merged = new HashMap<>();
+            merged.put(KEY, (int) r1.get(KEY) + (int) r2.get(KEY));
+            return merged;
+        };
+    }
+
     @Override
     public void reduce(Task task) {
         List<Map<String, Object>> reduceAttributes = task.getReduceAttributes();